@@ -1,6 +1,9 @@
 package edu.berkeley.cs186.database;
 
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.io.PageAllocator;
+import edu.berkeley.cs186.database.io.PageStore;
 import edu.berkeley.cs186.database.query.QueryPlan;
 import edu.berkeley.cs186.database.table.*;
 import edu.berkeley.cs186.database.concurrency.*;
@@ -20,6 +23,7 @@ public class Database {
   private long numTransactions;
   private String fileDir;
   private LockManager lockMan;
+  private PageStore.Type storeType;
 
   /**
    * Creates a new database.
@@ -28,7 +32,19 @@ public class Database {
    * @throws DatabaseException
    */
   public Database(String fileDir) throws DatabaseException {
+    this(fileDir, PageAllocator.DEFAULT_STORE_TYPE);
+  }
+
+  /**
+   * Creates a new database whose tables are read and written through stores of type storeType.
+   *
+   * @param fileDir the directory to put the table files in
+   * @param storeType how table pages are read and written
+   * @throws DatabaseException
+   */
+  public Database(String fileDir, PageStore.Type storeType) throws DatabaseException {
     this.fileDir = fileDir;
+    this.storeType = storeType;
     numTransactions = 0;
     tableLookup = new ConcurrentHashMap<String, Table>();
 
@@ -46,7 +62,7 @@ public class Database {
       if (fName.endsWith(Table.FILENAME_EXTENSION)) {
         int lastIndex = fName.lastIndexOf(Table.FILENAME_EXTENSION);
         String tableName = fName.substring(0, lastIndex);
-        tableLookup.put(tableName, new Table(tableName, this.fileDir));
+        tableLookup.put(tableName, new Table(tableName, this.fileDir, this.storeType));
       }
     }
   }
@@ -63,7 +79,64 @@ public class Database {
       throw new DatabaseException("Table name already exists");
     }
 
-    this.tableLookup.put(tableName, new Table(s, tableName, this.fileDir));
+    this.tableLookup.put(tableName, new Table(s, tableName, this.fileDir, Page.pageSize,
+                                              this.storeType));
+  }
+
+  /**
+   * Create a new table in this database whose pages are pageSize bytes.
+   *
+   * @param s the table schema
+   * @param tableName the name of the table
+   * @param pageSize the size in bytes of the table's pages
+   * @throws DatabaseException
+   */
+  public synchronized void createTable(Schema s, String tableName, int pageSize) throws DatabaseException {
+    if (this.tableLookup.containsKey(tableName)) {
+      throw new DatabaseException("Table name already exists");
+    }
+
+    this.tableLookup.put(tableName, new Table(s, tableName, this.fileDir, pageSize, this.storeType));
+  }
+
+  /**
+   * Create a new table in this database whose pages are pageSize bytes and, if checksums is true,
+   * checksummed so that a page torn by a crash is detected when it is read.
+   *
+   * @param s the table schema
+   * @param tableName the name of the table
+   * @param pageSize the size in bytes of the table's pages
+   * @param checksums whether the table's pages are checksummed
+   * @throws DatabaseException
+   */
+  public synchronized void createTable(Schema s, String tableName, int pageSize,
+                                       boolean checksums) throws DatabaseException {
+    if (this.tableLookup.containsKey(tableName)) {
+      throw new DatabaseException("Table name already exists");
+    }
+
+    this.tableLookup.put(tableName, new Table(s, tableName, this.fileDir, pageSize, this.storeType,
+                                              checksums));
+  }
+
+  /**
+   * Create a new table in this database whose records are laid out in format. A SLOTTED table
+   * stores its strings without their padding, which suits wide string columns whose values are
+   * mostly short.
+   *
+   * @param s the table schema
+   * @param tableName the name of the table
+   * @param format how the table's records are laid out on its pages
+   * @throws DatabaseException
+   */
+  public synchronized void createTable(Schema s, String tableName,
+                                       Table.RecordFormat format) throws DatabaseException {
+    if (this.tableLookup.containsKey(tableName)) {
+      throw new DatabaseException("Table name already exists");
+    }
+
+    this.tableLookup.put(tableName, new Table(s, tableName, this.fileDir, Page.pageSize,
+                                              this.storeType, false, format));
   }
 
   /**
@@ -77,11 +150,15 @@ public class Database {
       return false;
     }
 
-    this.tableLookup.get(tableName).close();
+    this.tableLookup.get(tableName).close(false);
     this.tableLookup.remove(tableName);
 
     File f = new File(fileDir + tableName + Table.FILENAME_EXTENSION);
     f.delete();
+    f = new File(fileDir + tableName + Table.FREE_SPACE_FILENAME_EXTENSION);
+    f.delete();
+    f = new File(fileDir + tableName + Table.STATS_FILENAME_EXTENSION);
+    f.delete();
 
     return true;
   }
@@ -204,7 +281,8 @@ public class Database {
         f.mkdirs();
       }
 
-      this.tempTables.put(tempTableName, new Table(schema, tempTableName, Database.this.fileDir + "temp/"));
+      this.tempTables.put(tempTableName, new Table(schema, tempTableName, Database.this.fileDir + "temp/",
+                                                   Page.pageSize, Database.this.storeType));
       this.locksHeld.put(tempTableName, LockManager.LockType.EXCLUSIVE);
     }
 
@@ -217,6 +295,15 @@ public class Database {
       return rid;
     }
 
+    public List<RecordID> addRecords(String tableName, Iterator<List<DataBox>> values)
+        throws DatabaseException {
+      assert(this.active);
+
+      checkAndGrabExclusiveLock(tableName);
+      Table tab = getTable(tableName);
+      return tab.addRecords(values);
+    }
+
     public void deleteRecord(String tableName, RecordID rid) throws DatabaseException {
       assert(active);
 
@@ -239,6 +326,13 @@ public class Database {
       return getTable(tableName).iterator();
     }
 
+    public Iterator<Record> getParallelRecordIterator(String tableName) throws DatabaseException {
+      assert(this.active);
+
+      checkAndGrabSharedLock(tableName);
+      return getTable(tableName).parallelIterator();
+    }
+
     public void updateRecord(String tableName, List<DataBox> values, RecordID rid) throws DatabaseException {
       assert(this.active);
       checkAndGrabExclusiveLock(tableName);
@@ -343,11 +437,15 @@ public class Database {
         return;
       }
 
-      this.tempTables.get(tempTableName).close();
+      this.tempTables.get(tempTableName).close(false);
       Database.this.tableLookup.remove(tempTableName);
 
       File f = new File(Database.this.fileDir + "temp/" + tempTableName + Table.FILENAME_EXTENSION);
       f.delete();
+      f = new File(Database.this.fileDir + "temp/" + tempTableName + Table.FREE_SPACE_FILENAME_EXTENSION);
+      f.delete();
+      f = new File(Database.this.fileDir + "temp/" + tempTableName + Table.STATS_FILENAME_EXTENSION);
+      f.delete();
     }
 
     private void deleteAllTempTables() {
@@ -94,7 +94,13 @@ public class StringDataBox extends DataBox {
 
   @Override
   public int getSize() {
-    return s.getBytes(Charset.forName("UTF-8")).length;
+    // the UTF-8 encoding of an ASCII string is as long as the string
+    for (int i = 0; i < this.s.length(); i++) {
+      if (this.s.charAt(i) >= 0x80) {
+        return this.s.getBytes(Charset.forName("UTF-8")).length;
+      }
+    }
+    return this.s.length();
   }
 
   @Override
@@ -1,5 +1,6 @@
 package edu.berkeley.cs186.database.index;
 
+import edu.berkeley.cs186.database.io.Bitmap;
 import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.table.RecordID;
@@ -52,7 +53,8 @@ public abstract class BPlusNode {
             this.entrySize = keySchema.getSize() + 4;
         }
 
-        this.bitMapSize = (8 * (Page.pageSize - 5) / (1 + 8 * this.entrySize)) / 8;
+        int pageSize = tree.allocator.getUsablePageSize();
+        this.bitMapSize = (8 * (pageSize - 5) / (1 + 8 * this.entrySize)) / 8;
         this.numEntries = bitMapSize * 8;
     }
 
@@ -118,10 +120,6 @@ public abstract class BPlusNode {
         throw new BPlusTreeException("Not Implemented");
     }
 
-    private byte[] getBitMap() {
-        return getPage().readBytes(headerSize, bitMapSize);
-    }
-
     private void setBitMap(byte[] bitMap) {
         getPage().writeBytes(headerSize, bitMapSize, bitMap);
     }
@@ -142,15 +140,10 @@ public abstract class BPlusNode {
      * @param ent the BEntry to write
      */
     private void writeEntry(int entryNum, BEntry ent) {
-        int byteOffset = entryNum/8;
-        int bitOffset = 7 - (entryNum % 8);
-        byte mask = (byte) (1 << bitOffset);
-
-        byte[] bitMap = getBitMap();
-        bitMap[byteOffset] = (byte) (bitMap[byteOffset] | mask);
-        setBitMap(bitMap);
+        Page page = getPage();
+        Bitmap.set(page, headerSize, entryNum, true);
         int entryOffset = getOffset(entryNum);
-        getPage().writeBytes(entryOffset, entrySize, ent.toBytes());
+        page.writeBytes(entryOffset, entrySize, ent.toBytes());
     }
 
     /**
@@ -173,18 +166,7 @@ public abstract class BPlusNode {
      * @return the first free entry number, otherwise -1 if none exists
      */
     private int findFreeEntry() {
-        byte[] bitMap = this.getBitMap();
-
-        for (int i = 0; i < this.numEntries; i++) {
-            int byteOffset = i/8;
-            int bitOffset = 7 - (i % 8);
-            byte mask = (byte) (1 << bitOffset);
-            byte value = (byte) (bitMap[byteOffset] & mask);
-            if (value == 0) {
-                return i;
-            }
-        }
-        return -1;
+        return Bitmap.findFirstClear(getPage(), headerSize, this.numEntries);
     }
 
     /**
@@ -193,18 +175,12 @@ public abstract class BPlusNode {
      * @return a list of entries that have the valid bit set
      */
     protected List<BEntry> getAllValidEntries() {
-        byte[] bitMap = this.getBitMap();
-        List<BEntry> entries = new ArrayList<BEntry>();
-        for (int i = 0; i < this.numEntries; i++) {
-            int byteOffset = i/8;
-            int bitOffset = 7 - (i % 8);
-            byte mask = (byte) (1 << bitOffset);
-
-            byte value = (byte) (bitMap[byteOffset] & mask);
-
-            if (value != 0) {
-                entries.add(readEntry(i));
-            }
+        Page page = getPage();
+        int[] valid = new int[this.numEntries];
+        int numValid = Bitmap.getSetBits(page, headerSize, this.numEntries, valid);
+        List<BEntry> entries = new ArrayList<BEntry>(numValid);
+        for (int i = 0; i < numValid; i++) {
+            entries.add(readEntry(valid[i]));
         }
         return entries;
     }
@@ -44,8 +44,38 @@ public class BPlusTree {
     }
 
     public BPlusTree(DataBox keySchema, String fName, String filePrefix) {
+        this(keySchema, fName, filePrefix, Page.pageSize);
+    }
+
+    /**
+     * This constructor is used for creating an empty BPlusTree whose nodes are
+     * pageSize bytes. Larger nodes have a larger fanout.
+     *
+     * @param keySchema the schema of the index key
+     * @param fName the filename of where the index will be built
+     * @param filePrefix the prefix where the index's file will be created
+     * @param pageSize the size in bytes of the index's pages
+     */
+    public BPlusTree(DataBox keySchema, String fName, String filePrefix, int pageSize) {
+        this(keySchema, fName, filePrefix, pageSize, false);
+    }
+
+    /**
+     * This constructor is used for creating an empty BPlusTree whose nodes are
+     * pageSize bytes and, if checksums is true, carry a checksum that is
+     * verified when they are read back.
+     *
+     * @param keySchema the schema of the index key
+     * @param fName the filename of where the index will be built
+     * @param filePrefix the prefix where the index's file will be created
+     * @param pageSize the size in bytes of the index's pages
+     * @param checksums whether the index's pages are checksummed
+     */
+    public BPlusTree(DataBox keySchema, String fName, String filePrefix, int pageSize,
+                     boolean checksums) {
         String pathname = Paths.get(filePrefix, fName + FILENAME_EXTENSION).toString();
-        this.allocator = new PageAllocator(pathname, true);
+        this.allocator = new PageAllocator(pathname, true, pageSize,
+                                           PageAllocator.DEFAULT_STORE_TYPE, checksums);
         this.keySchema = keySchema;
         int headerPageNum = this.allocator.allocPage();
         assert(headerPageNum == 0);
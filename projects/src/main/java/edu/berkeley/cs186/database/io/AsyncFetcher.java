@@ -0,0 +1,169 @@
+package edu.berkeley.cs186.database.io;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the asynchronous fetches of PageAllocator on a small pool of IO threads shared by all
+ * allocators. A page that is already in the buffer pool is returned in a future that is already
+ * complete, so only misses ever wait for an IO thread.
+ *
+ * A batch of fetches is sorted by page number and split into at most NUM_IO_THREADS runs, each read
+ * in increasing order by one thread, so the reads of a batch overlap without seeking back and forth.
+ * Dependent stages of a future that was not already complete run on an IO thread and should not
+ * block.
+ *
+ * YOU SHOULD NOT NEED TO CHANGE ANY OF THE CODE IN THIS PACKAGE.
+ */
+class AsyncFetcher {
+  static final int NUM_IO_THREADS = 4;
+
+  private static ThreadPoolExecutor ioExecutor = null;
+
+  /**
+   * Fetch page pageNum of allocator, reading it on an IO thread if it is not cached.
+   */
+  static CompletableFuture<Page> fetch(PageAllocator allocator, int pageNum) {
+    final CompletableFuture<Page> result = new CompletableFuture<Page>();
+    Page cached = allocator.getBufferPool().lookupPage(allocator, pageNum, false);
+    if (cached != null) {
+      result.complete(cached);
+      return result;
+    }
+
+    final Page[] pages = new Page[1];
+    AsyncFetcher.getExecutor().execute(new FetchTask(allocator, new int[] {pageNum}, new int[] {0},
+                                                     pages, new AtomicInteger(1),
+                                                     new Completion<Page>(result) {
+      Page value() {
+        return pages[0];
+      }
+    }));
+    return result;
+  }
+
+  /**
+   * Fetch every page in pageNums of allocator, reading the ones that are not cached on the IO
+   * threads. The pages are returned in the order of pageNums.
+   */
+  static CompletableFuture<Page[]> fetchAll(PageAllocator allocator, int[] pageNums) {
+    final CompletableFuture<Page[]> result = new CompletableFuture<Page[]>();
+    final Page[] pages = new Page[pageNums.length];
+
+    // misses are packed as (page number, index in pageNums) so that sorting orders them by page
+    long[] misses = new long[pageNums.length];
+    int numMisses = 0;
+    for (int i = 0; i < pageNums.length; i++) {
+      if (pageNums[i] < 0) {
+        result.completeExceptionally(new PageException("invalid page number -- out of bounds"));
+        return result;
+      }
+      pages[i] = allocator.getBufferPool().lookupPage(allocator, pageNums[i], false);
+      if (pages[i] == null) {
+        misses[numMisses++] = (((long) pageNums[i]) << 32) | i;
+      }
+    }
+    if (numMisses == 0) {
+      result.complete(pages);
+      return result;
+    }
+    Arrays.sort(misses, 0, numMisses);
+
+    int numRuns = Math.min(NUM_IO_THREADS, numMisses);
+    AtomicInteger remaining = new AtomicInteger(numRuns);
+    Completion<Page[]> completion = new Completion<Page[]>(result) {
+      Page[] value() {
+        return pages;
+      }
+    };
+    for (int run = 0; run < numRuns; run++) {
+      int from = run * numMisses / numRuns;
+      int to = (run + 1) * numMisses / numRuns;
+      int[] runPages = new int[to - from];
+      int[] runSlots = new int[to - from];
+      for (int j = from; j < to; j++) {
+        runPages[j - from] = (int) (misses[j] >>> 32);
+        runSlots[j - from] = (int) misses[j];
+      }
+      AsyncFetcher.getExecutor().execute(new FetchTask(allocator, runPages, runSlots, pages,
+                                                       remaining, completion));
+    }
+    return result;
+  }
+
+  /**
+   * The IO threads shared by all allocators. Unlike prefetches, fetches are never dropped, so the
+   * queue is unbounded.
+   */
+  private static synchronized ThreadPoolExecutor getExecutor() {
+    if (AsyncFetcher.ioExecutor == null) {
+      AsyncFetcher.ioExecutor = new ThreadPoolExecutor(NUM_IO_THREADS, NUM_IO_THREADS, 0,
+                                                       TimeUnit.MILLISECONDS,
+                                                       new LinkedBlockingQueue<Runnable>(),
+                                                       new DaemonThreadFactory("page-fetch"));
+    }
+    return AsyncFetcher.ioExecutor;
+  }
+
+  /**
+   * Completes a future with a value once every run of a fetch has finished, or with the first
+   * exception a run hit.
+   */
+  private abstract static class Completion<T> {
+    private CompletableFuture<T> future;
+
+    private Completion(CompletableFuture<T> future) {
+      this.future = future;
+    }
+
+    abstract T value();
+  }
+
+  /**
+   * Fetches one run of pages of an allocator in order, storing each page at its slot in pages. The
+   * run that finishes last completes the future.
+   */
+  private static class FetchTask implements Runnable {
+    private PageAllocator allocator;
+    private int[] pageNums;
+    private int[] slots;
+    private Page[] pages;
+    private AtomicInteger remaining;
+    private Completion<?> completion;
+
+    private FetchTask(PageAllocator allocator, int[] pageNums, int[] slots, Page[] pages,
+                      AtomicInteger remaining, Completion<?> completion) {
+      this.allocator = allocator;
+      this.pageNums = pageNums;
+      this.slots = slots;
+      this.pages = pages;
+      this.remaining = remaining;
+      this.completion = completion;
+    }
+
+    public void run() {
+      try {
+        for (int i = 0; i < this.pageNums.length; i++) {
+          if (this.completion.future.isDone()) {
+            return;
+          }
+          this.pages[this.slots[i]] = this.allocator.loadPage(this.pageNums[i]);
+        }
+      } catch (RuntimeException e) {
+        this.completion.future.completeExceptionally(e);
+        return;
+      }
+      if (this.remaining.decrementAndGet() == 0) {
+        this.complete(this.completion);
+      }
+    }
+
+    private <T> void complete(Completion<T> completion) {
+      completion.future.complete(completion.value());
+    }
+  }
+}
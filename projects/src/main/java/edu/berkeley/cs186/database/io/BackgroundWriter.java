@@ -0,0 +1,150 @@
+package edu.berkeley.cs186.database.io;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes dirty pages of a BufferPool back ahead of their eviction, so that the thread that evicts
+ * a page rarely has to wait for it to be forced. Only pages that would be forced on eviction count
+ * as dirty here; pages of allocators that defer their flushes are left to their FlushScheduler.
+ *
+ * The writer wakes up every intervalMillis. Once more than highWatermark of the pool's frames are
+ * dirty, it forces cold dirty pages, at most pagesPerSecond of them per second, until no more than
+ * lowWatermark of the frames are dirty. Unpinned pages that have not been used since the writer
+ * last looked at them are forced first.
+ *
+ * YOU SHOULD NOT NEED TO CHANGE ANY OF THE CODE IN THIS PACKAGE.
+ */
+public class BackgroundWriter implements Runnable {
+  public static final int DEFAULT_PAGES_PER_SECOND = 2000;
+  public static final double DEFAULT_HIGH_WATERMARK = 0.25;
+  public static final double DEFAULT_LOW_WATERMARK = 0.10;
+  public static final long DEFAULT_INTERVAL_MILLIS = 50;
+
+  private BufferPool pool;
+  private int pagesPerRound;
+  private int highWatermark;
+  private int lowWatermark;
+  private long intervalMillis;
+  private boolean writing;
+  private ScheduledThreadPoolExecutor executor;
+  private AtomicLong numPagesWritten;
+
+  /**
+   * Create a new BackgroundWriter for pool with the default rate and watermarks.
+   *
+   * @param pool the pool to write back pages of
+   */
+  public BackgroundWriter(BufferPool pool) {
+    this(pool, DEFAULT_PAGES_PER_SECOND, DEFAULT_HIGH_WATERMARK, DEFAULT_LOW_WATERMARK,
+         DEFAULT_INTERVAL_MILLIS);
+  }
+
+  /**
+   * Create a new BackgroundWriter for pool.
+   *
+   * @param pool the pool to write back pages of
+   * @param pagesPerSecond the most pages to force per second
+   * @param highWatermark the fraction of frames that may be dirty before writing starts
+   * @param lowWatermark the fraction of frames that may stay dirty when writing stops
+   * @param intervalMillis the time between rounds
+   */
+  public BackgroundWriter(BufferPool pool, int pagesPerSecond, double highWatermark,
+                          double lowWatermark, long intervalMillis) {
+    if (pagesPerSecond < 1 || intervalMillis < 1) {
+      throw new IllegalArgumentException("rate and interval must be positive");
+    }
+    if (lowWatermark < 0 || lowWatermark > highWatermark || highWatermark > 1) {
+      throw new IllegalArgumentException("watermarks must satisfy 0 <= low <= high <= 1");
+    }
+    this.pool = pool;
+    this.pagesPerRound = (int) Math.max(1, pagesPerSecond * intervalMillis / 1000);
+    this.highWatermark = (int) (highWatermark * pool.getNumFrames());
+    this.lowWatermark = (int) (lowWatermark * pool.getNumFrames());
+    this.intervalMillis = intervalMillis;
+    this.writing = false;
+    this.numPagesWritten = new AtomicLong(0);
+  }
+
+  /**
+   * Start running rounds on a daemon thread.
+   */
+  public synchronized void start() {
+    if (this.executor == null) {
+      this.executor = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("background-writer"));
+      this.executor.scheduleWithFixedDelay(this, this.intervalMillis, this.intervalMillis,
+                                           TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Stop running rounds. A round that is already running is allowed to finish.
+   */
+  public synchronized void stop() {
+    if (this.executor != null) {
+      this.executor.shutdown();
+      this.executor = null;
+    }
+  }
+
+  public void run() {
+    try {
+      this.writeRound();
+    } catch (RuntimeException e) {
+      // an exception would cancel all further rounds; the pages are retried next round
+    }
+  }
+
+  /**
+   * Run a single round: check the watermarks and force up to one round's worth of pages.
+   *
+   * @return the number of pages forced
+   */
+  synchronized int writeRound() {
+    int dirty = this.pool.getNumWriteBackPages();
+    if (dirty > this.highWatermark) {
+      this.writing = true;
+    }
+    if (!this.writing || dirty <= this.lowWatermark) {
+      this.writing = false;
+      return 0;
+    }
+
+    int toWrite = Math.min(this.pagesPerRound, dirty - this.lowWatermark);
+    List<Page> pages = new ArrayList<Page>();
+    List<PageAllocator> owners = new ArrayList<PageAllocator>();
+    this.pool.collectColdDirtyPages(toWrite, pages, owners);
+
+    int written = 0;
+    for (int i = 0; i < pages.size(); i++) {
+      Page page = pages.get(i);
+      if (page.isDirty()) {
+        owners.get(i).writeBack(page);
+        written++;
+      }
+    }
+
+    if (dirty - written <= this.lowWatermark) {
+      this.writing = false;
+    }
+    this.numPagesWritten.addAndGet(written);
+    return written;
+  }
+
+  /**
+   * @return whether the writer is between crossing the high watermark and reaching the low one
+   */
+  public synchronized boolean isWriting() {
+    return this.writing;
+  }
+
+  /**
+   * @return the number of pages forced by this writer
+   */
+  public long getNumPagesWritten() {
+    return this.numPagesWritten.get();
+  }
+}
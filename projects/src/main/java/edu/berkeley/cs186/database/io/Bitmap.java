@@ -0,0 +1,150 @@
+package edu.berkeley.cs186.database.io;
+
+/**
+ * Operations on a slot bitmap stored in a page, like the ones Table and BPlusNode keep at the
+ * start of their pages. Bit i of a bitmap is bit 7 - i % 8 of its byte i / 8, so reading the
+ * bitmap 8 bytes at a time as a big-endian long puts the first bit of a word in its highest
+ * position, and the search and counting methods work on whole words with
+ * Long.numberOfLeadingZeros and Long.bitCount instead of one bit at a time. They read the page
+ * directly rather than a copy of the bitmap.
+ *
+ * YOU SHOULD NOT NEED TO CHANGE ANY OF THE CODE IN THIS PACKAGE.
+ */
+public final class Bitmap {
+  private Bitmap() {
+  }
+
+  /**
+   * @param page the page holding the bitmap
+   * @param offset the offset in the page of the bitmap
+   * @param bit the number of the bit to read
+   * @return whether the bit is set
+   */
+  public static boolean get(Page page, int offset, int bit) {
+    return (page.readByte(offset + bit / 8) & (0x80 >>> (bit % 8))) != 0;
+  }
+
+  /**
+   * Set or clear one bit, writing only the byte it is in.
+   *
+   * @param page the page holding the bitmap
+   * @param offset the offset in the page of the bitmap
+   * @param bit the number of the bit to write
+   * @param value whether to set the bit
+   */
+  public static void set(Page page, int offset, int bit, boolean value) {
+    int position = offset + bit / 8;
+    int b = page.readByte(position);
+    int mask = 0x80 >>> (bit % 8);
+    page.writeByte(position, (byte) (value ? b | mask : b & ~mask));
+  }
+
+  /**
+   * @param page the page holding the bitmap
+   * @param offset the offset in the page of the bitmap
+   * @param numBits the number of bits in the bitmap
+   * @return the number of the first clear bit, or -1 if every bit is set
+   */
+  public static int findFirstClear(Page page, int offset, int numBits) {
+    int numWords = (numBits + 63) / 64;
+    for (int w = 0; w < numWords; w++) {
+      long clear = ~Bitmap.readWord(page, offset, numBits, w) & Bitmap.wordMask(numBits, w);
+      if (clear != 0) {
+        return 64 * w + Long.numberOfLeadingZeros(clear);
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @param page the page holding the bitmap
+   * @param offset the offset in the page of the bitmap
+   * @param numBits the number of bits in the bitmap
+   * @param from the number of the first bit to look at
+   * @return the number of the first set bit from bit from on, or -1 if there is none
+   */
+  public static int findNextSet(Page page, int offset, int numBits, int from) {
+    if (from < 0) {
+      from = 0;
+    }
+    int numWords = (numBits + 63) / 64;
+    for (int w = from / 64; w < numWords; w++) {
+      long set = Bitmap.readWord(page, offset, numBits, w);
+      if (w == from / 64) {
+        set &= -1L >>> (from % 64);
+      }
+      if (set != 0) {
+        return 64 * w + Long.numberOfLeadingZeros(set);
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @param page the page holding the bitmap
+   * @param offset the offset in the page of the bitmap
+   * @param numBits the number of bits in the bitmap
+   * @return the number of set bits
+   */
+  public static int countSet(Page page, int offset, int numBits) {
+    int count = 0;
+    int numWords = (numBits + 63) / 64;
+    for (int w = 0; w < numWords; w++) {
+      count += Long.bitCount(Bitmap.readWord(page, offset, numBits, w));
+    }
+    return count;
+  }
+
+  /**
+   * Write the number of every set bit, in order, to the start of bits. Each word of the bitmap is
+   * read once, so this is much cheaper than a findNextSet call per set bit.
+   *
+   * @param page the page holding the bitmap
+   * @param offset the offset in the page of the bitmap
+   * @param numBits the number of bits in the bitmap
+   * @param bits an array with room for every set bit
+   * @return the number of set bits
+   */
+  public static int getSetBits(Page page, int offset, int numBits, int[] bits) {
+    int count = 0;
+    int numWords = (numBits + 63) / 64;
+    for (int w = 0; w < numWords; w++) {
+      long set = Bitmap.readWord(page, offset, numBits, w);
+      while (set != 0) {
+        int bit = Long.numberOfLeadingZeros(set);
+        bits[count++] = 64 * w + bit;
+        set &= ~(Long.MIN_VALUE >>> bit);
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Read word w of the bitmap, with the bits past the end of the bitmap cleared.
+   */
+  private static long readWord(Page page, int offset, int numBits, int w) {
+    int numBytes = (numBits + 7) / 8;
+    int start = 8 * w;
+    long word;
+    if (start + 8 <= numBytes) {
+      word = page.readLong(offset + start);
+    } else {
+      word = 0;
+      for (int i = start; i < numBytes; i++) {
+        word |= ((long) (page.readByte(offset + i) & 0xFF)) << (56 - 8 * (i - start));
+      }
+    }
+    return word & Bitmap.wordMask(numBits, w);
+  }
+
+  /**
+   * @return a mask of the bits of word w that are part of a bitmap of numBits bits
+   */
+  private static long wordMask(int numBits, int w) {
+    int bitsInWord = numBits - 64 * w;
+    if (bitsInWord >= 64) {
+      return -1L;
+    }
+    return ~(-1L >>> bitsInWord);
+  }
+}
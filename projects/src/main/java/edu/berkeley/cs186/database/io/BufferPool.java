@@ -0,0 +1,486 @@
+package edu.berkeley.cs186.database.io;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A fixed-size pool of page frames that PageAllocators cache their pages in. Frames are found
+ * through a page table keyed by the owning allocator and the virtual page number. A frame whose
+ * page is pinned is never chosen for eviction, and a dirty page is handed back to its allocator
+ * when it is evicted, which flushes it or leaves it to its FlushScheduler. Which unpinned frame is
+ * evicted is decided by the pool's EvictionPolicy.
+ *
+ * The frames are split into shards by a hash of the translated page number. Each shard has its own
+ * page table, eviction policy and lock, so fetches of pages in different shards never contend and
+ * a hit only ever takes the lock of the page's shard. Eviction is decided within a shard.
+ *
+ * Every PageAllocator is built with a BufferPool; allocators that are not given one share the
+ * default pool.
+ *
+ * YOU SHOULD NOT NEED TO CHANGE ANY OF THE CODE IN THIS PACKAGE.
+ */
+public class BufferPool {
+  public static final int DEFAULT_NUM_FRAMES = 1024;
+  public static final EvictionPolicy.Type DEFAULT_POLICY = EvictionPolicy.Type.CLOCK;
+
+  /**
+   * The smallest number of frames a shard is given when the number of shards is picked
+   * automatically. Smaller shards make eviction decisions on too little history.
+   */
+  public static final int MIN_FRAMES_PER_SHARD = 64;
+
+  private static BufferPool defaultPool = null;
+
+  private int numFrames;
+  private Shard[] shards;
+  private int shardMask;
+
+  /**
+   * Create a new BufferPool with numFrames frames and the default eviction policy.
+   *
+   * @param numFrames the number of pages this pool can hold at once
+   */
+  public BufferPool(int numFrames) {
+    this(numFrames, DEFAULT_POLICY);
+  }
+
+  /**
+   * Create a new BufferPool with numFrames frames that evicts according to policyType. The number
+   * of shards is chosen from the number of available processors, keeping at least
+   * MIN_FRAMES_PER_SHARD frames in every shard.
+   *
+   * @param numFrames the number of pages this pool can hold at once
+   * @param policyType the eviction policy to use
+   */
+  public BufferPool(int numFrames, EvictionPolicy.Type policyType) {
+    this(numFrames, policyType, BufferPool.defaultNumShards(numFrames));
+  }
+
+  /**
+   * Create a new BufferPool with numFrames frames split over numShards shards, each of which
+   * evicts according to its own instance of policyType.
+   *
+   * @param numFrames the number of pages this pool can hold at once
+   * @param policyType the eviction policy to use
+   * @param numShards the number of shards; must be a power of two no larger than numFrames
+   */
+  public BufferPool(int numFrames, EvictionPolicy.Type policyType, int numShards) {
+    this(numFrames, numShards);
+    for (int i = 0; i < numShards; i++) {
+      int shardFrames = numFrames / numShards + (i < numFrames % numShards ? 1 : 0);
+      this.shards[i] = new Shard(shardFrames, policyType.newPolicy(shardFrames));
+    }
+  }
+
+  /**
+   * Create a new unsharded BufferPool with numFrames frames that evicts according to policy. The
+   * policy must have been created for exactly numFrames frames and must not be shared with another
+   * pool.
+   *
+   * @param numFrames the number of pages this pool can hold at once
+   * @param policy the eviction policy to use
+   */
+  public BufferPool(int numFrames, EvictionPolicy policy) {
+    this(numFrames, 1);
+    this.shards[0] = new Shard(numFrames, policy);
+  }
+
+  private BufferPool(int numFrames, int numShards) {
+    if (numFrames < 1) {
+      throw new IllegalArgumentException("a buffer pool needs at least one frame");
+    }
+    if (numShards < 1 || numShards > numFrames || Integer.bitCount(numShards) != 1) {
+      throw new IllegalArgumentException("number of shards must be a power of two between 1 and " +
+                                         "the number of frames");
+    }
+    this.numFrames = numFrames;
+    this.shards = new Shard[numShards];
+    this.shardMask = numShards - 1;
+  }
+
+  /**
+   * @return the pool shared by all PageAllocators that were not built with their own pool. The
+   * default pool has a BackgroundWriter running with its default settings.
+   */
+  public static synchronized BufferPool getDefault() {
+    if (BufferPool.defaultPool == null) {
+      BufferPool.defaultPool = new BufferPool(DEFAULT_NUM_FRAMES);
+      new BackgroundWriter(BufferPool.defaultPool).start();
+    }
+    return BufferPool.defaultPool;
+  }
+
+  /**
+   * The number of shards used when none is given: the smallest power of two that is at least
+   * twice the number of processors, reduced until every shard has MIN_FRAMES_PER_SHARD frames.
+   */
+  static int defaultNumShards(int numFrames) {
+    int target = 2 * Runtime.getRuntime().availableProcessors();
+    int numShards = 1;
+    while (numShards < target && (numShards * 2) * MIN_FRAMES_PER_SHARD <= numFrames) {
+      numShards *= 2;
+    }
+    return numShards;
+  }
+
+  /**
+   * Fetch page pageNum of allocator through the pool, reading it in from the allocator on a miss.
+   *
+   * @param allocator the allocator that owns the page
+   * @param pageNum the virtual page number
+   * @param pin whether the frame should be pinned until a matching unpinPage
+   * @return the Page
+   */
+  Page fetchPage(PageAllocator allocator, int pageNum, boolean pin) {
+    long key = allocator.translatePageNum(pageNum);
+    Shard shard = this.shardFor(key);
+
+    Page page = this.lookupPage(allocator, key, shard, pin);
+    if (page != null) {
+      return page;
+    }
+    return this.loadPage(allocator, pageNum, key, shard, pin, false);
+  }
+
+  /**
+   * Return page pageNum of allocator if it is in the pool, counting a hit, without reading it in
+   * on a miss.
+   *
+   * @param allocator the allocator that owns the page
+   * @param pageNum the virtual page number
+   * @param pin whether the frame should be pinned until a matching unpinPage
+   * @return the Page, or null if it is not in the pool
+   */
+  Page lookupPage(PageAllocator allocator, int pageNum, boolean pin) {
+    long key = allocator.translatePageNum(pageNum);
+    return this.lookupPage(allocator, key, this.shardFor(key), pin);
+  }
+
+  private Page lookupPage(PageAllocator allocator, long key, Shard shard, boolean pin) {
+    synchronized(shard) {
+      Integer frameNum = shard.pageTable.get(key);
+      if (frameNum == null) {
+        return null;
+      }
+      allocator.getMetrics().recordHit();
+      if (shard.prefetched[frameNum]) {
+        shard.prefetched[frameNum] = false;
+        allocator.getMetrics().recordPrefetchHit();
+      }
+      shard.policy.pageAccessed(frameNum);
+      shard.used[frameNum] = true;
+      if (pin) {
+        shard.pinCounts[frameNum]++;
+      }
+      return shard.pages[frameNum];
+    }
+  }
+
+  /**
+   * Read page pageNum of allocator into the pool ahead of its use, unless it is already cached.
+   * The page is not pinned and is not counted as a miss.
+   *
+   * @param allocator the allocator that owns the page
+   * @param pageNum the virtual page number
+   */
+  void prefetchPage(PageAllocator allocator, int pageNum) {
+    long key = allocator.translatePageNum(pageNum);
+    Shard shard = this.shardFor(key);
+
+    synchronized(shard) {
+      if (shard.pageTable.containsKey(key)) {
+        return;
+      }
+    }
+
+    this.loadPage(allocator, pageNum, key, shard, false, true);
+  }
+
+  /**
+   * Read a page that was not found in shard and install it in a free or evicted frame. A dirty page
+   * that is evicted is written back outside of the shard's lock.
+   */
+  private Page loadPage(PageAllocator allocator, int pageNum, long key, Shard shard, boolean pin,
+                        boolean prefetch) {
+    Page page = allocator.readPage(pageNum);
+    allocator.getMetrics().recordPhysicalRead();
+    if (prefetch) {
+      page.load();
+    }
+    Page evicted = null;
+    PageAllocator evictedOwner = null;
+
+    synchronized(shard) {
+      // a closed allocator's pages have already been discarded and must not come back
+      if (prefetch && !allocator.isOpen()) {
+        return null;
+      }
+      if (!prefetch) {
+        allocator.getMetrics().recordMiss();
+      }
+
+      // another thread may have read the page in while we were mapping it
+      Integer frameNum = shard.pageTable.get(key);
+      if (frameNum == null) {
+        frameNum = shard.freeFrames.poll();
+        if (frameNum == null) {
+          frameNum = shard.evictFrame();
+          evicted = shard.pages[frameNum];
+          evictedOwner = shard.owners[frameNum];
+        }
+        shard.pages[frameNum] = page;
+        shard.owners[frameNum] = allocator;
+        shard.keys[frameNum] = key;
+        shard.pinCounts[frameNum] = 0;
+        shard.used[frameNum] = !prefetch;
+        shard.prefetched[frameNum] = prefetch;
+        shard.pageTable.put(key, frameNum);
+        shard.policy.pageLoaded(frameNum, key);
+        if (prefetch) {
+          allocator.getMetrics().recordPrefetch();
+        }
+      }
+
+      if (pin) {
+        shard.pinCounts[frameNum]++;
+      }
+      page = shard.pages[frameNum];
+    }
+
+    if (evicted != null && evicted.isDirty()) {
+      evictedOwner.writeBack(evicted);
+    }
+    return page;
+  }
+
+  /**
+   * Release one pin on page pageNum of allocator.
+   *
+   * @param allocator the allocator that owns the page
+   * @param pageNum the virtual page number
+   */
+  void unpinPage(PageAllocator allocator, int pageNum) {
+    long key = allocator.translatePageNum(pageNum);
+    Shard shard = this.shardFor(key);
+
+    synchronized(shard) {
+      Integer frameNum = shard.pageTable.get(key);
+      if (frameNum == null || shard.pinCounts[frameNum] == 0) {
+        throw new PageException("unpinning page " + pageNum + " which is not pinned");
+      }
+      shard.pinCounts[frameNum]--;
+    }
+  }
+
+  /**
+   * Drop page pageNum of allocator from the pool without flushing it, regardless of pins.
+   *
+   * @param allocator the allocator that owns the page
+   * @param pageNum the virtual page number
+   */
+  void discardPage(PageAllocator allocator, int pageNum) {
+    long key = allocator.translatePageNum(pageNum);
+    Shard shard = this.shardFor(key);
+
+    synchronized(shard) {
+      Integer frameNum = shard.pageTable.get(key);
+      if (frameNum != null) {
+        shard.policy.pageRemoved(frameNum);
+        shard.releaseFrame(frameNum);
+      }
+    }
+  }
+
+  /**
+   * Drop every page owned by allocator from the pool.
+   *
+   * @param allocator the allocator whose pages should be removed
+   * @return the pages that were removed, so that the caller can flush them
+   */
+  List<Page> discardAll(PageAllocator allocator) {
+    List<Page> removed = new ArrayList<Page>();
+
+    for (Shard shard : this.shards) {
+      synchronized(shard) {
+        for (int frameNum = 0; frameNum < shard.pages.length; frameNum++) {
+          if (shard.owners[frameNum] == allocator) {
+            removed.add(shard.pages[frameNum]);
+            shard.policy.pageRemoved(frameNum);
+            shard.releaseFrame(frameNum);
+          }
+        }
+      }
+    }
+    return removed;
+  }
+
+  /**
+   * @return the total number of frames in this pool
+   */
+  public int getNumFrames() {
+    return this.numFrames;
+  }
+
+  /**
+   * @return the number of shards the frames are split over
+   */
+  public int getNumShards() {
+    return this.shards.length;
+  }
+
+  /**
+   * @return the number of frames currently holding a page
+   */
+  public int getNumCachedPages() {
+    int count = 0;
+    for (Shard shard : this.shards) {
+      synchronized(shard) {
+        count += shard.pageTable.size();
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @return the number of frames with at least one pin
+   */
+  public int getNumPinnedPages() {
+    int count = 0;
+    for (Shard shard : this.shards) {
+      synchronized(shard) {
+        for (int pinCount : shard.pinCounts) {
+          if (pinCount > 0) {
+            count++;
+          }
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @return the number of cached pages that would have to be forced if they were evicted now
+   */
+  int getNumWriteBackPages() {
+    int count = 0;
+    for (Shard shard : this.shards) {
+      synchronized(shard) {
+        for (int frameNum = 0; frameNum < shard.pages.length; frameNum++) {
+          if (shard.needsWriteBack(frameNum)) {
+            count++;
+          }
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Find up to max unpinned pages that would have to be forced if they were evicted, preferring
+   * pages that have not been used since the last call. Each shard is swept like a clock: a used
+   * page has its use cleared and is only taken if the sweep comes around to it again.
+   *
+   * @param max the largest number of pages to return
+   * @param pages the list to add the pages to
+   * @param owners the list to add the pages' allocators to
+   */
+  void collectColdDirtyPages(int max, List<Page> pages, List<PageAllocator> owners) {
+    for (Shard shard : this.shards) {
+      synchronized(shard) {
+        int numFrames = shard.pages.length;
+        for (int i = 0; i < 2 * numFrames && pages.size() < max; i++) {
+          int frameNum = shard.writerHand;
+          shard.writerHand = (shard.writerHand + 1) % numFrames;
+
+          if (!shard.needsWriteBack(frameNum) || shard.pinCounts[frameNum] > 0) {
+            continue;
+          }
+          if (shard.used[frameNum]) {
+            shard.used[frameNum] = false;
+            continue;
+          }
+          pages.add(shard.pages[frameNum]);
+          owners.add(shard.owners[frameNum]);
+        }
+      }
+    }
+  }
+
+  /**
+   * Pick the shard for a translated page number. The key is mixed first so that consecutive pages
+   * of one file, and the same page number of different files, land in different shards.
+   */
+  private Shard shardFor(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return this.shards[(int) (h >>> 32) & this.shardMask];
+  }
+
+  /**
+   * One independently locked partition of the pool's frames. All fields are guarded by the
+   * shard's own monitor.
+   */
+  private static class Shard {
+    private EvictionPolicy policy;
+
+    private Page[] pages;
+    private PageAllocator[] owners;
+    private long[] keys;
+    private int[] pinCounts;
+    private boolean[] used;
+    private boolean[] prefetched;
+    private int writerHand;
+    private ArrayDeque<Integer> freeFrames;
+    private HashMap<Long, Integer> pageTable;
+
+    private Shard(int numFrames, EvictionPolicy policy) {
+      this.policy = policy;
+
+      this.pages = new Page[numFrames];
+      this.owners = new PageAllocator[numFrames];
+      this.keys = new long[numFrames];
+      this.pinCounts = new int[numFrames];
+      this.used = new boolean[numFrames];
+      this.prefetched = new boolean[numFrames];
+      this.writerHand = 0;
+      this.freeFrames = new ArrayDeque<Integer>(numFrames);
+      this.pageTable = new HashMap<Long, Integer>();
+
+      for (int i = 0; i < numFrames; i++) {
+        this.freeFrames.add(i);
+      }
+    }
+
+    /**
+     * Ask the policy for a victim and remove it from the page table. Must be called while holding
+     * the shard's monitor. The frame still references its old page so that the caller can flush it.
+     */
+    private int evictFrame() {
+      int frameNum = this.policy.chooseVictim(this.pinCounts);
+      if (frameNum < 0) {
+        throw new PageException("No unpinned frames available in buffer pool");
+      }
+
+      this.pageTable.remove(this.keys[frameNum]);
+      this.owners[frameNum].getMetrics().recordEviction();
+      return frameNum;
+    }
+
+    private boolean needsWriteBack(int frameNum) {
+      Page page = this.pages[frameNum];
+      return page != null && page.isDirty() && this.owners[frameNum].writesBackOnEviction();
+    }
+
+    private void releaseFrame(int frameNum) {
+      this.pageTable.remove(this.keys[frameNum]);
+      this.pages[frameNum] = null;
+      this.owners[frameNum] = null;
+      this.keys[frameNum] = -1;
+      this.pinCounts[frameNum] = 0;
+      this.used[frameNum] = false;
+      this.prefetched[frameNum] = false;
+      this.freeFrames.add(frameNum);
+    }
+  }
+}
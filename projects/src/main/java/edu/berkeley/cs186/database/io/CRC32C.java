@@ -0,0 +1,67 @@
+package edu.berkeley.cs186.database.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * CRC-32C (Castagnoli), the checksum iSCSI, ext4 and most databases use for their pages. Computed
+ * eight bytes at a time with the slicing-by-8 tables, straight out of a page's buffer without copying
+ * it onto the heap.
+ *
+ * YOU SHOULD NOT NEED TO CHANGE ANY OF THE CODE IN THIS PACKAGE.
+ */
+final class CRC32C {
+  // the Castagnoli polynomial, bit-reversed
+  private static final int POLYNOMIAL = 0x82F63B78;
+
+  // TABLES[k][b] is the CRC of byte b followed by k zero bytes
+  private static final int[][] TABLES = new int[8][256];
+
+  static {
+    for (int b = 0; b < 256; b++) {
+      int crc = b;
+      for (int i = 0; i < 8; i++) {
+        crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+      }
+      TABLES[0][b] = crc;
+    }
+    for (int k = 1; k < 8; k++) {
+      for (int b = 0; b < 256; b++) {
+        int crc = TABLES[k - 1][b];
+        TABLES[k][b] = (crc >>> 8) ^ TABLES[0][crc & 0xFF];
+      }
+    }
+  }
+
+  private CRC32C() {
+  }
+
+  /**
+   * Compute the CRC-32C of length bytes of data starting at offset. The buffer's position and limit
+   * are not used or changed.
+   *
+   * @param data the bytes to checksum
+   * @param offset the absolute index in data of the first byte
+   * @param length the number of bytes
+   * @return the checksum
+   */
+  static int compute(ByteBuffer data, int offset, int length) {
+    int[] t0 = TABLES[0], t1 = TABLES[1], t2 = TABLES[2], t3 = TABLES[3];
+    int[] t4 = TABLES[4], t5 = TABLES[5], t6 = TABLES[6], t7 = TABLES[7];
+
+    int crc = ~0;
+    int end = offset + length;
+    int i = offset;
+    for (; i + 8 <= end; i += 8) {
+      // the CRC is bit-reversed, so the first byte of the word goes in the low bits
+      long word = Long.reverseBytes(data.getLong(i));
+      int lo = ((int) word) ^ crc;
+      int hi = (int) (word >>> 32);
+      crc = t7[lo & 0xFF] ^ t6[(lo >>> 8) & 0xFF] ^ t5[(lo >>> 16) & 0xFF] ^ t4[lo >>> 24] ^
+            t3[hi & 0xFF] ^ t2[(hi >>> 8) & 0xFF] ^ t1[(hi >>> 16) & 0xFF] ^ t0[hi >>> 24];
+    }
+    for (; i < end; i++) {
+      crc = (crc >>> 8) ^ t0[(crc ^ data.get(i)) & 0xFF];
+    }
+    return ~crc;
+  }
+}
@@ -0,0 +1,55 @@
+package edu.berkeley.cs186.database.io;
+
+/**
+ * CLOCK (second chance) eviction. A hit only sets the frame's reference bit. To find a victim the
+ * clock hand sweeps over the frames, clearing reference bits as it goes, and stops at the first
+ * resident unpinned frame whose bit is already clear.
+ *
+ * YOU SHOULD NOT NEED TO CHANGE ANY OF THE CODE IN THIS PACKAGE.
+ */
+public class ClockPolicy implements EvictionPolicy {
+  private boolean[] resident;
+  private boolean[] referenced;
+  private int hand;
+
+  public ClockPolicy(int numFrames) {
+    this.resident = new boolean[numFrames];
+    this.referenced = new boolean[numFrames];
+    this.hand = 0;
+  }
+
+  public void pageLoaded(int frameNum, long key) {
+    this.resident[frameNum] = true;
+    this.referenced[frameNum] = false;
+  }
+
+  public void pageAccessed(int frameNum) {
+    this.referenced[frameNum] = true;
+  }
+
+  public void pageRemoved(int frameNum) {
+    this.resident[frameNum] = false;
+    this.referenced[frameNum] = false;
+  }
+
+  public int chooseVictim(int[] pinCounts) {
+    int numFrames = this.resident.length;
+
+    // two full sweeps: the first may only clear reference bits
+    for (int i = 0; i < 2 * numFrames; i++) {
+      int frameNum = this.hand;
+      this.hand = (this.hand + 1) % numFrames;
+
+      if (!this.resident[frameNum] || pinCounts[frameNum] > 0) {
+        continue;
+      }
+      if (this.referenced[frameNum]) {
+        this.referenced[frameNum] = false;
+        continue;
+      }
+      this.resident[frameNum] = false;
+      return frameNum;
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,256 @@
+package edu.berkeley.cs186.database.io;
+
+import java.util.HashMap;
+
+/**
+ * CLOCK-Pro eviction (Jiang, Chen and Zhang, USENIX 2005). Resident pages are either hot or cold,
+ * and a cold page that is evicted stays on the clock as a non-resident test page for a while. A
+ * page that misses again during its test period has a short reuse distance and is brought back in
+ * as hot; a page touched only once, as during a scan, is evicted while still cold and never
+ * displaces a hot page. The share of frames reserved for cold pages adapts to the workload: it
+ * grows on every test-period hit and shrinks whenever a test period expires unused.
+ *
+ * All pages sit on one circular list that is swept by three hands. The cold hand looks for
+ * victims, the hot hand demotes hot pages that have not been referenced, and the test hand ends
+ * test periods. Hits only set the frame's reference bit.
+ *
+ * YOU SHOULD NOT NEED TO CHANGE ANY OF THE CODE IN THIS PACKAGE.
+ */
+public class ClockProPolicy implements EvictionPolicy {
+  private static final int HOT = 0;
+  private static final int COLD = 1;
+  private static final int TEST = 2;
+
+  private int numFrames;
+  private int coldTarget;
+  private int numHot;
+  private int numCold;
+  private int numTest;
+
+  private Node[] frameNodes;
+  private boolean[] referenced;
+  private HashMap<Long, Node> nodes;
+
+  private Node handHot;
+  private Node handCold;
+  private Node handTest;
+
+  private int[] pinCounts;
+  private int victim;
+
+  public ClockProPolicy(int numFrames) {
+    this.numFrames = numFrames;
+    this.coldTarget = numFrames;
+    this.frameNodes = new Node[numFrames];
+    this.referenced = new boolean[numFrames];
+    this.nodes = new HashMap<Long, Node>();
+  }
+
+  public void pageLoaded(int frameNum, long key) {
+    Node node = this.nodes.get(key);
+
+    if (node != null && node.status == TEST) {
+      // reuse within the test period: the page deserves to be hot
+      if (this.coldTarget < this.numFrames) {
+        this.coldTarget++;
+      }
+      this.unlink(node);
+      this.numTest--;
+      node.status = HOT;
+      this.numHot++;
+    } else {
+      node = new Node(key);
+      node.status = COLD;
+      this.numCold++;
+    }
+
+    node.frameNum = frameNum;
+    this.frameNodes[frameNum] = node;
+    this.referenced[frameNum] = false;
+    this.link(node);
+  }
+
+  public void pageAccessed(int frameNum) {
+    this.referenced[frameNum] = true;
+  }
+
+  public void pageRemoved(int frameNum) {
+    Node node = this.frameNodes[frameNum];
+    if (node == null) {
+      return;
+    }
+
+    if (node.status == HOT) {
+      this.numHot--;
+    } else {
+      this.numCold--;
+    }
+    this.frameNodes[frameNum] = null;
+    this.unlink(node);
+  }
+
+  public int chooseVictim(int[] pinCounts) {
+    this.pinCounts = pinCounts;
+    this.victim = -1;
+
+    for (int round = 0; round < 3 && this.victim == -1 && this.handCold != null; round++) {
+      int size = this.nodes.size();
+      for (int i = 0; i < 2 * size && this.victim == -1; i++) {
+        this.runHandCold();
+      }
+
+      // every cold page is pinned: demote hot pages so that the cold hand has candidates
+      for (int i = 0; i < 2 * size && this.victim == -1 && this.numHot > 0; i++) {
+        this.runHandHot();
+      }
+    }
+
+    this.pinCounts = null;
+    return this.victim;
+  }
+
+  /**
+   * Advance the cold hand by one page. A referenced cold page is promoted to hot; an unreferenced
+   * one becomes the victim (if none has been chosen yet) and stays behind as a test page.
+   */
+  private void runHandCold() {
+    Node node = this.handCold;
+
+    if (node.status == COLD && this.pinCounts[node.frameNum] == 0) {
+      if (this.referenced[node.frameNum]) {
+        this.referenced[node.frameNum] = false;
+        node.status = HOT;
+        this.numCold--;
+        this.numHot++;
+      } else if (this.victim == -1) {
+        this.victim = node.frameNum;
+        this.frameNodes[node.frameNum] = null;
+        node.frameNum = -1;
+        node.status = TEST;
+        this.numCold--;
+        this.numTest++;
+
+        while (this.numTest > this.numFrames) {
+          this.runHandTest();
+        }
+      }
+    }
+
+    if (this.handCold != null) {
+      this.handCold = this.handCold.next;
+    }
+
+    while (this.numFrames - this.coldTarget < this.numHot) {
+      this.runHandHot();
+    }
+  }
+
+  /**
+   * Advance the hot hand by one page, demoting it to cold if it has not been referenced since the
+   * hand last passed it.
+   */
+  private void runHandHot() {
+    if (this.handHot == this.handTest) {
+      this.runHandTest();
+    }
+
+    Node node = this.handHot;
+    if (node.status == HOT) {
+      if (this.referenced[node.frameNum]) {
+        this.referenced[node.frameNum] = false;
+      } else {
+        node.status = COLD;
+        this.numHot--;
+        this.numCold++;
+      }
+    }
+    this.handHot = this.handHot.next;
+  }
+
+  /**
+   * Advance the test hand by one page, ending the test period of a non-resident page. An expired
+   * test period means cold pages were given more room than they needed.
+   */
+  private void runHandTest() {
+    if (this.handTest == this.handCold) {
+      this.runHandCold();
+    }
+
+    Node node = this.handTest;
+    if (node.status == TEST) {
+      this.unlink(node);
+      this.numTest--;
+      if (this.coldTarget > 1) {
+        this.coldTarget--;
+      }
+    }
+    if (this.handTest != null) {
+      this.handTest = this.handTest.next;
+    }
+  }
+
+  /**
+   * Insert node into the clock just behind the hot hand, i.e. at the list head.
+   */
+  private void link(Node node) {
+    this.nodes.put(node.key, node);
+
+    if (this.handHot == null) {
+      node.prev = node;
+      node.next = node;
+      this.handHot = node;
+      this.handCold = node;
+      this.handTest = node;
+      return;
+    }
+
+    Node before = this.handHot.prev;
+    node.prev = before;
+    node.next = this.handHot;
+    before.next = node;
+    this.handHot.prev = node;
+
+    if (this.handCold == this.handHot) {
+      this.handCold = node;
+    }
+  }
+
+  private void unlink(Node node) {
+    this.nodes.remove(node.key);
+
+    if (node.next == node) {
+      this.handHot = null;
+      this.handCold = null;
+      this.handTest = null;
+      return;
+    }
+
+    if (this.handHot == node) {
+      this.handHot = node.prev;
+    }
+    if (this.handCold == node) {
+      this.handCold = node.prev;
+    }
+    if (this.handTest == node) {
+      this.handTest = node.prev;
+    }
+    node.prev.next = node.next;
+    node.next.prev = node.prev;
+  }
+
+  /**
+   * A resident or non-resident page on the clock.
+   */
+  private static class Node {
+    private long key;
+    private int frameNum;
+    private int status;
+    private Node prev;
+    private Node next;
+
+    private Node(long key) {
+      this.key = key;
+      this.frameNum = -1;
+    }
+  }
+}
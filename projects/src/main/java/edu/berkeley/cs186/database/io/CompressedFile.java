@@ -0,0 +1,178 @@
+package edu.berkeley.cs186.database.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A DirectFile that stores data pages compressed. A data page is decompressed into its buffer when
+ * it is read and compressed again when it is written back, so the buffer pool only ever sees
+ * plain pages while scans of a cold table of large pages read a fraction of the bytes.
+ *
+ * Every block keeps its place in the file, so the allocator's layout does not change. A data block
+ * starts with a SLOT_HEADER_SIZE header holding the length of the compressed page that follows it,
+ * and only that much of the block is written, which leaves the rest of a block that was never
+ * longer as a hole in the file. A block that shrinks is not truncated, since Java has no way to
+ * punch a hole in a file, so the file takes the space of the longest page each block has held. A
+ * page that does not compress is stored as is, with RAW as its length, which is why a data page is
+ * SLOT_HEADER_SIZE bytes smaller than a block. A block whose header is 0 was never written and
+ * holds a page of zeros. The allocator's own pages are stored as is, so the start of the file can
+ * be read before the store is opened.
+ *
+ * Reading a data block reads its first FIRST_READ_SIZE bytes, and the rest of the compressed page
+ * only if it is longer. The compressed length is not known before that read, and a smaller read
+ * would not help: the kernel reads the file 4KB at a time anyway. So only pages larger than 4KB
+ * are read in fewer bytes than DIRECT reads them, and at the default page size every read
+ * transfers the whole block and decompresses it on top. A compressed page is decompressed straight
+ * into the page's buffer, and each thread reads and writes blocks through scratch arrays it keeps
+ * from one call to the next, so neither reading nor writing a page allocates.
+ *
+ * YOU SHOULD NOT NEED TO CHANGE ANY OF THE CODE IN THIS PACKAGE.
+ */
+class CompressedFile extends DirectFile {
+  static final int SLOT_HEADER_SIZE = 4;
+
+  /**
+   * The number of bytes of a data block read before its compressed length is known.
+   */
+  static final int FIRST_READ_SIZE = 4096;
+
+  private static final int RAW = -1;
+
+  private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+    protected Scratch initialValue() {
+      return new Scratch();
+    }
+  };
+
+  /**
+   * A thread's arrays for the bytes of a block and of a page, grown to the largest block the thread
+   * has read or written.
+   */
+  private static final class Scratch {
+    private byte[] block = new byte[0];
+    private byte[] page = new byte[0];
+
+    private byte[] block(int blockSize) {
+      if (this.block.length < blockSize) {
+        this.block = new byte[blockSize];
+      }
+      return this.block;
+    }
+
+    private byte[] page(int pageSize) {
+      if (this.page.length < pageSize) {
+        this.page = new byte[pageSize];
+      }
+      return this.page;
+    }
+  }
+
+  private AtomicLong bytesIn;
+  private AtomicLong bytesOut;
+
+  CompressedFile(FileChannel fc, int blockSize) {
+    super(fc, blockSize);
+    this.bytesIn = new AtomicLong(0);
+    this.bytesOut = new AtomicLong(0);
+  }
+
+  public int getDataPageSize() {
+    return this.getBlockSize() - SLOT_HEADER_SIZE;
+  }
+
+  void readBlock(long blockNum, int pageNum, ByteBuffer buffer) throws IOException {
+    if (pageNum < 0) {
+      super.readBlock(blockNum, pageNum, buffer);
+      return;
+    }
+
+    int blockSize = this.getBlockSize();
+    int pageSize = this.getDataPageSize();
+    long position = blockNum * blockSize;
+    byte[] slot = SCRATCH.get().block(blockSize);
+    int firstRead = Math.min(FIRST_READ_SIZE, blockSize);
+    this.readFully(slot, 0, firstRead, position);
+
+    int length = ((slot[0] & 0xFF) << 24) | ((slot[1] & 0xFF) << 16) | ((slot[2] & 0xFF) << 8) |
+                 (slot[3] & 0xFF);
+    if (length == 0) {
+      while (buffer.hasRemaining()) {
+        buffer.put((byte) 0);
+      }
+      return;
+    }
+    int stored = length == RAW ? pageSize : length;
+    if (stored < 0 || stored > pageSize) {
+      throw new PageException("corrupt compressed block: " + blockNum);
+    }
+    if (SLOT_HEADER_SIZE + stored > firstRead) {
+      this.readFully(slot, firstRead, SLOT_HEADER_SIZE + stored - firstRead, position + firstRead);
+    }
+
+    if (length == RAW) {
+      buffer.put(slot, SLOT_HEADER_SIZE, pageSize);
+    } else {
+      LZ4Codec.decompress(slot, SLOT_HEADER_SIZE, stored, buffer, pageSize);
+    }
+    while (buffer.hasRemaining()) {
+      buffer.put((byte) 0);
+    }
+  }
+
+  void writeBlock(long blockNum, int pageNum, ByteBuffer data) throws IOException {
+    if (pageNum < 0) {
+      super.writeBlock(blockNum, pageNum, data);
+      return;
+    }
+
+    int pageSize = this.getDataPageSize();
+    Scratch scratch = SCRATCH.get();
+    byte[] page = scratch.page(pageSize);
+    data.get(page, 0, pageSize);
+
+    byte[] slot = scratch.block(this.getBlockSize());
+    int length = LZ4Codec.compress(page, pageSize, slot, SLOT_HEADER_SIZE, pageSize);
+    int stored = length;
+    if (length < 0) {
+      System.arraycopy(page, 0, slot, SLOT_HEADER_SIZE, pageSize);
+      length = RAW;
+      stored = pageSize;
+    }
+    ByteBuffer out = ByteBuffer.wrap(slot, 0, SLOT_HEADER_SIZE + stored);
+    out.putInt(0, length);
+    super.writeBlock(blockNum, pageNum, out);
+
+    this.bytesIn.addAndGet(pageSize);
+    this.bytesOut.addAndGet(SLOT_HEADER_SIZE + stored);
+  }
+
+  /**
+   * @return the bytes of data pages written back so far divided by the bytes they took in the file,
+   * or 1 if nothing has been written back
+   */
+  double getCompressionRatio() {
+    long out = this.bytesOut.get();
+    if (out == 0) {
+      return 1.0;
+    }
+    return ((double) this.bytesIn.get()) / out;
+  }
+
+  /**
+   * Read num bytes at position of the file into b at offset, leaving zeros past the end of the
+   * file.
+   */
+  private void readFully(byte[] b, int offset, int num, long position) throws IOException {
+    ByteBuffer bb = ByteBuffer.wrap(b, offset, num);
+    while (bb.hasRemaining()) {
+      if (this.getChannel().read(bb, position + bb.position() - offset) < 0) {
+        // b is reused, so the zeros have to be put there
+        Arrays.fill(b, bb.position(), offset + num, (byte) 0);
+        break;
+      }
+    }
+  }
+}
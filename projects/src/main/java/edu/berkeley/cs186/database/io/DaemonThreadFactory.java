@@ -0,0 +1,25 @@
+package edu.berkeley.cs186.database.io;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creates named daemon threads, so that background IO threads never keep the JVM alive.
+ *
+ * YOU SHOULD NOT NEED TO CHANGE ANY OF THE CODE IN THIS PACKAGE.
+ */
+class DaemonThreadFactory implements ThreadFactory {
+  private String name;
+  private AtomicLong count;
+
+  DaemonThreadFactory(String name) {
+    this.name = name;
+    this.count = new AtomicLong(0);
+  }
+
+  public Thread newThread(Runnable r) {
+    Thread t = new Thread(r, this.name + "-" + this.count.getAndIncrement());
+    t.setDaemon(true);
+    return t;
+  }
+}
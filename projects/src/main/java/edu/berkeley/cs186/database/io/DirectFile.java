@@ -0,0 +1,294 @@
+package edu.berkeley.cs186.database.io;
+
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A PageStore that reads blocks with positional reads into off-heap buffers and writes them back
+ * with positional writes. The file is never mapped, so the kernel cannot write back or drop a page
+ * behind the buffer pool's back, and reading a cached page never faults.
+ *
+ * Since a page's bytes live only in its buffer until they are written back, the store makes sure
+ * that there is never more than one Page for a block: a block is only read again once every Page
+ * for it has been garbage collected. A page that is written to is held by the store until it is
+ * written back, which happens when the buffer pool evicts it, when it is synced, or when the store
+ * is closed, so writes through a Page that has already left the pool are not lost either.
+ *
+ * The buffers of pages that have been garbage collected are pooled and reused for later reads.
+ *
+ * YOU SHOULD NOT NEED TO CHANGE ANY OF THE CODE IN THIS PACKAGE.
+ */
+class DirectFile implements PageStore {
+  /**
+   * The largest number of free buffers kept for reuse.
+   */
+  static final int MAX_POOLED_BUFFERS = 256;
+
+  private FileChannel fc;
+  private int blockSize;
+
+  // every Page of this file that may still be reachable, by block
+  private Map<Long, PageRef> resident;
+  private ReferenceQueue<Page> collected;
+  private ArrayDeque<ByteBuffer> freeBuffers;
+
+  // pages written to since they were last written back, by block
+  private Map<Long, Page> unwritten;
+
+  DirectFile(FileChannel fc, int blockSize) {
+    this.fc = fc;
+    this.blockSize = blockSize;
+    this.resident = new HashMap<Long, PageRef>();
+    this.collected = new ReferenceQueue<Page>();
+    this.freeBuffers = new ArrayDeque<ByteBuffer>();
+    this.unwritten = new HashMap<Long, Page>();
+  }
+
+  public int getBlockSize() {
+    return this.blockSize;
+  }
+
+  public int getDataPageSize() {
+    return this.blockSize;
+  }
+
+  /**
+   * Return the Page for block blockNum, reading it from the file unless a Page for it is still
+   * around. Bytes past the end of the file read as zeros.
+   */
+  public Page readPage(long blockNum, int pageNum, FlushScheduler scheduler) {
+    ByteBuffer buffer;
+    synchronized(this) {
+      Page page = this.residentPage(blockNum);
+      if (page != null) {
+        return page;
+      }
+      buffer = this.allocateBuffer();
+    }
+
+    // the read happens outside of the lock so that reads of different blocks can overlap
+    try {
+      this.readBlock(blockNum, pageNum, buffer);
+    } catch (IOException e) {
+      synchronized(this) {
+        this.releaseBuffer(buffer);
+      }
+      throw new PageException("Can't read block: " + blockNum + " ; " + e.getMessage());
+    } catch (RuntimeException e) {
+      synchronized(this) {
+        this.releaseBuffer(buffer);
+      }
+      throw e;
+    }
+    buffer.clear();
+    ByteBuffer data = buffer;
+    if (pageNum >= 0 && this.getDataPageSize() < this.blockSize) {
+      buffer.limit(this.getDataPageSize());
+      data = buffer.slice();
+      buffer.clear();
+    }
+
+    synchronized(this) {
+      // another thread may have read the block in while we were reading it
+      Page page = this.residentPage(blockNum);
+      if (page != null) {
+        this.releaseBuffer(buffer);
+        return page;
+      }
+      page = new Page(this, data, blockNum, pageNum, scheduler);
+      this.resident.put(blockNum, new PageRef(page, buffer, this.collected));
+      return page;
+    }
+  }
+
+  /**
+   * An evicted page is written back, or its changes would only live as long as someone holds it.
+   */
+  public void pageEvicted(Page page) {
+    this.writePage(page);
+    if (!page.isDurable()) {
+      // nothing else is waiting for a page that is not durable to become clean
+      page.markClean();
+    }
+  }
+
+  public void force(Page page) {
+    this.writePage(page);
+    this.forceFile();
+  }
+
+  /**
+   * Every page is written back and then the file is forced once.
+   */
+  public int forcePages(List<Page> pages, IOMetrics metrics) {
+    long start = System.nanoTime();
+    for (Page page : pages) {
+      this.writePage(page);
+    }
+    this.forceFile();
+    metrics.recordFlush(System.nanoTime() - start, pages.size());
+    return 1;
+  }
+
+  public void close() {
+    List<Page> toWrite;
+    synchronized(this) {
+      toWrite = new ArrayList<Page>(this.unwritten.values());
+    }
+    for (Page page : toWrite) {
+      this.writePage(page);
+    }
+  }
+
+  /**
+   * Called by a page the first time it is written to after it was last written back.
+   */
+  synchronized void pageModified(Page page) {
+    this.unwritten.put(page.getBlockNum(), page);
+  }
+
+  /**
+   * @return the number of pages that have been written to but not yet written back
+   */
+  synchronized int getNumUnwritten() {
+    return this.unwritten.size();
+  }
+
+  /**
+   * Write page back to the file if it has been written to since it was last written back.
+   */
+  void writePage(Page page) {
+    synchronized(this) {
+      // untracked before the flag is cleared, so that a write racing with this one tracks it again
+      if (this.unwritten.get(page.getBlockNum()) == page) {
+        this.unwritten.remove(page.getBlockNum());
+      }
+      if (!page.markWritten()) {
+        return;
+      }
+    }
+
+    page.updateChecksum();
+    try {
+      this.writeBlock(page.getBlockNum(), page.getPageNum(), page.duplicateData());
+    } catch (IOException e) {
+      throw new PageException("Can't write block: " + page.getBlockNum() + " ; " + e.getMessage());
+    }
+  }
+
+  /**
+   * Read block blockNum into buffer, which is blockSize bytes. Bytes past the end of the file read
+   * as zeros.
+   *
+   * @param blockNum the block in the file
+   * @param pageNum the virtual page number of the block, or -1 for a page of the allocator's own
+   * @param buffer the buffer to read the page's bytes into, from its start
+   */
+  void readBlock(long blockNum, int pageNum, ByteBuffer buffer) throws IOException {
+    long position = blockNum * this.blockSize;
+    while (buffer.hasRemaining()) {
+      int read = this.fc.read(buffer, position + buffer.position());
+      if (read < 0) {
+        break;
+      }
+    }
+    while (buffer.hasRemaining()) {
+      buffer.put((byte) 0);
+    }
+  }
+
+  /**
+   * Write the bytes of a page to block blockNum.
+   *
+   * @param blockNum the block in the file
+   * @param pageNum the virtual page number of the block, or -1 for a page of the allocator's own
+   * @param data the page's bytes, from its position to its limit
+   */
+  void writeBlock(long blockNum, int pageNum, ByteBuffer data) throws IOException {
+    long position = blockNum * this.blockSize;
+    while (data.hasRemaining()) {
+      this.fc.write(data, position + data.position());
+    }
+  }
+
+  FileChannel getChannel() {
+    return this.fc;
+  }
+
+  private void forceFile() {
+    try {
+      this.fc.force(false);
+    } catch (IOException e) {
+      throw new PageException("Can't force file: " + e.getMessage());
+    }
+  }
+
+  /**
+   * @return the Page for blockNum if one is still reachable. Must be called holding this monitor.
+   */
+  private Page residentPage(long blockNum) {
+    this.reclaimBuffers();
+    PageRef ref = this.resident.get(blockNum);
+    return ref == null ? null : ref.get();
+  }
+
+  /**
+   * Take the buffers of collected pages back. Must be called holding this monitor.
+   */
+  private void reclaimBuffers() {
+    PageRef ref;
+    while ((ref = (PageRef) this.collected.poll()) != null) {
+      if (this.resident.get(ref.blockNum) == ref) {
+        this.resident.remove(ref.blockNum);
+      }
+      this.releaseBuffer(ref.buffer);
+    }
+  }
+
+  private ByteBuffer allocateBuffer() {
+    ByteBuffer buffer = this.freeBuffers.poll();
+    if (buffer == null) {
+      try {
+        buffer = ByteBuffer.allocateDirect(this.blockSize);
+      } catch (OutOfMemoryError e) {
+        // the collection run by the failed allocation may have freed pages whose buffers only
+        // come back through the queue
+        this.reclaimBuffers();
+        buffer = this.freeBuffers.poll();
+        if (buffer == null) {
+          throw new PageException("Out of direct memory for page buffers");
+        }
+      }
+    }
+    buffer.clear();
+    return buffer;
+  }
+
+  private void releaseBuffer(ByteBuffer buffer) {
+    if (this.freeBuffers.size() < MAX_POOLED_BUFFERS) {
+      this.freeBuffers.add(buffer);
+    }
+  }
+
+  /**
+   * Remembers the buffer of a page, so that it can be reused once the page is collected.
+   */
+  private static class PageRef extends WeakReference<Page> {
+    private long blockNum;
+    private ByteBuffer buffer;
+
+    PageRef(Page page, ByteBuffer buffer, ReferenceQueue<Page> queue) {
+      super(page, queue);
+      this.blockNum = page.getBlockNum();
+      this.buffer = buffer;
+    }
+  }
+}
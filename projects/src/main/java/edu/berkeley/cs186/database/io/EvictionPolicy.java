@@ -0,0 +1,75 @@
+package edu.berkeley.cs186.database.io;
+
+/**
+ * Decides which frame of a BufferPool is reclaimed when the pool is full. Frames are identified by
+ * their index in the pool; pages are identified by the pool's page table key so that policies
+ * can remember pages that are no longer resident.
+ *
+ * The pool calls every method while holding its own lock, so implementations need no
+ * synchronization of their own. pageAccessed is called on every hit and should be as cheap as
+ * possible.
+ *
+ * YOU SHOULD NOT NEED TO CHANGE ANY OF THE CODE IN THIS PACKAGE.
+ */
+public interface EvictionPolicy {
+
+  /**
+   * The eviction policies that ship with the database.
+   */
+  enum Type {
+    LRU, CLOCK, CLOCK_PRO, TWO_QUEUE;
+
+    /**
+     * Create a new policy of this type for a pool with numFrames frames.
+     *
+     * @param numFrames the number of frames in the pool
+     * @return the new policy
+     */
+    public EvictionPolicy newPolicy(int numFrames) {
+      switch (this) {
+        case LRU:
+          return new LRUPolicy(numFrames);
+        case CLOCK:
+          return new ClockPolicy(numFrames);
+        case CLOCK_PRO:
+          return new ClockProPolicy(numFrames);
+        case TWO_QUEUE:
+          return new TwoQueuePolicy(numFrames);
+        default:
+          throw new IllegalArgumentException("unknown eviction policy " + this);
+      }
+    }
+  }
+
+  /**
+   * A page was read into frame frameNum after a miss.
+   *
+   * @param frameNum the frame the page was placed in
+   * @param key the page table key of the page
+   */
+  void pageLoaded(int frameNum, long key);
+
+  /**
+   * The page in frame frameNum was hit.
+   *
+   * @param frameNum the frame that was hit
+   */
+  void pageAccessed(int frameNum);
+
+  /**
+   * The page in frame frameNum was dropped from the pool without being evicted, for example because
+   * it was freed or its allocator was closed.
+   *
+   * @param frameNum the frame that was emptied
+   */
+  void pageRemoved(int frameNum);
+
+  /**
+   * Pick a resident frame to evict. Frames with a positive pin count must not be chosen. The
+   * returned frame is considered removed from the policy.
+   *
+   * @param pinCounts the pin count of every frame in the pool
+   * @return the frame to evict, or -1 if every resident frame is pinned
+   */
+  int chooseVictim(int[] pinCounts);
+}
@@ -0,0 +1,25 @@
+package edu.berkeley.cs186.database.io;
+
+/**
+ * When a durable PageAllocator forces its dirty pages to disk.
+ *
+ * YOU SHOULD NOT NEED TO CHANGE ANY OF THE CODE IN THIS PACKAGE.
+ */
+public enum FlushMode {
+  /**
+   * The master and header pages are forced after every allocPage and freePage, and a dirty page is
+   * forced as soon as it is evicted from the buffer pool.
+   */
+  IMMEDIATE,
+
+  /**
+   * Dirty pages are tracked and forced together once a configurable number of them has built up,
+   * or once a configurable interval has passed.
+   */
+  GROUP,
+
+  /**
+   * Dirty pages are only forced by an explicit sync and when the allocator is closed.
+   */
+  DEFERRED
+}
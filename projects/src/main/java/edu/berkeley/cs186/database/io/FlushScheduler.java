@@ -0,0 +1,243 @@
+package edu.berkeley.cs186.database.io;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the dirty pages of a durable PageAllocator and forces them to disk in batches according
+ * to its FlushMode. A page registers itself the moment it goes from clean to dirty and drops out
+ * once it is flushed.
+ *
+ * A sync forces every tracked page, handing them to their PageStore together so that it can force
+ * as little as possible. Since mapped pages are slices of larger mappings, every mapping with dirty
+ * pages is only forced once per sync no matter how many of its pages are dirty. Syncs run one at a
+ * time, so a sync that finds no pages left to force still waits for the one forcing them, and a
+ * page counts as dirty until the sync that took it has forced it.
+ *
+ * In GROUP mode a sync runs once groupSize pages are dirty, and a shared daemon thread also runs
+ * one every intervalMillis so that a quiet allocator does not hold dirty pages forever. DEFERRED
+ * mode only syncs when asked to, or when so many pages are dirty that tracking them costs too much
+ * memory.
+ *
+ * YOU SHOULD NOT NEED TO CHANGE ANY OF THE CODE IN THIS PACKAGE.
+ */
+public class FlushScheduler implements Runnable {
+  public static final int DEFAULT_GROUP_SIZE = 64;
+  public static final long DEFAULT_INTERVAL_MILLIS = 1000;
+
+  /**
+   * The largest number of dirty pages a DEFERRED scheduler tracks before it syncs anyway.
+   */
+  static final int MAX_DEFERRED_PAGES = 1 << 16;
+
+  private static ScheduledThreadPoolExecutor timer = null;
+
+  private FlushMode mode;
+  private int groupSize;
+  private long intervalMillis;
+  private LinkedHashSet<Page> dirtyPages;
+  private int numSyncing;
+  private final Object syncLock = new Object();
+  private ScheduledFuture<?> task;
+  private AtomicLong numSyncs;
+  private AtomicLong numForces;
+  private IOMetrics metrics;
+
+  /**
+   * Create a new FlushScheduler with the default group size and interval.
+   *
+   * @param mode when to force dirty pages
+   */
+  public FlushScheduler(FlushMode mode) {
+    this(mode, DEFAULT_GROUP_SIZE, DEFAULT_INTERVAL_MILLIS);
+  }
+
+  /**
+   * Create a new FlushScheduler.
+   *
+   * @param mode when to force dirty pages
+   * @param groupSize the number of dirty pages that triggers a sync in GROUP mode
+   * @param intervalMillis the time between timed syncs in GROUP mode, or 0 for none
+   */
+  public FlushScheduler(FlushMode mode, int groupSize, long intervalMillis) {
+    if (groupSize < 1 || intervalMillis < 0) {
+      throw new IllegalArgumentException("group size must be positive and interval non-negative");
+    }
+    this.mode = mode;
+    this.groupSize = groupSize;
+    this.intervalMillis = intervalMillis;
+    this.dirtyPages = new LinkedHashSet<Page>();
+    this.numSyncs = new AtomicLong(0);
+    this.numForces = new AtomicLong(0);
+    this.metrics = new IOMetrics();
+
+    if (mode == FlushMode.GROUP && intervalMillis > 0) {
+      this.task = FlushScheduler.getTimer().scheduleWithFixedDelay(this, intervalMillis,
+                                                                   intervalMillis,
+                                                                   TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Called by a page when it goes from clean to dirty.
+   */
+  void pageDirtied(Page page) {
+    boolean full;
+    synchronized(this) {
+      this.dirtyPages.add(page);
+      if (this.mode == FlushMode.GROUP) {
+        full = this.dirtyPages.size() >= this.groupSize;
+      } else {
+        full = this.dirtyPages.size() >= MAX_DEFERRED_PAGES;
+      }
+    }
+
+    if (full && this.mode != FlushMode.IMMEDIATE) {
+      this.sync();
+    }
+  }
+
+  /**
+   * Force a single page that has just been marked clean, on behalf of Page.flush.
+   */
+  void forcePage(Page page) {
+    synchronized(this.syncLock) {
+      synchronized(this) {
+        this.dirtyPages.remove(page);
+      }
+      long start = System.nanoTime();
+      page.force();
+      this.metrics.recordFlush(System.nanoTime() - start, 1);
+    }
+  }
+
+  /**
+   * Set the metrics that flushes are recorded in. Called by the allocator that owns this scheduler.
+   */
+  void setMetrics(IOMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * Force every tracked dirty page to disk. Returns once they are all durable, including pages
+   * that a sync running at the same time took from the dirty set.
+   */
+  public void sync() {
+    synchronized(this.syncLock) {
+      List<Page> toSync;
+      synchronized(this) {
+        if (this.dirtyPages.isEmpty()) {
+          return;
+        }
+        toSync = new ArrayList<Page>(this.dirtyPages);
+        this.dirtyPages.clear();
+        this.numSyncing = toSync.size();
+      }
+
+      try {
+        this.forceAll(toSync);
+      } finally {
+        synchronized(this) {
+          this.numSyncing = 0;
+        }
+      }
+    }
+  }
+
+  /**
+   * Force the pages of toSync that are still dirty, each store's pages together. Called with the
+   * sync lock held.
+   */
+  private void forceAll(List<Page> toSync) {
+    // pages per store; each store forces its pages together
+    IdentityHashMap<PageStore, List<Page>> stores = new IdentityHashMap<PageStore, List<Page>>();
+    for (Page page : toSync) {
+      if (page.markClean()) {
+        page.updateChecksum();
+        List<Page> pages = stores.get(page.getStore());
+        if (pages == null) {
+          pages = new ArrayList<Page>();
+          stores.put(page.getStore(), pages);
+        }
+        pages.add(page);
+      }
+    }
+
+    int forces = 0;
+    for (Map.Entry<PageStore, List<Page>> entry : stores.entrySet()) {
+      forces += entry.getKey().forcePages(entry.getValue(), this.metrics);
+    }
+    this.numSyncs.getAndIncrement();
+    this.numForces.addAndGet(forces);
+  }
+
+  /**
+   * Timed sync, run by the shared timer thread in GROUP mode.
+   */
+  public void run() {
+    try {
+      this.sync();
+    } catch (RuntimeException e) {
+      // an exception would cancel all further timed syncs; the next sync or close will retry
+    }
+  }
+
+  /**
+   * Stop timed syncs and force every tracked dirty page to disk.
+   */
+  public void close() {
+    if (this.task != null) {
+      this.task.cancel(false);
+      this.task = null;
+    }
+    this.sync();
+  }
+
+  /**
+   * @return whether a dirty page can be evicted from the buffer pool without forcing it
+   */
+  boolean defersEviction() {
+    return this.mode != FlushMode.IMMEDIATE;
+  }
+
+  public FlushMode getMode() {
+    return this.mode;
+  }
+
+  /**
+   * @return the number of pages that are dirty or are being forced by a sync
+   */
+  public synchronized int getNumDirtyPages() {
+    return this.dirtyPages.size() + this.numSyncing;
+  }
+
+  /**
+   * @return the number of syncs that found dirty pages to force
+   */
+  public long getNumSyncs() {
+    return this.numSyncs.get();
+  }
+
+  /**
+   * @return the number of forces issued by syncs, one per mapping for mapped pages
+   */
+  public long getNumForces() {
+    return this.numForces.get();
+  }
+
+  private static synchronized ScheduledThreadPoolExecutor getTimer() {
+    if (FlushScheduler.timer == null) {
+      FlushScheduler.timer = new ScheduledThreadPoolExecutor(1,
+                                                             new DaemonThreadFactory("flush-scheduler"));
+      FlushScheduler.timer.setRemoveOnCancelPolicy(true);
+    }
+    return FlushScheduler.timer;
+  }
+}
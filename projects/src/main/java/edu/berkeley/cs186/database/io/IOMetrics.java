@@ -0,0 +1,258 @@
+package edu.berkeley.cs186.database.io;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * IO and buffer pool counters for a single PageAllocator.
+ *
+ * A logical read is a fetch, which is either a hit, served from a frame already in the pool, or a
+ * miss. A physical read is a page read in from the file, on a miss or by read-ahead. A prefetch is
+ * a page read in ahead of its use, and a prefetch hit is the first fetch of such a page while it
+ * was still cached. A write is a dirty page written back to disk and a flush is a single force of
+ * a mapping, which may write back many pages. An eviction is a frame owned by the allocator that
+ * was reclaimed to make room for another page. Fetch and flush latencies are kept as histograms.
+ * For an allocator that keeps checksums, the pages whose checksum was verified, the time spent
+ * verifying them and the pages that failed verification are counted as well.
+ *
+ * Every IOMetrics of an allocator also adds its counts to the totals kept by IOMetricsRegistry.
+ * The counters are striped so that threads hitting the same allocator do not contend on them.
+ *
+ * YOU SHOULD NOT NEED TO CHANGE ANY OF THE CODE IN THIS PACKAGE.
+ */
+public class IOMetrics implements IOMetricsMXBean {
+  private IOMetrics totals;
+
+  private LongAdder hits;
+  private LongAdder misses;
+  private LongAdder physicalReads;
+  private LongAdder prefetches;
+  private LongAdder prefetchHits;
+  private LongAdder writes;
+  private LongAdder flushes;
+  private LongAdder evictions;
+  private LongAdder checksumsVerified;
+  private LongAdder checksumNanos;
+  private LongAdder checksumFailures;
+  private LatencyHistogram fetchLatency;
+  private LatencyHistogram flushLatency;
+
+  /**
+   * Create a new IOMetrics that does not count towards the totals.
+   */
+  public IOMetrics() {
+    this(null);
+  }
+
+  /**
+   * Create a new IOMetrics whose counts are also added to totals.
+   *
+   * @param totals the IOMetrics to add counts to, or null
+   */
+  IOMetrics(IOMetrics totals) {
+    this.totals = totals;
+    this.hits = new LongAdder();
+    this.misses = new LongAdder();
+    this.physicalReads = new LongAdder();
+    this.prefetches = new LongAdder();
+    this.prefetchHits = new LongAdder();
+    this.writes = new LongAdder();
+    this.flushes = new LongAdder();
+    this.evictions = new LongAdder();
+    this.checksumsVerified = new LongAdder();
+    this.checksumNanos = new LongAdder();
+    this.checksumFailures = new LongAdder();
+    this.fetchLatency = new LatencyHistogram();
+    this.flushLatency = new LatencyHistogram();
+  }
+
+  void recordHit() {
+    this.hits.increment();
+    if (this.totals != null) {
+      this.totals.recordHit();
+    }
+  }
+
+  void recordMiss() {
+    this.misses.increment();
+    if (this.totals != null) {
+      this.totals.recordMiss();
+    }
+  }
+
+  void recordPhysicalRead() {
+    this.physicalReads.increment();
+    if (this.totals != null) {
+      this.totals.recordPhysicalRead();
+    }
+  }
+
+  void recordPrefetch() {
+    this.prefetches.increment();
+    if (this.totals != null) {
+      this.totals.recordPrefetch();
+    }
+  }
+
+  void recordPrefetchHit() {
+    this.prefetchHits.increment();
+    if (this.totals != null) {
+      this.totals.recordPrefetchHit();
+    }
+  }
+
+  void recordEviction() {
+    this.evictions.increment();
+    if (this.totals != null) {
+      this.totals.recordEviction();
+    }
+  }
+
+  /**
+   * Record the verification of one page's checksum, which took nanos and failed unless valid.
+   */
+  void recordChecksum(long nanos, boolean valid) {
+    this.checksumsVerified.increment();
+    this.checksumNanos.add(nanos);
+    if (!valid) {
+      this.checksumFailures.increment();
+    }
+    if (this.totals != null) {
+      this.totals.recordChecksum(nanos, valid);
+    }
+  }
+
+  void recordFetchLatency(long nanos) {
+    this.fetchLatency.record(nanos);
+    if (this.totals != null) {
+      this.totals.recordFetchLatency(nanos);
+    }
+  }
+
+  /**
+   * Record one force of a mapping that wrote back numPages dirty pages.
+   */
+  void recordFlush(long nanos, int numPages) {
+    this.flushes.increment();
+    this.writes.add(numPages);
+    this.flushLatency.record(nanos);
+    if (this.totals != null) {
+      this.totals.recordFlush(nanos, numPages);
+    }
+  }
+
+  public long getLogicalReads() {
+    return this.getHits() + this.getMisses();
+  }
+
+  public long getHits() {
+    return this.hits.sum();
+  }
+
+  public long getMisses() {
+    return this.misses.sum();
+  }
+
+  public long getPhysicalReads() {
+    return this.physicalReads.sum();
+  }
+
+  public long getPrefetches() {
+    return this.prefetches.sum();
+  }
+
+  public long getPrefetchHits() {
+    return this.prefetchHits.sum();
+  }
+
+  public long getWrites() {
+    return this.writes.sum();
+  }
+
+  public long getFlushes() {
+    return this.flushes.sum();
+  }
+
+  public long getEvictions() {
+    return this.evictions.sum();
+  }
+
+  public long getChecksumsVerified() {
+    return this.checksumsVerified.sum();
+  }
+
+  /**
+   * @return the total time spent verifying checksums of pages read from disk
+   */
+  public long getChecksumNanos() {
+    return this.checksumNanos.sum();
+  }
+
+  public long getChecksumFailures() {
+    return this.checksumFailures.sum();
+  }
+
+  /**
+   * @return the fraction of fetches served from the buffer pool, or 0 if nothing was fetched
+   */
+  public double getHitRatio() {
+    long hits = this.getHits();
+    long total = hits + this.getMisses();
+    if (total == 0) {
+      return 0.0;
+    }
+    return ((double) hits) / total;
+  }
+
+  /**
+   * @return the fraction of prefetched pages that were fetched before being evicted, or 0 if
+   * nothing was prefetched
+   */
+  public double getPrefetchHitRatio() {
+    long prefetches = this.getPrefetches();
+    if (prefetches == 0) {
+      return 0.0;
+    }
+    return ((double) this.getPrefetchHits()) / prefetches;
+  }
+
+  /**
+   * @return the latencies of fetchPage and fetchPinnedPage calls
+   */
+  public LatencyHistogram getFetchLatency() {
+    return this.fetchLatency;
+  }
+
+  /**
+   * @return the latencies of forcing a mapping to disk
+   */
+  public LatencyHistogram getFlushLatency() {
+    return this.flushLatency;
+  }
+
+  public double getFetchLatencyMeanNanos() {
+    return this.fetchLatency.getMeanNanos();
+  }
+
+  public long getFetchLatencyP99Nanos() {
+    return this.fetchLatency.getPercentileNanos(0.99);
+  }
+
+  public double getFlushLatencyMeanNanos() {
+    return this.flushLatency.getMeanNanos();
+  }
+
+  public long getFlushLatencyP99Nanos() {
+    return this.flushLatency.getPercentileNanos(0.99);
+  }
+
+  @Override
+  public String toString() {
+    return "logical reads: " + this.getLogicalReads() + ", hits: " + this.getHits() +
+           ", misses: " + this.getMisses() + ", physical reads: " + this.getPhysicalReads() +
+           ", prefetches: " + this.getPrefetches() + ", prefetch hits: " + this.getPrefetchHits() +
+           ", writes: " + this.getWrites() + ", flushes: " + this.getFlushes() +
+           ", evictions: " + this.getEvictions() +
+           ", checksums verified: " + this.getChecksumsVerified() +
+           ", checksum failures: " + this.getChecksumFailures();
+  }
+}
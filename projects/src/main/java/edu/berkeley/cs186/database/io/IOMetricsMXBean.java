@@ -0,0 +1,46 @@
+package edu.berkeley.cs186.database.io;
+
+/**
+ * The JMX view of an IOMetrics. Every PageAllocator's metrics are registered under
+ * edu.berkeley.cs186.database:type=IOMetrics,name="file name" while it is open, and the totals over
+ * all allocators under edu.berkeley.cs186.database:type=IOMetricsTotal.
+ *
+ * YOU SHOULD NOT NEED TO CHANGE ANY OF THE CODE IN THIS PACKAGE.
+ */
+public interface IOMetricsMXBean {
+  long getLogicalReads();
+
+  long getHits();
+
+  long getMisses();
+
+  long getPhysicalReads();
+
+  long getPrefetches();
+
+  long getPrefetchHits();
+
+  long getWrites();
+
+  long getFlushes();
+
+  long getEvictions();
+
+  long getChecksumsVerified();
+
+  long getChecksumNanos();
+
+  long getChecksumFailures();
+
+  double getHitRatio();
+
+  double getPrefetchHitRatio();
+
+  double getFetchLatencyMeanNanos();
+
+  long getFetchLatencyP99Nanos();
+
+  double getFlushLatencyMeanNanos();
+
+  long getFlushLatencyP99Nanos();
+}
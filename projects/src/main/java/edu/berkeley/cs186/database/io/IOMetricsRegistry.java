@@ -0,0 +1,98 @@
+package edu.berkeley.cs186.database.io;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Keeps the IOMetrics of every open PageAllocator by file name, along with totals over every
+ * allocator that has ever been opened. Each registered IOMetrics is also published as a JMX MBean,
+ * so that a running database can be inspected with jconsole or any other JMX client.
+ *
+ * YOU SHOULD NOT NEED TO CHANGE ANY OF THE CODE IN THIS PACKAGE.
+ */
+public class IOMetricsRegistry {
+  private static final String DOMAIN = "edu.berkeley.cs186.database";
+
+  private static IOMetrics totals = null;
+  private static Map<String, IOMetrics> metrics = new HashMap<String, IOMetrics>();
+
+  private IOMetricsRegistry() {
+  }
+
+  /**
+   * @return the counts summed over every allocator
+   */
+  public static synchronized IOMetrics getTotals() {
+    if (IOMetricsRegistry.totals == null) {
+      IOMetricsRegistry.totals = new IOMetrics();
+      IOMetricsRegistry.registerMBean(IOMetricsRegistry.totals, DOMAIN + ":type=IOMetricsTotal");
+    }
+    return IOMetricsRegistry.totals;
+  }
+
+  /**
+   * @param name the file name of an open allocator
+   * @return the allocator's metrics, or null if no allocator of that name is open
+   */
+  public static synchronized IOMetrics get(String name) {
+    return IOMetricsRegistry.metrics.get(name);
+  }
+
+  /**
+   * @return a snapshot of the metrics of every open allocator, by file name
+   */
+  public static synchronized Map<String, IOMetrics> getAll() {
+    return new HashMap<String, IOMetrics>(IOMetricsRegistry.metrics);
+  }
+
+  /**
+   * Create the metrics for a newly opened allocator. An allocator opened later on the same file
+   * takes over the name.
+   */
+  static synchronized IOMetrics register(String name) {
+    IOMetrics allocatorMetrics = new IOMetrics(IOMetricsRegistry.getTotals());
+    IOMetricsRegistry.metrics.put(name, allocatorMetrics);
+    IOMetricsRegistry.registerMBean(allocatorMetrics, IOMetricsRegistry.objectName(name));
+    return allocatorMetrics;
+  }
+
+  /**
+   * Remove the metrics of a closed allocator, unless another allocator has taken over the name.
+   */
+  static synchronized void unregister(String name, IOMetrics allocatorMetrics) {
+    if (IOMetricsRegistry.metrics.get(name) != allocatorMetrics) {
+      return;
+    }
+    IOMetricsRegistry.metrics.remove(name);
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName objectName = new ObjectName(IOMetricsRegistry.objectName(name));
+      if (server.isRegistered(objectName)) {
+        server.unregisterMBean(objectName);
+      }
+    } catch (JMException e) {
+      // the metrics stay queryable through this class
+    }
+  }
+
+  private static String objectName(String name) {
+    return DOMAIN + ":type=IOMetrics,name=" + ObjectName.quote(name);
+  }
+
+  private static void registerMBean(IOMetrics bean, String name) {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName objectName = new ObjectName(name);
+      if (server.isRegistered(objectName)) {
+        server.unregisterMBean(objectName);
+      }
+      server.registerMBean(bean, objectName);
+    } catch (JMException e) {
+      // the metrics stay queryable through this class
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package edu.berkeley.cs186.database.io;
+
+/**
+ * Exact least-recently used eviction. Resident frames are kept in a doubly-linked list ordered by
+ * last access, threaded through two int arrays so that no objects are allocated per access.
+ *
+ * YOU SHOULD NOT NEED TO CHANGE ANY OF THE CODE IN THIS PACKAGE.
+ */
+public class LRUPolicy implements EvictionPolicy {
+  private static final int NONE = -1;
+
+  private int[] prev;
+  private int[] next;
+  private boolean[] resident;
+  private int head;
+  private int tail;
+
+  public LRUPolicy(int numFrames) {
+    this.prev = new int[numFrames];
+    this.next = new int[numFrames];
+    this.resident = new boolean[numFrames];
+    this.head = NONE;
+    this.tail = NONE;
+  }
+
+  public void pageLoaded(int frameNum, long key) {
+    this.pushTail(frameNum);
+  }
+
+  public void pageAccessed(int frameNum) {
+    if (this.resident[frameNum] && this.tail != frameNum) {
+      this.unlink(frameNum);
+      this.pushTail(frameNum);
+    }
+  }
+
+  public void pageRemoved(int frameNum) {
+    if (this.resident[frameNum]) {
+      this.unlink(frameNum);
+    }
+  }
+
+  public int chooseVictim(int[] pinCounts) {
+    for (int frameNum = this.head; frameNum != NONE; frameNum = this.next[frameNum]) {
+      if (pinCounts[frameNum] == 0) {
+        this.unlink(frameNum);
+        return frameNum;
+      }
+    }
+    return NONE;
+  }
+
+  private void pushTail(int frameNum) {
+    this.resident[frameNum] = true;
+    this.prev[frameNum] = this.tail;
+    this.next[frameNum] = NONE;
+    if (this.tail == NONE) {
+      this.head = frameNum;
+    } else {
+      this.next[this.tail] = frameNum;
+    }
+    this.tail = frameNum;
+  }
+
+  private void unlink(int frameNum) {
+    int before = this.prev[frameNum];
+    int after = this.next[frameNum];
+
+    if (before == NONE) {
+      this.head = after;
+    } else {
+      this.next[before] = after;
+    }
+
+    if (after == NONE) {
+      this.tail = before;
+    } else {
+      this.prev[after] = before;
+    }
+    this.resident[frameNum] = false;
+  }
+}
@@ -0,0 +1,275 @@
+package edu.berkeley.cs186.database.io;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Compresses pages into the LZ4 block format and back. A compressed block is a run of sequences,
+ * each a token byte whose high nibble is a literal length and whose low nibble is a match length
+ * less 4, the literals, a 2-byte little-endian offset back to the match and the rest of the match
+ * length. Lengths of 15 or more spill into following bytes, 255 at a time. The last sequence has
+ * literals only, and covers at least the last LAST_LITERALS bytes.
+ *
+ * The compressor is the greedy single-probe one of the reference implementation: it is fast rather
+ * than thorough, which is what write-back needs, and space-padded fixed-width records give it all
+ * the repetition it could want. Offsets fit in 2 bytes since no page is larger than 64KB. Each
+ * thread keeps its hash table from one page to the next, so compressing a page allocates nothing.
+ *
+ * YOU SHOULD NOT NEED TO CHANGE ANY OF THE CODE IN THIS PACKAGE.
+ */
+final class LZ4Codec {
+  private static final int MIN_MATCH = 4;
+  private static final int LAST_LITERALS = 5;
+  // a match has to start at least this far before the end of the input
+  private static final int MATCH_FIND_LIMIT = 12;
+  private static final int MAX_OFFSET = 65535;
+  private static final int HASH_LOG = 12;
+  // matches shorter than this are copied a byte at a time, longer ones in bulk
+  private static final int MIN_BULK_COPY = 32;
+
+  private static final ThreadLocal<HashTable> HASH_TABLES = new ThreadLocal<HashTable>() {
+    protected HashTable initialValue() {
+      return new HashTable();
+    }
+  };
+
+  /**
+   * The positions compress last saw each hash of 4 bytes at. A position is stored plus the base of
+   * the call that stored it, and every call takes a base past all the positions stored before it,
+   * so an entry left by an earlier call reads as a negative position rather than having to be
+   * cleared.
+   */
+  private static final class HashTable {
+    private int[] positions = new int[1 << HASH_LOG];
+    private int base = 0;
+
+    /**
+     * @return the base for a call compressing srcLength bytes
+     */
+    private int nextBase(int srcLength) {
+      if (this.base > Integer.MAX_VALUE - srcLength) {
+        Arrays.fill(this.positions, 0);
+        this.base = 0;
+      }
+      int base = this.base;
+      this.base += srcLength;
+      return base;
+    }
+  }
+
+  private LZ4Codec() {
+  }
+
+  /**
+   * Compress the first srcLength bytes of src into dst, starting at dstOffset.
+   *
+   * @param src the bytes to compress
+   * @param srcLength the number of bytes to compress
+   * @param dst the array to compress into
+   * @param dstOffset the index in dst of the first compressed byte
+   * @param maxLength the most bytes the compressed form may take
+   * @return the length of the compressed form, or -1 if it would take more than maxLength bytes
+   */
+  static int compress(byte[] src, int srcLength, byte[] dst, int dstOffset, int maxLength) {
+    HashTable hashTable = HASH_TABLES.get();
+    int[] table = hashTable.positions;
+    int base = hashTable.nextBase(srcLength);
+    int dstEnd = dstOffset + maxLength;
+    int matchLimit = srcLength - LAST_LITERALS;
+    int findLimit = srcLength - MATCH_FIND_LIMIT;
+
+    int op = dstOffset;
+    int anchor = 0;
+    int ip = 1;
+    while (ip < findLimit) {
+      int value = LZ4Codec.readInt(src, ip);
+      int hash = (value * -1640531535) >>> (32 - HASH_LOG);
+      int ref = table[hash] - base;
+      table[hash] = base + ip;
+      if (ref < 0 || ip - ref > MAX_OFFSET || LZ4Codec.readInt(src, ref) != value) {
+        ip++;
+        continue;
+      }
+
+      // extend the match backwards over the pending literals, then forwards
+      while (ip > anchor && ref > 0 && src[ip - 1] == src[ref - 1]) {
+        ip--;
+        ref--;
+      }
+      int matchLength = MIN_MATCH;
+      while (ip + matchLength < matchLimit && src[ip + matchLength] == src[ref + matchLength]) {
+        matchLength++;
+      }
+
+      op = LZ4Codec.writeSequence(src, anchor, ip - anchor, ip - ref, matchLength, dst, op, dstEnd);
+      if (op < 0) {
+        return -1;
+      }
+      ip += matchLength;
+      anchor = ip;
+    }
+
+    op = LZ4Codec.writeSequence(src, anchor, srcLength - anchor, 0, 0, dst, op, dstEnd);
+    return op < 0 ? -1 : op - dstOffset;
+  }
+
+  /**
+   * Decompress srcLength bytes of src, starting at srcOffset, into the first dstLength bytes of
+   * dst.
+   *
+   * @param src the compressed bytes
+   * @param srcOffset the index in src of the first compressed byte
+   * @param srcLength the number of compressed bytes
+   * @param dst the array to decompress into
+   * @param dstLength the number of bytes the compressed form decompresses to
+   * @throws PageException if the compressed form is corrupt or does not decompress to dstLength
+   * bytes
+   */
+  static void decompress(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstLength) {
+    LZ4Codec.decompress(src, srcOffset, srcLength, ByteBuffer.wrap(dst), dstLength);
+  }
+
+  /**
+   * Decompress srcLength bytes of src, starting at srcOffset, into the first dstLength bytes of
+   * dst, such as the buffer of a page, leaving the position of dst at dstLength.
+   *
+   * @param src the compressed bytes
+   * @param srcOffset the index in src of the first compressed byte
+   * @param srcLength the number of compressed bytes
+   * @param dst the buffer to decompress into
+   * @param dstLength the number of bytes the compressed form decompresses to
+   * @throws PageException if the compressed form is corrupt or does not decompress to dstLength
+   * bytes
+   */
+  static void decompress(byte[] src, int srcOffset, int srcLength, ByteBuffer dst, int dstLength) {
+    ByteBuffer source = dst.duplicate();
+    int srcEnd = srcOffset + srcLength;
+    int ip = srcOffset;
+    int op = 0;
+    while (ip < srcEnd) {
+      int token = src[ip++] & 0xFF;
+
+      int literalLength = token >>> 4;
+      if (literalLength == 15) {
+        int b;
+        do {
+          if (ip >= srcEnd) {
+            throw new PageException("corrupt compressed page");
+          }
+          b = src[ip++] & 0xFF;
+          literalLength += b;
+        } while (b == 255);
+      }
+      if (literalLength > srcEnd - ip || literalLength > dstLength - op) {
+        throw new PageException("corrupt compressed page");
+      }
+      dst.position(op);
+      dst.put(src, ip, literalLength);
+      ip += literalLength;
+      op += literalLength;
+      if (ip == srcEnd) {
+        break;
+      }
+
+      if (srcEnd - ip < 2) {
+        throw new PageException("corrupt compressed page");
+      }
+      int offset = (src[ip] & 0xFF) | ((src[ip + 1] & 0xFF) << 8);
+      ip += 2;
+      if (offset == 0 || offset > op) {
+        throw new PageException("corrupt compressed page");
+      }
+
+      int matchLength = token & 0x0F;
+      if (matchLength == 15) {
+        int b;
+        do {
+          if (ip >= srcEnd) {
+            throw new PageException("corrupt compressed page");
+          }
+          b = src[ip++] & 0xFF;
+          matchLength += b;
+        } while (b == 255);
+      }
+      matchLength += MIN_MATCH;
+      if (matchLength > dstLength - op) {
+        throw new PageException("corrupt compressed page");
+      }
+      int from = op - offset;
+      if (matchLength < MIN_BULK_COPY) {
+        // a match may overlap the bytes it produces, so it is copied a byte at a time
+        for (int i = 0; i < matchLength; i++) {
+          dst.put(op + i, dst.get(from + i));
+        }
+        op += matchLength;
+        continue;
+      }
+      // the bytes from the start of the match's source up to op repeat every offset bytes, so a
+      // long match is copied from there in runs that double in length until it is done
+      int end = op + matchLength;
+      while (op < end) {
+        int run = Math.min(op - from, end - op);
+        source.limit(from + run);
+        source.position(from);
+        dst.position(op);
+        dst.put(source);
+        op += run;
+      }
+    }
+
+    if (op != dstLength) {
+      throw new PageException("corrupt compressed page");
+    }
+    dst.position(op);
+  }
+
+  /**
+   * Write a sequence of literalLength literals from src at anchor followed by a match, or only the
+   * literals if matchLength is 0.
+   *
+   * @return the index in dst after the sequence, or -1 if it does not fit before dstEnd
+   */
+  private static int writeSequence(byte[] src, int anchor, int literalLength, int offset,
+                                   int matchLength, byte[] dst, int op, int dstEnd) {
+    if (op + 1 + literalLength / 255 + 1 + literalLength > dstEnd) {
+      return -1;
+    }
+
+    int tokenPos = op++;
+    int token = Math.min(literalLength, 15) << 4;
+    if (literalLength >= 15) {
+      op = LZ4Codec.writeLength(literalLength - 15, dst, op);
+    }
+    System.arraycopy(src, anchor, dst, op, literalLength);
+    op += literalLength;
+
+    if (matchLength > 0) {
+      if (op + 2 + (matchLength - MIN_MATCH) / 255 + 1 > dstEnd) {
+        return -1;
+      }
+      dst[op++] = (byte) offset;
+      dst[op++] = (byte) (offset >>> 8);
+      int extra = matchLength - MIN_MATCH;
+      token |= Math.min(extra, 15);
+      if (extra >= 15) {
+        op = LZ4Codec.writeLength(extra - 15, dst, op);
+      }
+    }
+    dst[tokenPos] = (byte) token;
+    return op;
+  }
+
+  private static int writeLength(int length, byte[] dst, int op) {
+    while (length >= 255) {
+      dst[op++] = (byte) 255;
+      length -= 255;
+    }
+    dst[op++] = (byte) length;
+    return op;
+  }
+
+  private static int readInt(byte[] b, int i) {
+    return (b[i] & 0xFF) | ((b[i + 1] & 0xFF) << 8) | ((b[i + 2] & 0xFF) << 16) |
+           ((b[i + 3] & 0xFF) << 24);
+  }
+}
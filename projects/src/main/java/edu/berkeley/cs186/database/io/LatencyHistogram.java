@@ -0,0 +1,108 @@
+package edu.berkeley.cs186.database.io;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A latency histogram with one bucket per power of two nanoseconds. Bucket i counts the samples in
+ * [2^i, 2^(i+1)), so percentiles are exact to within a factor of two, which is enough to tell a
+ * buffer pool hit from a page fault from a trip to disk. Recording is lock-free and cheap enough
+ * for the fetch path.
+ *
+ * YOU SHOULD NOT NEED TO CHANGE ANY OF THE CODE IN THIS PACKAGE.
+ */
+public class LatencyHistogram {
+  private static final int NUM_BUCKETS = 64;
+
+  private LongAdder[] buckets;
+  private LongAdder count;
+  private LongAdder totalNanos;
+  private AtomicLong maxNanos;
+
+  public LatencyHistogram() {
+    this.buckets = new LongAdder[NUM_BUCKETS];
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      this.buckets[i] = new LongAdder();
+    }
+    this.count = new LongAdder();
+    this.totalNanos = new LongAdder();
+    this.maxNanos = new AtomicLong(0);
+  }
+
+  /**
+   * Record one sample.
+   *
+   * @param nanos the latency in nanoseconds
+   */
+  public void record(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    }
+    this.buckets[63 - Long.numberOfLeadingZeros(nanos | 1)].increment();
+    this.count.increment();
+    this.totalNanos.add(nanos);
+
+    long max = this.maxNanos.get();
+    while (nanos > max && !this.maxNanos.compareAndSet(max, nanos)) {
+      max = this.maxNanos.get();
+    }
+  }
+
+  public long getCount() {
+    return this.count.sum();
+  }
+
+  /**
+   * @return the mean latency in nanoseconds, or 0 if nothing was recorded
+   */
+  public double getMeanNanos() {
+    long count = this.getCount();
+    if (count == 0) {
+      return 0.0;
+    }
+    return ((double) this.totalNanos.sum()) / count;
+  }
+
+  public long getMaxNanos() {
+    return this.maxNanos.get();
+  }
+
+  /**
+   * Return an upper bound on the latency below which a fraction p of the samples fall: the upper
+   * end of the bucket that holds the p-th quantile.
+   *
+   * @param p the quantile, between 0 and 1
+   * @return the latency in nanoseconds, or 0 if nothing was recorded
+   */
+  public long getPercentileNanos(double p) {
+    if (p < 0 || p > 1) {
+      throw new IllegalArgumentException("percentile must be between 0 and 1");
+    }
+    long[] counts = new long[NUM_BUCKETS];
+    long total = 0;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      counts[i] = this.buckets[i].sum();
+      total += counts[i];
+    }
+    if (total == 0) {
+      return 0;
+    }
+
+    long rank = (long) Math.ceil(p * total);
+    long seen = 0;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= rank && counts[i] > 0) {
+        return Math.min(this.getMaxNanos(), i >= 62 ? Long.MAX_VALUE : (2L << i) - 1);
+      }
+    }
+    return this.getMaxNanos();
+  }
+
+  @Override
+  public String toString() {
+    return "count: " + this.getCount() + ", mean: " + (long) this.getMeanNanos() + "ns, p50: " +
+           this.getPercentileNanos(0.5) + "ns, p99: " + this.getPercentileNanos(0.99) +
+           "ns, max: " + this.getMaxNanos() + "ns";
+  }
+}
@@ -0,0 +1,182 @@
+package edu.berkeley.cs186.database.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps a file into memory in large segments and hands out the blocks of the file as page-sized
+ * slices of those segments, so that reading a block that is already mapped costs no system call.
+ *
+ * When a block past the end of a segment's mapping is asked for, the segment is mapped again at
+ * twice its length, starting from MIN_MAPPING_SIZE and up to SEGMENT_SIZE, so that each segment is
+ * mapped a handful of times however many blocks are appended to it. Mapping past the end of the
+ * file grows the file, so the file is trimmed back to the end of the last block that was touched
+ * when the store is closed. Slices of an old mapping stay valid: every mapping of a region is
+ * shared and sees the same bytes.
+ *
+ * YOU SHOULD NOT NEED TO CHANGE ANY OF THE CODE IN THIS PACKAGE.
+ */
+class MappedFile implements PageStore {
+  /**
+   * The largest number of bytes mapped by a single segment. Must be a multiple of every block size.
+   */
+  static final int SEGMENT_SIZE = 64 * 1024 * 1024;
+
+  /**
+   * The number of bytes a segment is first mapped with, unless the file already reaches further.
+   * Must be a multiple of every block size.
+   */
+  static final int MIN_MAPPING_SIZE = 1024 * 1024;
+
+  private FileChannel fc;
+  private int blockSize;
+  private List<MappedByteBuffer> segments;
+  // the end of the last block that was touched, or of the file when it was opened
+  private long length;
+  private long numMappings;
+
+  MappedFile(FileChannel fc) {
+    this(fc, Page.pageSize);
+  }
+
+  MappedFile(FileChannel fc, int blockSize) {
+    this.fc = fc;
+    this.blockSize = blockSize;
+    this.segments = new ArrayList<MappedByteBuffer>();
+    try {
+      this.length = fc.size();
+    } catch (IOException e) {
+      throw new PageException("Could not read File size: " + e.getMessage());
+    }
+  }
+
+  /**
+   * @return the size in bytes of each block of the file
+   */
+  public int getBlockSize() {
+    return this.blockSize;
+  }
+
+  public int getDataPageSize() {
+    return this.blockSize;
+  }
+
+  public Page readPage(long blockNum, int pageNum, FlushScheduler scheduler) {
+    return new Page(this, blockNum, pageNum, scheduler);
+  }
+
+  /**
+   * An evicted page is still mapped; the kernel writes it back.
+   */
+  public void pageEvicted(Page page) {
+  }
+
+  public void force(Page page) {
+    page.getMapping().force();
+  }
+
+  /**
+   * Pages are slices of larger mappings, so every mapping with dirty pages is forced once no matter
+   * how many of its pages are dirty.
+   */
+  public int forcePages(List<Page> pages, IOMetrics metrics) {
+    IdentityHashMap<MappedByteBuffer, Integer> mappings =
+      new IdentityHashMap<MappedByteBuffer, Integer>();
+    for (Page page : pages) {
+      MappedByteBuffer mapping = page.getMapping();
+      Integer numPages = mappings.get(mapping);
+      mappings.put(mapping, numPages == null ? 1 : numPages + 1);
+    }
+
+    for (Map.Entry<MappedByteBuffer, Integer> entry : mappings.entrySet()) {
+      long start = System.nanoTime();
+      entry.getKey().force();
+      metrics.recordFlush(System.nanoTime() - start, entry.getValue());
+    }
+    return mappings.size();
+  }
+
+  /**
+   * Trim the file back to the end of the last block that was touched, dropping the part that was
+   * only there because a mapping reached past it.
+   */
+  public synchronized void close() {
+    try {
+      if (this.fc.size() > this.length) {
+        this.fc.truncate(this.length);
+      }
+    } catch (IOException e) {
+      throw new PageException("Could not trim File: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Return a view of the bytes of block blockNum, mapping or growing its segment first if needed.
+   *
+   * @param blockNum the block in the file
+   * @return a blockSize byte view of the block
+   */
+  synchronized ByteBuffer slice(long blockNum) {
+    long offset = blockNum * this.blockSize;
+    int segmentNum = (int) (offset / SEGMENT_SIZE);
+    int segmentOffset = (int) (offset % SEGMENT_SIZE);
+
+    MappedByteBuffer segment = this.getSegment(segmentNum, segmentOffset + this.blockSize);
+    this.length = Math.max(this.length, offset + this.blockSize);
+    ByteBuffer view = segment.duplicate();
+    view.position(segmentOffset);
+    view.limit(segmentOffset + this.blockSize);
+    return view.slice();
+  }
+
+  /**
+   * Return the mapping of the segment that holds block blockNum. Forcing this buffer forces the
+   * block to disk. Must be called after slice for the same block.
+   *
+   * @param blockNum the block in the file
+   * @return the segment's current mapping
+   */
+  synchronized MappedByteBuffer segmentOf(long blockNum) {
+    return this.segments.get((int) (blockNum * this.blockSize / SEGMENT_SIZE));
+  }
+
+  /**
+   * @return the number of times a segment has been mapped
+   */
+  synchronized long getNumMappings() {
+    return this.numMappings;
+  }
+
+  /**
+   * Make sure segment segmentNum is mapped up to at least minLength bytes and return its mapping.
+   */
+  private MappedByteBuffer getSegment(int segmentNum, int minLength) {
+    while (this.segments.size() <= segmentNum) {
+      this.segments.add(null);
+    }
+
+    MappedByteBuffer segment = this.segments.get(segmentNum);
+    if (segment != null && segment.capacity() >= minLength) {
+      return segment;
+    }
+
+    long start = ((long) segmentNum) * SEGMENT_SIZE;
+    try {
+      long length = segment == null ? MIN_MAPPING_SIZE : 2L * segment.capacity();
+      length = Math.max(length, this.fc.size() - start);
+      length = Math.max(Math.min(length, (long) SEGMENT_SIZE), (long) minLength);
+      segment = this.fc.map(FileChannel.MapMode.READ_WRITE, start, length);
+      this.numMappings++;
+    } catch (IOException e) {
+      throw new PageException("Can't mmap segment: " + segmentNum + " ; " + e.getMessage());
+    }
+    this.segments.set(segmentNum, segment);
+    return segment;
+  }
+}
@@ -8,14 +8,53 @@ import java.nio.ByteBuffer;
 /**
  * General-purpose wrapper for interacting with the memory-mapped bytes on a page.
  *
+ * The primitive accessors (readInt, writeLong, ...) use absolute positions in big-endian order,
+ * allocate nothing, and never touch the buffer's position, so any number of threads can use them
+ * at once. The bulk byte accessors copy into and out of caller-supplied arrays.
+ *
+ * A data page of an allocator that keeps checksums gives up its last CHECKSUM_SIZE bytes to a
+ * CRC-32C of the rest of the page, so its size is that much smaller than the file's blocks. The
+ * checksum is only brought up to date when the page is forced or written back, however often the
+ * page is written to in between.
+ *
  * YOU SHOULD NOT NEED TO CHANGE ANY OF THE CODE IN THIS PACKAGE.
  */
 public class Page {
+  /**
+   * The default page size, and the size of every page not handed out by a PageAllocator.
+   */
   public static final int pageSize = 4096;
 
-  private MappedByteBuffer pageData;
+  /**
+   * The smallest and largest page sizes a PageAllocator can be created with.
+   */
+  public static final int MIN_PAGE_SIZE = 4096;
+  public static final int MAX_PAGE_SIZE = 64 * 1024;
+
+  /**
+   * The number of bytes at the end of a checksummed page that hold its checksum.
+   */
+  public static final int CHECKSUM_SIZE = 4;
+
+  private static final byte[] zeros = new byte[Page.pageSize];
+
+  private ByteBuffer pageData;
+  private int size;
+  private MappedByteBuffer mapping;
+  private PageStore store;
+  private long blockNum;
   private int pageNum;
   private boolean durable;
+  private volatile boolean dirty;
+  private FlushScheduler scheduler;
+
+  // set for pages whose bytes are not backed by the file; see DirectFile
+  private DirectFile directFile;
+  private volatile boolean unwritten;
+
+  // set for pages that keep a checksum in their trailer; see updateChecksum
+  private boolean checksummed;
+  private volatile boolean checksumStale;
 
   /**
    * Create a new page using fc with at offset blockNum with virtual page number pageNum
@@ -31,12 +70,53 @@ public class Page {
   public Page(FileChannel fc, int blockNum, int pageNum, boolean durable) {
     this.pageNum = pageNum;
     this.durable = durable;
-    PageAllocator.incrementCacheMisses();
+    this.size = Page.pageSize;
     try {
-      this.pageData = fc.map(FileChannel.MapMode.READ_WRITE, blockNum*Page.pageSize, Page.pageSize);
+      this.mapping = fc.map(FileChannel.MapMode.READ_WRITE, ((long) blockNum)*Page.pageSize, Page.pageSize);
     } catch (IOException e) {
       throw new PageException("Can't mmap page: " + pageNum + "at block: " + blockNum + " ; " + e.getMessage());
     }
+    this.pageData = this.mapping;
+  }
+
+  /**
+   * Create a new page over block blockNum of a file that is already mapped by file. No new mapping
+   * is made unless the block lies past the end of what file has mapped so far. The page is as large
+   * as the blocks of file.
+   *
+   * @param file the mapped file for this Page
+   * @param blockNum the block in the file for this page
+   * @param pageNum the virtual page number
+   * @param scheduler the scheduler that forces this page to disk, or null if it is not durable
+   */
+  Page(MappedFile file, long blockNum, int pageNum, FlushScheduler scheduler) {
+    this(file, file.slice(blockNum), blockNum, pageNum, scheduler);
+  }
+
+  /**
+   * Create a new page over a buffer that a DirectFile has read block blockNum into. Writes to the
+   * page are reported to file until it writes the page back. The page is as large as the buffer.
+   *
+   * @param file the file the block belongs to
+   * @param data a buffer holding the page's bytes
+   * @param blockNum the block in the file for this page
+   * @param pageNum the virtual page number
+   * @param scheduler the scheduler that forces this page to disk, or null if it is not durable
+   */
+  Page(DirectFile file, ByteBuffer data, long blockNum, int pageNum, FlushScheduler scheduler) {
+    this((PageStore) file, data, blockNum, pageNum, scheduler);
+    this.directFile = file;
+  }
+
+  private Page(PageStore store, ByteBuffer data, long blockNum, int pageNum,
+               FlushScheduler scheduler) {
+    this.pageNum = pageNum;
+    this.durable = scheduler != null;
+    this.scheduler = scheduler;
+    this.size = data.capacity();
+    this.pageData = data;
+    this.store = store;
+    this.blockNum = blockNum;
   }
 
   /**
@@ -47,14 +127,31 @@ public class Page {
    * @param buf the buffer to put the bytes into
    */
   public void readBytes(int position, int num, byte[] buf) {
-    if (Page.pageSize < position + num) {
-      throw new PageException("readBytes is out of bounds");
-    }
     if (buf.length < num) {
       throw new PageException("num bytes to read is longer than buffer");
     }
-    pageData.position(position);
-    pageData.get(buf, 0, num);
+    this.readBytes(position, buf, 0, num);
+  }
+
+  /**
+   * Reads num bytes from offset position into buf, starting at bufOffset in buf.
+   *
+   * @param position the offset in the page to read from
+   * @param buf the buffer to put the bytes into
+   * @param bufOffset the offset in buf to put the first byte at
+   * @param num the number of bytes to read
+   */
+  public void readBytes(int position, byte[] buf, int bufOffset, int num) {
+    this.checkBounds(position, num, "readBytes is out of bounds");
+    if (bufOffset < 0 || buf.length < bufOffset + num) {
+      throw new PageException("num bytes to read is longer than buffer");
+    }
+    // there is no absolute bulk get before Java 13, so the shared position is moved under the
+    // page's monitor
+    synchronized(this) {
+      this.pageData.position(position);
+      this.pageData.get(buf, bufOffset, num);
+    }
   }
 
   /**
@@ -65,7 +162,7 @@ public class Page {
    * @return a new byte array with the bytes read
    */
   public byte[] readBytes(int position, int num) {
-    if (Page.pageSize < position + num) {
+    if (this.size < position + num) {
       throw new PageException("readBytes is out of bounds");
     }
     byte[] data = new byte[num];
@@ -79,7 +176,7 @@ public class Page {
    * @return a new byte array with all the bytes in the file
    */
   public byte[] readBytes() {
-    return readBytes(0, Page.pageSize);
+    return readBytes(0, this.size);
   }
 
   /**
@@ -89,7 +186,7 @@ public class Page {
    * @return the byte at offset position
    */
   public byte readByte(int position) {
-    if (position < 0 || position >= Page.pageSize) {
+    if (position < 0 || position >= this.size) {
       throw new PageException("readByte is out of bounds of page");
     }
     return pageData.get(position);
@@ -106,17 +203,35 @@ public class Page {
     if (buf.length < num) {
       throw new PageException("num bytes to write is longer than buffer");
     }
+    this.writeBytes(position, buf, 0, num);
+  }
+
+  /**
+   * Write num bytes from buf, starting at bufOffset in buf, at offset position.
+   *
+   * @param position the offest in the page to write to
+   * @param buf the source for the write
+   * @param bufOffset the offset in buf of the first byte to write
+   * @param num the number of bytes to write
+   */
+  public void writeBytes(int position, byte[] buf, int bufOffset, int num) {
+    if (bufOffset < 0 || buf.length < bufOffset + num) {
+      throw new PageException("num bytes to write is longer than buffer");
+    }
 
     if (position < 0 || num < 0) {
       throw new PageException("position or num can't be negative");
     }
 
-    if (Page.pageSize < num + position) {
+    if (this.size < num + position) {
       throw new PageException("writeBytes would go out of bounds");
     }
 
-    pageData.position(position);
-    pageData.put(buf, 0, num);
+    synchronized(this) {
+      this.pageData.position(position);
+      this.pageData.put(buf, bufOffset, num);
+    }
+    this.markDirty();
   }
 
   /**
@@ -126,10 +241,34 @@ public class Page {
    * @param b the byte to write
    */
   public void writeByte(int position, byte b) {
-    if (position < 0 || position >= Page.pageSize) {
+    if (position < 0 || position >= this.size) {
       throw new PageException("readByte is out of bounds of page");
     }
     pageData.put(position, b);
+    this.markDirty();
+  }
+
+  /**
+   * Write a 2-byte short into the page at offset startPos.
+   *
+   * @param startPos the offset in the page to write to
+   * @param value the value to write
+   */
+  public void writeShort(int startPos, short value) {
+    this.checkBounds(startPos, 2, "writeShort is out of bounds");
+    this.pageData.putShort(startPos, value);
+    this.markDirty();
+  }
+
+  /**
+   * Read a 2-byte short from the page at offset startPos.
+   *
+   * @param startPos the offset in the page to read from
+   * @return the 2-byte short at startPos
+   */
+  public short readShort(int startPos) {
+    this.checkBounds(startPos, 2, "readShort is out of bounds");
+    return this.pageData.getShort(startPos);
   }
 
   /**
@@ -139,7 +278,9 @@ public class Page {
    * @param value the value to write
    */
   public void writeInt(int startPos, int value) {
-    this.writeBytes(startPos, 4, ByteBuffer.allocate(4).putInt(value).array());
+    this.checkBounds(startPos, 4, "writeInt is out of bounds");
+    this.pageData.putInt(startPos, value);
+    this.markDirty();
   }
 
   /**
@@ -149,27 +290,246 @@ public class Page {
    * @return the 4-byte integer at startPos
    */
   public int readInt(int startPos) {
-    return ByteBuffer.wrap(this.readBytes(startPos, 4)).getInt();
+    this.checkBounds(startPos, 4, "readInt is out of bounds");
+    return this.pageData.getInt(startPos);
+  }
+
+  /**
+   * Write an 8-byte long into the page at offset startPos.
+   *
+   * @param startPos the offset in the page to write to
+   * @param value the value to write
+   */
+  public void writeLong(int startPos, long value) {
+    this.checkBounds(startPos, 8, "writeLong is out of bounds");
+    this.pageData.putLong(startPos, value);
+    this.markDirty();
+  }
+
+  /**
+   * Read an 8-byte long from the page at offset startPos.
+   *
+   * @param startPos the offset in the page to read from
+   * @return the 8-byte long at startPos
+   */
+  public long readLong(int startPos) {
+    this.checkBounds(startPos, 8, "readLong is out of bounds");
+    return this.pageData.getLong(startPos);
+  }
+
+  /**
+   * Write a 4-byte float into the page at offset startPos.
+   *
+   * @param startPos the offset in the page to write to
+   * @param value the value to write
+   */
+  public void writeFloat(int startPos, float value) {
+    this.checkBounds(startPos, 4, "writeFloat is out of bounds");
+    this.pageData.putFloat(startPos, value);
+    this.markDirty();
+  }
+
+  /**
+   * Read a 4-byte float from the page at offset startPos.
+   *
+   * @param startPos the offset in the page to read from
+   * @return the 4-byte float at startPos
+   */
+  public float readFloat(int startPos) {
+    this.checkBounds(startPos, 4, "readFloat is out of bounds");
+    return this.pageData.getFloat(startPos);
+  }
+
+  /**
+   * Read one byte of every 4KB of the page, so that the page is faulted in from disk by the calling
+   * thread rather than by whoever reads it next.
+   */
+  void load() {
+    for (int i = 0; i < this.size; i += 4096) {
+      this.pageData.get(i);
+    }
   }
 
   /**
    * Completely wipe (zero out) the page.
    */
   public void wipe() {
-    byte[] zeros = new byte[Page.pageSize];
-    this.writeBytes(0, Page.pageSize, zeros);
+    for (int i = 0; i < this.size; i += Page.zeros.length) {
+      this.writeBytes(i, Page.zeros, 0, Math.min(Page.zeros.length, this.size - i));
+    }
   }
 
   /**
-   * Force the page to disk.
+   * Force the page to disk if it has been written to since it was last flushed. A page that is a
+   * slice of a larger mapping forces that whole mapping, which writes back only its dirty blocks.
    */
   public void flush() {
-    if (this.durable) {
-      PageAllocator.incrementCacheMisses();
-      this.pageData.force();
+    if (this.durable && this.markClean()) {
+      if (this.scheduler != null) {
+        this.scheduler.forcePage(this);
+      } else {
+        this.force();
+      }
     }
   }
 
+  /**
+   * Clear the dirty flag without forcing the page. Used by a FlushScheduler, which forces the
+   * page's mapping itself.
+   *
+   * @return whether the page was dirty
+   */
+  boolean markClean() {
+    if (!this.dirty) {
+      return false;
+    }
+    this.dirty = false;
+    return true;
+  }
+
+  /**
+   * Make the page durable, whether or not it is dirty.
+   */
+  void force() {
+    this.updateChecksum();
+    if (this.store != null) {
+      this.store.force(this);
+    } else {
+      this.mapping.force();
+    }
+  }
+
+  /**
+   * @return the mapping that has to be forced to make this page durable. For a slice of a segment
+   * this is the segment's current mapping, so that pages of one segment share it.
+   */
+  MappedByteBuffer getMapping() {
+    if (this.store instanceof MappedFile) {
+      return ((MappedFile) this.store).segmentOf(this.blockNum);
+    }
+    return this.mapping;
+  }
+
+  /**
+   * @return the store this page was read from, or null for a page that maps its own block
+   */
+  PageStore getStore() {
+    return this.store;
+  }
+
+  long getBlockNum() {
+    return this.blockNum;
+  }
+
+  /**
+   * @return a view of the page's bytes with its own position, for writing them out
+   */
+  ByteBuffer duplicateData() {
+    ByteBuffer data = this.pageData.duplicate();
+    data.clear();
+    return data;
+  }
+
+  /**
+   * Clear the flag that a DirectFile uses to track writes it has not written back yet.
+   *
+   * @return whether the page had been written to since it was last written back
+   */
+  boolean markWritten() {
+    if (!this.unwritten) {
+      return false;
+    }
+    this.unwritten = false;
+    return true;
+  }
+
+  /**
+   * Give up the last CHECKSUM_SIZE bytes of the block to the page's checksum. Called by the
+   * allocator before the page is handed out.
+   */
+  void enableChecksum() {
+    if (!this.checksummed) {
+      this.size = this.pageData.capacity() - Page.CHECKSUM_SIZE;
+      this.checksummed = true;
+    }
+  }
+
+  /**
+   * @return whether the checksum in the page's trailer matches its bytes. A block that was never
+   * written back holds nothing but zeros, and passes as well.
+   */
+  boolean verifyChecksum() {
+    int stored = this.pageData.getInt(this.size);
+    if (CRC32C.compute(this.pageData, 0, this.size) == stored) {
+      return true;
+    }
+    if (stored != 0) {
+      return false;
+    }
+    for (int i = 0; i < this.size; i += 4) {
+      if (this.pageData.getInt(i) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Recompute the checksum in the page's trailer if the page has been written to since it was last
+   * computed. Called before the page's bytes go to disk.
+   */
+  void updateChecksum() {
+    if (!this.checksumStale) {
+      return;
+    }
+    // cleared first, so that a write racing with this one leaves the checksum stale again
+    this.checksumStale = false;
+    this.pageData.putInt(this.size, CRC32C.compute(this.pageData, 0, this.size));
+  }
+
+  /**
+   * @return whether the page is forced to disk when it is flushed
+   */
+  boolean isDurable() {
+    return this.durable;
+  }
+
+  /**
+   * @return whether the page has been written to since it was last flushed
+   */
+  public boolean isDirty() {
+    return this.dirty;
+  }
+
+  private void checkBounds(int position, int num, String message) {
+    if (position < 0 || num < 0 || this.size < position + num) {
+      throw new PageException(message);
+    }
+  }
+
+  private void markDirty() {
+    if (!this.dirty) {
+      this.dirty = true;
+      if (this.scheduler != null) {
+        this.scheduler.pageDirtied(this);
+      }
+    }
+    if (this.directFile != null && !this.unwritten) {
+      this.unwritten = true;
+      this.directFile.pageModified(this);
+    }
+    if (this.checksummed && !this.checksumStale) {
+      this.checksumStale = true;
+    }
+  }
+
+  /**
+   * @return the size of this page in bytes
+   */
+  public int getSize() {
+    return this.size;
+  }
+
   /**
    * @return the virtual page number of this page
    */
@@ -5,9 +5,10 @@ import java.nio.channels.FileChannel;
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
 import java.nio.ByteOrder;
-import java.util.LinkedHashMap;
 import java.lang.IllegalArgumentException;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.NoSuchElementException;
@@ -15,30 +16,94 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.io.Closeable;
 /**
  * A PageAllocation system for an OS paging system. Provides memory-mapped paging from the OS, an
- * interface to individual pages with the Page objects, an LRU cache for pages, 16GB worth of paging,
- * and virtual page translation.
+ * interface to individual pages with the Page objects, a BufferPool for caching pages, and virtual
+ * page translation. Blocks of the file are read and written by a PageStore: by default the file is
+ * mapped in large segments by a MappedFile, and every Page is a view into one of those segments.
+ * An allocator built with PageStore.Type.DIRECT or COMPRESSED reads pages into buffers of its own
+ * instead and writes them back when they are evicted, synced or the allocator is closed.
+ *
+ * The file is laid out as a sequence of extents. Each extent starts with a directory page holding
+ * the allocated-page counts of its header pages, and each header page is followed by the data pages
+ * it tracks, one byte per page. The directory page of the first extent is the master page, so a file
+ * that never outgrows one extent (16GB of 4KB pages) has the same layout it always had. Further
+ * extents are added as the file fills up, up to the limit of an int page number, and a virtual page
+ * number still translates to a block in the file with a few divisions.
+ *
+ * Every page of a file, including its master, directory and header pages, has the same size, chosen
+ * when the file is created. A file of Page.pageSize pages stores nothing but counts in its master
+ * page, as it always has. A file of any other size starts its master page with FORMAT_MAGIC and the
+ * page size, and the counts in each of its directory pages start after those two ints. FORMAT_MAGIC
+ * is negative, so it can never be mistaken for the count of a legacy file.
+ *
+ * A file can also be created to keep a CRC-32C checksum in the trailer of every data page, which
+ * costs each page its last Page.CHECKSUM_SIZE bytes. Such a file always starts with FORMAT_MAGIC,
+ * with FORMAT_CHECKSUMS set in it, whatever its page size. A page's checksum is computed when the
+ * page is forced or written back, and verified the first time the allocator reads the page, so a
+ * page torn by a crash in the middle of a force is caught instead of read as garbage. The master,
+ * directory and header pages are not checksummed. Only the allocator decides when a checksummed
+ * page reaches the disk, so such a file is read through a DirectFile when it is opened with
+ * PageStore.Type.MMAP.
+ *
+ * A file created through PageStore.Type.COMPRESSED stores its data pages compressed, and is marked
+ * with FORMAT_COMPRESSED, so it is always read through a CompressedFile whatever store it is opened
+ * with. Asking for a compressed store on an existing file that is not compressed reads it through
+ * a DirectFile instead.
  *
  * YOU SHOULD NOT NEED TO CHANGE ANY OF THE CODE IN THIS PACKAGE.
  */
 public class PageAllocator implements Iterable<Page>, Closeable {
-  private static final int numHeaderPages = 1024;
-  private static final int cacheSize = 1024;
+  private static final int FORMAT_MAGIC = 0xCB186000;
+  private static final int FORMAT_FLAGS = 0xFF;
+  private static final int FORMAT_CHECKSUMS = 0x01;
+  private static final int FORMAT_COMPRESSED = 0x02;
+
+  public static final FlushMode DEFAULT_FLUSH_MODE = FlushMode.IMMEDIATE;
+  public static final PageStore.Type DEFAULT_STORE_TYPE = PageStore.Type.MMAP;
+  public static final int DEFAULT_READ_AHEAD_DEPTH = 8;
 
   private static AtomicInteger pACounter = new AtomicInteger(0);
-  private static LRUCache<Long, Page> pageLRU = new LRUCache<Long, Page>(cacheSize);
-  private static AtomicLong numIOs = new AtomicLong(0);
-  private static AtomicLong cacheMisses = new AtomicLong(0);
 
   private Page masterPage;
+  private volatile Page[] directoryPages;
+  private int numHeaderPages;
+
+  // layout of the file, fixed by its page size
+  private int pageSize;
+  private int countsOffset;
+  private int headersPerDirectory;
+  private long blocksPerExtent;
+  private int maxHeaderPages;
+  private boolean checksums;
+  private int usablePageSize;
+
   private FileChannel fc;
+  private PageStore store;
+  private PageStore.Type storeType;
   private int numPages;
   private int allocID;
   private boolean durable;
+  private FlushScheduler flushScheduler;
+  private ReadAhead readAhead;
+  private volatile boolean open;
+  private BufferPool bufferPool;
+  private IOMetrics metrics;
+  private String name;
+
+  // in-memory free space map, written through to the master and header pages as it changes
+  private int[] headerCounts;
+  private BitSet[] headerSlots;
+  private int[] headerHints;
+  private Page[] headerPages;
+  private int firstOpenHeader;
+
+  // data pages whose checksum has been verified, or that were allocated, since the file was opened
+  private BitSet verifiedPages;
+
   /**
    * Create a new PageAllocator that writes its bytes into a file named fName. If wipe is true, the
    * data in the page is completely removed.
@@ -51,44 +116,287 @@ public class PageAllocator implements Iterable<Page>, Closeable {
   }
 
   public PageAllocator(String fName, boolean wipe, boolean durable) {
-    this.durable = durable;
+    this(fName, wipe, durable, BufferPool.getDefault());
+  }
+
+  /**
+   * Create a new PageAllocator with a private BufferPool that evicts according to policyType.
+   *
+   * @param fName the name of the file for this PageAllocator
+   * @param wipe a boolean specifying whether to wipe the file
+   * @param durable whether pages should be forced to disk when they are flushed
+   * @param policyType the eviction policy of the allocator's buffer pool
+   */
+  public PageAllocator(String fName, boolean wipe, boolean durable, EvictionPolicy.Type policyType) {
+    this(fName, wipe, durable, new BufferPool(BufferPool.DEFAULT_NUM_FRAMES, policyType));
+  }
+
+  /**
+   * Create a new PageAllocator that caches its pages in bufferPool.
+   *
+   * @param fName the name of the file for this PageAllocator
+   * @param wipe a boolean specifying whether to wipe the file
+   * @param durable whether pages should be forced to disk when they are flushed
+   * @param bufferPool the BufferPool to cache pages in
+   */
+  public PageAllocator(String fName, boolean wipe, boolean durable, BufferPool bufferPool) {
+    this(fName, wipe, durable ? new FlushScheduler(DEFAULT_FLUSH_MODE) : null, bufferPool);
+  }
+
+  /**
+   * Create a new durable PageAllocator that forces its pages to disk according to flushMode.
+   *
+   * @param fName the name of the file for this PageAllocator
+   * @param wipe a boolean specifying whether to wipe the file
+   * @param flushMode when dirty pages are forced to disk
+   */
+  public PageAllocator(String fName, boolean wipe, FlushMode flushMode) {
+    this(fName, wipe, new FlushScheduler(flushMode), BufferPool.getDefault());
+  }
+
+  /**
+   * Create a new durable PageAllocator whose pages are pageSize bytes.
+   *
+   * @param fName the name of the file for this PageAllocator
+   * @param wipe a boolean specifying whether to wipe the file
+   * @param pageSize the size of the file's pages; see the five-argument constructor
+   */
+  public PageAllocator(String fName, boolean wipe, int pageSize) {
+    this(fName, wipe, new FlushScheduler(DEFAULT_FLUSH_MODE), BufferPool.getDefault(), pageSize);
+  }
+
+  /**
+   * Create a new durable PageAllocator whose pages are pageSize bytes and read through a store of
+   * type storeType.
+   *
+   * @param fName the name of the file for this PageAllocator
+   * @param wipe a boolean specifying whether to wipe the file
+   * @param pageSize the size of the file's pages; see the five-argument constructor
+   * @param storeType how the file's blocks are read and written
+   */
+  public PageAllocator(String fName, boolean wipe, int pageSize, PageStore.Type storeType) {
+    this(fName, wipe, pageSize, storeType, false);
+  }
+
+  /**
+   * Create a new durable PageAllocator whose pages are pageSize bytes, read through a store of type
+   * storeType and, if checksums is true, checksummed.
+   *
+   * @param fName the name of the file for this PageAllocator
+   * @param wipe a boolean specifying whether to wipe the file
+   * @param pageSize the size of the file's pages; see the five-argument constructor
+   * @param storeType how the file's blocks are read and written
+   * @param checksums whether a new file keeps checksums; see the seven-argument constructor
+   */
+  public PageAllocator(String fName, boolean wipe, int pageSize, PageStore.Type storeType,
+                       boolean checksums) {
+    this(fName, wipe, new FlushScheduler(DEFAULT_FLUSH_MODE), BufferPool.getDefault(), pageSize,
+         storeType, checksums);
+  }
+
+  /**
+   * Create a new PageAllocator that caches its pages in bufferPool and forces them to disk through
+   * flushScheduler. The scheduler belongs to the allocator from then on and is closed with it.
+   *
+   * @param fName the name of the file for this PageAllocator
+   * @param wipe a boolean specifying whether to wipe the file
+   * @param flushScheduler the scheduler that forces dirty pages, or null if the allocator is not
+   *                       durable
+   * @param bufferPool the BufferPool to cache pages in
+   */
+  public PageAllocator(String fName, boolean wipe, FlushScheduler flushScheduler,
+                       BufferPool bufferPool) {
+    this(fName, wipe, flushScheduler, bufferPool, 0);
+  }
+
+  /**
+   * Create a new PageAllocator whose pages are pageSize bytes. The page size of a file is fixed when
+   * it is created. Opening an existing file without wiping it uses the page size stored in the file,
+   * and a PageException is thrown if pageSize asks for a different one. Wiping a file with a
+   * different page size empties it first.
+   *
+   * @param fName the name of the file for this PageAllocator
+   * @param wipe a boolean specifying whether to wipe the file
+   * @param flushScheduler the scheduler that forces dirty pages, or null if the allocator is not
+   *                       durable
+   * @param bufferPool the BufferPool to cache pages in
+   * @param pageSize a power of two from Page.MIN_PAGE_SIZE to Page.MAX_PAGE_SIZE, or 0 to use the
+   *                 page size of the file, or Page.pageSize for a new file
+   */
+  public PageAllocator(String fName, boolean wipe, FlushScheduler flushScheduler,
+                       BufferPool bufferPool, int pageSize) {
+    this(fName, wipe, flushScheduler, bufferPool, pageSize, DEFAULT_STORE_TYPE);
+  }
+
+  /**
+   * Create a new PageAllocator whose pages are pageSize bytes and read through a store of type
+   * storeType. The store does not change the file's layout, so a file can be reopened with either.
+   *
+   * @param fName the name of the file for this PageAllocator
+   * @param wipe a boolean specifying whether to wipe the file
+   * @param flushScheduler the scheduler that forces dirty pages, or null if the allocator is not
+   *                       durable
+   * @param bufferPool the BufferPool to cache pages in
+   * @param pageSize the size of the file's pages; see the five-argument constructor
+   * @param storeType how the file's blocks are read and written
+   */
+  public PageAllocator(String fName, boolean wipe, FlushScheduler flushScheduler,
+                       BufferPool bufferPool, int pageSize, PageStore.Type storeType) {
+    this(fName, wipe, flushScheduler, bufferPool, pageSize, storeType, false);
+  }
+
+  /**
+   * Create a new PageAllocator whose pages are pageSize bytes, read through a store of type
+   * storeType and, if checksums is true, checksummed. Like the page size, whether a file keeps
+   * checksums is fixed when it is created: opening an existing file without wiping it keeps the
+   * file's own choice, and wiping a file that made the other choice empties it first. A file that
+   * keeps checksums is never mapped; asking for PageStore.Type.MMAP reads it through a DirectFile.
+   *
+   * @param fName the name of the file for this PageAllocator
+   * @param wipe a boolean specifying whether to wipe the file
+   * @param flushScheduler the scheduler that forces dirty pages, or null if the allocator is not
+   *                       durable
+   * @param bufferPool the BufferPool to cache pages in
+   * @param pageSize the size of the file's pages; see the five-argument constructor
+   * @param storeType how the file's blocks are read and written
+   * @param checksums whether a new file keeps a checksum in the trailer of every data page
+   */
+  public PageAllocator(String fName, boolean wipe, FlushScheduler flushScheduler,
+                       BufferPool bufferPool, int pageSize, PageStore.Type storeType,
+                       boolean checksums) {
+    if (pageSize != 0 && (pageSize < Page.MIN_PAGE_SIZE || pageSize > Page.MAX_PAGE_SIZE ||
+                          Integer.bitCount(pageSize) != 1)) {
+      throw new PageException("invalid page size: " + pageSize);
+    }
+    this.durable = flushScheduler != null;
+    this.flushScheduler = flushScheduler;
+    this.bufferPool = bufferPool;
+    this.readAhead = new ReadAhead(this, DEFAULT_READ_AHEAD_DEPTH);
+    this.name = new File(fName).getAbsolutePath();
+    this.metrics = IOMetricsRegistry.register(this.name);
+    if (flushScheduler != null) {
+      flushScheduler.setMetrics(this.metrics);
+    }
     try {
       this.fc = new RandomAccessFile(fName, "rw").getChannel();
     } catch (IOException e) {
       throw new PageException("Could not open File: " + e.getMessage());
     }
 
-    this.masterPage = new Page(this.fc, 0, -1);
-    this.allocID = pACounter.getAndIncrement();
-
-    if (wipe) {
-      // Nukes masterPage and headerPages
-      byte[] masterBytes = this.masterPage.readBytes();
-      IntBuffer ib = ByteBuffer.wrap(masterBytes).asIntBuffer();
+    int storedPageSize;
+    int storedFlags;
+    try {
+      storedPageSize = this.readPageSize();
+      storedFlags = this.readFormatFlags();
+      if (storedPageSize != 0 && pageSize != 0 && pageSize != storedPageSize) {
+        if (!wipe) {
+          IOMetricsRegistry.unregister(this.name, this.metrics);
+          this.fc.close();
+          throw new PageException("File " + fName + " has page size " + storedPageSize +
+                                  ", not " + pageSize);
+        }
+        // the old layout would leave stale bytes where the new one expects header pages
+        this.fc.truncate(0);
+        storedPageSize = 0;
+      } else if (storedPageSize != 0 && wipe &&
+                 (checksums != ((storedFlags & FORMAT_CHECKSUMS) != 0) ||
+                  (storeType == PageStore.Type.COMPRESSED) !=
+                    ((storedFlags & FORMAT_COMPRESSED) != 0))) {
+        // so does a layout with the counts in a different place, or pages of a different size
+        if (pageSize == 0) {
+          pageSize = storedPageSize;
+        }
+        this.fc.truncate(0);
+        storedPageSize = 0;
+      }
+    } catch (IOException e) {
+      throw new PageException("Could not read File: " + e.getMessage());
+    }
+    if (storedPageSize != 0) {
+      pageSize = storedPageSize;
+      checksums = (storedFlags & FORMAT_CHECKSUMS) != 0;
+      if ((storedFlags & FORMAT_COMPRESSED) != 0) {
+        storeType = PageStore.Type.COMPRESSED;
+      } else if (storeType == PageStore.Type.COMPRESSED) {
+        storeType = PageStore.Type.DIRECT;
+      }
+    } else if (pageSize == 0) {
+      pageSize = Page.pageSize;
+    }
+    if (checksums && storeType == PageStore.Type.MMAP) {
+      // the kernel writes a mapped page back whenever it likes, trailer and all, stale or not
+      storeType = PageStore.Type.DIRECT;
+    }
+    this.checksums = checksums;
+    this.storeType = storeType;
+    this.verifiedPages = new BitSet();
+    this.setLayout(pageSize);
 
-      int[] pageCounts = new int[ib.capacity()];
-      ib.get(pageCounts);
+    this.store = storeType.open(this.fc, this.pageSize);
+    this.usablePageSize = this.store.getDataPageSize() - (checksums ? Page.CHECKSUM_SIZE : 0);
+    this.masterPage = this.store.readPage(0, -1, this.flushScheduler);
+    this.allocID = pACounter.getAndIncrement();
 
-      this.numPages = 0;
+    // an extent is only ever written after its directory page, so every extent the file reaches
+    // into has a directory page
+    int numExtents = 1;
+    try {
+      long fileBlocks = this.fc.size() / this.pageSize;
+      while (numExtents*this.headersPerDirectory < this.maxHeaderPages &&
+             numExtents*this.blocksPerExtent < fileBlocks) {
+        numExtents++;
+      }
+    } catch (IOException e) {
+      throw new PageException("Could not read File size: " + e.getMessage());
+    }
+    this.directoryPages = new Page[numExtents];
+    this.directoryPages[0] = this.masterPage;
+    for (int e = 1; e < numExtents; e++) {
+      this.directoryPages[e] = this.newDirectoryPage(e);
+    }
 
-      for (int i = 0; i < numHeaderPages; i++) {
-        if (pageCounts[i] > 0) {
-          getHeadPage(i).wipe();
+    if (wipe) {
+      // Nukes the directory pages and headerPages
+      for (int e = 0; e < numExtents; e++) {
+        Page directoryPage = this.getDirectoryPage(e);
+        for (int i = 0; i < this.headersPerDirectory; i++) {
+          if (directoryPage.readInt(this.countsOffset + i*4) > 0) {
+            getHeadPage(e*this.headersPerDirectory + i).wipe();
+          }
         }
+        directoryPage.wipe();
       }
-
-      this.masterPage.wipe();
+      this.directoryPages = new Page[] {this.masterPage};
+      numExtents = 1;
     }
+    if (this.countsOffset > 0 && (wipe || storedPageSize == 0)) {
+      int flags = (this.checksums ? FORMAT_CHECKSUMS : 0) |
+                  (this.storeType == PageStore.Type.COMPRESSED ? FORMAT_COMPRESSED : 0);
+      this.masterPage.writeInt(0, FORMAT_MAGIC | flags);
+      this.masterPage.writeInt(4, this.pageSize);
+    }
+
+    this.numHeaderPages = numExtents*this.headersPerDirectory;
+    this.headerCounts = new int[this.numHeaderPages];
+    this.headerSlots = new BitSet[this.numHeaderPages];
+    this.headerHints = new int[this.numHeaderPages];
+    this.headerPages = new Page[this.numHeaderPages];
 
-    byte[] masterBytes = masterPage.readBytes();
-    IntBuffer ib = ByteBuffer.wrap(masterBytes).asIntBuffer();
-    int[] pageCounts = new int[ib.capacity()];
-    ib.get(pageCounts);
+    for (int e = 0; e < numExtents; e++) {
+      byte[] directoryBytes = this.getDirectoryPage(e).readBytes();
+      ByteBuffer.wrap(directoryBytes, this.countsOffset, this.headersPerDirectory*4).asIntBuffer()
+          .get(this.headerCounts, e*this.headersPerDirectory, this.headersPerDirectory);
+    }
 
     this.numPages = 0;
-    for (int i = 0; i < numHeaderPages; i++) {
-      this.numPages += pageCounts[i];
+    this.firstOpenHeader = this.numHeaderPages;
+    for (int i = 0; i < this.numHeaderPages; i++) {
+      this.numPages += this.headerCounts[i];
+      if (this.headerCounts[i] < this.pageSize && this.firstOpenHeader == this.numHeaderPages) {
+        this.firstOpenHeader = i;
+      }
     }
+    this.open = true;
   }
 
   /**
@@ -97,53 +405,45 @@ public class PageAllocator implements Iterable<Page>, Closeable {
    * @return the virtual page number of the page
    */
   public int allocPage() {
-    byte[] masterBytes = this.masterPage.readBytes();
-    IntBuffer ib = ByteBuffer.wrap(masterBytes).asIntBuffer();
-    int[] pageCounts = new int[ib.capacity()];
-    ib.get(pageCounts);
-
-    Page headerPage = null;
-    int headerIndex = -1;
-    for (int i = 0; i < numHeaderPages; i++) {
-      if (pageCounts[i] < Page.pageSize) {
-        // Found header page with space
-        headerPage = getHeadPage(i);
-        headerIndex = i;
-        break;
-      }
-    }
+    int pageNum;
 
-    if (headerPage == null) {
-      throw new PageException("No free Pages Available");
-    }
+    synchronized(this) {
+      int headerIndex = this.firstOpenHeader;
+      if (headerIndex >= this.maxHeaderPages) {
+        throw new PageException("No free Pages Available");
+      }
+      if (headerIndex >= this.numHeaderPages) {
+        this.addExtent();
+      }
 
-    byte[] headerBytes = headerPage.readBytes();
-    int pageIndex = -1;
+      BitSet slots = this.getHeaderSlots(headerIndex);
+      int pageIndex = slots.nextClearBit(this.headerHints[headerIndex]);
 
-    for (int i = 0; i < Page.pageSize; i++) {
-      if (headerBytes[i] == 0) {
-        pageIndex = i;
-        break;
+      if (pageIndex >= this.pageSize) {
+       throw new PageException("Header page should have free page but doesnt");
       }
-    }
 
-    if (pageIndex == -1) {
-     throw new PageException("Header page should have free page but doesnt");
-    }
+      slots.set(pageIndex);
+      this.headerHints[headerIndex] = pageIndex + 1;
+      this.headerCounts[headerIndex]++;
+      this.writeHeaderCount(headerIndex);
+      this.getHeadPage(headerIndex).writeByte(pageIndex, (byte) 1);
 
-    int newCount = pageCounts[headerIndex] + 1;
-    byte[] newCountBytes = ByteBuffer.allocate(4).putInt(newCount).array();
-    this.masterPage.writeBytes(headerIndex*4, 4, newCountBytes);
-    headerPage.writeByte(pageIndex, (byte) 1);
+      while (this.firstOpenHeader < this.numHeaderPages &&
+             this.headerCounts[this.firstOpenHeader] >= this.pageSize) {
+        this.firstOpenHeader++;
+      }
 
-    if (this.durable) {
-      this.masterPage.flush();
-      headerPage.flush();
+      pageNum = headerIndex * this.pageSize + pageIndex;
+      this.numPages += 1;
+      // the page is about to be wiped, so whatever its block held is not verified
+      this.verifiedPages.set(pageNum);
     }
 
-    int pageNum = headerIndex * Page.pageSize + pageIndex;
-    fetchPage(pageNum).wipe();
-    this.numPages += 1;
+    this.headerChanged(pageNum/this.pageSize);
+
+    // a bulk load is not a sequential scan, so this fetch is not reported to read-ahead
+    this.bufferPool.fetchPage(this, pageNum, false).wipe();
     return pageNum;
   }
 
@@ -158,45 +458,127 @@ public class PageAllocator implements Iterable<Page>, Closeable {
       throw new PageException("invalid page number -- out of bounds");
     }
 
-    numIOs.getAndIncrement();
-
-    synchronized(PageAllocator.class) {
-      if (pageLRU.containsKey(translatePageNum(pageNum))) {
-        return pageLRU.get(translatePageNum(pageNum));
-      }
-    }
-
-    int headPageIndex = pageNum/Page.pageSize;
+    long start = System.nanoTime();
+    this.readAhead.pageFetched(pageNum);
+    Page p = this.bufferPool.fetchPage(this, pageNum, false);
+    this.metrics.recordFetchLatency(System.nanoTime() - start);
+    return p;
+  }
 
-    if (headPageIndex >= numHeaderPages) {
+  /**
+   * Fetches the page corresponding to virtual page number pageNum and pins it in the buffer pool
+   * so that it cannot be evicted until unpinPage is called.
+   *
+   * @param pageNum the virtual page number
+   * @return a Page object wrapping the page corresponding to pageNum
+   */
+  public Page fetchPinnedPage(int pageNum) {
+    if (pageNum < 0) {
       throw new PageException("invalid page number -- out of bounds");
     }
 
-    byte[] headCountBytes = this.masterPage.readBytes(headPageIndex*4, 4);
-    int headCount = ByteBuffer.wrap(headCountBytes).getInt();
+    long start = System.nanoTime();
+    this.readAhead.pageFetched(pageNum);
+    Page p = this.bufferPool.fetchPage(this, pageNum, true);
+    this.metrics.recordFetchLatency(System.nanoTime() - start);
+    return p;
+  }
 
-    if (headCount < 1) {
-      throw new PageException("invalid page number -- page not allocated");
+  /**
+   * Fetches the page corresponding to virtual page number pageNum without waiting for it to be
+   * read. A cached page is returned in a future that is already complete; otherwise the page is
+   * read on a shared IO thread, which also runs the future's dependent stages.
+   *
+   * @param pageNum the virtual page number
+   * @return a future of a Page object wrapping the page corresponding to pageNum
+   */
+  public CompletableFuture<Page> fetchPageAsync(int pageNum) {
+    if (pageNum < 0) {
+      CompletableFuture<Page> result = new CompletableFuture<Page>();
+      result.completeExceptionally(new PageException("invalid page number -- out of bounds"));
+      return result;
     }
+    this.readAhead.pageFetched(pageNum);
+    return AsyncFetcher.fetch(this, pageNum);
+  }
 
-    Page headPage = getHeadPage(headPageIndex);
+  /**
+   * Fetches every page in pageNums without waiting for them to be read. The pages that are not
+   * cached are read in page order, several at a time, on the shared IO threads. A batch is not a
+   * sequential scan, so it does not trigger read-ahead.
+   *
+   * @param pageNums the virtual page numbers
+   * @return a future of the pages, in the order of pageNums, that fails if any fetch fails
+   */
+  public CompletableFuture<Page[]> fetchPages(int[] pageNums) {
+    return AsyncFetcher.fetchAll(this, pageNums);
+  }
 
-    int dataPageIndex = pageNum % Page.pageSize;
+  /**
+   * Fetch page pageNum through the buffer pool on behalf of an asynchronous fetch, recording its
+   * latency but not reporting it to read-ahead.
+   */
+  Page loadPage(int pageNum) {
+    long start = System.nanoTime();
+    Page p = this.bufferPool.fetchPage(this, pageNum, false);
+    this.metrics.recordFetchLatency(System.nanoTime() - start);
+    return p;
+  }
 
-    byte validByte = headPage.readByte(dataPageIndex);
+  /**
+   * Releases a pin taken by fetchPinnedPage.
+   *
+   * @param p the pinned page
+   */
+  public void unpinPage(Page p) {
+    this.bufferPool.unpinPage(this, p.getPageNum());
+  }
 
-    if (validByte == 0) {
+  /**
+   * Reads the page corresponding to virtual page number pageNum from the file. Called by the
+   * BufferPool on a miss.
+   *
+   * @param pageNum the virtual page number
+   * @return a new Page object wrapping the page corresponding to pageNum
+   */
+  Page readPage(int pageNum) {
+    if (!this.isAllocated(pageNum)) {
       throw new PageException("invalid page number -- page not allocated");
     }
 
-    int dataBlockID = 2 + headPageIndex*(Page.pageSize + 1) + dataPageIndex;
-    Page dataPage = new Page(this.fc, dataBlockID, pageNum, this.durable);
+    int headPageIndex = pageNum/this.pageSize;
+    int dataPageIndex = pageNum % this.pageSize;
+    long dataBlockID = this.headerBlock(headPageIndex) + 1 + dataPageIndex;
+    Page page = this.store.readPage(dataBlockID, pageNum, this.flushScheduler);
+    if (this.checksums) {
+      page.enableChecksum();
+      this.verifyChecksum(page);
+    }
+    return page;
+  }
 
-    synchronized(PageAllocator.class) {
-      pageLRU.put(translatePageNum(pageNum), dataPage);
+  /**
+   * Verify the checksum of a data page the first time it is read since the file was opened. Later
+   * reads find the bytes this allocator last left in the page, whose checksum may not have been
+   * brought up to date yet.
+   */
+  private void verifyChecksum(Page page) {
+    int pageNum = page.getPageNum();
+    synchronized(this) {
+      if (this.verifiedPages.get(pageNum)) {
+        return;
+      }
     }
 
-    return dataPage;
+    long start = System.nanoTime();
+    boolean valid = page.verifyChecksum();
+    this.metrics.recordChecksum(System.nanoTime() - start, valid);
+    if (!valid) {
+      throw new PageException("checksum mismatch on page " + pageNum + " of " + this.name);
+    }
+    synchronized(this) {
+      this.verifiedPages.set(pageNum);
+    }
   }
 
   /**
@@ -207,40 +589,29 @@ public class PageAllocator implements Iterable<Page>, Closeable {
    * @return whether or not the page was freed
    */
   public boolean freePage(Page p) {
-    if (this.durable) {
+    if (this.flushesOnEviction()) {
       p.flush();
     }
     int pageNum = p.getPageNum();
-    int headPageIndex = pageNum/Page.pageSize;
-    int dataPageIndex = pageNum % Page.pageSize;
-
-    Page headPage = getHeadPage(headPageIndex);
-
-    if (headPage.readByte(dataPageIndex) == 0) {
-      return false;
-    }
+    int headPageIndex = pageNum/this.pageSize;
+    int dataPageIndex = pageNum % this.pageSize;
 
-    headPage.writeByte(dataPageIndex, (byte) 0);
-    if (this.durable) {
-      headPage.flush();
-    }
-    byte[] countBytes = masterPage.readBytes(4*headPageIndex,4);
-    int oldCount = ByteBuffer.wrap(countBytes).getInt();
-
-    int newCount = oldCount - 1;
-    byte[] newCountBytes = ByteBuffer.allocate(4).putInt(newCount).array();
-    masterPage.writeBytes(headPageIndex*4, 4, newCountBytes);
-    if (this.durable) {
-      masterPage.flush();
-    }
-
-    synchronized(PageAllocator.class) {
-      if (pageLRU.containsKey(translatePageNum(pageNum))) {
-        pageLRU.remove(translatePageNum(pageNum));
+    synchronized(this) {
+      if (!this.isAllocated(pageNum)) {
+        return false;
       }
+
+      this.headerSlots[headPageIndex].clear(dataPageIndex);
+      this.headerHints[headPageIndex] = Math.min(this.headerHints[headPageIndex], dataPageIndex);
+      this.headerCounts[headPageIndex]--;
+      this.firstOpenHeader = Math.min(this.firstOpenHeader, headPageIndex);
+      this.getHeadPage(headPageIndex).writeByte(dataPageIndex, (byte) 0);
+      this.writeHeaderCount(headPageIndex);
+      this.numPages -= 1;
     }
 
-    this.numPages -= 1;
+    this.headerChanged(headPageIndex);
+    this.bufferPool.discardPage(this, pageNum);
     return true;
   }
 
@@ -268,37 +639,25 @@ public class PageAllocator implements Iterable<Page>, Closeable {
     if (this.masterPage == null) {
       return;
     }
-    if (this.durable) {
-      this.masterPage.flush();
-    }
-    List<Long> toRemove = new ArrayList<Long>();
-    Set<Long> vPageNums = null;
-    List<Page> toFlush = new ArrayList<Page>();
-
-    synchronized(PageAllocator.class) {
-      vPageNums = pageLRU.keySet();
-    }
-
-    for (Long l : vPageNums) {
-      if (translateAllocator(l) == this.allocID) {
-        toRemove.add(l);
-      }
-    }
+    // stop prefetches from bringing pages back before they are all discarded
+    this.open = false;
 
-    synchronized(PageAllocator.class) {
-      for (Long vPageNum : toRemove) {
-        if (pageLRU.containsKey(vPageNum)) {
-          toFlush.add(pageLRU.get(vPageNum));
-          pageLRU.remove(vPageNum);
-        }
+    // every dirty page, cached or not, is tracked by the scheduler
+    List<Page> cached = this.bufferPool.discardAll(this);
+    if (this.checksums) {
+      // pages that are not durable are never forced, but the kernel still writes them back
+      for (Page p : cached) {
+        p.updateChecksum();
       }
     }
-    if (this.durable) {
-      for (Page p : toFlush) {
-        p.flush();
-      }
+    if (this.flushScheduler != null) {
+      this.flushScheduler.close();
     }
+    this.store.close();
+    IOMetricsRegistry.unregister(this.name, this.metrics);
     this.masterPage = null;
+    this.directoryPages = null;
+    this.store = null;
     try {
       this.fc.close();
     } catch (IOException e) {
@@ -306,37 +665,323 @@ public class PageAllocator implements Iterable<Page>, Closeable {
     }
   }
 
+  /**
+   * Read page pageNum into the buffer pool ahead of its use if it is allocated and not cached.
+   * Called from read-ahead threads.
+   *
+   * @param pageNum the virtual page number
+   */
+  void prefetchPage(int pageNum) {
+    if (this.isOpen() && this.isAllocated(pageNum)) {
+      this.bufferPool.prefetchPage(this, pageNum);
+    }
+  }
+
+  /**
+   * @return whether this allocator has not been closed yet
+   */
+  boolean isOpen() {
+    return this.open;
+  }
+
+  /**
+   * Set how many pages are read ahead once sequential access is detected. 0 turns read-ahead off.
+   *
+   * @param depth the number of pages to read ahead
+   */
+  public void setReadAheadDepth(int depth) {
+    this.readAhead.setDepth(depth);
+  }
+
+  public int getReadAheadDepth() {
+    return this.readAhead.getDepth();
+  }
+
+  /**
+   * Force every dirty page of this allocator to disk, including the master and header pages.
+   * Returns once they are all durable. Does nothing if the allocator is not durable.
+   */
+  public void sync() {
+    if (this.flushScheduler != null) {
+      this.flushScheduler.sync();
+    }
+  }
+
+  /**
+   * Called by the BufferPool when one of this allocator's dirty pages is evicted, and by a
+   * BackgroundWriter ahead of eviction. Unless flushes are deferred, the page is forced right away.
+   * Otherwise the store writes it back if it has to.
+   */
+  void writeBack(Page p) {
+    if (this.checksums) {
+      p.updateChecksum();
+    }
+    if (this.flushesOnEviction()) {
+      p.flush();
+    } else {
+      this.store.pageEvicted(p);
+    }
+  }
+
+  /**
+   * @return whether a dirty page of this allocator has to be written when it is evicted: forced if
+   * the allocator flushes immediately, or written back if it is not durable and its pages are not
+   * mapped
+   */
+  boolean writesBackOnEviction() {
+    return this.flushesOnEviction() ||
+           (this.flushScheduler == null && this.storeType != PageStore.Type.MMAP);
+  }
+
+  /**
+   * @return whether a dirty page of this allocator is forced when it is evicted
+   */
+  boolean flushesOnEviction() {
+    return this.flushScheduler != null && !this.flushScheduler.defersEviction();
+  }
+
+  /**
+   * Force the directory page and header page headIndex after an allocation change, if this
+   * allocator flushes immediately. Otherwise they are left to the scheduler.
+   */
+  private void headerChanged(int headIndex) {
+    if (this.flushesOnEviction()) {
+      this.getDirectoryPage(headIndex / this.headersPerDirectory).flush();
+      this.getHeadPage(headIndex).flush();
+    }
+  }
+
+  /**
+   * Grow the directory by one extent once every header page it covers is full. Must be called
+   * while holding this allocator's monitor.
+   */
+  private void addExtent() {
+    int numExtents = this.directoryPages.length + 1;
+    this.numHeaderPages = numExtents*this.headersPerDirectory;
+    Page[] directoryPages = Arrays.copyOf(this.directoryPages, numExtents);
+    directoryPages[numExtents - 1] = this.newDirectoryPage(numExtents - 1);
+    this.directoryPages = directoryPages;
+    this.headerCounts = Arrays.copyOf(this.headerCounts, this.numHeaderPages);
+    this.headerSlots = Arrays.copyOf(this.headerSlots, this.numHeaderPages);
+    this.headerHints = Arrays.copyOf(this.headerHints, this.numHeaderPages);
+    this.headerPages = Arrays.copyOf(this.headerPages, this.numHeaderPages);
+  }
+
+  /**
+   * Write the allocated-page count of header page headIndex through to its directory page.
+   */
+  private void writeHeaderCount(int headIndex) {
+    Page directoryPage = this.getDirectoryPage(headIndex / this.headersPerDirectory);
+    int offset = this.countsOffset + (headIndex % this.headersPerDirectory)*4;
+    directoryPage.writeInt(offset, this.headerCounts[headIndex]);
+  }
+
+  private Page getDirectoryPage(int extent) {
+    return this.directoryPages[extent];
+  }
+
+  private Page newDirectoryPage(int extent) {
+    return this.store.readPage(extent*this.blocksPerExtent, -1, this.flushScheduler);
+  }
+
+  /**
+   * @return the block in the file of header page headIndex; its data pages follow it
+   */
+  private long headerBlock(int headIndex) {
+    int extent = headIndex / this.headersPerDirectory;
+    int indexInExtent = headIndex % this.headersPerDirectory;
+    return extent*this.blocksPerExtent + 1 + ((long) indexInExtent)*(this.pageSize + 1);
+  }
+
+  /**
+   * Read the page size stored at the start of the file, before anything is mapped.
+   *
+   * @return the page size of the file, or 0 if the file is empty
+   */
+  private int readPageSize() throws IOException {
+    if (this.fc.size() == 0) {
+      return 0;
+    }
+    ByteBuffer start = ByteBuffer.allocate(8);
+    this.fc.read(start, 0);
+    if ((start.getInt(0) & ~FORMAT_FLAGS) != FORMAT_MAGIC) {
+      return Page.pageSize;
+    }
+    int pageSize = start.getInt(4);
+    if (pageSize < Page.MIN_PAGE_SIZE || pageSize > Page.MAX_PAGE_SIZE ||
+        Integer.bitCount(pageSize) != 1) {
+      throw new PageException("File has a corrupt page size: " + pageSize);
+    }
+    return pageSize;
+  }
+
+  /**
+   * Read the flags stored with FORMAT_MAGIC at the start of the file.
+   *
+   * @return the flags of the file, or 0 if it is empty or has no FORMAT_MAGIC
+   */
+  private int readFormatFlags() throws IOException {
+    if (this.fc.size() == 0) {
+      return 0;
+    }
+    ByteBuffer start = ByteBuffer.allocate(4);
+    this.fc.read(start, 0);
+    int magic = start.getInt(0);
+    if ((magic & ~FORMAT_FLAGS) != FORMAT_MAGIC) {
+      return 0;
+    }
+    return magic & FORMAT_FLAGS;
+  }
+
+  /**
+   * Work out where everything lives in a file of pageSize pages, given its format flags.
+   */
+  private void setLayout(int pageSize) {
+    this.pageSize = pageSize;
+    boolean legacy = pageSize == Page.pageSize && !this.checksums &&
+                     this.storeType != PageStore.Type.COMPRESSED;
+    this.countsOffset = legacy ? 0 : 8;
+    this.headersPerDirectory = (pageSize - this.countsOffset) / 4;
+    this.blocksPerExtent = 1 + ((long) this.headersPerDirectory)*(pageSize + 1);
+    this.maxHeaderPages = (int) ((Integer.MAX_VALUE + 1L) / pageSize);
+  }
+
   private Page getHeadPage(int headIndex) {
-    int headBlockID = 1 + headIndex*(Page.pageSize + 1);
-    return new Page(this.fc, headBlockID, -1);
+    if (this.headerPages != null && this.headerPages[headIndex] != null) {
+      return this.headerPages[headIndex];
+    }
+
+    long headBlockID = this.headerBlock(headIndex);
+    Page headPage = this.store.readPage(headBlockID, -1, this.flushScheduler);
+    if (this.headerPages != null) {
+      this.headerPages[headIndex] = headPage;
+    }
+    return headPage;
+  }
+
+  /**
+   * Return the allocated-slot bitmap of header page headIndex, reading the header page in the first
+   * time it is needed. Must be called while holding this allocator's monitor.
+   */
+  private BitSet getHeaderSlots(int headIndex) {
+    BitSet slots = this.headerSlots[headIndex];
+    if (slots == null) {
+      slots = new BitSet(this.pageSize);
+      if (this.headerCounts[headIndex] > 0) {
+        byte[] headerBytes = this.getHeadPage(headIndex).readBytes();
+        for (int i = 0; i < this.pageSize; i++) {
+          if (headerBytes[i] != 0) {
+            slots.set(i);
+          }
+        }
+      }
+      this.headerSlots[headIndex] = slots;
+    }
+    return slots;
+  }
+
+  /**
+   * @return whether virtual page pageNum is currently allocated
+   */
+  private synchronized boolean isAllocated(int pageNum) {
+    int headPageIndex = pageNum/this.pageSize;
+
+    if (pageNum < 0 || headPageIndex >= this.numHeaderPages) {
+      throw new PageException("invalid page number -- out of bounds");
+    }
+    if (this.headerCounts[headPageIndex] < 1) {
+      return false;
+    }
+    return this.getHeaderSlots(headPageIndex).get(pageNum % this.pageSize);
   }
 
   public int getNumPages() {
     return this.numPages;
   }
 
-  public static long getNumIOs() {
-    return PageAllocator.numIOs.get();
+  /**
+   * @return the size in bytes of every page of this allocator's file
+   */
+  public int getPageSize() {
+    return this.pageSize;
+  }
+
+  /**
+   * @return the number of bytes of each data page that can be used, which is the page size less
+   * the checksum trailer if the file keeps checksums, and less the slot header if it is compressed
+   */
+  public int getUsablePageSize() {
+    return this.usablePageSize;
+  }
+
+  /**
+   * @return the bytes of data pages written back since the file was opened divided by the bytes
+   * they took in the file, or 1 if the file is not compressed or nothing was written back
+   */
+  public double getCompressionRatio() {
+    PageStore store = this.store;
+    if (store instanceof CompressedFile) {
+      return ((CompressedFile) store).getCompressionRatio();
+    }
+    return 1.0;
+  }
+
+  /**
+   * @return whether this allocator's file keeps a checksum in every data page
+   */
+  public boolean hasChecksums() {
+    return this.checksums;
   }
 
-  static void incrementNumIOs() {
-    PageAllocator.numIOs.getAndIncrement();
+  /**
+   * @return the IO and buffer pool counters for this PageAllocator
+   */
+  public IOMetrics getMetrics() {
+    return this.metrics;
   }
 
-  static void incrementCacheMisses() {
-    PageAllocator.cacheMisses.getAndIncrement();
+  public BufferPool getBufferPool() {
+    return this.bufferPool;
   }
 
+  /**
+   * @return how this allocator's blocks are read and written
+   */
+  public PageStore.Type getStoreType() {
+    return this.storeType;
+  }
+
+  /**
+   * @return the scheduler that forces this allocator's pages, or null if it is not durable
+   */
+  public FlushScheduler getFlushScheduler() {
+    return this.flushScheduler;
+  }
+
+  /**
+   * @return the number of pages read from or written to disk by all allocators
+   */
+  public static long getNumIOs() {
+    IOMetrics totals = IOMetricsRegistry.getTotals();
+    return totals.getPhysicalReads() + totals.getWrites();
+  }
+
+  /**
+   * @return the number of fetches by all allocators that missed the buffer pool
+   */
   public static long getNumCacheMisses() {
-    return PageAllocator.cacheMisses.get();
+    return IOMetricsRegistry.getTotals().getMisses();
   }
 
-  private long translatePageNum(int pageNum) {
-    return (((long) this.allocID) << 32) | (((long) pageNum) & 0xFFFFFFFFL);
+  /**
+   * @return the absolute name of this allocator's file, under which its metrics are registered
+   */
+  public String getName() {
+    return this.name;
   }
 
-  static private int translateAllocator(long vPageNum) {
-    return (int) ((vPageNum & 0xFFFFFFFF00000000L) >> 32);
+  long translatePageNum(int pageNum) {
+    return (((long) this.allocID) << 32) | (((long) pageNum) & 0xFFFFFFFFL);
   }
 
   /**
@@ -346,6 +991,10 @@ public class PageAllocator implements Iterable<Page>, Closeable {
       return new PageIterator();
   }
 
+  /**
+   * Iterates over the valid pages of this allocator. Pages are returned the way fetchPage returns
+   * them, unpinned, so an iterator that is dropped before the end holds nothing in the buffer pool.
+   */
   private class PageIterator implements Iterator<Page> {
     private int pageNum;
     private int cursor;
@@ -361,17 +1010,13 @@ public class PageAllocator implements Iterable<Page>, Closeable {
 
     public Page next() {
       if (this.hasNext()) {
-        while (true) {
-          Page p;
-          try {
-            p = PageAllocator.this.fetchPage(cursor);
-            cursor++;
-            pageNum++;
-            return p;
-          } catch (PageException e) {
-            cursor++;
-          }
+        while (!PageAllocator.this.isAllocated(cursor)) {
+          cursor++;
         }
+        Page p = PageAllocator.this.fetchPage(cursor);
+        cursor++;
+        pageNum++;
+        return p;
       }
       throw new NoSuchElementException();
     }
@@ -0,0 +1,102 @@
+package edu.berkeley.cs186.database.io;
+
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+/**
+ * Moves the blocks of a PageAllocator's file between disk and memory. A store hands out Page objects
+ * over blocks and knows how to make a page's bytes durable. Every store lays the file out the same
+ * way, so a file written through MMAP can be opened through DIRECT and the other way around.
+ *
+ * MMAP maps the file into memory and lets the kernel decide when blocks are read, written back and
+ * dropped. DIRECT reads blocks with positional reads into off-heap buffers and writes them back with
+ * positional writes, so nothing reaches the file until the buffer pool evicts a page or a sync
+ * writes it, and a page that is cached never faults. COMPRESSED works like DIRECT, but compresses
+ * data pages as they are written back and decompresses them as they are read; unlike the other two
+ * it changes the file's format, so a compressed file can only be opened compressed. It only reads
+ * fewer bytes than DIRECT for pages larger than 4KB, and never gives back the space a page took
+ * once it compresses less well, so it suits large pages of tables that are mostly scanned.
+ *
+ * YOU SHOULD NOT NEED TO CHANGE ANY OF THE CODE IN THIS PACKAGE.
+ */
+public interface PageStore {
+
+  /**
+   * The stores that ship with the database.
+   */
+  enum Type {
+    MMAP, DIRECT, COMPRESSED;
+
+    /**
+     * Create a new store of this type over fc.
+     *
+     * @param fc the file to store blocks in
+     * @param blockSize the size in bytes of every block of the file
+     * @return the new store
+     */
+    public PageStore open(FileChannel fc, int blockSize) {
+      switch (this) {
+        case MMAP:
+          return new MappedFile(fc, blockSize);
+        case DIRECT:
+          return new DirectFile(fc, blockSize);
+        case COMPRESSED:
+          return new CompressedFile(fc, blockSize);
+        default:
+          throw new IllegalArgumentException("unknown page store " + this);
+      }
+    }
+  }
+
+  /**
+   * @return the size in bytes of every block of the file
+   */
+  int getBlockSize();
+
+  /**
+   * @return the size in bytes of the pages this store hands out for data pages, which is the block
+   * size unless the store keeps something of its own in every block
+   */
+  int getDataPageSize();
+
+  /**
+   * Return a Page over block blockNum of the file.
+   *
+   * @param blockNum the block in the file
+   * @param pageNum the virtual page number of the page, or -1 for a page of the allocator's own
+   * @param scheduler the scheduler that forces the page to disk, or null if it is not durable
+   * @return a Page over the block
+   */
+  Page readPage(long blockNum, int pageNum, FlushScheduler scheduler);
+
+  /**
+   * Called when a dirty page leaves the buffer pool without being forced. A store whose pages are
+   * not backed by the file writes the page back here.
+   *
+   * @param page the evicted page
+   */
+  void pageEvicted(Page page);
+
+  /**
+   * Make a single page durable.
+   *
+   * @param page the page to force
+   */
+  void force(Page page);
+
+  /**
+   * Make every page in pages durable, forcing as little as possible, and record each force in
+   * metrics.
+   *
+   * @param pages the pages to force, all of them from this store
+   * @param metrics the metrics to record the forces in
+   * @return the number of forces issued
+   */
+  int forcePages(List<Page> pages, IOMetrics metrics);
+
+  /**
+   * Write back every page that has changed since it was last written. Called when the owning
+   * allocator is closed, after its durable pages have been synced.
+   */
+  void close();
+}
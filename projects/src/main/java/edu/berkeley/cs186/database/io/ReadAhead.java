@@ -0,0 +1,116 @@
+package edu.berkeley.cs186.database.io;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sequential read-ahead for a single PageAllocator. Every fetch is reported to pageFetched; once
+ * SEQUENTIAL_RUN pages in a row have been fetched in increasing order, the next depth pages are
+ * read into the buffer pool on a shared IO thread. The window is topped up whenever the reader gets
+ * within half a window of its end, so a long scan keeps finding its pages already cached.
+ *
+ * Fetching the same page again, as a record-at-a-time scan does, neither extends nor breaks a run.
+ * The detector is a heuristic and is not synchronized: threads interleaving fetches on the same
+ * allocator at worst cause a missed or extra prefetch.
+ *
+ * YOU SHOULD NOT NEED TO CHANGE ANY OF THE CODE IN THIS PACKAGE.
+ */
+class ReadAhead {
+  static final int SEQUENTIAL_RUN = 3;
+
+  private static final int NUM_IO_THREADS = 2;
+  private static final int MAX_QUEUED_TASKS = 64;
+  private static ThreadPoolExecutor ioExecutor = null;
+
+  private PageAllocator allocator;
+  private volatile int depth;
+  private int lastPageNum;
+  private int runLength;
+  private int prefetchedUpTo;
+
+  ReadAhead(PageAllocator allocator, int depth) {
+    this.allocator = allocator;
+    this.depth = depth;
+    this.lastPageNum = -1;
+    this.runLength = 0;
+    this.prefetchedUpTo = -1;
+  }
+
+  /**
+   * Record a fetch of pageNum and start a prefetch if it continues a sequential run.
+   */
+  void pageFetched(int pageNum) {
+    int depth = this.depth;
+    if (depth == 0 || pageNum == this.lastPageNum) {
+      return;
+    }
+
+    if (pageNum == this.lastPageNum + 1) {
+      this.runLength++;
+    } else {
+      this.runLength = 1;
+      this.prefetchedUpTo = pageNum;
+    }
+    this.lastPageNum = pageNum;
+
+    if (this.runLength >= SEQUENTIAL_RUN && this.prefetchedUpTo - pageNum <= depth / 2) {
+      int from = Math.max(this.prefetchedUpTo, pageNum) + 1;
+      int to = pageNum + depth;
+      this.prefetchedUpTo = to;
+      ReadAhead.getExecutor().execute(new PrefetchTask(this.allocator, from, to));
+    }
+  }
+
+  int getDepth() {
+    return this.depth;
+  }
+
+  void setDepth(int depth) {
+    if (depth < 0) {
+      throw new IllegalArgumentException("read-ahead depth can't be negative");
+    }
+    this.depth = depth;
+  }
+
+  /**
+   * The IO threads shared by all allocators. Prefetches are only hints, so when the queue is full
+   * new ones are dropped rather than making the reader wait.
+   */
+  private static synchronized ThreadPoolExecutor getExecutor() {
+    if (ReadAhead.ioExecutor == null) {
+      ReadAhead.ioExecutor = new ThreadPoolExecutor(NUM_IO_THREADS, NUM_IO_THREADS, 0,
+                                                    TimeUnit.MILLISECONDS,
+                                                    new ArrayBlockingQueue<Runnable>(MAX_QUEUED_TASKS),
+                                                    new DaemonThreadFactory("read-ahead"),
+                                                    new ThreadPoolExecutor.DiscardPolicy());
+    }
+    return ReadAhead.ioExecutor;
+  }
+
+  /**
+   * Reads pages from through to of an allocator into its buffer pool, skipping pages that are not
+   * allocated and stopping if the allocator is closed.
+   */
+  private static class PrefetchTask implements Runnable {
+    private PageAllocator allocator;
+    private int from;
+    private int to;
+
+    private PrefetchTask(PageAllocator allocator, int from, int to) {
+      this.allocator = allocator;
+      this.from = from;
+      this.to = to;
+    }
+
+    public void run() {
+      try {
+        for (int pageNum = this.from; pageNum <= this.to && this.allocator.isOpen(); pageNum++) {
+          this.allocator.prefetchPage(pageNum);
+        }
+      } catch (RuntimeException e) {
+        // the allocator was closed, or every frame is pinned; prefetching is only a hint
+      }
+    }
+  }
+}
@@ -0,0 +1,162 @@
+package edu.berkeley.cs186.database.io;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * Scan-resistant 2Q eviction. Pages enter the pool on a FIFO probation queue (A1in). Pages evicted
+ * from probation are remembered in a bounded ghost queue (A1out); a page that misses again while it
+ * is remembered there is admitted to the main queue (Am). A sequential scan therefore only cycles
+ * pages through probation and never displaces the working set held in Am.
+ *
+ * Hits only set a reference bit. Am is managed as a CLOCK: a referenced frame at its head is given
+ * a second chance by moving it to the tail instead of being evicted.
+ *
+ * YOU SHOULD NOT NEED TO CHANGE ANY OF THE CODE IN THIS PACKAGE.
+ */
+public class TwoQueuePolicy implements EvictionPolicy {
+  private static final int NONE = -1;
+  private static final int PROBATION = 0;
+  private static final int MAIN = 1;
+
+  private int maxProbation;
+  private int maxGhosts;
+
+  private long[] keys;
+  private int[] queueOf;
+  private boolean[] referenced;
+  private int[] prev;
+  private int[] next;
+  private int[] heads;
+  private int[] tails;
+  private int[] sizes;
+  private LinkedHashSet<Long> ghosts;
+
+  public TwoQueuePolicy(int numFrames) {
+    this.maxProbation = Math.max(1, numFrames / 4);
+    this.maxGhosts = Math.max(1, numFrames / 2);
+
+    this.keys = new long[numFrames];
+    this.queueOf = new int[numFrames];
+    this.referenced = new boolean[numFrames];
+    this.prev = new int[numFrames];
+    this.next = new int[numFrames];
+    this.heads = new int[] {NONE, NONE};
+    this.tails = new int[] {NONE, NONE};
+    this.sizes = new int[2];
+    this.ghosts = new LinkedHashSet<Long>();
+
+    for (int i = 0; i < numFrames; i++) {
+      this.queueOf[i] = NONE;
+    }
+  }
+
+  public void pageLoaded(int frameNum, long key) {
+    this.keys[frameNum] = key;
+    this.referenced[frameNum] = false;
+
+    if (this.ghosts.remove(key)) {
+      this.pushTail(MAIN, frameNum);
+    } else {
+      this.pushTail(PROBATION, frameNum);
+    }
+  }
+
+  public void pageAccessed(int frameNum) {
+    this.referenced[frameNum] = true;
+  }
+
+  public void pageRemoved(int frameNum) {
+    if (this.queueOf[frameNum] != NONE) {
+      this.unlink(frameNum);
+    }
+  }
+
+  public int chooseVictim(int[] pinCounts) {
+    int victim = NONE;
+
+    if (this.sizes[PROBATION] > this.maxProbation || this.sizes[MAIN] == 0) {
+      victim = this.evictProbation(pinCounts);
+    }
+    if (victim == NONE) {
+      victim = this.evictMain(pinCounts);
+    }
+    if (victim == NONE) {
+      victim = this.evictProbation(pinCounts);
+    }
+    return victim;
+  }
+
+  /**
+   * Evict the oldest unpinned page on probation and remember it in the ghost queue.
+   */
+  private int evictProbation(int[] pinCounts) {
+    for (int frameNum = this.heads[PROBATION]; frameNum != NONE; frameNum = this.next[frameNum]) {
+      if (pinCounts[frameNum] == 0) {
+        this.unlink(frameNum);
+        this.ghosts.add(this.keys[frameNum]);
+
+        if (this.ghosts.size() > this.maxGhosts) {
+          Iterator<Long> oldest = this.ghosts.iterator();
+          oldest.next();
+          oldest.remove();
+        }
+        return frameNum;
+      }
+    }
+    return NONE;
+  }
+
+  /**
+   * Run the CLOCK over the main queue until an unreferenced, unpinned frame reaches its head.
+   */
+  private int evictMain(int[] pinCounts) {
+    int steps = 2 * this.sizes[MAIN];
+
+    for (int i = 0; i < steps; i++) {
+      int frameNum = this.heads[MAIN];
+      if (pinCounts[frameNum] == 0 && !this.referenced[frameNum]) {
+        this.unlink(frameNum);
+        return frameNum;
+      }
+
+      this.referenced[frameNum] = false;
+      this.unlink(frameNum);
+      this.pushTail(MAIN, frameNum);
+    }
+    return NONE;
+  }
+
+  private void pushTail(int queue, int frameNum) {
+    this.queueOf[frameNum] = queue;
+    this.prev[frameNum] = this.tails[queue];
+    this.next[frameNum] = NONE;
+    if (this.tails[queue] == NONE) {
+      this.heads[queue] = frameNum;
+    } else {
+      this.next[this.tails[queue]] = frameNum;
+    }
+    this.tails[queue] = frameNum;
+    this.sizes[queue]++;
+  }
+
+  private void unlink(int frameNum) {
+    int queue = this.queueOf[frameNum];
+    int before = this.prev[frameNum];
+    int after = this.next[frameNum];
+
+    if (before == NONE) {
+      this.heads[queue] = after;
+    } else {
+      this.next[before] = after;
+    }
+
+    if (after == NONE) {
+      this.tails[queue] = before;
+    } else {
+      this.prev[after] = before;
+    }
+    this.queueOf[frameNum] = NONE;
+    this.sizes[queue]--;
+  }
+}
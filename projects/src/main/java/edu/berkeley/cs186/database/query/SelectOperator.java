@@ -238,23 +238,21 @@ public class SelectOperator extends QueryOperator {
       baseValues = new ArrayList<DataBox>();
     } else {
       // in the case where there are no aggregates, we simply iterate over the list of records
-      // and project out the columns
+      // and project out the columns; records read from a table only decode those columns
+      int[] projection = new int[this.indices.size()];
+      for (int i = 0; i < projection.length; i++) {
+        projection[i] = this.indices.get(i);
+      }
+
       while (sourceIterator.hasNext()) {
         Record r = sourceIterator.next();
-        List<DataBox> recordValues = r.getValues();
-        List<DataBox> newValues = new ArrayList<DataBox>();
 
         // if there is a marker record (in the case we're selecting from a group by), we simply
         // leave the marker records in
         if (r == markerRecord) {
           newRecords.add(markerRecord);
         } else {
-          for (int index : this.indices) {
-            newValues.add(recordValues.get(index));
-          }
-
-          Record newRecord = new Record(newValues);
-          newRecords.add(newRecord);
+          newRecords.add(r.project(projection));
         }
       }
     }
@@ -10,6 +10,7 @@ import edu.berkeley.cs186.database.table.Schema;
 public class SequentialScanOperator extends QueryOperator {
   private Database.Transaction transaction;
   private String tableName;
+  private boolean parallel;
 
   /**
    * Creates a new SequentialScanOperator that provides an iterator on all tuples in a table.
@@ -24,18 +25,42 @@ public class SequentialScanOperator extends QueryOperator {
    */
   public SequentialScanOperator(Database.Transaction transaction,
                                 String tableName) throws QueryPlanException, DatabaseException {
+    this(transaction, tableName, false);
+  }
+
+  /**
+   * Creates a new SequentialScanOperator that, if parallel is true, decodes the pages of the
+   * table ahead of the one being read on the common ForkJoinPool. Records come out in the same
+   * order either way.
+   *
+   * @param transaction
+   * @param tableName
+   * @param parallel whether to decode pages in parallel
+   * @throws QueryPlanException
+   * @throws DatabaseException
+   */
+  public SequentialScanOperator(Database.Transaction transaction, String tableName,
+                                boolean parallel) throws QueryPlanException, DatabaseException {
     super(OperatorType.SEQSCAN);
 
     this.transaction = transaction;
     this.tableName = tableName;
+    this.parallel = parallel;
 
     this.setOutputSchema(this.computeSchema());
   }
 
   public Iterator<Record> execute() throws DatabaseException {
+    if (this.parallel) {
+      return this.transaction.getParallelRecordIterator(tableName);
+    }
     return this.transaction.getRecordIterator(tableName);
   }
 
+  public boolean isParallel() {
+    return this.parallel;
+  }
+
   public Schema computeSchema() throws QueryPlanException {
     try {
       return this.transaction.getFullyQualifiedSchema(this.tableName);
@@ -48,43 +48,45 @@ public class WhereOperator extends QueryOperator {
       if (r == markerRecord) {
         validRecords.add(r);
       } else {
+        // only the column being compared is decoded
+        DataBox recordValue = r.getValues().get(this.columnIndex);
 
         switch (this.operator) {
           case EQUALS:
-            if (r.getValues().get(this.columnIndex).equals(value)) {
+            if (recordValue.equals(value)) {
               validRecords.add(r);
             }
             break;
 
           case NOT_EQUALS:
-            if (!r.getValues().get(this.columnIndex).equals(value)) {
+            if (!recordValue.equals(value)) {
               validRecords.add(r);
             }
             break;
 
           case LESS_THAN:
-            if (r.getValues().get(this.columnIndex).compareTo(value) == -1) {
+            if (recordValue.compareTo(value) == -1) {
               validRecords.add(r);
             }
             break;
 
           case LESS_THAN_EQUALS:
-            if (r.getValues().get(this.columnIndex).compareTo(value) == -1) {
+            if (recordValue.compareTo(value) == -1) {
               validRecords.add(r);
-            } else if (r.getValues().get(this.columnIndex).compareTo(value) == 0) {
+            } else if (recordValue.compareTo(value) == 0) {
               validRecords.add(r);
             }
             break;
           case GREATER_THAN:
-            if (r.getValues().get(this.columnIndex).compareTo(value) == 1) {
+            if (recordValue.compareTo(value) == 1) {
               validRecords.add(r);
             }
             break;
 
           case GREATER_THAN_EQUALS:
-            if (r.getValues().get(this.columnIndex).compareTo(value) == 1) {
+            if (recordValue.compareTo(value) == 1) {
               validRecords.add(r);
-            } else if (r.getValues().get(this.columnIndex).compareTo(value) == 0) {
+            } else if (recordValue.compareTo(value) == 0) {
               validRecords.add(r);
             }
             break;
@@ -0,0 +1,106 @@
+package edu.berkeley.cs186.database.table;
+
+import edu.berkeley.cs186.database.databox.DataBox;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The values of an encoded record, decoded one field at a time as they are asked for. A record
+ * read from a table holds its values this way, so an operator that looks at one column of a wide
+ * table only pays for decoding that column. A decoded value is kept, so changes made to it stick.
+ * Like the ArrayList a record used to hold, the values can be added to and removed from: the
+ * first such change decodes them all into an ArrayList, which holds them from then on.
+ */
+class EncodedValues extends AbstractList<DataBox> {
+  private Schema schema;
+  private byte[] bytes;
+  private DataBox[] values;
+  private List<DataBox> list;
+
+  /**
+   * @param schema the schema bytes was encoded with
+   * @param bytes the encoded record, which is not copied
+   */
+  EncodedValues(Schema schema, byte[] bytes) {
+    this.schema = schema;
+    this.bytes = bytes;
+    this.values = new DataBox[schema.getFieldTypes().size()];
+  }
+
+  public DataBox get(int index) {
+    if (this.list != null) {
+      return this.list.get(index);
+    }
+    if (this.values[index] == null) {
+      this.values[index] = this.schema.decodeField(this.bytes, index);
+    }
+    return this.values[index];
+  }
+
+  public DataBox set(int index, DataBox value) {
+    if (this.list != null) {
+      return this.list.set(index, value);
+    }
+    DataBox old = this.get(index);
+    this.values[index] = value;
+    return old;
+  }
+
+  public int size() {
+    return this.list != null ? this.list.size() : this.values.length;
+  }
+
+  public void add(int index, DataBox value) {
+    this.decodeAll().add(index, value);
+    this.modCount++;
+  }
+
+  public DataBox remove(int index) {
+    DataBox old = this.decodeAll().remove(index);
+    this.modCount++;
+    return old;
+  }
+
+  /**
+   * Decode every value that has not been decoded yet into an ArrayList, which holds the values
+   * from then on.
+   *
+   * @return the ArrayList
+   */
+  private List<DataBox> decodeAll() {
+    if (this.list == null) {
+      List<DataBox> list = new ArrayList<DataBox>(this.values.length);
+      for (int i = 0; i < this.values.length; i++) {
+        list.add(this.get(i));
+      }
+      this.list = list;
+      this.bytes = null;
+      this.values = null;
+    }
+    return this.list;
+  }
+
+  /**
+   * @param columns the indices of the columns to keep, in the order to keep them
+   * @return a Record of the columns, which no longer refers to the encoded record
+   */
+  Record project(int[] columns) {
+    if (this.list != null) {
+      List<DataBox> projected = new ArrayList<DataBox>(columns.length);
+      for (int column : columns) {
+        projected.add(this.list.get(column));
+      }
+      return new Record(projected);
+    }
+
+    Record record = this.schema.decode(this.bytes, columns);
+    for (int i = 0; i < columns.length; i++) {
+      if (this.values[columns[i]] != null) {
+        record.getValues().set(i, this.values[columns[i]]);
+      }
+    }
+    return record;
+  }
+}
@@ -0,0 +1,151 @@
+package edu.berkeley.cs186.database.table;
+
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.io.PageAllocator;
+
+import java.io.Closeable;
+import java.io.File;
+
+/**
+ * A persistent map from the data pages of a table to how many free slots each of them has, kept
+ * in a file of its own next to the table's so that the table's page numbers are not disturbed.
+ *
+ * Page f of the map covers the table's pages f * entriesPerPage up to (f + 1) * entriesPerPage.
+ * It starts with the number of those pages that have a free slot, followed by one unsigned short
+ * per page with its number of free slots. Pages that are not data pages, like the table's header
+ * page, never have free slots. Opening a map reads none of its pages, and a map page whose count
+ * is 0 is skipped without looking at its entries.
+ *
+ * A table of slotted pages keeps the number of bytes a new record could take on each page in the
+ * map instead, capped at 65535, and looks for a page with enough of them.
+ *
+ * The map is a hint: a page it says has space is checked against the page's own slot bitmap before
+ * a record goes in, and corrected if the two disagree.
+ */
+class FreeSpaceMap implements Closeable {
+  private static final int ENTRIES_OFFSET = 4;
+
+  private PageAllocator allocator;
+  private int entriesPerPage;
+  private boolean created;
+
+  // no page below this one has a free slot
+  private int cursor;
+
+  /**
+   * Open the free space map in file pathname, creating it if it does not exist or wipe is true.
+   *
+   * @param pathname the name of the map's file
+   * @param wipe whether to empty the map
+   */
+  FreeSpaceMap(String pathname, boolean wipe) {
+    this.created = wipe || !new File(pathname).exists();
+    this.allocator = new PageAllocator(pathname, this.created);
+    this.entriesPerPage = (this.allocator.getUsablePageSize() - ENTRIES_OFFSET) / 2;
+    this.cursor = 0;
+  }
+
+  /**
+   * @return whether the map was created empty when it was opened, rather than read from its file
+   */
+  boolean wasCreated() {
+    return this.created;
+  }
+
+  /**
+   * @param pageNum a page of the table
+   * @return the number of free slots the map has for pageNum
+   */
+  int getFreeSlots(int pageNum) {
+    int mapPage = pageNum / this.entriesPerPage;
+    if (mapPage >= this.allocator.getNumPages()) {
+      return 0;
+    }
+    Page page = this.allocator.fetchPage(mapPage);
+    return page.readShort(this.entryOffset(pageNum)) & 0xFFFF;
+  }
+
+  /**
+   * Record that page pageNum of the table has numFreeSlots free slots.
+   *
+   * @param pageNum a data page of the table
+   * @param numFreeSlots the number of free slots on the page, at most 65535
+   */
+  void setFreeSlots(int pageNum, int numFreeSlots) {
+    int mapPage = pageNum / this.entriesPerPage;
+    while (this.allocator.getNumPages() <= mapPage) {
+      this.allocator.allocPage();
+    }
+
+    Page page = this.allocator.fetchPage(mapPage);
+    int offset = this.entryOffset(pageNum);
+    int old = page.readShort(offset) & 0xFFFF;
+    if (old == numFreeSlots) {
+      return;
+    }
+    page.writeShort(offset, (short) numFreeSlots);
+    if (old == 0) {
+      page.writeInt(0, page.readInt(0) + 1);
+    } else if (numFreeSlots == 0) {
+      page.writeInt(0, page.readInt(0) - 1);
+    }
+
+    if (numFreeSlots > 0) {
+      this.cursor = Math.min(this.cursor, pageNum);
+    }
+  }
+
+  /**
+   * Find the lowest numbered page of the table with a free slot. Since the search picks up where
+   * the last one left off, filling a table costs O(1) per record.
+   *
+   * @return the page number, or -1 if no page has a free slot
+   */
+  int findPageWithSpace() {
+    return this.findPageWithSpace(1);
+  }
+
+  /**
+   * Find the lowest numbered page of the table with at least minFree in its entry. The search
+   * picks up at the first page with a nonzero entry, so pages that are full are only passed over
+   * once, but pages with too little space for this search are looked at again by the next one.
+   *
+   * @param minFree the least free space the page must have, at least 1
+   * @return the page number, or -1 if no page has enough free space
+   */
+  int findPageWithSpace(int minFree) {
+    boolean allFull = true;
+    int numMapPages = this.allocator.getNumPages();
+    for (int mapPage = this.cursor / this.entriesPerPage; mapPage < numMapPages; mapPage++) {
+      Page page = this.allocator.fetchPage(mapPage);
+      if (page.readInt(0) > 0) {
+        int first = Math.max(this.cursor - mapPage * this.entriesPerPage, 0);
+        for (int i = first; i < this.entriesPerPage; i++) {
+          int free = page.readShort(ENTRIES_OFFSET + 2 * i) & 0xFFFF;
+          if (free != 0) {
+            int pageNum = mapPage * this.entriesPerPage + i;
+            if (allFull) {
+              this.cursor = pageNum;
+              allFull = false;
+            }
+            if (free >= minFree) {
+              return pageNum;
+            }
+          }
+        }
+      }
+      if (allFull) {
+        this.cursor = (mapPage + 1) * this.entriesPerPage;
+      }
+    }
+    return -1;
+  }
+
+  public void close() {
+    this.allocator.close();
+  }
+
+  private int entryOffset(int pageNum) {
+    return ENTRIES_OFFSET + 2 * (pageNum % this.entriesPerPage);
+  }
+}
@@ -2,6 +2,7 @@ package edu.berkeley.cs186.database.table;
 
 import edu.berkeley.cs186.database.databox.DataBox;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.lang.StringBuilder;
 
@@ -19,6 +20,25 @@ public class Record {
     return this.values;
   }
 
+  /**
+   * Returns a Record of some of this record's values. If this record was read from a table,
+   * only the values in columns are decoded.
+   *
+   * @param columns the indices of the values to keep, in the order to keep them
+   * @return a new Record with the values
+   */
+  public Record project(int[] columns) {
+    if (this.values instanceof EncodedValues) {
+      return ((EncodedValues) this.values).project(columns);
+    }
+
+    List<DataBox> projected = new ArrayList<DataBox>(columns.length);
+    for (int column : columns) {
+      projected.add(this.values.get(column));
+    }
+    return new Record(projected);
+  }
+
   @Override
   public boolean equals(Object other) {
     if (!(other instanceof Record)) {
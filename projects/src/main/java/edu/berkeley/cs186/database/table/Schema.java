@@ -14,11 +14,17 @@ import java.util.List;
  * `fields`: an ordered list of column names
  * `fieldTypes`: an ordered list of data types corresponding to the columns
  * `size`: physical size (in bytes) of a record conforming to this schema
+ * `offsets`: the offset (in bytes) of each column in an encoded record
+ * `minVariableSize`: physical size (in bytes) of the shortest variable-length encoded record
+ * `maxVariableSize`: physical size (in bytes) of the longest variable-length encoded record
  */
 public class Schema {
   private List<String> fields;
   private List<DataBox> fieldTypes;
   private int size;
+  private int[] offsets;
+  private int minVariableSize;
+  private int maxVariableSize;
 
   public Schema(List<String> fields, List<DataBox> fieldTypes) {
     assert(fields.size() == fieldTypes.size());
@@ -26,9 +32,23 @@ public class Schema {
     this.fields = fields;
     this.fieldTypes = fieldTypes;
     this.size = 0;
+    this.offsets = new int[fieldTypes.size()];
 
-    for (DataBox dt : fieldTypes) {
-      this.size += dt.getSize();
+    for (int i = 0; i < fieldTypes.size(); i++) {
+      this.offsets[i] = this.size;
+      this.size += fieldTypes.get(i).getSize();
+    }
+
+    this.minVariableSize = 0;
+    this.maxVariableSize = 0;
+    for (DataBox fieldType : fieldTypes) {
+      if (fieldType.type() == DataBox.Types.STRING) {
+        this.minVariableSize += 2;
+        this.maxVariableSize += 2 + fieldType.getSize();
+      } else {
+        this.minVariableSize += fieldType.getSize();
+        this.maxVariableSize += fieldType.getSize();
+      }
     }
   }
 
@@ -78,80 +98,210 @@ public class Schema {
    * @return the encoded record as a byte[]
    */
   public byte[] encode(Record record) {
-    // TODO: implement me!
-    List<DataBox> values = record.getValues();
     byte[] code = new byte[this.size];
+    this.encode(record, ByteBuffer.wrap(code), 0);
+    return code;
+  }
+
+  /**
+   * Serializes the provided record into buffer, starting at offset, without
+   * allocating: each field is put at its precomputed offset, and strings of
+   * ASCII characters are written a character at a time rather than through
+   * their UTF-8 bytes. This method assumes that the input record corresponds
+   * to this schema. The position of buffer is not changed.
+   *
+   * @param record the record to encode
+   * @param buffer the buffer to encode the record into
+   * @param offset the index in buffer of the first byte of the record
+   */
+  public void encode(Record record, ByteBuffer buffer, int offset) {
+    List<DataBox> values = record.getValues();
     int num = this.fieldTypes.size();
-    int byteIndex = 0;
 
     for (int i = 0; i < num; i++) {
-
       DataBox box = values.get(i);
-      int boxSize = box.getSize();
-      byte[] boxBytes = box.getBytes();
-
-      for (int j = 0; j < boxSize; j++) {
-        code[byteIndex + j] = boxBytes[j];
+      int position = offset + this.offsets[i];
+
+      switch (box.type()) {
+        case BOOL:
+          buffer.put(position, box.getBool() ? (byte) 1 : (byte) 0);
+          break;
+        case INT:
+          buffer.putInt(position, box.getInt());
+          break;
+        case FLOAT:
+          buffer.putFloat(position, box.getFloat());
+          break;
+        default:
+          int width = this.fieldTypes.get(i).getSize();
+          if (!Schema.putAscii(box.getString(), width, buffer, position)) {
+            byte[] boxBytes = box.getBytes();
+            for (int j = 0; j < width; j++) {
+              buffer.put(position + j, boxBytes[j]);
+            }
+          }
+          break;
       }
+    }
+  }
 
-      byteIndex += boxSize;
+  /**
+   * Put s into buffer at position if it is width ASCII characters, whose
+   * UTF-8 bytes are the characters themselves.
+   *
+   * @return true if s was put, otherwise false
+   */
+  private static boolean putAscii(String s, int width, ByteBuffer buffer, int position) {
+    if (s.length() != width) {
+      return false;
     }
-    return code;
+    for (int j = 0; j < width; j++) {
+      char c = s.charAt(j);
+      if (c >= 0x80) {
+        return false;
+      }
+      buffer.put(position + j, (byte) c);
+    }
+    return true;
   }
 
   /**
    * Takes a byte[] and decodes it into a Record. This method assumes that the
-   * input byte[] represents a record that corresponds to this schema.
+   * input byte[] represents a record that corresponds to this schema. The
+   * record keeps a copy of the bytes and decodes each of its values the first
+   * time it is asked for.
    *
    * @param input the byte array to decode
    * @return the decoded Record
    */
   public Record decode(byte[] input) {
-    // TODO: implement me!
+    return new Record(new EncodedValues(this, Arrays.copyOf(input, this.size)));
+  }
+
+  /**
+   * Takes a byte[] and decodes only some of its columns into a Record. This
+   * method assumes that the input byte[] represents a record that corresponds
+   * to this schema.
+   *
+   * @param input the byte array to decode
+   * @param columns the indices of the columns to decode, in the order they
+   *        should appear in the Record
+   * @return a Record with the values of the columns
+   */
+  public Record decode(byte[] input, int[] columns) {
+    List<DataBox> values = new ArrayList<DataBox>(columns.length);
+    for (int column : columns) {
+      values.add(this.decodeField(input, column));
+    }
+    return new Record(values);
+  }
+
+  /**
+   * Serializes the provided record into a variable-length byte[]. It is the
+   * record's encoding from encode with the padding taken out of its strings:
+   * each string is written as an unsigned short length followed by its UTF-8
+   * bytes without their trailing spaces. This method assumes that the input
+   * record corresponds to this schema.
+   *
+   * @param record the record to encode
+   * @return the variable-length encoded record as a byte[]
+   */
+  public byte[] encodeVariable(Record record) {
+    byte[] fixed = this.encode(record);
     int num = this.fieldTypes.size();
-    List<DataBox> values = new ArrayList<DataBox>();
-    int byteIndex = 0;
 
+    int length = 0;
+    int[] widths = new int[num];
     for (int i = 0; i < num; i++) {
-      DataBox sampleBox = this.fieldTypes.get(i);
-      int boxSize = sampleBox.getSize();
-      byte[] boxByte = new byte[boxSize];
-
-      for (int j = 0; j < boxSize; j++) {
-        boxByte[j] = input[j + byteIndex];
+      DataBox fieldType = this.fieldTypes.get(i);
+      widths[i] = fieldType.getSize();
+      if (fieldType.type() == DataBox.Types.STRING) {
+        int start = this.offsets[i];
+        while (widths[i] > 0 && fixed[start + widths[i] - 1] == ' ') {
+          widths[i]--;
+        }
+        length += 2;
       }
+      length += widths[i];
+    }
 
-      if (sampleBox.type().equals(DataBox.Types.BOOL)) {
-
-        BoolDataBox box = new BoolDataBox(boxByte);
-        values.add(box);
-
-      } else if (sampleBox.type().equals(DataBox.Types.FLOAT)) {
-
-        FloatDataBox box = new FloatDataBox(boxByte);
-        values.add(box);
-
-      } else if (sampleBox.type().equals(DataBox.Types.INT)) {
-
-        IntDataBox box = new IntDataBox(boxByte);
-        values.add(box);
-
-      } else {
-
-        StringDataBox box = new StringDataBox(boxByte);
-        values.add(box);
+    ByteBuffer code = ByteBuffer.allocate(length);
+    for (int i = 0; i < num; i++) {
+      if (this.fieldTypes.get(i).type() == DataBox.Types.STRING) {
+        code.putShort((short) widths[i]);
+      }
+      code.put(fixed, this.offsets[i], widths[i]);
+    }
+    return code.array();
+  }
 
+  /**
+   * Takes a byte[] from encodeVariable and decodes it into a Record, in the
+   * same way as decode.
+   *
+   * @param input the byte array to decode
+   * @return the decoded Record
+   */
+  public Record decodeVariable(byte[] input) {
+    byte[] fixed = new byte[this.size];
+    ByteBuffer code = ByteBuffer.wrap(input);
+    for (int i = 0; i < this.fieldTypes.size(); i++) {
+      DataBox fieldType = this.fieldTypes.get(i);
+      int width = fieldType.getSize();
+      if (fieldType.type() == DataBox.Types.STRING) {
+        int length = code.getShort() & 0xFFFF;
+        Arrays.fill(fixed, this.offsets[i] + length, this.offsets[i] + width, (byte) ' ');
+        width = length;
       }
+      code.get(fixed, this.offsets[i], width);
+    }
+    return new Record(new EncodedValues(this, fixed));
+  }
 
-      byteIndex += boxSize;
+  /**
+   * Decode the value of one column of an encoded record.
+   *
+   * @param input the encoded record
+   * @param column the index of the column
+   * @return the value of the column
+   */
+  DataBox decodeField(byte[] input, int column) {
+    DataBox sampleBox = this.fieldTypes.get(column);
+    int offset = this.offsets[column];
+
+    switch (sampleBox.type()) {
+      case BOOL:
+        return new BoolDataBox(input[offset] != 0);
+      case INT:
+        return new IntDataBox(Schema.readInt(input, offset));
+      case FLOAT:
+        return new FloatDataBox(Float.intBitsToFloat(Schema.readInt(input, offset)));
+      default:
+        return new StringDataBox(Arrays.copyOfRange(input, offset, offset + sampleBox.getSize()));
     }
-    return new Record(values);
+  }
+
+  /**
+   * Read the big-endian int at offset of input, as ByteBuffer would, without wrapping input in a
+   * new ByteBuffer for every field.
+   */
+  private static int readInt(byte[] input, int offset) {
+    return (input[offset] << 24) | ((input[offset + 1] & 0xFF) << 16) |
+           ((input[offset + 2] & 0xFF) << 8) | (input[offset + 3] & 0xFF);
   }
 
   public int getEntrySize() {
     return this.size;
   }
 
+  public int getMinVariableSize() {
+    return this.minVariableSize;
+  }
+
+  public int getMaxVariableSize() {
+    return this.maxVariableSize;
+  }
+
   public List<String> getFieldNames() {
     return this.fields;
   }
@@ -0,0 +1,274 @@
+package edu.berkeley.cs186.database.table;
+
+import edu.berkeley.cs186.database.io.Page;
+
+import java.util.Arrays;
+
+/**
+ * Operations on a slotted data page, which holds records of different lengths. The page starts
+ * with the number of slots in its slot directory and the offset where its record data starts,
+ * followed by the slot directory: an unsigned short offset and an unsigned short length per slot.
+ * Records are written from the end of the page towards the directory. A slot whose offset is 0 is
+ * empty, since no record starts in the page's header.
+ *
+ * Deleting a record or shrinking it leaves a hole in the record data. Holes are reclaimed by
+ * compacting the page, which slides the records to the end of the page without changing their
+ * slot numbers, and happens only when a record does not fit in the space between the directory
+ * and the record data but would fit in the page's free space as a whole. A fresh page, which is
+ * all zeros, is an empty slotted page.
+ *
+ * Since a record keeps its slot, a record that grows has to stay on its page. Inserts leave a
+ * reserve of free space on every page for that, which only updates use.
+ */
+class SlottedPage {
+  static final int HEADER_SIZE = 8;
+  static final int SLOT_SIZE = 4;
+
+  private int pageSize;
+  private int maxSlots;
+  private int reserve;
+
+  /**
+   * @param pageSize the usable size in bytes of the pages, at most 65536
+   * @param maxSlots the most slots a page may have
+   * @param reserve the number of free bytes inserts leave on a page for updates
+   */
+  SlottedPage(int pageSize, int maxSlots, int reserve) {
+    this.pageSize = pageSize;
+    this.maxSlots = maxSlots;
+    this.reserve = reserve;
+  }
+
+  /**
+   * @return the length of the longest record that fits on an empty page
+   */
+  int getMaxRecordSize() {
+    return this.pageSize - HEADER_SIZE - SLOT_SIZE - this.reserve;
+  }
+
+  /**
+   * @return the number of slots in the slot directory of page, empty or not
+   */
+  int getNumSlots(Page page) {
+    return page.readInt(0);
+  }
+
+  /**
+   * @return whether slot holds a record
+   */
+  boolean isValid(Page page, int slot) {
+    return slot >= 0 && slot < this.getNumSlots(page) && this.getOffset(page, slot) != 0;
+  }
+
+  /**
+   * @param from the first slot to look at
+   * @return the first slot from from on that holds a record, or -1 if there is none
+   */
+  int findNextValid(Page page, int from) {
+    int numSlots = this.getNumSlots(page);
+    for (int slot = Math.max(from, 0); slot < numSlots; slot++) {
+      if (this.getOffset(page, slot) != 0) {
+        return slot;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return the number of records on page
+   */
+  int countValid(Page page) {
+    int count = 0;
+    int numSlots = this.getNumSlots(page);
+    for (int slot = 0; slot < numSlots; slot++) {
+      if (this.getOffset(page, slot) != 0) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @return the bytes of the record in slot, which must hold one
+   */
+  byte[] read(Page page, int slot) {
+    return page.readBytes(this.getOffset(page, slot), this.getLength(page, slot));
+  }
+
+  /**
+   * @return the length of the longest record that can be inserted into page, compacting it if
+   * need be and leaving the reserve free, or 0 if none can
+   */
+  int getSpaceForInsert(Page page) {
+    int free = this.getFreeSpace(page) - this.reserve;
+    if (this.findEmptySlot(page) < 0) {
+      if (this.getNumSlots(page) >= this.maxSlots) {
+        return 0;
+      }
+      free -= SLOT_SIZE;
+    }
+    return Math.max(free, 0);
+  }
+
+  /**
+   * Insert a record into the first empty slot of page, or a new slot if none is empty.
+   *
+   * @param record the bytes of the record
+   * @return the slot the record went into, or -1 if it does not fit on page
+   */
+  int insert(Page page, byte[] record) {
+    if (record.length > this.getSpaceForInsert(page)) {
+      return -1;
+    }
+
+    int slot = this.findEmptySlot(page);
+    int directoryEnd = HEADER_SIZE + SLOT_SIZE * this.getNumSlots(page);
+    if (slot < 0) {
+      directoryEnd += SLOT_SIZE;
+    }
+    if (this.getDataStart(page) - directoryEnd < record.length) {
+      this.compact(page);
+    }
+
+    if (slot < 0) {
+      slot = this.getNumSlots(page);
+      page.writeInt(0, slot + 1);
+    }
+    this.writeRecord(page, slot, record);
+    return slot;
+  }
+
+  /**
+   * Replace the record in slot, which must hold one. A record no longer than the old one is
+   * written in its place; a longer one is moved within the page, compacting it if need be, and
+   * may use the reserve.
+   *
+   * @param record the new bytes of the record
+   * @return false, leaving the page unchanged, if the record does not fit on page
+   */
+  boolean update(Page page, int slot, byte[] record) {
+    int offset = this.getOffset(page, slot);
+    int length = this.getLength(page, slot);
+    if (record.length <= length) {
+      page.writeBytes(offset, record.length, record);
+      this.setSlot(page, slot, offset, record.length);
+      return true;
+    }
+
+    if (record.length > this.getFreeSpace(page) + length) {
+      return false;
+    }
+    this.setSlot(page, slot, 0, 0);
+    int directoryEnd = HEADER_SIZE + SLOT_SIZE * this.getNumSlots(page);
+    if (this.getDataStart(page) - directoryEnd < record.length) {
+      this.compact(page);
+    }
+    this.writeRecord(page, slot, record);
+    return true;
+  }
+
+  /**
+   * Empty slot, which must hold a record. Trailing empty slots are dropped from the directory.
+   */
+  void delete(Page page, int slot) {
+    this.setSlot(page, slot, 0, 0);
+
+    int numSlots = this.getNumSlots(page);
+    while (numSlots > 0 && this.getOffset(page, numSlots - 1) == 0) {
+      numSlots--;
+    }
+    page.writeInt(0, numSlots);
+    if (numSlots == 0) {
+      page.writeInt(4, 0);
+    }
+  }
+
+  /**
+   * Slide the records of page to its end, in the order they are laid out, so that all of its free
+   * space is between the slot directory and the record data. Slot numbers do not change.
+   */
+  void compact(Page page) {
+    int numSlots = this.getNumSlots(page);
+    int dataStart = this.getDataStart(page);
+    byte[] data = page.readBytes(dataStart, this.pageSize - dataStart);
+    byte[] packed = new byte[data.length];
+
+    // the records by offset, as offset << 16 | slot
+    long[] records = new long[numSlots];
+    int numRecords = 0;
+    for (int slot = 0; slot < numSlots; slot++) {
+      int offset = this.getOffset(page, slot);
+      if (offset != 0) {
+        records[numRecords++] = ((long) offset << 16) | slot;
+      }
+    }
+    Arrays.sort(records, 0, numRecords);
+
+    // take the records from the end of the page back, so each moves towards the end or stays
+    int end = this.pageSize;
+    for (int i = numRecords - 1; i >= 0; i--) {
+      int slot = (int) (records[i] & 0xFFFF);
+      int offset = (int) (records[i] >>> 16);
+      int length = this.getLength(page, slot);
+      end -= length;
+      System.arraycopy(data, offset - dataStart, packed, end - dataStart, length);
+      this.setSlot(page, slot, end, length);
+    }
+
+    page.writeBytes(end, packed, end - dataStart, this.pageSize - end);
+    page.writeInt(4, end);
+  }
+
+  /**
+   * @return the number of bytes on page that are not taken by its header, slot directory, or
+   * records, counting the holes left by deleted records
+   */
+  int getFreeSpace(Page page) {
+    int numSlots = this.getNumSlots(page);
+    int used = HEADER_SIZE + SLOT_SIZE * numSlots;
+    for (int slot = 0; slot < numSlots; slot++) {
+      if (this.getOffset(page, slot) != 0) {
+        used += this.getLength(page, slot);
+      }
+    }
+    return this.pageSize - used;
+  }
+
+  /**
+   * Write record just below the record data of page, and point slot at it. There must be room.
+   */
+  private void writeRecord(Page page, int slot, byte[] record) {
+    int offset = this.getDataStart(page) - record.length;
+    page.writeBytes(offset, record.length, record);
+    page.writeInt(4, offset);
+    this.setSlot(page, slot, offset, record.length);
+  }
+
+  private int findEmptySlot(Page page) {
+    int numSlots = this.getNumSlots(page);
+    for (int slot = 0; slot < numSlots; slot++) {
+      if (this.getOffset(page, slot) == 0) {
+        return slot;
+      }
+    }
+    return -1;
+  }
+
+  private int getDataStart(Page page) {
+    int dataStart = page.readInt(4);
+    return dataStart == 0 ? this.pageSize : dataStart;
+  }
+
+  private int getOffset(Page page, int slot) {
+    return page.readShort(HEADER_SIZE + SLOT_SIZE * slot) & 0xFFFF;
+  }
+
+  private int getLength(Page page, int slot) {
+    return page.readShort(HEADER_SIZE + SLOT_SIZE * slot + 2) & 0xFFFF;
+  }
+
+  private void setSlot(Page page, int slot, int offset, int length) {
+    page.writeShort(HEADER_SIZE + SLOT_SIZE * slot, (short) offset);
+    page.writeShort(HEADER_SIZE + SLOT_SIZE * slot + 2, (short) length);
+  }
+}
@@ -3,34 +3,62 @@ package edu.berkeley.cs186.database.table;
 import edu.berkeley.cs186.database.DatabaseException;
 import edu.berkeley.cs186.database.databox.*;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.io.Bitmap;
 import edu.berkeley.cs186.database.io.PageAllocator;
 import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.io.PageException;
+import edu.berkeley.cs186.database.io.PageStore;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
-import java.util.TreeSet;
 
 import java.util.NoSuchElementException;
 import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 
 /**
  * A database table. Allows the user to add, delete, update, and get records.
  * A table has an associated schema, stats, and page allocator. The first page
- * in the page allocator is a header page that serializes the schema, and each
- * subsequent page is a data page containing the table records.
+ * in the page allocator is a header page that serializes the schema and the
+ * record format, and each subsequent page is a data page containing the table
+ * records. The data pages of a FIXED table are a slot bitmap followed by
+ * fixed-size slots; those of a SLOTTED table are laid out by SlottedPage.
  *
  * Properties:
  * `schema`: the Schema (column names and column types) for this table
- * `freePages`: a set of page numbers that correspond to allocated pages with free space
+ * `freeSpace`: the FreeSpaceMap with the number of free slots on each data page
  * `stats`: the TableStats for this table
+ * `statsPathname`: name of the file the stats and numRecords are saved in when the table is closed,
+ *   and checkpointed in while it changes
+ * `statsSaved`: whether the stats file holds the current stats, saved when the table was closed
+ * `numChanges`: number of changes to the table since the stats were last saved
  * `allocator`: the PageAllocator for this table
  * `tableName`: name of this table
+ * `format`: how the records of this table are laid out on its data pages
+ * `slottedPage`: the layout of the data pages of a SLOTTED table, null for a FIXED one
  * `numEntriesPerPage`: number of records a data page of this table can hold
  * `pageHeaderSize`: physical size (in bytes) of a page header slot bitmap
  * `numRecords`: number of records currently contained in this table
@@ -38,72 +66,132 @@ import java.io.Closeable;
 public class Table implements Iterable<Record>, Closeable {
   public static final String FILENAME_PREFIX = "db";
   public static final String FILENAME_EXTENSION = ".table";
+  public static final String FREE_SPACE_FILENAME_EXTENSION = ".fsm";
+  public static final String STATS_FILENAME_EXTENSION = ".stats";
+
+  private static final int STATS_MAGIC = 0xCB186057;
+  private static final int STATS_CHECKPOINT_MAGIC = 0xCB186058;
+
+  // the most changes a table makes before it checkpoints its stats again
+  static final int STATS_SAVE_INTERVAL = 10000;
+
+  /**
+   * How the records of a table are laid out on its data pages.
+   */
+  public enum RecordFormat {
+    // fixed-size slots and a slot bitmap, with strings padded to their declared length
+    FIXED,
+    // a slot directory over records of different lengths, with strings stored unpadded
+    SLOTTED
+  }
 
   private Schema schema;
-  private TreeSet<Integer> freePages;
+  private FreeSpaceMap freeSpace;
 
   private TableStats stats;
+  private String statsPathname;
+  private boolean statsSaved;
+  private int numChanges;
 
   private PageAllocator allocator;
   private String tableName;
 
+  private RecordFormat format;
+  private SlottedPage slottedPage;
   private int numEntriesPerPage;
   private int pageHeaderSize;
   private long numRecords;
 
+  // reused to encode the records that addRecord and updateRecord write
+  private ByteBuffer entryBuffer;
+
   public Table(String tableName) {
     this(tableName, FILENAME_PREFIX);
   }
 
   public Table(String tableName, String filenamePrefix) {
+    this(tableName, filenamePrefix, PageAllocator.DEFAULT_STORE_TYPE);
+  }
+
+  /**
+   * This constructor is used for opening an existing table whose pages are read and written
+   * through a store of type storeType. Only the table's metadata is read: its stats and number of
+   * records come from the file they were saved in when the table was last closed. A table that
+   * was not closed has at most a checkpoint of its stats in that file, at most
+   * STATS_SAVE_INTERVAL changes old, which it keeps as they are; its number of records is counted
+   * from the slots of its pages and its free space map, which may be older than the pages, is
+   * rebuilt. A table without the file at all or without a free space map, such as one written
+   * before tables had them, gets them rebuilt from its pages.
+   *
+   * @param tableName the name of the table
+   * @param filenamePrefix the prefix where the table's files live
+   * @param storeType how the table's pages are read and written
+   */
+  public Table(String tableName, String filenamePrefix, PageStore.Type storeType) {
     this.tableName = tableName;
 
     String pathname = Paths.get(filenamePrefix, tableName + FILENAME_EXTENSION).toString();
-    this.allocator = new PageAllocator(pathname, false);
+    this.allocator = new PageAllocator(pathname, false, 0, storeType);
     this.readHeaderPage();
 
-    this.stats = new TableStats(this.schema);
+    this.statsPathname = Paths.get(filenamePrefix, tableName + STATS_FILENAME_EXTENSION).toString();
+    boolean rebuildStats = !this.readStats();
+    // a table not closed cleanly has at best a checkpoint, whose numRecords may be out of date
+    boolean countRecords = !this.statsSaved;
+
+    String fsmPathname = Paths.get(filenamePrefix, tableName + FREE_SPACE_FILENAME_EXTENSION).toString();
+    this.freeSpace = new FreeSpaceMap(fsmPathname, false);
+    // and its map may have missed deletes
+    boolean rebuildFreeSpace = countRecords || this.freeSpace.wasCreated();
 
-    this.freePages = new TreeSet<Integer>();
     this.setEntryCounts();
+    if (countRecords || rebuildFreeSpace) {
+      this.scanPages(rebuildStats, countRecords, rebuildFreeSpace);
+    }
+  }
+
+  /**
+   * Rebuild the stats, numRecords, the free space map, or some of them from the table's pages.
+   *
+   * @param rebuildStats whether to rebuild the stats, which implies countRecords
+   * @param countRecords whether to count numRecords
+   * @param rebuildFreeSpace whether to rebuild the free space map
+   */
+  private void scanPages(boolean rebuildStats, boolean countRecords, boolean rebuildFreeSpace) {
     Iterator<Page> pIter = this.allocator.iterator();
     pIter.next();
 
     long freshCountRecords = 0;
+    byte[] entry = new byte[this.schema.getEntrySize()];
+    int[] entryNums = new int[this.numEntriesPerPage];
 
     while(pIter.hasNext()) {
       Page p = pIter.next();
 
-      // add all records in this page to TableStats
-      int entryNum = 0;
-      byte[] header = this.readPageHeader(p);
-      while (entryNum < this.getNumEntriesPerPage()) {
-        byte b = header[entryNum/8];
-        int bitOffset = 7 - (entryNum % 8);
-        byte mask = (byte) (1 << bitOffset);
-
-        byte value = (byte) (b & mask);
-        if (value != 0) {
-          int entrySize = this.schema.getEntrySize();
-
-          int offset = this.pageHeaderSize + (entrySize * entryNum);
-          byte[] bytes = p.readBytes(offset, entrySize);
-
-          Record record = this.schema.decode(bytes);
+      int numEntries = 0;
+      if (rebuildStats) {
+        // add all records in this page to TableStats
+        numEntries = this.findEntries(p, entryNums);
+        for (int i = 0; i < numEntries; i++) {
+          Record record = this.readEntry(p, entryNums[i], entry);
           this.stats.addRecord(record);
         }
-
-        entryNum++;
+      } else if (countRecords) {
+        numEntries = this.numValidEntries(p);
       }
+      freshCountRecords += numEntries;
 
-      if (spaceOnPage(p)) {
-        this.freePages.add(p.getPageNum());
+      if (rebuildFreeSpace) {
+        // the free slots of a FIXED page are the entries just found missing
+        int space = countRecords && this.slottedPage == null ?
+                    this.numEntriesPerPage - numEntries : this.getFreeSpace(p);
+        this.freeSpace.setFreeSlots(p.getPageNum(), space);
       }
-
-      freshCountRecords += numValidEntries(p);
     }
 
-    this.numRecords = freshCountRecords;
+    if (countRecords) {
+      this.numRecords = freshCountRecords;
+    }
   }
 
   public Table(Schema schema, String tableName) {
@@ -118,13 +206,82 @@ public class Table implements Iterable<Record>, Closeable {
    * @param filenamePrefix the prefix where the table's files will be created
    */
   public Table(Schema schema, String tableName, String filenamePrefix) {
+    this(schema, tableName, filenamePrefix, Page.pageSize);
+  }
+
+  /**
+   * This constructor is used for creating a table whose pages are pageSize bytes. Larger pages
+   * suit tables that are mostly scanned.
+   *
+   * @param schema the schema for this table
+   * @param tableName the name of the table
+   * @param filenamePrefix the prefix where the table's files will be created
+   * @param pageSize the size in bytes of the table's pages
+   */
+  public Table(Schema schema, String tableName, String filenamePrefix, int pageSize) {
+    this(schema, tableName, filenamePrefix, pageSize, PageAllocator.DEFAULT_STORE_TYPE);
+  }
+
+  /**
+   * This constructor is used for creating a table whose pages are pageSize bytes and are read and
+   * written through a store of type storeType.
+   *
+   * @param schema the schema for this table
+   * @param tableName the name of the table
+   * @param filenamePrefix the prefix where the table's files will be created
+   * @param pageSize the size in bytes of the table's pages
+   * @param storeType how the table's pages are read and written
+   */
+  public Table(Schema schema, String tableName, String filenamePrefix, int pageSize,
+               PageStore.Type storeType) {
+    this(schema, tableName, filenamePrefix, pageSize, storeType, false);
+  }
+
+  /**
+   * This constructor is used for creating a table whose pages are pageSize bytes, are read and
+   * written through a store of type storeType and, if checksums is true, carry a checksum that is
+   * verified when they are read back. Reopening the table keeps its checksums.
+   *
+   * @param schema the schema for this table
+   * @param tableName the name of the table
+   * @param filenamePrefix the prefix where the table's files will be created
+   * @param pageSize the size in bytes of the table's pages
+   * @param storeType how the table's pages are read and written
+   * @param checksums whether the table's pages are checksummed
+   */
+  public Table(Schema schema, String tableName, String filenamePrefix, int pageSize,
+               PageStore.Type storeType, boolean checksums) {
+    this(schema, tableName, filenamePrefix, pageSize, storeType, checksums, RecordFormat.FIXED);
+  }
+
+  /**
+   * This constructor is used for creating a table whose records are laid out in format, in
+   * pages that are pageSize bytes, are read and written through a store of type storeType and, if
+   * checksums is true, carry a checksum. A SLOTTED table suits wide string columns that are
+   * mostly shorter than their declared length. Reopening the table keeps its format.
+   *
+   * @param schema the schema for this table
+   * @param tableName the name of the table
+   * @param filenamePrefix the prefix where the table's files will be created
+   * @param pageSize the size in bytes of the table's pages
+   * @param storeType how the table's pages are read and written
+   * @param checksums whether the table's pages are checksummed
+   * @param format how the table's records are laid out on its pages
+   */
+  public Table(Schema schema, String tableName, String filenamePrefix, int pageSize,
+               PageStore.Type storeType, boolean checksums, RecordFormat format) {
     this.schema = schema;
     this.tableName = tableName;
+    this.format = format;
     this.stats = new TableStats(this.schema);
+    this.statsPathname = Paths.get(filenamePrefix, tableName + STATS_FILENAME_EXTENSION).toString();
+    new File(this.statsPathname).delete();
+    this.statsSaved = false;
 
-    this.freePages = new TreeSet<Integer>();
     String pathname = Paths.get(filenamePrefix, tableName + FILENAME_EXTENSION).toString();
-    this.allocator = new PageAllocator(pathname, true);
+    this.allocator = new PageAllocator(pathname, true, pageSize, storeType, checksums);
+    String fsmPathname = Paths.get(filenamePrefix, tableName + FREE_SPACE_FILENAME_EXTENSION).toString();
+    this.freeSpace = new FreeSpaceMap(fsmPathname, true);
 
     this.setEntryCounts();
 
@@ -132,19 +289,60 @@ public class Table implements Iterable<Record>, Closeable {
   }
 
   public void close() {
+    this.close(true);
+  }
+
+  /**
+   * Close this table, saving its stats for the next time it is opened only if saveStats is true.
+   * A table that is about to be deleted has no use for them, and skips the sync that saving them
+   * costs.
+   *
+   * @param saveStats whether to save the stats
+   */
+  public void close(boolean saveStats) {
     allocator.close();
+    freeSpace.close();
+    if (saveStats && !this.statsSaved) {
+      this.writeStats(true);
+    }
   }
 
   public Iterator<Record> iterator() {
       return new TableIterator();
   }
 
+  /**
+   * @return a Spliterator over the records of this table that splits the table's data pages
+   * into ranges and decodes a page at a time
+   */
+  public Spliterator<Record> spliterator() {
+    return new TableSpliterator(1, this.allocator.getNumPages());
+  }
+
+  /**
+   * @return a parallel Stream of the records of this table, which decodes ranges of pages on the
+   * common ForkJoinPool
+   */
+  public Stream<Record> parallelStream() {
+    return StreamSupport.stream(this.spliterator(), true);
+  }
+
+  /**
+   * Returns an iterator over the records of this table, in the same order as iterator, that
+   * decodes the pages ahead of the one being read on the common ForkJoinPool.
+   *
+   * @return an iterator over the records of this table
+   */
+  public Iterator<Record> parallelIterator() {
+    return new ParallelTableIterator(ForkJoinPool.commonPool());
+  }
+
   /**
    * Adds a new record to this table. The record should be added to the first
    * free slot of the first free page if one exists, otherwise a new page should
    * be allocated and the record should be placed in the first slot of that
    * page. Recall that a free slot in the slot bitmap means the bit is set to 0.
-   * Make sure to update this.stats, this.freePages, and this.numRecords as
+   * Make sure to update this.stats, this.freeSpace, and this.numRecords as
    * necessary.
    *
    * @param values the values of the record being added
@@ -160,30 +358,40 @@ public class Table implements Iterable<Record>, Closeable {
       throw new DatabaseException("Values do not correspond to the table schema");
     }
 
+    this.beforeChange();
+
     Record record = new Record(values);
-    byte[] encodedRecord = this.schema.encode(record);
+    if (this.slottedPage != null) {
+      return this.addSlottedRecord(record);
+    }
+
+    byte[] encodedRecord = this.encodeEntry(record);
     int entrySize = this.schema.getEntrySize();
-    int entryNum = 0;
+    int entryNum = -1;
     int position;
 
     int firstFreePageNum;
     Page firstFreePage;
-    byte[] pageHeader;
+    int freeSlots;
+
+    while (true) {
+      firstFreePageNum = this.freeSpace.findPageWithSpace();
+      if (firstFreePageNum < 0) {
+        firstFreePageNum = this.allocator.allocPage();
+        firstFreePage = this.allocator.fetchPage(firstFreePageNum);
+        entryNum = 0;
+        freeSlots = this.numEntriesPerPage;
+        break;
+      }
 
-    if (!this.freePages.isEmpty()) {
-      firstFreePageNum = this.freePages.first();
       firstFreePage = this.allocator.fetchPage(firstFreePageNum);
-
-      pageHeader = this.readPageHeader(firstFreePage);
-      for (int i = 0; i < pageHeaderSize; i++) {
-        if (pageHeader[i] != (byte) 0xFF) {
-          entryNum = 8 * i + bitOffset(pageHeader[i]);
-          break;
-        }
+      entryNum = Bitmap.findFirstClear(firstFreePage, 0, this.numEntriesPerPage);
+      if (entryNum >= 0) {
+        freeSlots = this.freeSpace.getFreeSlots(firstFreePageNum);
+        break;
       }
-    } else {
-      firstFreePageNum = this.allocator.allocPage();
-      firstFreePage = this.allocator.fetchPage(firstFreePageNum);
+      // the free space map was out of date
+      this.freeSpace.setFreeSlots(firstFreePageNum, 0);
     }
 
     position = this.pageHeaderSize + entryNum * entrySize;
@@ -192,33 +400,182 @@ public class Table implements Iterable<Record>, Closeable {
 
     this.stats.addRecord(record);
 
-    if (!spaceOnPage(firstFreePage)) {
-      this.freePages.remove(firstFreePageNum);
-    } else if (!this.freePages.contains(firstFreePageNum)) {
-      this.freePages.add(firstFreePageNum);
+    // count the slots before calling the page full, in case the map was out of date
+    if (freeSlots > 1) {
+      this.freeSpace.setFreeSlots(firstFreePageNum, freeSlots - 1);
+    } else {
+      this.freeSpace.setFreeSlots(firstFreePageNum,
+                                  this.numEntriesPerPage - numValidEntries(firstFreePage));
     }
 
     this.numRecords++;
+    this.numChanges++;
 
     RecordID ret = new RecordID(firstFreePageNum, entryNum);
 
     return ret;
   }
 
-  private int bitOffset(byte b) {
-    int ret = 0;
+  /**
+   * Adds new records to this table, in the slots addRecord would have put them in one at a
+   * time. Each page is filled in one pass: the records for a run of free slots are encoded
+   * into a buffer and written with one call, and the slot bitmap and the free space map are
+   * written once the page is full or the records run out.
+   *
+   * @param values the values of the records being added
+   * @return the RecordIDs of the added records, in the order the values came in
+   * @throws DatabaseException if some values do not correspond to the schema of this table;
+   *         the records before them have been added
+   */
+  public List<RecordID> addRecords(Iterator<List<DataBox>> values) throws DatabaseException {
+    List<RecordID> rids = new ArrayList<RecordID>();
+    if (this.slottedPage != null) {
+      while (values.hasNext()) {
+        this.beforeChange();
+        Record record;
+        try {
+          record = this.schema.verify(values.next());
+        } catch (SchemaException e) {
+          throw new DatabaseException("Values do not correspond to the table schema");
+        }
+        rids.add(this.addSlottedRecord(record));
+      }
+      return rids;
+    }
+
+    long numRecordsBefore = this.numRecords;
+    int entrySize = this.schema.getEntrySize();
+    byte[] run = new byte[this.numEntriesPerPage * entrySize];
+    ByteBuffer runBuffer = ByteBuffer.wrap(run);
+
+    while (values.hasNext()) {
+      this.beforeChange();
+      int pageNum = this.freeSpace.findPageWithSpace();
+      Page page;
+      byte[] header;
+      if (pageNum < 0) {
+        pageNum = this.allocator.allocPage();
+        page = this.allocator.fetchPage(pageNum);
+        header = new byte[this.pageHeaderSize];
+      } else {
+        page = this.allocator.fetchPage(pageNum);
+        header = this.readPageHeader(page);
+      }
 
-    while (b < 0) {
-      b <<= 1;
-      ret++;
+      int runStart = 0;
+      int runLength = 0;
+      SchemaException error = null;
+      for (int entryNum = 0; entryNum < this.numEntriesPerPage && values.hasNext(); entryNum++) {
+        int mask = 1 << (7 - (entryNum % 8));
+        if ((header[entryNum / 8] & mask) != 0) {
+          this.writeRun(page, runStart, runLength, run);
+          runLength = 0;
+          continue;
+        }
+
+        Record record;
+        try {
+          record = this.schema.verify(values.next());
+        } catch (SchemaException e) {
+          error = e;
+          break;
+        }
+
+        if (runLength == 0) {
+          runStart = entryNum;
+        }
+        this.schema.encode(record, runBuffer, runLength * entrySize);
+        runLength++;
+
+        header[entryNum / 8] |= mask;
+        this.stats.addRecord(record);
+        rids.add(new RecordID(pageNum, entryNum));
+      }
+      this.writeRun(page, runStart, runLength, run);
+
+      page.writeBytes(0, this.pageHeaderSize, header);
+      this.freeSpace.setFreeSlots(pageNum, this.numEntriesPerPage - this.numValidEntries(page));
+      this.numChanges += numRecordsBefore + rids.size() - this.numRecords;
+      this.numRecords = numRecordsBefore + rids.size();
+
+      if (error != null) {
+        throw new DatabaseException("Values do not correspond to the table schema");
+      }
     }
 
-    return ret;
+    return rids;
+  }
+
+  /**
+   * Write the runLength encoded records at the start of run into the slots of page from
+   * runStart on.
+   */
+  private void writeRun(Page page, int runStart, int runLength, byte[] run) {
+    if (runLength > 0) {
+      int entrySize = this.schema.getEntrySize();
+      page.writeBytes(this.pageHeaderSize + runStart * entrySize, run, 0, runLength * entrySize);
+    }
+  }
+
+  /**
+   * Add record to the first page of this SLOTTED table that the free space map says it fits on,
+   * or to a new page if there is none.
+   *
+   * @param record the record to add, which corresponds to the schema of this table
+   * @return the RecordID of the added record
+   * @throws DatabaseException if the record does not fit on a page
+   */
+  private RecordID addSlottedRecord(Record record) throws DatabaseException {
+    byte[] encodedRecord = this.schema.encodeVariable(record);
+    if (encodedRecord.length > this.slottedPage.getMaxRecordSize()) {
+      throw new DatabaseException("Record does not fit on a page");
+    }
+
+    int pageNum;
+    Page page;
+    int entryNum;
+    while (true) {
+      pageNum = this.freeSpace.findPageWithSpace(Math.max(encodedRecord.length, 1));
+      if (pageNum < 0) {
+        pageNum = this.allocator.allocPage();
+        page = this.allocator.fetchPage(pageNum);
+        entryNum = this.slottedPage.insert(page, encodedRecord);
+        break;
+      }
+
+      page = this.allocator.fetchPage(pageNum);
+      entryNum = this.slottedPage.insert(page, encodedRecord);
+      if (entryNum >= 0) {
+        break;
+      }
+      // the free space map was out of date
+      this.freeSpace.setFreeSlots(pageNum, this.getFreeSpace(page));
+    }
+
+    this.freeSpace.setFreeSlots(pageNum, this.getFreeSpace(page));
+    this.stats.addRecord(record);
+    this.numRecords++;
+    this.numChanges++;
+
+    return new RecordID(pageNum, entryNum);
+  }
+
+  /**
+   * Encode record into a buffer that is reused from one call to the next.
+   *
+   * @return the encoded record, valid until the next call
+   */
+  private byte[] encodeEntry(Record record) {
+    if (this.entryBuffer == null) {
+      this.entryBuffer = ByteBuffer.allocate(this.schema.getEntrySize());
+    }
+    this.schema.encode(record, this.entryBuffer, 0);
+    return this.entryBuffer.array();
   }
 
   /**
    * Deletes the record specified by rid from the table. Make sure to update
-   * this.stats, this.freePages, and this.numRecords as necessary.
+   * this.stats, this.freeSpace, and this.numRecords as necessary.
    *
    * @param rid the RecordID of the record to delete
    * @return the Record referenced by rid that was removed
@@ -231,18 +588,24 @@ public class Table implements Iterable<Record>, Closeable {
       throw new DatabaseException("The values do not correspond to the schema of this table");
     }
 
+    this.beforeChange();
+
     Record record = this.getRecord(rid);
     int entryNum = rid.getEntryNumber();
     int pageNum = rid.getPageNum();
     Page p = this.allocator.fetchPage(pageNum);
 
-    writeBitToHeader(p, entryNum, (byte) 0);
+    if (this.slottedPage != null) {
+      this.slottedPage.delete(p, entryNum);
+    } else {
+      writeBitToHeader(p, entryNum, (byte) 0);
+    }
+    // counted from the page, so that an entry the map lost is put right rather than built on
+    this.freeSpace.setFreeSlots(pageNum, this.getFreeSpace(p));
 
     this.stats.removeRecord(record);
-    if (spaceOnPage(p)) {
-      this.freePages.add(pageNum);
-    }
     this.numRecords--;
+    this.numChanges++;
 
     return record;
   }
@@ -265,12 +628,8 @@ public class Table implements Iterable<Record>, Closeable {
     int entryNum = rid.getEntryNumber();
     int pageNum = rid.getPageNum();
     Page p = this.allocator.fetchPage(pageNum);
-    int position = this.pageHeaderSize + entryNum * entrySize;
-    byte[] encodedRecord = new byte[entrySize];
 
-    p.readBytes(position, entrySize, encodedRecord);
-
-    Record ret = this.schema.decode(encodedRecord);
+    Record ret = this.readEntry(p, entryNum, new byte[entrySize]);
 
     return ret;
   }
@@ -298,26 +657,45 @@ public class Table implements Iterable<Record>, Closeable {
       throw new DatabaseException("The values do not correspond to the schema of this table");
     }
 
+    this.beforeChange();
+
     Record old_record = this.getRecord(rid);
     Record new_record = new Record(values);
-    byte[] encodedRecord = this.schema.encode(new_record);
 
     int entrySize = this.schema.getEntrySize();
     int entryNum = rid.getEntryNumber();
     int pageNum = rid.getPageNum();
     Page p = this.allocator.fetchPage(pageNum);
 
-    int position = this.pageHeaderSize + entryNum * entrySize;
-    p.writeBytes(position, entrySize, encodedRecord);
+    if (this.slottedPage != null) {
+      // a record keeps its RecordID, so it cannot move to another page
+      if (!this.slottedPage.update(p, entryNum, this.schema.encodeVariable(new_record))) {
+        throw new DatabaseException("The new values do not fit on the record's page");
+      }
+      this.freeSpace.setFreeSlots(pageNum, this.getFreeSpace(p));
+    } else {
+      byte[] encodedRecord = this.encodeEntry(new_record);
+      int position = this.pageHeaderSize + entryNum * entrySize;
+      p.writeBytes(position, entrySize, encodedRecord);
+    }
 
     this.stats.removeRecord(old_record);
     this.stats.addRecord(new_record);
+    this.numChanges++;
 
     return old_record;
   }
 
   public long getNumRecords() { return this.numRecords; }
 
+  public TableStats getStats() {
+    return this.stats;
+  }
+
+  public RecordFormat getRecordFormat() {
+    return this.format;
+  }
+
   public int getNumEntriesPerPage() {
     return this.numEntriesPerPage;
   }
@@ -351,16 +729,10 @@ public class Table implements Iterable<Record>, Closeable {
       throw new DatabaseException("RecordID does not reference an existing slot");
     }
 
-    byte[] pageHeader = this.readPageHeader(p);
-    int byteOffset = entryNum / 8;
-    int bitOffset = 7 - (entryNum % 8);
-    byte b = pageHeader[byteOffset];
-
-    if ((b & (1 << bitOffset)) == (1 << bitOffset)) {
-      return true;
-    } else {
-      return false;
+    if (this.slottedPage != null) {
+      return this.slottedPage.isValid(p, entryNum);
     }
+    return Bitmap.get(p, 0, entryNum);
   }
 
   /**
@@ -369,12 +741,26 @@ public class Table implements Iterable<Record>, Closeable {
    * The page header only contains the slot bitmap and takes up no other space.
    * For ease of calculations and to prevent header byte splitting, ensure that
    * `numEntriesPerPage` is a multiple of 8 (this may waste some space).
+   * A page of a SLOTTED table can hold as many of the shortest records as
+   * fit, and has no slot bitmap.
    *
    * Should set this.pageHeaderSize and this.numEntriesPerPage.
    */
   private void setEntryCounts() {
     // TODO: implement me!
-    this.numEntriesPerPage = (int) (Math.floor((Page.pageSize * 8 / (1 + this.schema.getEntrySize() * 8)) / 8) * 8);
+    int pageSize = this.allocator.getUsablePageSize();
+    if (this.format == RecordFormat.SLOTTED) {
+      int minEntrySize = this.schema.getMinVariableSize() + SlottedPage.SLOT_SIZE;
+      this.numEntriesPerPage = Math.min((pageSize - SlottedPage.HEADER_SIZE) / minEntrySize,
+                                        Short.MAX_VALUE + 1);
+      this.pageHeaderSize = 0;
+      this.slottedPage = new SlottedPage(pageSize, this.numEntriesPerPage, pageSize / 16);
+      return;
+    }
+
+    this.numEntriesPerPage = (int) (Math.floor((pageSize * 8 / (1 + this.schema.getEntrySize() * 8)) / 8) * 8);
+    // a RecordID stores the entry number in a short
+    this.numEntriesPerPage = Math.min(this.numEntriesPerPage, Short.MAX_VALUE + 1);
     this.pageHeaderSize = this.numEntriesPerPage / 8;
   }
 
@@ -385,15 +771,10 @@ public class Table implements Iterable<Record>, Closeable {
    * @return true if there exists free space, otherwise false
    */
   private boolean spaceOnPage(Page p) {
-    byte[] header = this.readPageHeader(p);
-
-    for (byte b : header) {
-      if (b != (byte) 0xFF) {
-        return true;
-      }
+    if (this.slottedPage != null) {
+      return this.getFreeSpace(p) > 0;
     }
-
-    return false;
+    return Bitmap.findFirstClear(p, 0, this.numEntriesPerPage) >= 0;
   }
 
   /**
@@ -403,23 +784,166 @@ public class Table implements Iterable<Record>, Closeable {
    * @return number of record entries in p
    */
   private int numValidEntries(Page p) {
-    byte[] header = this.readPageHeader(p);
-    int count = 0;
+    if (this.slottedPage != null) {
+      return this.slottedPage.countValid(p);
+    }
+    return Bitmap.countSet(p, 0, this.numEntriesPerPage);
+  }
 
-    for (byte b : header) {
-      for (int mask = 0x01; mask != 0x100; mask <<= 1) {
-        if ((b & (byte) mask) != 0) {
-          count++;
-        }
+  /**
+   * The free space of a page as the free space map keeps it: its number of free slots, or for a
+   * SLOTTED table the length of the longest record it can take, as long as that is enough for
+   * the shortest record.
+   *
+   * @param p the page to check
+   * @return the free space map entry for p
+   */
+  private int getFreeSpace(Page p) {
+    if (this.slottedPage == null) {
+      return this.numEntriesPerPage - this.numValidEntries(p);
+    }
+    int space = this.slottedPage.getSpaceForInsert(p);
+    if (space < this.schema.getMinVariableSize()) {
+      return 0;
+    }
+    return Math.min(space, 0xFFFF);
+  }
+
+  /**
+   * Write the entries of p that hold a record, in order, to the start of entryNums.
+   *
+   * @param p the page to look in
+   * @param entryNums an array of numEntriesPerPage entries
+   * @return the number of entries of p that hold a record
+   */
+  private int findEntries(Page p, int[] entryNums) {
+    if (this.slottedPage != null) {
+      int count = 0;
+      for (int slot = this.slottedPage.findNextValid(p, 0); slot >= 0;
+           slot = this.slottedPage.findNextValid(p, slot + 1)) {
+        entryNums[count++] = slot;
+      }
+      return count;
+    }
+    return Bitmap.getSetBits(p, 0, this.numEntriesPerPage, entryNums);
+  }
+
+  /**
+   * Decode the record in an entry of a page, which must hold one.
+   *
+   * @param p the page to read from
+   * @param entryNum the entry holding the record
+   * @param entry a buffer of one fixed-size entry to read the record through
+   * @return the decoded record
+   */
+  private Record readEntry(Page p, int entryNum, byte[] entry) {
+    if (this.slottedPage != null) {
+      return this.schema.decodeVariable(this.slottedPage.read(p, entryNum));
+    }
+    p.readBytes(this.pageHeaderSize + entryNum * entry.length, entry.length, entry);
+    return this.schema.decode(entry);
+  }
+
+  /**
+   * Read the stats and numRecords from the stats file, if it holds stats for this table. They are
+   * only known to be current, and statsSaved set, if they were saved when the table was closed.
+   *
+   * @return true if the stats were read, otherwise false
+   */
+  private boolean readStats() {
+    this.stats = new TableStats(this.schema);
+    this.statsSaved = false;
+
+    File file = new File(this.statsPathname);
+    if (!file.exists()) {
+      return false;
+    }
+
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      int magic = in.readInt();
+      if (magic != STATS_MAGIC && magic != STATS_CHECKPOINT_MAGIC) {
+        return false;
+      }
+      long numRecords = in.readLong();
+      this.stats.read(in);
+      this.numRecords = numRecords;
+      this.statsSaved = magic == STATS_MAGIC;
+    } catch (IOException e) {
+      this.stats = new TableStats(this.schema);
+      return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Save the stats and numRecords to the stats file, as saved on close if closed is true and as a
+   * checkpoint otherwise. The file is replaced in one step, so it never holds part of the stats.
+   * If it cannot be written, the table is left without one and the stats are rebuilt when it is
+   * next opened.
+   *
+   * @param closed whether the table is being closed, so that the stats will not change again
+   */
+  private void writeStats(boolean closed) {
+    File file = new File(this.statsPathname);
+    File tempFile = new File(this.statsPathname + ".tmp");
+    this.statsSaved = false;
+    this.numChanges = 0;
+
+    try {
+      FileOutputStream fos = new FileOutputStream(tempFile);
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+        out.writeInt(closed ? STATS_MAGIC : STATS_CHECKPOINT_MAGIC);
+        out.writeLong(this.numRecords);
+        this.stats.write(out);
+        out.flush();
+        fos.getFD().sync();
       }
+      Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                 StandardCopyOption.ATOMIC_MOVE);
+      this.statsSaved = closed;
+    } catch (IOException e) {
+      tempFile.delete();
+      file.delete();
     }
+  }
 
-    return count;
+  /**
+   * Checkpoint the stats before the table changes, if the stats file holds stats saved on close,
+   * which must not be read back as current once the table changes, or if STATS_SAVE_INTERVAL
+   * changes have been made since they were last saved. A table that is not closed cleanly so
+   * opens with stats at most that many changes old, instead of rebuilding them from its records.
+   */
+  private void beforeChange() {
+    if (this.statsSaved || this.numChanges >= STATS_SAVE_INTERVAL) {
+      this.writeStats(false);
+    }
   }
 
   /**
-   * Utility method to write the header page of the table. The only information written into
-   * the header page is the table's schema.
+   * Decode the records of data page pageNum into records, in slot order. The page is pinned
+   * only while it is being read.
+   *
+   * @param pageNum the data page to decode
+   * @param entry a buffer of one entry to read the records through
+   * @param records the list to add the records to
+   */
+  private void decodePage(int pageNum, byte[] entry, List<Record> records) {
+    int[] entryNums = new int[this.numEntriesPerPage];
+    Page page = this.allocator.fetchPinnedPage(pageNum);
+    try {
+      int numEntries = this.findEntries(page, entryNums);
+      for (int i = 0; i < numEntries; i++) {
+        records.add(this.readEntry(page, entryNums[i], entry));
+      }
+    } finally {
+      this.allocator.unpinPage(page);
+    }
+  }
+
+  /**
+   * Utility method to write the header page of the table. The information written into the
+   * header page is the table's schema, followed by its record format.
    */
   private void writeHeaderPage() {
     int numBytesWritten = 0;
@@ -428,11 +952,11 @@ public class Table implements Iterable<Record>, Closeable {
     assert(0 == headerPage.getPageNum());
 
     List<String> fieldNames = this.schema.getFieldNames();
-    headerPage.writeBytes(numBytesWritten, 4, ByteBuffer.allocate(4).putInt(fieldNames.size()).array());
+    headerPage.writeInt(numBytesWritten, fieldNames.size());
     numBytesWritten += 4;
 
     for (String fieldName : fieldNames) {
-      headerPage.writeBytes(numBytesWritten, 4, ByteBuffer.allocate(4).putInt(fieldName.length()).array());
+      headerPage.writeInt(numBytesWritten, fieldName.length());
       numBytesWritten += 4;
     }
 
@@ -442,29 +966,32 @@ public class Table implements Iterable<Record>, Closeable {
     }
 
     for (DataBox field : this.schema.getFieldTypes()) {
-      headerPage.writeBytes(numBytesWritten, 4, ByteBuffer.allocate(4).putInt(field.type().ordinal()).array());
+      headerPage.writeInt(numBytesWritten, field.type().ordinal());
       numBytesWritten += 4;
 
       if (field.type().equals(DataBox.Types.STRING)) {
-        headerPage.writeBytes(numBytesWritten, 4, ByteBuffer.allocate(4).putInt(field.getSize()).array());
+        headerPage.writeInt(numBytesWritten, field.getSize());
         numBytesWritten += 4;
       }
     }
+
+    headerPage.writeInt(numBytesWritten, this.format.ordinal());
   }
 
   /**
-   * Utility method to read the header page of the table.
+   * Utility method to read the header page of the table. A table written before tables had a
+   * record format has zeros after its schema, which reads as FIXED.
    */
   private void readHeaderPage() {
     int numBytesRead = 0;
     Page headerPage = this.allocator.fetchPage(0);
 
-    int numFields = ByteBuffer.wrap(headerPage.readBytes(numBytesRead, 4)).getInt();
+    int numFields = headerPage.readInt(numBytesRead);
     numBytesRead += 4;
 
     List<Integer> fieldNameLengths = new ArrayList<Integer>();
     for (int i = 0; i < numFields; i++) {
-      fieldNameLengths.add(ByteBuffer.wrap(headerPage.readBytes(numBytesRead, 4)).getInt());
+      fieldNameLengths.add(headerPage.readInt(numBytesRead));
       numBytesRead += 4;
     }
 
@@ -478,7 +1005,7 @@ public class Table implements Iterable<Record>, Closeable {
 
     List<DataBox> fieldTypes = new ArrayList<DataBox>();
     for (int i = 0; i < numFields; i++) {
-      int ordinal = ByteBuffer.wrap(headerPage.readBytes(numBytesRead, 4)).getInt();
+      int ordinal = headerPage.readInt(numBytesRead);
       DataBox.Types type = DataBox.Types.values()[ordinal];
       numBytesRead += 4;
 
@@ -487,7 +1014,7 @@ public class Table implements Iterable<Record>, Closeable {
           fieldTypes.add(new IntDataBox());
           break;
         case STRING:
-          int len = ByteBuffer.wrap(headerPage.readBytes(numBytesRead, 4)).getInt();
+          int len = headerPage.readInt(numBytesRead);
           numBytesRead += 4;
 
           fieldTypes.add(new StringDataBox(len));
@@ -502,7 +1029,7 @@ public class Table implements Iterable<Record>, Closeable {
     }
 
     this.schema = new Schema(fieldNames, fieldTypes);
-
+    this.format = RecordFormat.values()[headerPage.readInt(numBytesRead)];
   }
 
   /**
@@ -513,22 +1040,7 @@ public class Table implements Iterable<Record>, Closeable {
    * @param value the value of the bit to write (should either be 0 or 1)
    */
   private void writeBitToHeader(Page page, int entryNum, byte value) {
-    byte[] header = this.readPageHeader(page);
-    int byteOffset = entryNum / 8;
-    int bitOffset = 7 - (entryNum % 8);
-
-    if (value == 0) {
-      byte mask = (byte) ~((1 << bitOffset));
-
-      header[byteOffset] = (byte) (header[byteOffset] & mask);
-      page.writeBytes(0, this.pageHeaderSize, header);
-    } else {
-      byte mask = (byte) (1 << bitOffset);
-
-      header[byteOffset] = (byte) (header[byteOffset] | mask);
-    }
-
-    page.writeBytes(0, this.pageHeaderSize, header);
+    Bitmap.set(page, 0, entryNum, value != 0);
   }
 
   /**
@@ -543,17 +1055,26 @@ public class Table implements Iterable<Record>, Closeable {
 
   /**
    * An implementation of Iterator that provides an iterator interface over all
-   * of the records in this table.
+   * of the records in this table. It works a page at a time: each data page is
+   * pinned just long enough to decode the records in its set slots into a
+   * buffer, using one entry buffer for the whole scan, and the records are
+   * returned from there. No page stays pinned between calls, so an iterator
+   * that is dropped before the end holds nothing in the buffer pool.
    */
   private class TableIterator implements Iterator<Record> {
 
-    private int recordNum;
-    private int cursor;
+    private long recordNum;
+    private int pageNum;
+    private List<Record> buffer;
+    private int bufferIndex;
+    private byte[] entry;
 
     public TableIterator() {
-      // TODO: implement me!
       this.recordNum = 0;
-      this.cursor = 0;
+      this.pageNum = 0;
+      this.buffer = new ArrayList<Record>();
+      this.bufferIndex = 0;
+      this.entry = new byte[Table.this.schema.getEntrySize()];
     }
 
     /**
@@ -562,7 +1083,6 @@ public class Table implements Iterable<Record>, Closeable {
      * @return true if this iterator has another record to yield, otherwise false
      */
     public boolean hasNext() {
-      // TODO: implement me!
       return this.recordNum < Table.this.numRecords;
     }
 
@@ -573,30 +1093,144 @@ public class Table implements Iterable<Record>, Closeable {
      * @throws NoSuchElementException if there are no more Records to yield
      */
     public Record next() {
-      // TODO: implement me!
-      if (this.hasNext()) {
-        while (true) {
-          Record record;
-          try {
-            int pageNum = cursor / Table.this.numEntriesPerPage + 1;
-            int entryNum = cursor - (pageNum - 1) * Table.this.numEntriesPerPage;
-            RecordID rid = new RecordID(pageNum, entryNum);
-            Page temp = Table.this.allocator.fetchPage(pageNum);
-            byte[] tempHeader = Table.this.readPageHeader(temp);
-            record = Table.this.getRecord(rid);
-            cursor++;
-            recordNum++;
-            return record;
-          } catch (DatabaseException e) {
-            cursor++;
-          }
+      if (!this.hasNext()) {
+        throw new NoSuchElementException();
+      }
+
+      while (this.bufferIndex == this.buffer.size()) {
+        this.pageNum++;
+        if (this.pageNum >= Table.this.allocator.getNumPages()) {
+          throw new NoSuchElementException();
         }
+        this.buffer.clear();
+        this.bufferIndex = 0;
+        Table.this.decodePage(this.pageNum, this.entry, this.buffer);
       }
-      throw new NoSuchElementException();
+
+      this.recordNum++;
+      return this.buffer.get(this.bufferIndex++);
     }
 
     public void remove() {
       throw new UnsupportedOperationException();
     }
   }
+
+  /**
+   * A Spliterator over the records on data pages lowPage up to highPage. It splits by halving
+   * its range of pages, and decodes one page at a time into a buffer of records.
+   */
+  private class TableSpliterator implements Spliterator<Record> {
+    private int lowPage;
+    private int highPage;
+    private List<Record> buffer;
+    private int bufferIndex;
+    private byte[] entry;
+
+    public TableSpliterator(int lowPage, int highPage) {
+      this.lowPage = lowPage;
+      this.highPage = highPage;
+      this.buffer = new ArrayList<Record>();
+      this.bufferIndex = 0;
+      this.entry = new byte[Table.this.schema.getEntrySize()];
+    }
+
+    public boolean tryAdvance(Consumer<? super Record> action) {
+      while (this.bufferIndex == this.buffer.size()) {
+        if (this.lowPage >= this.highPage) {
+          return false;
+        }
+        this.buffer.clear();
+        this.bufferIndex = 0;
+        Table.this.decodePage(this.lowPage, this.entry, this.buffer);
+        this.lowPage++;
+      }
+      action.accept(this.buffer.get(this.bufferIndex++));
+      return true;
+    }
+
+    public Spliterator<Record> trySplit() {
+      int numPages = this.highPage - this.lowPage;
+      if (numPages < 2) {
+        return null;
+      }
+      int middlePage = this.lowPage + numPages / 2;
+      // records already decoded come before the prefix's pages, so they go with it
+      TableSpliterator prefix = new TableSpliterator(this.lowPage, middlePage);
+      if (this.bufferIndex < this.buffer.size()) {
+        prefix.buffer.addAll(this.buffer.subList(this.bufferIndex, this.buffer.size()));
+        this.buffer.clear();
+        this.bufferIndex = 0;
+      }
+      this.lowPage = middlePage;
+      return prefix;
+    }
+
+    public long estimateSize() {
+      long numDataPages = Math.max(Table.this.allocator.getNumPages() - 1, 1);
+      long numPages = this.highPage - this.lowPage;
+      return Table.this.numRecords * numPages / numDataPages + (this.buffer.size() - this.bufferIndex);
+    }
+
+    public int characteristics() {
+      return Spliterator.ORDERED | Spliterator.NONNULL;
+    }
+  }
+
+  /**
+   * An iterator over the records of this table that keeps the next few pages being decoded on a
+   * ForkJoinPool, two per worker, and returns their records in page order as they complete.
+   */
+  private class ParallelTableIterator implements Iterator<Record> {
+    private ForkJoinPool pool;
+    private Deque<ForkJoinTask<List<Record>>> pending;
+    private int nextPage;
+    private int highPage;
+    private Iterator<Record> current;
+
+    public ParallelTableIterator(ForkJoinPool pool) {
+      this.pool = pool;
+      this.pending = new ArrayDeque<ForkJoinTask<List<Record>>>();
+      this.nextPage = 1;
+      this.highPage = Table.this.allocator.getNumPages();
+      this.current = null;
+      this.submitPages();
+    }
+
+    public boolean hasNext() {
+      while (this.current == null || !this.current.hasNext()) {
+        if (this.pending.isEmpty()) {
+          return false;
+        }
+        this.current = this.pending.poll().join().iterator();
+        this.submitPages();
+      }
+      return true;
+    }
+
+    public Record next() {
+      if (!this.hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return this.current.next();
+    }
+
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+
+    private void submitPages() {
+      int window = 2 * this.pool.getParallelism();
+      while (this.pending.size() < window && this.nextPage < this.highPage) {
+        final int pageNum = this.nextPage++;
+        this.pending.add(this.pool.submit(new Callable<List<Record>>() {
+          public List<Record> call() {
+            List<Record> records = new ArrayList<Record>();
+            Table.this.decodePage(pageNum, new byte[Table.this.schema.getEntrySize()], records);
+            return records;
+          }
+        }));
+      }
+    }
+  }
 }
@@ -1,5 +1,8 @@
 package edu.berkeley.cs186.database.table.stats;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -39,4 +42,16 @@ public class BoolHistogram implements Histogram<Boolean> {
       this.buckets.get(1).increment();
     }
   }
+
+  public void write(DataOutputStream out) throws IOException {
+    for (Bucket<Boolean> bucket : this.buckets) {
+      out.writeInt(bucket.getCount());
+    }
+  }
+
+  public void read(DataInputStream in) throws IOException {
+    for (Bucket<Boolean> bucket : this.buckets) {
+      bucket.increment(in.readInt() - bucket.getCount());
+    }
+  }
 }
@@ -1,5 +1,8 @@
 package edu.berkeley.cs186.database.table.stats;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -76,6 +79,31 @@ public class FloatHistogram implements Histogram<Float> {
     return entries;
   }
 
+  public void write(DataOutputStream out) throws IOException {
+    out.writeFloat(this.min);
+    out.writeFloat(this.max);
+    out.writeInt(this.buckets.size());
+    for (Bucket<Float> bucket : this.buckets) {
+      out.writeFloat(bucket.getStart());
+      out.writeFloat(bucket.getEnd());
+      out.writeInt(bucket.getCount());
+    }
+  }
+
+  public void read(DataInputStream in) throws IOException {
+    this.min = in.readFloat();
+    this.max = in.readFloat();
+    int numBuckets = in.readInt();
+    this.buckets = new ArrayList<Bucket<Float>>();
+    for (int i = 0; i < numBuckets; i++) {
+      float start = in.readFloat();
+      float end = in.readFloat();
+      Bucket<Float> bucket = new Bucket<Float>(start, end);
+      bucket.increment(in.readInt());
+      this.buckets.add(bucket);
+    }
+  }
+
   private void refactorBuckets(float value) {
     float newMin = value < this.min ? value : this.min;
     float newMax = value > this.max ? value : this.max;
@@ -1,5 +1,8 @@
 package edu.berkeley.cs186.database.table.stats;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -38,4 +41,20 @@ public interface Histogram<T> {
    * @return the list of buckets
    */
   List<Bucket<T>> getAllBuckets();
+
+  /**
+   * Write the Histogram's buckets to out, so that read can restore them.
+   *
+   * @param out the stream to write to
+   * @throws IOException if out cannot be written
+   */
+  void write(DataOutputStream out) throws IOException;
+
+  /**
+   * Replace the Histogram's buckets with the ones written by write.
+   *
+   * @param in the stream to read from
+   * @throws IOException if in cannot be read
+   */
+  void read(DataInputStream in) throws IOException;
 }
@@ -1,5 +1,8 @@
 package edu.berkeley.cs186.database.table.stats;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -76,6 +79,31 @@ public class IntHistogram implements Histogram<Integer>{
     return entries;
   }
 
+  public void write(DataOutputStream out) throws IOException {
+    out.writeInt(this.min);
+    out.writeInt(this.max);
+    out.writeInt(this.buckets.size());
+    for (Bucket<Integer> bucket : this.buckets) {
+      out.writeInt(bucket.getStart());
+      out.writeInt(bucket.getEnd());
+      out.writeInt(bucket.getCount());
+    }
+  }
+
+  public void read(DataInputStream in) throws IOException {
+    this.min = in.readInt();
+    this.max = in.readInt();
+    int numBuckets = in.readInt();
+    this.buckets = new ArrayList<Bucket<Integer>>();
+    for (int i = 0; i < numBuckets; i++) {
+      int start = in.readInt();
+      int end = in.readInt();
+      Bucket<Integer> bucket = new Bucket<Integer>(start, end);
+      bucket.increment(in.readInt());
+      this.buckets.add(bucket);
+    }
+  }
+
   private void refactorBuckets(int value) {
     int newMin = value < this.min ? value : this.min;
     int newMax = value > this.max ? value : this.max;
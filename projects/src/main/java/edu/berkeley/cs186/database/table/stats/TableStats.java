@@ -1,5 +1,8 @@
 package edu.berkeley.cs186.database.table.stats;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -103,6 +106,37 @@ public class TableStats {
     return this.numRecords;
   }
 
+  /**
+   * Write the stats to out, so that read can restore them without the records they were built from.
+   *
+   * @param out the stream to write to
+   * @throws IOException if out cannot be written
+   */
+  public void write(DataOutputStream out) throws IOException {
+    out.writeInt(this.numRecords);
+    out.writeInt(this.histograms.size());
+    for (Histogram<?> histogram : this.histograms) {
+      histogram.write(out);
+    }
+  }
+
+  /**
+   * Replace the stats with the ones written by write for a table with the same schema.
+   *
+   * @param in the stream to read from
+   * @throws IOException if in cannot be read or was not written for this schema
+   */
+  public void read(DataInputStream in) throws IOException {
+    int numRecords = in.readInt();
+    if (in.readInt() != this.histograms.size()) {
+      throw new IOException("stats do not match the schema");
+    }
+    for (Histogram<?> histogram : this.histograms) {
+      histogram.read(in);
+    }
+    this.numRecords = numRecords;
+  }
+
   /**
    * Get the histogram for a particular column.
    *
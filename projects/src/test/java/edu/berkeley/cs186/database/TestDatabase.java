@@ -3,6 +3,7 @@ package edu.berkeley.cs186.database;
 import edu.berkeley.cs186.database.Database;
 import edu.berkeley.cs186.database.TestUtils;
 import edu.berkeley.cs186.database.StudentTest;
+import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.table.*;
 
 import org.junit.After;
@@ -65,6 +66,34 @@ public class TestDatabase {
     t1.end();
   }
 
+  @Test
+  public void testTransactionAddRecords() throws DatabaseException {
+    Schema s = TestUtils.createSchemaWithAllTypes();
+    Record input = TestUtils.createRecordWithAllTypes();
+
+    String tableName = "testTable1";
+    db.createTable(s, tableName);
+
+    List<List<DataBox>> values = new ArrayList<List<DataBox>>();
+    for (int i = 0; i < 500; i++) {
+      values.add(input.getValues());
+    }
+
+    Database.Transaction t1 = db.beginTransaction();
+    List<RecordID> rids = t1.addRecords(tableName, values.iterator());
+    assertEquals(500, rids.size());
+    assertEquals(input, t1.getRecord(tableName, rids.get(499)));
+
+    int count = 0;
+    Iterator<Record> records = t1.getRecordIterator(tableName);
+    while (records.hasNext()) {
+      assertEquals(input, records.next());
+      count++;
+    }
+    assertEquals(500, count);
+    t1.end();
+  }
+
   @Test
   public void testTransactionTempTable() throws DatabaseException {
     Schema s = TestUtils.createSchemaWithAllTypes();
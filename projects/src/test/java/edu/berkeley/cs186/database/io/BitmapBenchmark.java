@@ -0,0 +1,120 @@
+package edu.berkeley.cs186.database.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Times Bitmap's word-at-a-time operations against the loops Table and BPlusNode used before, which
+ * copied the bitmap out of the page and walked it a bit or a byte at a time. A bitmap of numBits
+ * bits at the start of a page is filled to each density in turn, and counting the set bits,
+ * finding the first clear bit and visiting every set bit are each timed both ways. Prints the
+ * nanoseconds per call.
+ *
+ * Usage: BitmapBenchmark [numBits] [numCalls]
+ */
+public class BitmapBenchmark {
+  private static final double[] DENSITIES = {0.5, 0.99, 1.0};
+
+  // what the calls returned, kept so that they are not optimized away
+  private static volatile long sink;
+
+  public static void main(String[] args) throws IOException {
+    int numBits = args.length > 0 ? Integer.parseInt(args[0]) : 288;
+    int numCalls = args.length > 1 ? Integer.parseInt(args[1]) : 500000;
+
+    File file = File.createTempFile("bitmap", ".bench");
+    file.deleteOnExit();
+    PageAllocator allocator = new PageAllocator(file.getAbsolutePath(), true);
+    Page page = allocator.fetchPage(allocator.allocPage());
+    int numBytes = (numBits + 7) / 8;
+
+    for (int pass = 0; pass < 2; pass++) {
+      // the first pass warms up the JIT; only the second is printed
+      for (double density : DENSITIES) {
+        Random random = new Random(0);
+        for (int bit = 0; bit < numBits; bit++) {
+          Bitmap.set(page, 0, bit, random.nextDouble() < density);
+        }
+
+        long[] nanos = new long[6];
+        long sum = 0;
+        for (int op = 0; op < 6; op++) {
+          long start = System.nanoTime();
+          for (int i = 0; i < numCalls; i++) {
+            sum += BitmapBenchmark.run(page, numBits, numBytes, op);
+          }
+          nanos[op] = System.nanoTime() - start;
+        }
+        BitmapBenchmark.sink = sum;
+
+        if (pass == 1) {
+          System.out.printf("%4.0f%% set  count %5.1f / %6.1f  first clear %5.1f / %6.1f  " +
+                            "each set %6.1f / %7.1f ns (words / bits)%n", 100 * density,
+                            (double) nanos[0] / numCalls, (double) nanos[1] / numCalls,
+                            (double) nanos[2] / numCalls, (double) nanos[3] / numCalls,
+                            (double) nanos[4] / numCalls, (double) nanos[5] / numCalls);
+        }
+      }
+    }
+    allocator.close();
+  }
+
+  /**
+   * Run operation op once: an even op through Bitmap, an odd one the old way.
+   */
+  private static int run(Page page, int numBits, int numBytes, int op) {
+    switch (op) {
+      case 0:
+        return Bitmap.countSet(page, 0, numBits);
+      case 1: {
+        byte[] header = page.readBytes(0, numBytes);
+        int count = 0;
+        for (byte b : header) {
+          for (int mask = 0x01; mask != 0x100; mask <<= 1) {
+            if ((b & (byte) mask) != 0) {
+              count++;
+            }
+          }
+        }
+        return count;
+      }
+      case 2:
+        return Bitmap.findFirstClear(page, 0, numBits);
+      case 3: {
+        byte[] header = page.readBytes(0, numBytes);
+        for (int i = 0; i < numBytes; i++) {
+          byte b = header[i];
+          if (b != (byte) 0xFF) {
+            int offset = 0;
+            while (b < 0) {
+              b <<= 1;
+              offset++;
+            }
+            return 8 * i + offset;
+          }
+        }
+        return -1;
+      }
+      case 4: {
+        int[] bits = new int[numBits];
+        int numSet = Bitmap.getSetBits(page, 0, numBits, bits);
+        int sum = 0;
+        for (int i = 0; i < numSet; i++) {
+          sum += bits[i];
+        }
+        return sum;
+      }
+      default: {
+        byte[] header = page.readBytes(0, numBytes);
+        int sum = 0;
+        for (int bit = 0; bit < numBits; bit++) {
+          if (((header[bit / 8] >> (7 - bit % 8)) & 1) != 0) {
+            sum += bit;
+          }
+        }
+        return sum;
+      }
+    }
+  }
+}
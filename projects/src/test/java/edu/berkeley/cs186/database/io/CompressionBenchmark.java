@@ -0,0 +1,122 @@
+package edu.berkeley.cs186.database.io;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Fills a file with pages of fixed-width records, an int and a space-padded string as a Table lays
+ * them out, through the DIRECT and the COMPRESSED store at each page size. Prints the compression
+ * ratio the COMPRESSED store reports for the pages it wrote back while loading, the time per page
+ * of the load and of a scan through a BufferPool much smaller than the file, so that every page is
+ * written to and read from the store, the bytes per page the scan read from the file, as
+ * /proc/self/io counts them, and the bytes per page the load and the scan allocated.
+ *
+ * Usage: CompressionBenchmark [fileSizeMB] [stringLength] [numFrames]
+ */
+public class CompressionBenchmark {
+  private static final com.sun.management.ThreadMXBean THREADS =
+    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+  private static final int[] PAGE_SIZES = {4096, 16384, 65536};
+  private static final PageStore.Type[] STORE_TYPES =
+    new PageStore.Type[] {PageStore.Type.DIRECT, PageStore.Type.COMPRESSED};
+
+  public static void main(String[] args) throws IOException {
+    long fileSize = (args.length > 0 ? Integer.parseInt(args[0]) : 32) * 1024L * 1024L;
+    int stringLength = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+    int numFrames = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+
+    File file = File.createTempFile("compression", ".bench");
+    file.deleteOnExit();
+    for (int pass = 0; pass < 2; pass++) {
+      // the first pass warms up the JIT; only the second is printed
+      for (int pageSize : PAGE_SIZES) {
+        for (PageStore.Type storeType : STORE_TYPES) {
+          int numPages = (int) (fileSize / pageSize);
+          PageAllocator allocator = new PageAllocator(file.getAbsolutePath(), true, null,
+                                                      new BufferPool(numFrames), pageSize,
+                                                      storeType);
+          int recordSize = 4 + stringLength;
+          int recordsPerPage = allocator.getUsablePageSize() / recordSize;
+          byte[] record = new byte[recordSize];
+
+          long loadAllocated = CompressionBenchmark.bytesAllocated();
+          long start = System.nanoTime();
+          for (int i = 0; i < numPages; i++) {
+            Page page = allocator.fetchPage(allocator.allocPage());
+            for (int j = 0; j < recordsPerPage; j++) {
+              CompressionBenchmark.encode(i * recordsPerPage + j, stringLength, record);
+              page.writeBytes(j * recordSize, recordSize, record);
+            }
+          }
+          // of the pages written back so far, which is all but the ones still cached
+          double ratio = allocator.getCompressionRatio();
+          allocator.close();
+          long loadNanos = System.nanoTime() - start;
+          loadAllocated = CompressionBenchmark.bytesAllocated() - loadAllocated;
+
+          allocator = new PageAllocator(file.getAbsolutePath(), false, null,
+                                        new BufferPool(numFrames), pageSize, storeType);
+          long bytesRead = CompressionBenchmark.bytesRead();
+          long scanAllocated = CompressionBenchmark.bytesAllocated();
+          start = System.nanoTime();
+          for (int i = 0; i < numPages; i++) {
+            if (allocator.fetchPage(i).readInt(0) != i * recordsPerPage) {
+              throw new IllegalStateException("page " + i + " lost its contents");
+            }
+          }
+          long scanNanos = System.nanoTime() - start;
+          bytesRead = CompressionBenchmark.bytesRead() - bytesRead;
+          scanAllocated = CompressionBenchmark.bytesAllocated() - scanAllocated;
+          allocator.close();
+
+          if (pass == 1) {
+            System.out.printf("%5dKB  %-10s  ratio %5.2f  load %7.0f  scan %7.0f ns/page  " +
+                              "read %6.0f  allocated %6.0f / %6.0f bytes/page%n",
+                              pageSize / 1024, storeType, ratio, (double) loadNanos / numPages,
+                              (double) scanNanos / numPages, (double) bytesRead / numPages,
+                              (double) loadAllocated / numPages,
+                              (double) scanAllocated / numPages);
+          }
+        }
+      }
+    }
+  }
+
+  private static long bytesAllocated() {
+    return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  /**
+   * @return the bytes this process has read from files so far, cached or not, or 0 where there
+   * is no /proc/self/io
+   */
+  private static long bytesRead() {
+    try (BufferedReader in = new BufferedReader(new FileReader("/proc/self/io"))) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        if (line.startsWith("rchar:")) {
+          return Long.parseLong(line.substring("rchar:".length()).trim());
+        }
+      }
+    } catch (IOException e) {
+      // not Linux
+    }
+    return 0;
+  }
+
+  /**
+   * Write record id as an int followed by its name, padded with spaces to stringLength bytes.
+   */
+  private static void encode(int id, int stringLength, byte[] record) {
+    ByteBuffer.wrap(record).putInt(0, id);
+    byte[] name = ("customer " + id).getBytes(StandardCharsets.US_ASCII);
+    Arrays.fill(record, 4, record.length, (byte) ' ');
+    System.arraycopy(name, 0, record, 4, Math.min(name.length, stringLength));
+  }
+}
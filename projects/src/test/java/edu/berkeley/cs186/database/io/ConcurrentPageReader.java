@@ -0,0 +1,42 @@
+package edu.berkeley.cs186.database.io;
+
+/**
+ * Reads every page of a PageAllocator several times and checks that each page still holds its own
+ * page number in its first int. Used to exercise the buffer pool from many threads at once.
+ */
+public class ConcurrentPageReader implements Runnable {
+  private PageAllocator allocator;
+  private int numPages;
+  private int numPasses;
+  private int offset;
+  private volatile boolean failed;
+
+  public ConcurrentPageReader(PageAllocator allocator, int numPages, int numPasses, int offset) {
+    this.allocator = allocator;
+    this.numPages = numPages;
+    this.numPasses = numPasses;
+    this.offset = offset;
+    this.failed = false;
+  }
+
+  public void run() {
+    try {
+      for (int pass = 0; pass < this.numPasses; pass++) {
+        for (int i = 0; i < this.numPages; i++) {
+          int pageNum = (i + this.offset) % this.numPages;
+          Page p = this.allocator.fetchPinnedPage(pageNum);
+          if (p.readInt(0) != pageNum) {
+            this.failed = true;
+          }
+          this.allocator.unpinPage(p);
+        }
+      }
+    } catch (RuntimeException e) {
+      this.failed = true;
+    }
+  }
+
+  public boolean hasFailed() {
+    return this.failed;
+  }
+}
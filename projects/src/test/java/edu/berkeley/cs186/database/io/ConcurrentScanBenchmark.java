@@ -0,0 +1,73 @@
+package edu.berkeley.cs186.database.io;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Times ConcurrentPageReaders scanning a PageAllocator whose pages all fit in its BufferPool, with
+ * an unsharded pool and with a sharded one, and prints the pages fetched per second for each
+ * number of threads. Every fetch is a hit, so the only thing the threads contend on is the pool.
+ *
+ * Usage: ConcurrentScanBenchmark [numPages] [numPasses] [maxThreads] [numShards]
+ */
+public class ConcurrentScanBenchmark {
+  public static void main(String[] args) throws IOException, InterruptedException {
+    int numPages = args.length > 0 ? Integer.parseInt(args[0]) : 512;
+    int numPasses = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+    int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+    int numShards = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+    System.out.println("processors: " + Runtime.getRuntime().availableProcessors());
+
+    File file = File.createTempFile("scan", ".bench");
+    file.deleteOnExit();
+    for (int shards : new int[] {1, numShards}) {
+      BufferPool pool = new BufferPool(2 * numPages, EvictionPolicy.Type.CLOCK, shards);
+      PageAllocator allocator = new PageAllocator(file.getAbsolutePath(), true, false, pool);
+      allocator.setReadAheadDepth(0);
+      for (int i = 0; i < numPages; i++) {
+        allocator.fetchPage(allocator.allocPage()).writeInt(0, i);
+      }
+      ConcurrentScanBenchmark.scan(allocator, numPages, numPasses, 1);
+
+      for (int numThreads = 1; numThreads <= maxThreads; numThreads *= 2) {
+        long nanos = ConcurrentScanBenchmark.scan(allocator, numPages, numPasses, numThreads);
+        double fetches = (double) numPages * numPasses * numThreads;
+        System.out.printf("shards %2d  threads %2d  %10.0f fetches/s%n", shards, numThreads,
+                          fetches / nanos * 1e9);
+      }
+      allocator.close();
+    }
+  }
+
+  /**
+   * Run numThreads readers that each make numPasses passes over the pages.
+   *
+   * @return the time taken in nanoseconds
+   */
+  private static long scan(PageAllocator allocator, int numPages, int numPasses, int numThreads)
+      throws InterruptedException {
+    ConcurrentPageReader[] readers = new ConcurrentPageReader[numThreads];
+    Thread[] threads = new Thread[numThreads];
+    for (int i = 0; i < numThreads; i++) {
+      int offset = i * numPages / numThreads;
+      readers[i] = new ConcurrentPageReader(allocator, numPages, numPasses, offset);
+      threads[i] = new Thread(readers[i]);
+    }
+
+    long start = System.nanoTime();
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    long nanos = System.nanoTime() - start;
+
+    for (ConcurrentPageReader reader : readers) {
+      if (reader.hasFailed()) {
+        throw new IllegalStateException("a reader saw the wrong page");
+      }
+    }
+    return nanos;
+  }
+}
@@ -0,0 +1,96 @@
+package edu.berkeley.cs186.database.io;
+
+import static org.junit.Assert.*;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+/**
+ * A minimal frame table that drives an EvictionPolicy the same way BufferPool does, checking the
+ * policy's victims as it goes. Used by TestEvictionPolicy.
+ */
+public class EvictionPolicySimulator {
+  private int numFrames;
+  private EvictionPolicy policy;
+  private HashMap<Long, Integer> table;
+  private long[] keys;
+  private int[] pinCounts;
+  private ArrayDeque<Integer> free;
+  private int hits;
+
+  public EvictionPolicySimulator(EvictionPolicy.Type type, int numFrames) {
+    this.numFrames = numFrames;
+    this.policy = type.newPolicy(numFrames);
+    this.table = new HashMap<Long, Integer>();
+    this.keys = new long[numFrames];
+    this.pinCounts = new int[numFrames];
+    this.free = new ArrayDeque<Integer>();
+    this.hits = 0;
+
+    for (int i = 0; i < numFrames; i++) {
+      this.free.add(i);
+    }
+  }
+
+  /**
+   * Access the page with the given key, loading it on a miss.
+   *
+   * @return the frame holding the page
+   */
+  public int access(long key) {
+    Integer frameNum = this.table.get(key);
+    if (frameNum != null) {
+      this.hits++;
+      this.policy.pageAccessed(frameNum);
+      return frameNum;
+    }
+
+    frameNum = this.free.poll();
+    if (frameNum == null) {
+      frameNum = this.policy.chooseVictim(this.pinCounts);
+      assertTrue(frameNum >= 0);
+      assertEquals(0, this.pinCounts[frameNum]);
+      assertEquals(frameNum, this.table.remove(this.keys[frameNum]));
+    }
+    this.keys[frameNum] = key;
+    this.table.put(key, frameNum);
+    this.policy.pageLoaded(frameNum, key);
+    return frameNum;
+  }
+
+  public void remove(long key) {
+    Integer frameNum = this.table.remove(key);
+    if (frameNum != null) {
+      this.policy.pageRemoved(frameNum);
+      this.pinCounts[frameNum] = 0;
+      this.free.add(frameNum);
+    }
+  }
+
+  public void setPinned(int frameNum, boolean pinned) {
+    this.pinCounts[frameNum] = pinned ? 1 : 0;
+  }
+
+  public int getNumPinned() {
+    int count = 0;
+    for (int pinCount : this.pinCounts) {
+      count += pinCount;
+    }
+    return count;
+  }
+
+  public boolean isCached(long key) {
+    return this.table.containsKey(key);
+  }
+
+  public int getNumCached() {
+    return this.table.size();
+  }
+
+  public int getHits() {
+    return this.hits;
+  }
+
+  public int chooseVictim() {
+    return this.policy.chooseVictim(this.pinCounts);
+  }
+}
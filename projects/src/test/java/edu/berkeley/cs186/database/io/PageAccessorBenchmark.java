@@ -0,0 +1,88 @@
+package edu.berkeley.cs186.database.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+/**
+ * Times Page's primitive accessors against the way they used to be written, by wrapping or
+ * allocating a byte[] for every value, over every int of a page. Prints the nanoseconds and the
+ * bytes allocated per access for each.
+ *
+ * Usage: PageAccessorBenchmark [numRounds]
+ */
+public class PageAccessorBenchmark {
+  private static final com.sun.management.ThreadMXBean THREADS =
+    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+  private static final String[] VARIANTS = {"readInt", "wrapped read", "writeInt", "wrapped write"};
+
+  // what was read, kept so that the reads are not optimized away
+  private static volatile long sink;
+
+  public static void main(String[] args) throws IOException {
+    int numRounds = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+
+    File file = File.createTempFile("accessor", ".bench");
+    file.deleteOnExit();
+    PageAllocator allocator = new PageAllocator(file.getAbsolutePath(), true);
+    Page page = allocator.fetchPage(allocator.allocPage());
+    int numInts = page.getSize() / 4;
+
+    for (int pass = 0; pass < 2; pass++) {
+      // the first pass warms up the JIT; only the second is printed
+      boolean print = pass == 1;
+      for (int variant = 0; variant < 4; variant++) {
+        long bytes = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+        long start = System.nanoTime();
+        long sum = 0;
+        for (int round = 0; round < numRounds; round++) {
+          sum += PageAccessorBenchmark.run(page, variant, round);
+        }
+        PageAccessorBenchmark.sink = sum;
+        long nanos = System.nanoTime() - start;
+        bytes = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) - bytes;
+
+        double numAccesses = (double) numRounds * numInts;
+        if (print) {
+          System.out.printf("%-14s  %6.2f ns/access  %6.2f bytes/access%n", VARIANTS[variant],
+                            nanos / numAccesses, bytes / numAccesses);
+        }
+      }
+    }
+    allocator.close();
+  }
+
+  /**
+   * Read or write every int of page once, the way variant says.
+   *
+   * @return the sum of the ints read, or 0 for a write
+   */
+  private static long run(Page page, int variant, int round) {
+    int numInts = page.getSize() / 4;
+    long sum = 0;
+    switch (variant) {
+      case 0:
+        for (int i = 0; i < numInts; i++) {
+          sum += page.readInt(4 * i);
+        }
+        break;
+      case 1:
+        for (int i = 0; i < numInts; i++) {
+          sum += ByteBuffer.wrap(page.readBytes(4 * i, 4)).getInt();
+        }
+        break;
+      case 2:
+        for (int i = 0; i < numInts; i++) {
+          page.writeInt(4 * i, round + i);
+        }
+        break;
+      default:
+        for (int i = 0; i < numInts; i++) {
+          page.writeBytes(4 * i, 4, ByteBuffer.allocate(4).putInt(round + i).array());
+        }
+        break;
+    }
+    return sum;
+  }
+}
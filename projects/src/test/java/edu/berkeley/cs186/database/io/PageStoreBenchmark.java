@@ -0,0 +1,71 @@
+package edu.berkeley.cs186.database.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Times each PageStore type on a file much larger than the BufferPool in front of it: writing
+ * numPages pages and closing the file, scanning it, and fetching random pages of it. Prints the
+ * time per page of each phase and the mean and 99th percentile fetch latency of the reads, which
+ * is where page faults on a mapped file show up.
+ *
+ * Usage: PageStoreBenchmark [numPages] [numFrames] [numRandomReads]
+ */
+public class PageStoreBenchmark {
+  public static void main(String[] args) throws IOException {
+    int numPages = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+    int numFrames = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+    int numRandomReads = args.length > 2 ? Integer.parseInt(args[2]) : 50000;
+
+    File file = File.createTempFile("store", ".bench");
+    file.deleteOnExit();
+    PageStore.Type[] storeTypes = new PageStore.Type[] {PageStore.Type.MMAP, PageStore.Type.DIRECT};
+    for (int pass = 0; pass < 2; pass++) {
+      // the first pass warms up the JIT; only the second is printed
+      for (PageStore.Type storeType : storeTypes) {
+        PageAllocator allocator = new PageAllocator(file.getAbsolutePath(), true, null,
+                                                    new BufferPool(numFrames), 0, storeType);
+        long start = System.nanoTime();
+        for (int i = 0; i < numPages; i++) {
+          Page page = allocator.fetchPage(allocator.allocPage());
+          page.writeInt(0, i);
+          page.writeInt(page.getSize() - 4, i);
+        }
+        allocator.close();
+        long writeNanos = System.nanoTime() - start;
+
+        allocator = new PageAllocator(file.getAbsolutePath(), false, null,
+                                      new BufferPool(numFrames), 0, storeType);
+        start = System.nanoTime();
+        for (int i = 0; i < numPages; i++) {
+          if (allocator.fetchPage(i).readInt(0) != i) {
+            throw new IllegalStateException("page " + i + " lost its contents");
+          }
+        }
+        long scanNanos = System.nanoTime() - start;
+
+        Random random = new Random(0);
+        allocator.setReadAheadDepth(0);
+        start = System.nanoTime();
+        for (int i = 0; i < numRandomReads; i++) {
+          int pageNum = random.nextInt(numPages);
+          if (allocator.fetchPage(pageNum).readInt(0) != pageNum) {
+            throw new IllegalStateException("page " + pageNum + " lost its contents");
+          }
+        }
+        long randomNanos = System.nanoTime() - start;
+
+        IOMetrics metrics = allocator.getMetrics();
+        if (pass == 1) {
+          System.out.printf("%-6s  ns/page: write %6.0f  scan %6.0f  random %6.0f  " +
+                            "fetch ns: mean %6.0f  p99 %7d%n", storeType,
+                            (double) writeNanos / numPages, (double) scanNanos / numPages,
+                            (double) randomNanos / numRandomReads,
+                            metrics.getFetchLatencyMeanNanos(), metrics.getFetchLatencyP99Nanos());
+        }
+        allocator.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,102 @@
+package edu.berkeley.cs186.database.io;
+
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import java.io.IOException;
+import java.io.File;
+
+/**
+* Tests BackgroundWriter.java
+*/
+
+public class TestBackgroundWriter {
+  private final String fName = "TestBackgroundWriter.temp";
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Test
+  public void TestBackgroundWriterWatermarks() throws IOException {
+    File tempFile = tempFolder.newFile(fName);
+    BufferPool pool = new BufferPool(20);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, true, pool);
+    BackgroundWriter writer = new BackgroundWriter(pool, 1000, 0.5, 0.1, 2);
+
+    for (int i = 0; i < 20; i++) {
+      pA.allocPage();
+    }
+    pA.sync();
+    for (int i = 0; i < 8; i++) {
+      pA.fetchPage(i).writeInt(0, i);
+    }
+    assertEquals(8, pool.getNumWriteBackPages());
+    assertEquals(0, writer.writeRound());
+    assertFalse(writer.isWriting());
+
+    for (int i = 8; i < 12; i++) {
+      pA.fetchPage(i).writeInt(0, i);
+    }
+    assertEquals(12, pool.getNumWriteBackPages());
+    // two pages per round until only two dirty pages are left
+    while (writer.writeRound() > 0) {
+      assertTrue(pool.getNumWriteBackPages() >= 2);
+    }
+    assertEquals(2, pool.getNumWriteBackPages());
+    assertEquals(10, writer.getNumPagesWritten());
+    assertFalse(writer.isWriting());
+    pA.close();
+  }
+
+  @Test
+  public void TestBackgroundWriterSkipsPinnedAndDeferred() throws IOException {
+    BufferPool pool = new BufferPool(10);
+    PageAllocator immediate = new PageAllocator(tempFolder.newFile(fName + 0).getAbsolutePath(), true,
+                                                new FlushScheduler(FlushMode.IMMEDIATE), pool);
+    PageAllocator deferred = new PageAllocator(tempFolder.newFile(fName + 1).getAbsolutePath(), true,
+                                               new FlushScheduler(FlushMode.DEFERRED), pool);
+    BackgroundWriter writer = new BackgroundWriter(pool, 1000, 0, 0, 10);
+
+    for (int i = 0; i < 3; i++) {
+      immediate.allocPage();
+      deferred.allocPage();
+      deferred.fetchPage(i).writeInt(0, i);
+    }
+    immediate.sync();
+    Page pinned = immediate.fetchPinnedPage(0);
+    pinned.writeInt(0, 1);
+    immediate.fetchPage(1).writeInt(0, 1);
+    assertEquals(2, pool.getNumWriteBackPages());
+
+    while (writer.writeRound() > 0) {
+    }
+    assertTrue(pinned.isDirty());
+    assertEquals(1, pool.getNumWriteBackPages());
+    assertTrue(deferred.fetchPage(0).isDirty());
+
+    immediate.unpinPage(pinned);
+    immediate.close();
+    deferred.close();
+  }
+
+  @Test
+  public void TestBackgroundWriterThread() throws IOException, InterruptedException {
+    File tempFile = tempFolder.newFile(fName);
+    BufferPool pool = new BufferPool(10);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, true, pool);
+    BackgroundWriter writer = new BackgroundWriter(pool, 1000, 0.2, 0, 5);
+
+    for (int i = 0; i < 5; i++) {
+      pA.allocPage();
+      pA.fetchPage(i).writeInt(0, i);
+    }
+    writer.start();
+    for (int i = 0; i < 500 && pool.getNumWriteBackPages() > 0; i++) {
+      Thread.sleep(10);
+    }
+    writer.stop();
+    assertEquals(0, pool.getNumWriteBackPages());
+    pA.close();
+  }
+}
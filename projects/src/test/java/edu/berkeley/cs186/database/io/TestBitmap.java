@@ -0,0 +1,102 @@
+package edu.berkeley.cs186.database.io;
+
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+* Tests Bitmap.java
+*/
+
+public class TestBitmap {
+  private final String fName = "TestBitmap.temp";
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private static boolean slowGet(Page page, int offset, int bit) {
+    byte b = page.readByte(offset + bit / 8);
+    return (b & (byte) (1 << (7 - bit % 8))) != 0;
+  }
+
+  @Test
+  public void TestBitmapAgainstBits() throws IOException {
+    File file = tempFolder.newFile(fName);
+    PageAllocator pa = new PageAllocator(file.getAbsolutePath(), true);
+    Page page = pa.fetchPage(pa.allocPage());
+    Random random = new Random(186);
+
+    // lengths around word boundaries, at an offset that is not a multiple of 8
+    int offset = 5;
+    int[] lengths = new int[] {8, 56, 64, 72, 128, 200, 1000};
+    for (int numBits : lengths) {
+      for (int density = 0; density <= 4; density++) {
+        int count = 0;
+        for (int i = 0; i < numBits; i++) {
+          boolean value = density == 4 || random.nextInt(4) < density;
+          Bitmap.set(page, offset, i, value);
+          assertEquals(value, Bitmap.get(page, offset, i));
+          count += value ? 1 : 0;
+        }
+        // bits just past the end of the bitmap must not count
+        page.writeByte(offset + numBits / 8, (byte) 0x55);
+
+        assertEquals(count, Bitmap.countSet(page, offset, numBits));
+        int firstClear = -1;
+        for (int i = 0; i < numBits && firstClear < 0; i++) {
+          if (!slowGet(page, offset, i)) {
+            firstClear = i;
+          }
+        }
+        assertEquals(firstClear, Bitmap.findFirstClear(page, offset, numBits));
+
+        int seen = 0;
+        int expected = 0;
+        for (int i = Bitmap.findNextSet(page, offset, numBits, 0); i >= 0;
+             i = Bitmap.findNextSet(page, offset, numBits, i + 1)) {
+          while (!slowGet(page, offset, expected)) {
+            expected++;
+          }
+          assertEquals(expected, i);
+          expected++;
+          seen++;
+        }
+        assertEquals(count, seen);
+
+        int[] bits = new int[numBits];
+        assertEquals(count, Bitmap.getSetBits(page, offset, numBits, bits));
+        for (int i = 0, bit = -1; i < count; i++) {
+          bit = Bitmap.findNextSet(page, offset, numBits, bit + 1);
+          assertEquals(bit, bits[i]);
+        }
+      }
+    }
+    pa.close();
+  }
+
+  @Test
+  public void TestBitmapSetTouchesOneBit() throws IOException {
+    File file = tempFolder.newFile(fName);
+    PageAllocator pa = new PageAllocator(file.getAbsolutePath(), true);
+    Page page = pa.fetchPage(pa.allocPage());
+
+    Bitmap.set(page, 0, 9, true);
+    Bitmap.set(page, 0, 70, true);
+    assertEquals((byte) 0x40, page.readByte(1));
+    assertEquals((byte) 0x02, page.readByte(8));
+    assertEquals(9, Bitmap.findNextSet(page, 0, 128, 9));
+    assertEquals(70, Bitmap.findNextSet(page, 0, 128, 10));
+    assertEquals(-1, Bitmap.findNextSet(page, 0, 128, 71));
+    assertEquals(-1, Bitmap.findNextSet(page, 0, 64, 10));
+
+    Bitmap.set(page, 0, 9, false);
+    assertEquals(0, page.readByte(1));
+    assertEquals(1, Bitmap.countSet(page, 0, 128));
+    assertEquals(0, Bitmap.findFirstClear(page, 0, 128));
+    pa.close();
+  }
+}
@@ -0,0 +1,214 @@
+package edu.berkeley.cs186.database.io;
+
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import java.io.IOException;
+import java.io.File;
+
+/**
+* Tests BufferPool.java
+*/
+
+public class TestBufferPool {
+  private final String fName = "TestBufferPool.temp";
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Test
+  public void TestBufferPoolHitsAndMisses() throws IOException {
+    File tempFile = tempFolder.newFile(fName);
+    BufferPool pool = new BufferPool(4);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, false, pool);
+    pA.setReadAheadDepth(0);
+
+    for (int i = 0; i < 4; i++) {
+      assertEquals(i, pA.allocPage());
+    }
+    long misses = pA.getMetrics().getMisses();
+    for (int i = 0; i < 4; i++) {
+      pA.fetchPage(i);
+    }
+    assertEquals(misses, pA.getMetrics().getMisses());
+    assertEquals(4, pool.getNumCachedPages());
+    assertEquals(0, pA.getMetrics().getEvictions());
+
+    pA.allocPage();
+    assertEquals(4, pool.getNumCachedPages());
+    assertEquals(1, pA.getMetrics().getEvictions());
+    pA.close();
+    assertEquals(0, pool.getNumCachedPages());
+  }
+
+  @Test
+  public void TestBufferPoolPinnedPagesNotEvicted() throws IOException {
+    File tempFile = tempFolder.newFile(fName);
+    BufferPool pool = new BufferPool(2);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, false, pool);
+    pA.setReadAheadDepth(0);
+
+    for (int i = 0; i < 8; i++) {
+      pA.allocPage();
+    }
+    Page pinned = pA.fetchPinnedPage(0);
+    assertEquals(1, pool.getNumPinnedPages());
+    for (int i = 1; i < 8; i++) {
+      pA.fetchPage(i);
+    }
+
+    long misses = pA.getMetrics().getMisses();
+    assertSame(pinned, pA.fetchPage(0));
+    assertEquals(misses, pA.getMetrics().getMisses());
+
+    Page other = pA.fetchPinnedPage(1);
+    boolean thrown = false;
+    try {
+      pA.fetchPage(2);
+    } catch (PageException e) {
+      thrown = true;
+    }
+    assertTrue(thrown);
+
+    pA.unpinPage(other);
+    pA.unpinPage(pinned);
+    assertEquals(0, pool.getNumPinnedPages());
+    pA.fetchPage(2);
+    pA.close();
+  }
+
+  @Test
+  public void TestBufferPoolMetricsPerAllocator() throws IOException {
+    BufferPool pool = new BufferPool(8);
+    PageAllocator first = new PageAllocator(tempFolder.newFile(fName + 0).getAbsolutePath(), true, false, pool);
+    PageAllocator second = new PageAllocator(tempFolder.newFile(fName + 1).getAbsolutePath(), true, false, pool);
+
+    first.allocPage();
+    second.allocPage();
+    for (int i = 0; i < 10; i++) {
+      first.fetchPage(0);
+    }
+
+    assertEquals(10, first.getMetrics().getHits());
+    assertEquals(0, second.getMetrics().getHits());
+    assertEquals(1, second.getMetrics().getMisses());
+    first.close();
+    second.close();
+  }
+
+  @Test
+  public void TestBufferPoolDirtyPageSurvivesEviction() throws IOException {
+    File tempFile = tempFolder.newFile(fName);
+    BufferPool pool = new BufferPool(1);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, true, pool);
+
+    pA.allocPage();
+    pA.allocPage();
+    Page p = pA.fetchPage(0);
+    p.writeInt(0, 186);
+    assertTrue(p.isDirty());
+    pA.fetchPage(1);
+    assertFalse(p.isDirty());
+    assertEquals(186, pA.fetchPage(0).readInt(0));
+    pA.close();
+  }
+
+  @Test
+  public void TestBufferPoolShards() throws IOException {
+    File tempFile = tempFolder.newFile(fName);
+    BufferPool pool = new BufferPool(256, EvictionPolicy.Type.CLOCK, 4);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, false, pool);
+    pA.setReadAheadDepth(0);
+    assertEquals(4, pool.getNumShards());
+    assertEquals(256, pool.getNumFrames());
+
+    for (int i = 0; i < 32; i++) {
+      pA.allocPage();
+    }
+    for (int i = 0; i < 32; i++) {
+      pA.fetchPage(i);
+    }
+    assertEquals(32, pool.getNumCachedPages());
+    assertEquals(0, pA.getMetrics().getEvictions());
+    pA.close();
+    assertEquals(0, pool.getNumCachedPages());
+
+    assertEquals(1, new BufferPool(4).getNumShards());
+    boolean thrown = false;
+    try {
+      new BufferPool(256, EvictionPolicy.Type.CLOCK, 3);
+    } catch (IllegalArgumentException e) {
+      thrown = true;
+    }
+    assertTrue(thrown);
+  }
+
+  @Test
+  public void TestBufferPoolConcurrentFetches() throws IOException, InterruptedException {
+    File tempFile = tempFolder.newFile(fName);
+    BufferPool pool = new BufferPool(64, EvictionPolicy.Type.CLOCK, 4);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, false, pool);
+
+    int numPages = 150;
+    for (int i = 0; i < numPages; i++) {
+      pA.allocPage();
+      pA.fetchPage(i).writeInt(0, i);
+    }
+
+    ConcurrentPageReader[] readers = new ConcurrentPageReader[4];
+    Thread[] threads = new Thread[readers.length];
+    for (int i = 0; i < readers.length; i++) {
+      readers[i] = new ConcurrentPageReader(pA, numPages, 5, i * 37);
+      threads[i] = new Thread(readers[i]);
+      threads[i].start();
+    }
+    for (int i = 0; i < readers.length; i++) {
+      threads[i].join();
+      assertFalse(readers[i].hasFailed());
+    }
+
+    assertEquals(0, pool.getNumPinnedPages());
+    assertTrue(pool.getNumCachedPages() <= 64);
+    pA.close();
+  }
+
+  @Test
+  public void TestBufferPoolReadAhead() throws IOException, InterruptedException {
+    File tempFile = tempFolder.newFile(fName);
+    BufferPool pool = new BufferPool(64);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, false, pool);
+    pA.setReadAheadDepth(0);
+    for (int i = 0; i < 40; i++) {
+      pA.allocPage();
+    }
+    pA.close();
+
+    pA = new PageAllocator(tempFile.getAbsolutePath(), false, false, pool);
+    pA.setReadAheadDepth(8);
+    assertEquals(8, pA.getReadAheadDepth());
+    for (int i = 0; i < 3; i++) {
+      pA.fetchPage(i);
+    }
+    for (int i = 0; i < 200 && pool.getNumCachedPages() < 11; i++) {
+      Thread.sleep(5);
+    }
+    assertEquals(11, pool.getNumCachedPages());
+    assertEquals(8, pA.getMetrics().getPrefetches());
+
+    long misses = pA.getMetrics().getMisses();
+    for (int i = 3; i < 7; i++) {
+      pA.fetchPage(i);
+    }
+    assertEquals(misses, pA.getMetrics().getMisses());
+    assertEquals(4, pA.getMetrics().getPrefetchHits());
+    assertEquals(0.5, pA.getMetrics().getPrefetchHitRatio(), 1e-9);
+
+    for (int i = 7; i < 40; i++) {
+      pA.fetchPage(i);
+    }
+    assertTrue(pA.getMetrics().getPrefetchHits() > 4);
+    pA.close();
+    assertEquals(0, pool.getNumCachedPages());
+  }
+}
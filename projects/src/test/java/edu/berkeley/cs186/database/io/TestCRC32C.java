@@ -0,0 +1,42 @@
+package edu.berkeley.cs186.database.io;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+* Tests CRC32C.java
+*/
+
+public class TestCRC32C {
+
+  @Test
+  public void TestCRC32CCheckValues() {
+    byte[] digits = "123456789".getBytes(Charset.forName("US-ASCII"));
+    assertEquals(0xE3069283, CRC32C.compute(ByteBuffer.wrap(digits), 0, digits.length));
+
+    // RFC 3720, B.4: 32 bytes of zeros and 32 bytes of ones
+    assertEquals(0x8A9136AA, CRC32C.compute(ByteBuffer.allocate(32), 0, 32));
+    ByteBuffer ones = ByteBuffer.allocate(32);
+    while (ones.hasRemaining()) {
+      ones.put((byte) 0xFF);
+    }
+    assertEquals(0x62A8AB43, CRC32C.compute(ones, 0, 32));
+  }
+
+  @Test
+  public void TestCRC32COffsetsAndLengths() {
+    byte[] digits = "123456789".getBytes(Charset.forName("US-ASCII"));
+    ByteBuffer data = ByteBuffer.allocateDirect(64);
+    data.position(13);
+    data.put(digits);
+    data.position(60);
+
+    // any alignment and any length, without touching the position
+    assertEquals(0xE3069283, CRC32C.compute(data, 13, digits.length));
+    assertEquals(60, data.position());
+    assertEquals(0, CRC32C.compute(data, 5, 0));
+    assertNotEquals(CRC32C.compute(data, 13, 8), CRC32C.compute(data, 13, 9));
+  }
+}
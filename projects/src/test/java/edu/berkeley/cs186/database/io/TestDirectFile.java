@@ -0,0 +1,225 @@
+package edu.berkeley.cs186.database.io;
+
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.io.RandomAccessFile;
+import java.io.IOException;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+* Tests DirectFile.java
+*/
+
+public class TestDirectFile {
+  private final String fName = "TestDirectFile.temp";
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private static int readInt(FileChannel fc, long position) throws IOException {
+    ByteBuffer bb = ByteBuffer.allocate(4);
+    fc.read(bb, position);
+    return bb.getInt(0);
+  }
+
+  @Test
+  public void TestDirectFileWritesOnlyWhenAsked() throws IOException {
+    File tempFile = tempFolder.newFile(fName);
+    FileChannel fc = new RandomAccessFile(tempFile, "rw").getChannel();
+    DirectFile file = new DirectFile(fc, Page.pageSize);
+
+    Page page = file.readPage(3, 3, null);
+    assertEquals(0, page.readInt(0));
+    page.writeInt(0, 186);
+    assertEquals(0, fc.size());
+    assertEquals(1, file.getNumUnwritten());
+    assertSame(page, file.readPage(3, 3, null));
+
+    file.pageEvicted(page);
+    assertEquals(0, file.getNumUnwritten());
+    assertFalse(page.isDirty());
+    assertEquals(4 * Page.pageSize, fc.size());
+    assertEquals(186, readInt(fc, 3 * Page.pageSize));
+
+    page.writeInt(4, 286);
+    assertEquals(0, readInt(fc, 3 * Page.pageSize + 4));
+    file.close();
+    assertEquals(286, readInt(fc, 3 * Page.pageSize + 4));
+    fc.close();
+  }
+
+  @Test
+  public void TestDirectFileSyncWritesAndForces() throws IOException {
+    File tempFile = tempFolder.newFile(fName);
+    FileChannel fc = new RandomAccessFile(tempFile, "rw").getChannel();
+    DirectFile file = new DirectFile(fc, Page.pageSize);
+    FlushScheduler scheduler = new FlushScheduler(FlushMode.DEFERRED);
+
+    for (int i = 0; i < 10; i++) {
+      file.readPage(i, i, scheduler).writeInt(0, i + 1);
+    }
+    assertEquals(10, scheduler.getNumDirtyPages());
+    assertEquals(0, fc.size());
+
+    scheduler.sync();
+    assertEquals(1, scheduler.getNumForces());
+    assertEquals(0, file.getNumUnwritten());
+    for (int i = 0; i < 10; i++) {
+      assertEquals(i + 1, readInt(fc, i * Page.pageSize));
+    }
+    fc.close();
+  }
+
+  @Test
+  public void TestDirectAllocatorSurvivesEviction() throws IOException {
+    File tempFile = tempFolder.newFile(fName);
+    BufferPool pool = new BufferPool(8, EvictionPolicy.Type.LRU, 1);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, null, pool,
+                                          Page.pageSize, PageStore.Type.DIRECT);
+    pA.setReadAheadDepth(0);
+    assertEquals(PageStore.Type.DIRECT, pA.getStoreType());
+
+    Page first = null;
+    for (int i = 0; i < 100; i++) {
+      assertEquals(i, pA.allocPage());
+      Page p = pA.fetchPage(i);
+      p.writeInt(0, i * 3);
+      if (i == 0) {
+        first = p;
+      }
+    }
+
+    // a page that has left the pool is still the page a fetch returns, and writes to it are kept
+    assertSame(first, pA.fetchPage(0));
+    for (int i = 1; i < 20; i++) {
+      pA.fetchPage(i);
+    }
+    first.writeInt(4, 186);
+    pA.close();
+
+    pA = new PageAllocator(tempFile.getAbsolutePath(), false, false);
+    assertEquals(100, pA.getNumPages());
+    for (int i = 0; i < 100; i++) {
+      assertEquals(i * 3, pA.fetchPage(i).readInt(0));
+    }
+    assertEquals(186, pA.fetchPage(0).readInt(4));
+    pA.close();
+  }
+
+  @Test
+  public void TestDirectAllocatorOpensMappedFile() throws IOException {
+    File tempFile = tempFolder.newFile(fName);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, 8 * 1024);
+    for (int i = 0; i < 5000; i++) {
+      assertEquals(i, pA.allocPage());
+      pA.fetchPage(i).writeInt(8 * 1024 - 4, i);
+    }
+    pA.close();
+
+    pA = new PageAllocator(tempFile.getAbsolutePath(), false, 0, PageStore.Type.DIRECT);
+    assertEquals(8 * 1024, pA.getPageSize());
+    assertEquals(5000, pA.getNumPages());
+    for (int i = 0; i < 5000; i += 7) {
+      assertEquals(i, pA.fetchPage(i).readInt(8 * 1024 - 4));
+    }
+    assertEquals(5000, pA.allocPage());
+    pA.close();
+  }
+
+  @Test
+  public void TestCompressedAllocatorRoundTrip() throws IOException {
+    File tempFile = tempFolder.newFile(fName);
+    int pageSize = 16 * 1024;
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, pageSize,
+                                          PageStore.Type.COMPRESSED, true);
+    assertEquals(PageStore.Type.COMPRESSED, pA.getStoreType());
+    int usable = pageSize - CompressedFile.SLOT_HEADER_SIZE - Page.CHECKSUM_SIZE;
+    assertEquals(usable, pA.getUsablePageSize());
+
+    // space-padded records, and one page that does not compress at all
+    byte[] record = new byte[32];
+    Arrays.fill(record, (byte) ' ');
+    byte[] noise = new byte[usable];
+    new Random(186).nextBytes(noise);
+    for (int i = 0; i < 200; i++) {
+      assertEquals(i, pA.allocPage());
+      Page p = pA.fetchPage(i);
+      assertEquals(usable, p.getSize());
+      if (i == 100) {
+        p.writeBytes(0, usable, noise);
+        continue;
+      }
+      for (int j = 0; j + 32 <= usable; j += 32) {
+        record[0] = (byte) i;
+        record[1] = (byte) j;
+        p.writeBytes(j, 32, record);
+      }
+    }
+    pA.close();
+
+    // the file decides how it is read
+    pA = new PageAllocator(tempFile.getAbsolutePath(), false);
+    assertEquals(PageStore.Type.COMPRESSED, pA.getStoreType());
+    assertTrue(pA.hasChecksums());
+    assertEquals(200, pA.getNumPages());
+    for (int i = 0; i < 200; i++) {
+      Page p = pA.fetchPage(i);
+      if (i == 100) {
+        assertArrayEquals(noise, p.readBytes());
+        continue;
+      }
+      assertEquals((byte) i, p.readByte(32 * 7));
+      assertEquals((byte) (32 * 7), p.readByte(32 * 7 + 1));
+      assertEquals((byte) ' ', p.readByte((usable / 32) * 32 - 1));
+    }
+    pA.fetchPage(5).writeInt(0, 186);
+    pA.close();
+
+    pA = new PageAllocator(tempFile.getAbsolutePath(), false, 0, PageStore.Type.MMAP);
+    assertEquals(186, pA.fetchPage(5).readInt(0));
+    assertEquals(0, pA.getMetrics().getChecksumFailures());
+    pA.close();
+  }
+
+  @Test
+  public void TestCompressedFileWritesLess() throws IOException {
+    File tempFile = tempFolder.newFile(fName);
+    FileChannel fc = new RandomAccessFile(tempFile, "rw").getChannel();
+    CompressedFile file = new CompressedFile(fc, 64 * 1024);
+    assertEquals(64 * 1024 - CompressedFile.SLOT_HEADER_SIZE, file.getDataPageSize());
+
+    // a data page that was never written reads as zeros
+    Page page = file.readPage(3, 0, null);
+    assertEquals(file.getDataPageSize(), page.getSize());
+    assertEquals(0, page.readLong(page.getSize() - 8));
+    for (int i = 0; i + 8 <= page.getSize(); i += 64) {
+      page.writeLong(i, i);
+    }
+    file.pageEvicted(page);
+    assertTrue(file.getCompressionRatio() > 4);
+    assertTrue(fc.size() < 3 * 64 * 1024 + 16 * 1024);
+
+    // the allocator's own pages are stored as is
+    Page header = file.readPage(0, -1, null);
+    assertEquals(64 * 1024, header.getSize());
+    header.writeInt(0, 0xCB186000);
+    file.pageEvicted(header);
+    assertEquals(0xCB186000, readInt(fc, 0));
+    file.close();
+    fc.close();
+
+    fc = new RandomAccessFile(tempFile, "rw").getChannel();
+    file = new CompressedFile(fc, 64 * 1024);
+    page = file.readPage(3, 0, null);
+    for (int i = 0; i + 8 <= page.getSize(); i += 64) {
+      assertEquals(i, page.readLong(i));
+    }
+    fc.close();
+  }
+}
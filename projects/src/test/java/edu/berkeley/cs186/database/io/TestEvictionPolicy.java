@@ -0,0 +1,93 @@
+package edu.berkeley.cs186.database.io;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import java.util.Random;
+
+/**
+* Tests the EvictionPolicy implementations against a simulated buffer pool.
+*/
+
+public class TestEvictionPolicy {
+  private static final int numFrames = 100;
+
+  @Test
+  public void TestEvictionPolicyRandomWorkload() {
+    for (EvictionPolicy.Type type : EvictionPolicy.Type.values()) {
+      EvictionPolicySimulator pool = new EvictionPolicySimulator(type, numFrames);
+      Random random = new Random(186);
+
+      for (int i = 0; i < 20000; i++) {
+        long key = random.nextInt(400);
+        int op = random.nextInt(20);
+        if (op == 0) {
+          pool.remove(key);
+        } else if (op == 1) {
+          int frameNum = pool.access(key);
+          pool.setPinned(frameNum, pool.getNumPinned() < 10);
+        } else {
+          pool.access(key);
+        }
+        assertTrue(pool.getNumCached() <= numFrames);
+      }
+    }
+  }
+
+  @Test
+  public void TestEvictionPolicyAllPinned() {
+    for (EvictionPolicy.Type type : EvictionPolicy.Type.values()) {
+      EvictionPolicySimulator pool = new EvictionPolicySimulator(type, numFrames);
+      for (long key = 0; key < numFrames; key++) {
+        pool.setPinned(pool.access(key), true);
+      }
+      assertEquals(-1, pool.chooseVictim());
+    }
+  }
+
+  @Test
+  public void TestLRUPolicyOrder() {
+    EvictionPolicySimulator pool = new EvictionPolicySimulator(EvictionPolicy.Type.LRU, numFrames);
+    for (long key = 0; key < numFrames; key++) {
+      pool.access(key);
+    }
+    pool.access(0);
+    pool.access(numFrames);
+    assertTrue(pool.isCached(0));
+    assertFalse(pool.isCached(1));
+  }
+
+  @Test
+  public void TestEvictionPolicyScanResistance() {
+    assertEquals(0, hotPagesSurvivingScan(EvictionPolicy.Type.LRU));
+    assertEquals(0, hotPagesSurvivingScan(EvictionPolicy.Type.CLOCK));
+    assertTrue(hotPagesSurvivingScan(EvictionPolicy.Type.TWO_QUEUE) > 40);
+    assertTrue(hotPagesSurvivingScan(EvictionPolicy.Type.CLOCK_PRO) > 40);
+  }
+
+  /**
+   * Warm up a hot set of 50 pages mixed with a stream of cold pages, run a long sequential scan,
+   * and count how many hot pages are still cached afterwards.
+   */
+  private static int hotPagesSurvivingScan(EvictionPolicy.Type type) {
+    EvictionPolicySimulator pool = new EvictionPolicySimulator(type, numFrames);
+    long cold = 1000;
+
+    for (int round = 0; round < 30; round++) {
+      for (long key = 0; key < 50; key++) {
+        pool.access(key);
+      }
+      for (int i = 0; i < 40; i++) {
+        pool.access(cold++);
+      }
+    }
+    for (int i = 0; i < 1000; i++) {
+      pool.access(cold++);
+    }
+
+    int before = pool.getHits();
+    for (long key = 0; key < 50; key++) {
+      pool.access(key);
+    }
+    return pool.getHits() - before;
+  }
+}
@@ -0,0 +1,130 @@
+package edu.berkeley.cs186.database.io;
+
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import java.io.IOException;
+import java.io.File;
+
+/**
+* Tests FlushScheduler.java
+*/
+
+public class TestFlushScheduler {
+  private final String fName = "TestFlushScheduler.temp";
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Test
+  public void TestFlushSchedulerGroupSize() throws IOException {
+    File tempFile = tempFolder.newFile(fName);
+    FlushScheduler scheduler = new FlushScheduler(FlushMode.GROUP, 8, 0);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, scheduler, new BufferPool(16));
+
+    // the first allocation dirties the master page, the header page and the new data page
+    pA.allocPage();
+    assertEquals(3, scheduler.getNumDirtyPages());
+    assertEquals(0, scheduler.getNumSyncs());
+
+    for (int i = 1; i < 6; i++) {
+      pA.allocPage();
+    }
+    assertEquals(1, scheduler.getNumSyncs());
+    assertEquals(1, scheduler.getNumForces());
+    assertTrue(scheduler.getNumDirtyPages() < 8);
+    pA.close();
+    assertEquals(0, scheduler.getNumDirtyPages());
+  }
+
+  @Test
+  public void TestFlushSchedulerDeferred() throws IOException {
+    File tempFile = tempFolder.newFile(fName);
+    FlushScheduler scheduler = new FlushScheduler(FlushMode.DEFERRED);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, scheduler, new BufferPool(4));
+    pA.setReadAheadDepth(0);
+
+    for (int i = 0; i < 100; i++) {
+      pA.allocPage();
+      pA.fetchPage(i).writeInt(0, i);
+    }
+    assertEquals(0, scheduler.getNumSyncs());
+    assertEquals(102, scheduler.getNumDirtyPages());
+
+    pA.sync();
+    assertEquals(1, scheduler.getNumSyncs());
+    assertEquals(0, scheduler.getNumDirtyPages());
+    pA.close();
+
+    pA = new PageAllocator(tempFile.getAbsolutePath(), false, FlushMode.DEFERRED);
+    assertEquals(100, pA.getNumPages());
+    for (int i = 0; i < 100; i++) {
+      assertEquals(i, pA.fetchPage(i).readInt(0));
+    }
+    pA.close();
+  }
+
+  @Test
+  public void TestFlushSchedulerImmediate() throws IOException {
+    File tempFile = tempFolder.newFile(fName);
+    FlushScheduler scheduler = new FlushScheduler(FlushMode.IMMEDIATE);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, scheduler, new BufferPool(1));
+
+    pA.allocPage();
+    pA.allocPage();
+    // the master and header pages are forced by each allocation and the data pages on eviction
+    assertEquals(1, scheduler.getNumDirtyPages());
+    pA.close();
+    assertEquals(0, scheduler.getNumDirtyPages());
+  }
+
+  @Test
+  public void TestFlushSchedulerInterval() throws IOException, InterruptedException {
+    File tempFile = tempFolder.newFile(fName);
+    FlushScheduler scheduler = new FlushScheduler(FlushMode.GROUP, 1000, 10);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, scheduler, new BufferPool(16));
+
+    pA.allocPage();
+    for (int i = 0; i < 500 && scheduler.getNumDirtyPages() > 0; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(0, scheduler.getNumDirtyPages());
+    assertTrue(scheduler.getNumSyncs() >= 1);
+    pA.close();
+  }
+
+  @Test
+  public void TestFlushSchedulerConcurrentSyncs() throws IOException, InterruptedException {
+    File tempFile = tempFolder.newFile(fName);
+    FlushScheduler scheduler = new FlushScheduler(FlushMode.DEFERRED);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, scheduler,
+                                         new BufferPool(4096), 0, PageStore.Type.DIRECT);
+    pA.setReadAheadDepth(0);
+    int numPages = 2000;
+    for (int i = 0; i < numPages; i++) {
+      pA.allocPage();
+    }
+    DirectFile store = (DirectFile) pA.fetchPage(0).getStore();
+
+    for (int round = 0; round < 5; round++) {
+      for (int i = 0; i < numPages; i++) {
+        pA.fetchPage(i).writeInt(0, round);
+      }
+      int numUnwritten = store.getNumUnwritten();
+
+      // the scheduler's timed sync on another thread takes the dirty pages; a sync started while
+      // it is writing them must not return before they are written
+      Thread other = new Thread(scheduler);
+      other.start();
+      while (store.getNumUnwritten() == numUnwritten && other.isAlive()) {
+        Thread.yield();
+      }
+      scheduler.sync();
+      assertEquals(0, store.getNumUnwritten());
+      assertEquals(0, scheduler.getNumDirtyPages());
+      other.join();
+    }
+    pA.close();
+  }
+}
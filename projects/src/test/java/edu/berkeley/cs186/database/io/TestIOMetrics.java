@@ -0,0 +1,98 @@
+package edu.berkeley.cs186.database.io;
+
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import java.io.IOException;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+* Tests IOMetrics.java, IOMetricsRegistry.java and LatencyHistogram.java
+*/
+
+public class TestIOMetrics {
+  private final String fName = "TestIOMetrics.temp";
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Test
+  public void TestIOMetricsReadsAndWrites() throws IOException {
+    File tempFile = tempFolder.newFile(fName);
+    FlushScheduler scheduler = new FlushScheduler(FlushMode.DEFERRED);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, scheduler, new BufferPool(4));
+    pA.setReadAheadDepth(0);
+    IOMetrics metrics = pA.getMetrics();
+
+    for (int i = 0; i < 8; i++) {
+      pA.allocPage();
+    }
+    long physicalReads = metrics.getPhysicalReads();
+    assertEquals(8, physicalReads);
+
+    pA.fetchPage(7);
+    pA.fetchPage(7);
+    pA.fetchPage(0);
+    assertEquals(physicalReads + 1, metrics.getPhysicalReads());
+    assertEquals(metrics.getHits() + metrics.getMisses(), metrics.getLogicalReads());
+    assertEquals(3, metrics.getFetchLatency().getCount());
+
+    assertEquals(0, metrics.getWrites());
+    pA.sync();
+    // the master page, the header page and the eight data pages share one mapping
+    assertEquals(10, metrics.getWrites());
+    assertEquals(1, metrics.getFlushes());
+    assertEquals(1, metrics.getFlushLatency().getCount());
+    pA.close();
+  }
+
+  @Test
+  public void TestIOMetricsRegistry() throws IOException, JMException {
+    File tempFile = tempFolder.newFile(fName);
+    long totalMisses = PageAllocator.getNumCacheMisses();
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, false, new BufferPool(4));
+    pA.setReadAheadDepth(0);
+    pA.allocPage();
+    pA.freePage(0);
+    pA.allocPage();
+    pA.fetchPage(0);
+
+    assertSame(pA.getMetrics(), IOMetricsRegistry.get(tempFile.getAbsolutePath()));
+    assertSame(pA.getMetrics(), IOMetricsRegistry.getAll().get(pA.getName()));
+    assertTrue(PageAllocator.getNumCacheMisses() >= totalMisses + 2);
+
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName("edu.berkeley.cs186.database:type=IOMetrics,name=" +
+                                     ObjectName.quote(pA.getName()));
+    assertEquals(pA.getMetrics().getMisses(), server.getAttribute(name, "Misses"));
+    assertEquals(pA.getMetrics().getHits(), server.getAttribute(name, "Hits"));
+
+    pA.close();
+    assertNull(IOMetricsRegistry.get(tempFile.getAbsolutePath()));
+    assertFalse(server.isRegistered(name));
+  }
+
+  @Test
+  public void TestLatencyHistogram() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getPercentileNanos(0.5));
+
+    for (int i = 0; i < 99; i++) {
+      histogram.record(100);
+    }
+    histogram.record(1000000);
+
+    assertEquals(100, histogram.getCount());
+    assertEquals(1000000, histogram.getMaxNanos());
+    assertEquals((99 * 100 + 1000000) / 100.0, histogram.getMeanNanos(), 1e-9);
+    long p50 = histogram.getPercentileNanos(0.5);
+    assertTrue(p50 >= 100 && p50 < 200);
+    assertTrue(histogram.getPercentileNanos(0.99) < 200);
+    assertEquals(1000000, histogram.getPercentileNanos(1.0));
+  }
+}
@@ -0,0 +1,122 @@
+package edu.berkeley.cs186.database.io;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+* Tests LZ4Codec.java
+*/
+
+public class TestLZ4Codec {
+
+  private static byte[] roundTrip(byte[] page) {
+    byte[] compressed = new byte[page.length + 16];
+    int length = LZ4Codec.compress(page, page.length, compressed, 4, page.length + 12);
+    assertTrue(length > 0);
+    byte[] decompressed = new byte[page.length];
+    LZ4Codec.decompress(compressed, 4, length, decompressed, page.length);
+    assertArrayEquals(page, decompressed);
+    return Arrays.copyOfRange(compressed, 4, 4 + length);
+  }
+
+  @Test
+  public void TestLZ4CodecPaddedRecords() {
+    // records of an int and a space-padded string, as a Table lays them out
+    byte[] page = new byte[Page.pageSize];
+    for (int i = 0; i + 24 <= page.length; i += 24) {
+      page[i + 3] = (byte) (i / 24);
+      page[i + 4] = 'a';
+      page[i + 5] = 'b';
+      Arrays.fill(page, i + 6, i + 24, (byte) ' ');
+    }
+    assertTrue(roundTrip(page).length < page.length / 4);
+
+    assertTrue(roundTrip(new byte[Page.MAX_PAGE_SIZE - 4]).length < 300);
+    assertEquals(1, roundTrip(new byte[0]).length);
+    roundTrip(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 1, 2, 3, 4});
+  }
+
+  @Test
+  public void TestLZ4CodecIncompressible() {
+    Random random = new Random(186);
+    byte[] page = new byte[Page.pageSize];
+    random.nextBytes(page);
+    byte[] compressed = new byte[page.length];
+    assertEquals(-1, LZ4Codec.compress(page, page.length, compressed, 0, page.length));
+
+    // half random and half repeated still fits, and survives literal runs longer than 255
+    Arrays.fill(page, page.length / 2, page.length, (byte) 7);
+    roundTrip(page);
+  }
+
+  @Test
+  public void TestLZ4CodecCorrupt() {
+    byte[] page = new byte[Page.pageSize];
+    Arrays.fill(page, (byte) 'x');
+    byte[] compressed = roundTrip(page);
+
+    byte[] decompressed = new byte[page.length];
+    int[] lengths = new int[] {compressed.length - 1, 1};
+    for (int length : lengths) {
+      boolean thrown = false;
+      try {
+        LZ4Codec.decompress(compressed, 0, length, decompressed, page.length);
+      } catch (PageException e) {
+        thrown = true;
+      }
+      assertTrue(thrown);
+    }
+
+    // an offset reaching back before the start of the page
+    boolean thrown = false;
+    try {
+      LZ4Codec.decompress(new byte[] {0x10, 'x', 0x05, 0x00, 0x00}, 0, 5, decompressed, 10);
+    } catch (PageException e) {
+      thrown = true;
+    }
+    assertTrue(thrown);
+  }
+
+  @Test
+  public void TestLZ4CodecReusesHashTable() {
+    // what a long page leaves in the thread's hash table is never matched in the shorter pages
+    // compressed after it
+    Random random = new Random(186);
+    byte[] large = new byte[Page.MAX_PAGE_SIZE - 4];
+    Arrays.fill(large, (byte) 'x');
+    roundTrip(large);
+    for (int i = 0; i < 100; i++) {
+      byte[] page = new byte[1 + random.nextInt(Page.pageSize)];
+      for (int j = 0; j < page.length; j++) {
+        page[j] = random.nextInt(4) == 0 ? (byte) random.nextInt() : (byte) 'x';
+      }
+      byte[] compressed = new byte[page.length + 16];
+      int length = LZ4Codec.compress(page, page.length, compressed, 0, compressed.length);
+      assertTrue(length > 0);
+      byte[] decompressed = new byte[page.length];
+      LZ4Codec.decompress(compressed, 0, length, decompressed, page.length);
+      assertArrayEquals(page, decompressed);
+    }
+  }
+
+  @Test
+  public void TestLZ4CodecDecompressIntoBuffer() {
+    byte[] page = new byte[Page.pageSize];
+    for (int i = 0; i < page.length; i++) {
+      page[i] = (byte) (i % 24 < 4 ? i : ' ');
+    }
+    byte[] compressed = roundTrip(page);
+
+    // straight into a page's buffer, which is off the heap
+    ByteBuffer buffer = ByteBuffer.allocateDirect(page.length + 4);
+    LZ4Codec.decompress(compressed, 0, compressed.length, buffer, page.length);
+    assertEquals(page.length, buffer.position());
+    byte[] decompressed = new byte[page.length];
+    buffer.flip();
+    buffer.get(decompressed);
+    assertArrayEquals(page, decompressed);
+  }
+}
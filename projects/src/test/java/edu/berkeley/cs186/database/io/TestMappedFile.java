@@ -0,0 +1,97 @@
+package edu.berkeley.cs186.database.io;
+
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import java.nio.channels.FileChannel;
+import java.io.RandomAccessFile;
+import java.io.IOException;
+import java.io.File;
+
+/**
+* Tests MappedFile.java
+*/
+
+public class TestMappedFile {
+  private final String fName = "TestMappedFile.temp";
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Test
+  public void TestMappedFileTrimmedOnClose() throws IOException {
+    File tempFile = tempFolder.newFile(fName);
+    FileChannel fc = new RandomAccessFile(tempFile, "rw").getChannel();
+    MappedFile file = new MappedFile(fc);
+
+    // the file grows with the mapping, and is trimmed to the last block touched
+    file.slice(0);
+    assertEquals(MappedFile.MIN_MAPPING_SIZE, fc.size());
+    file.slice(4);
+    file.slice(2);
+    file.close();
+    assertEquals(5 * Page.pageSize, fc.size());
+
+    file = new MappedFile(fc);
+    file.slice(1);
+    file.close();
+    assertEquals(5 * Page.pageSize, fc.size());
+    fc.close();
+  }
+
+  @Test
+  public void TestMappedFileMapsSegmentsFewTimes() throws IOException {
+    File tempFile = tempFolder.newFile(fName);
+    FileChannel fc = new RandomAccessFile(tempFile, "rw").getChannel();
+    MappedFile file = new MappedFile(fc);
+
+    // a segment and a quarter of blocks appended one at a time: 1MB doubling to 64MB, then 16MB
+    long numBlocks = MappedFile.SEGMENT_SIZE / Page.pageSize * 5 / 4;
+    for (long i = 0; i < numBlocks; i++) {
+      file.slice(i);
+    }
+    assertEquals(12, file.getNumMappings());
+    file.close();
+    assertEquals(numBlocks * Page.pageSize, fc.size());
+    fc.close();
+  }
+
+  @Test
+  public void TestMappedFilePagesSurviveRemap() throws IOException {
+    File tempFile = tempFolder.newFile(fName);
+    FileChannel fc = new RandomAccessFile(tempFile, "rw").getChannel();
+    MappedFile file = new MappedFile(fc);
+
+    Page first = new Page(file, 0, 0, new FlushScheduler(FlushMode.IMMEDIATE));
+    first.writeInt(0, 186);
+    Page second = new Page(file, 10, 10, new FlushScheduler(FlushMode.IMMEDIATE));
+    second.writeInt(0, 286);
+    first.flush();
+    second.flush();
+
+    assertEquals(186, new Page(file, 0, 0, null).readInt(0));
+    first.writeInt(4, 386);
+    assertEquals(386, new Page(file, 0, 0, null).readInt(4));
+    assertEquals(286, new Page(fc, 10, 10).readInt(0));
+    fc.close();
+  }
+
+  @Test
+  public void TestMappedFileSecondSegment() throws IOException {
+    File tempFile = tempFolder.newFile(fName);
+    FileChannel fc = new RandomAccessFile(tempFile, "rw").getChannel();
+    MappedFile file = new MappedFile(fc);
+    long blocksPerSegment = MappedFile.SEGMENT_SIZE / Page.pageSize;
+
+    Page last = new Page(file, blocksPerSegment - 1, 0, null);
+    Page next = new Page(file, blocksPerSegment, 1, null);
+    last.writeInt(Page.pageSize - 4, 1);
+    next.writeInt(0, 2);
+    file.close();
+    assertEquals((blocksPerSegment + 1) * Page.pageSize, fc.size());
+    assertEquals(1, new Page(fc, (int) blocksPerSegment - 1, 0).readInt(Page.pageSize - 4));
+    assertEquals(2, new Page(fc, (int) blocksPerSegment, 1).readInt(0));
+    fc.close();
+  }
+}
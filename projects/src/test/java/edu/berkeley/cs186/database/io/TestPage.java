@@ -144,4 +144,86 @@ public class TestPage {
     fc.close();
   }
 
+  @Test
+  public void TestPageWriteReadPrimitives() throws IOException, FileNotFoundException {
+    File tempFile = tempFolder.newFile(fName);
+    FileChannel fc = new RandomAccessFile(tempFile, "rw").getChannel();
+    Page p = new Page(fc, 0, 0);
+
+    p.writeInt(0, 0x01020304);
+    p.writeLong(4, -1234567890123L);
+    p.writeShort(12, (short) -7);
+    p.writeFloat(14, 3.5f);
+    p.writeInt(Page.pageSize - 4, 42);
+
+    assertEquals(0x01020304, p.readInt(0));
+    assertEquals(-1234567890123L, p.readLong(4));
+    assertEquals((short) -7, p.readShort(12));
+    assertEquals(3.5f, p.readFloat(14), 0);
+    assertEquals(42, p.readInt(Page.pageSize - 4));
+
+    // ints are stored big-endian, as the byte-level encodings elsewhere expect
+    assertEquals(1, p.readByte(0));
+    assertEquals(4, p.readByte(3));
+    assertTrue(p.isDirty());
+
+    fc.close();
+  }
+
+  @Test
+  public void TestPageReadWriteBytesWithOffset() throws IOException, FileNotFoundException {
+    File tempFile = tempFolder.newFile(fName);
+    FileChannel fc = new RandomAccessFile(tempFile, "rw").getChannel();
+    Page p = new Page(fc, 0, 0);
+
+    byte[] src = new byte[] {9, 8, 7, 6, 5};
+    p.writeBytes(100, src, 1, 3);
+    byte[] dst = new byte[6];
+    p.readBytes(99, dst, 2, 4);
+
+    assertArrayEquals(new byte[] {0, 0, 0, 8, 7, 6}, dst);
+
+    boolean thrown = false;
+    try {
+      p.readBytes(0, dst, 4, 3);
+    } catch (PageException e) {
+      thrown = true;
+    }
+    assertTrue(thrown);
+
+    fc.close();
+  }
+
+  @Test
+  public void TestPagePrimitivesOutOfBounds() throws IOException, FileNotFoundException {
+    File tempFile = tempFolder.newFile(fName);
+    FileChannel fc = new RandomAccessFile(tempFile, "rw").getChannel();
+    Page p = new Page(fc, 0, 0);
+
+    boolean thrown = false;
+    try {
+      p.readInt(Page.pageSize - 3);
+    } catch (PageException e) {
+      thrown = true;
+    }
+    assertTrue(thrown);
+
+    thrown = false;
+    try {
+      p.writeLong(-1, 0L);
+    } catch (PageException e) {
+      thrown = true;
+    }
+    assertTrue(thrown);
+
+    thrown = false;
+    try {
+      p.readShort(Page.pageSize - 1);
+    } catch (PageException e) {
+      thrown = true;
+    }
+    assertTrue(thrown);
+
+    fc.close();
+  }
 }
@@ -16,6 +16,8 @@ import java.io.File;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 /**
 * Tests PageAllocator.java
@@ -307,6 +309,34 @@ public class TestPageAllocator {
     pA.close();
   }
   @Test
+  public void TestPageAllocatorIteratorAbandoned() throws IOException, FileNotFoundException {
+    File tempFile = tempFolder.newFile(fName);
+    BufferPool pool = new BufferPool(4);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, false, pool);
+    pA.setReadAheadDepth(0);
+
+    for (int i = 0; i < 20; i++) {
+      assertEquals(i,pA.allocPage());
+    }
+
+    // more iterators dropped part way through than the pool has frames
+    for (int i = 0; i < 8; i++) {
+      Iterator<Page> pI = pA.iterator();
+      for (int j = 0; j <= 2 * i; j++) {
+        assertEquals(j, pI.next().getPageNum());
+      }
+      assertEquals(0, pool.getNumPinnedPages());
+    }
+
+    for (int i = 0; i < 20; i++) {
+      pA.fetchPage(i).writeInt(0, i);
+    }
+    for (int i = 0; i < 20; i++) {
+      assertEquals(i, pA.fetchPage(i).readInt(0));
+    }
+    pA.close();
+  }
+  @Test
   public void TestPageAllocatorIteratorGap() throws IOException, FileNotFoundException {
     File tempFile = tempFolder.newFile(fName);
     PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, false);
@@ -440,5 +470,321 @@ public class TestPageAllocator {
     }
   }
 
+  @Test
+  public void TestPageAllocatorReusesLowestFreePage() throws IOException, FileNotFoundException {
+    File tempFile = tempFolder.newFile(fName);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true);
+
+    for (int i = 0; i < Page.pageSize + 10; i++) {
+      assertEquals(i, pA.allocPage());
+    }
+    assertTrue(pA.freePage(Page.pageSize + 3));
+    assertTrue(pA.freePage(7));
+    assertTrue(pA.freePage(3));
+    assertFalse(pA.freePage(3));
+    pA.close();
+
+    pA = new PageAllocator(tempFile.getAbsolutePath(), false);
+    assertEquals(Page.pageSize + 7, pA.getNumPages());
+    assertEquals(3, pA.allocPage());
+    assertEquals(7, pA.allocPage());
+    assertEquals(Page.pageSize + 3, pA.allocPage());
+    assertEquals(Page.pageSize + 10, pA.allocPage());
+    pA.close();
+  }
+
+  @Test
+  public void TestPageAllocatorGrowsPastFirstExtent() throws IOException, FileNotFoundException {
+    File tempFile = tempFolder.newFile(fName);
+
+    // mark every header page of the first extent as full, as if 16GB of pages were allocated
+    FileChannel fc = new RandomAccessFile(tempFile, "rw").getChannel();
+    ByteBuffer master = ByteBuffer.allocate(Page.pageSize);
+    while (master.hasRemaining()) {
+      master.putInt(Page.pageSize);
+    }
+    master.flip();
+    fc.write(master, 0);
+    fc.close();
+
+    int firstExtentPages = (Page.pageSize / 4) * Page.pageSize;
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), false, false);
+    assertEquals(firstExtentPages, pA.getNumPages());
+    assertEquals(firstExtentPages, pA.allocPage());
+    assertEquals(firstExtentPages + 1, pA.allocPage());
+    pA.fetchPage(firstExtentPages + 1).writeInt(0, 186);
+    pA.close();
+
+    // the second extent starts with its directory page, followed by its first header page
+    long extentBlock = 1 + ((long) Page.pageSize / 4) * (Page.pageSize + 1);
+    fc = new RandomAccessFile(tempFile, "r").getChannel();
+    ByteBuffer bb = ByteBuffer.allocate(4);
+    fc.read(bb, extentBlock * Page.pageSize);
+    assertEquals(2, bb.getInt(0));
+    bb.clear();
+    fc.read(bb, (extentBlock + 3) * Page.pageSize);
+    assertEquals(186, bb.getInt(0));
+    fc.close();
+
+    pA = new PageAllocator(tempFile.getAbsolutePath(), false, false);
+    assertEquals(firstExtentPages + 2, pA.getNumPages());
+    assertEquals(186, pA.fetchPage(firstExtentPages + 1).readInt(0));
+    assertTrue(pA.freePage(firstExtentPages));
+    assertEquals(firstExtentPages, pA.allocPage());
+    assertEquals(firstExtentPages + 2, pA.allocPage());
+    pA.close();
+  }
+
+  @Test
+  public void TestPageAllocatorPageSize() throws IOException, FileNotFoundException {
+    File tempFile = tempFolder.newFile(fName);
+    int pageSize = 16 * 1024;
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, pageSize);
+    assertEquals(pageSize, pA.getPageSize());
+
+    for (int i = 0; i < 10; i++) {
+      assertEquals(i, pA.allocPage());
+      Page p = pA.fetchPage(i);
+      assertEquals(pageSize, p.getSize());
+      p.writeInt(pageSize - 4, i);
+    }
+    pA.close();
+
+    // master page, header page and ten data pages, all of the larger size
+    FileChannel fc = new RandomAccessFile(tempFile, "r").getChannel();
+    assertEquals(12L * pageSize, fc.size());
+    fc.close();
+
+    pA = new PageAllocator(tempFile.getAbsolutePath(), false);
+    assertEquals(pageSize, pA.getPageSize());
+    assertEquals(10, pA.getNumPages());
+    for (int i = 0; i < 10; i++) {
+      assertEquals(i, pA.fetchPage(i).readInt(pageSize - 4));
+    }
+    pA.close();
+
+    boolean thrown = false;
+    try {
+      new PageAllocator(tempFile.getAbsolutePath(), false, Page.pageSize);
+    } catch (PageException e) {
+      thrown = true;
+    }
+    assertTrue(thrown);
+
+    pA = new PageAllocator(tempFile.getAbsolutePath(), true, Page.pageSize);
+    assertEquals(Page.pageSize, pA.getPageSize());
+    assertEquals(0, pA.getNumPages());
+    assertEquals(0, pA.allocPage());
+    pA.close();
+  }
+
+  @Test
+  public void TestPageAllocatorInvalidPageSize() throws IOException, FileNotFoundException {
+    File tempFile = tempFolder.newFile(fName);
+    int[] sizes = new int[] {1024, 12 * 1024, 128 * 1024};
+    for (int size : sizes) {
+      boolean thrown = false;
+      try {
+        new PageAllocator(tempFile.getAbsolutePath(), true, size);
+      } catch (PageException e) {
+        thrown = true;
+      }
+      assertTrue(thrown);
+    }
+  }
+
+  @Test
+  public void TestPageAllocatorFetchPageAsync() throws Exception {
+    File tempFile = tempFolder.newFile(fName);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, false);
+
+    for (int i = 0; i < 10; i++) {
+      assertEquals(i, pA.allocPage());
+      pA.fetchPage(i).writeInt(0, i * 7);
+    }
+    pA.close();
+
+    pA = new PageAllocator(tempFile.getAbsolutePath(), false, false);
+    pA.setReadAheadDepth(0);
+    CompletableFuture<Page> future = pA.fetchPageAsync(3);
+    Page p = future.get();
+    assertEquals(3, p.getPageNum());
+    assertEquals(21, p.readInt(0));
+
+    // the page is cached now, so the second fetch does not wait
+    future = pA.fetchPageAsync(3);
+    assertTrue(future.isDone());
+    assertSame(p, future.get());
+
+    CompletableFuture<Page> invalid = pA.fetchPageAsync(10);
+    boolean thrown = false;
+    try {
+      invalid.get();
+    } catch (ExecutionException e) {
+      thrown = e.getCause() instanceof PageException;
+    }
+    assertTrue(thrown);
+    assertTrue(pA.fetchPageAsync(-1).isCompletedExceptionally());
+    pA.close();
+  }
+
+  @Test
+  public void TestPageAllocatorFetchPages() throws Exception {
+    File tempFile = tempFolder.newFile(fName);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, false);
+
+    for (int i = 0; i < 100; i++) {
+      assertEquals(i, pA.allocPage());
+      pA.fetchPage(i).writeInt(0, i + 1000);
+    }
+    pA.close();
+
+    pA = new PageAllocator(tempFile.getAbsolutePath(), false, false);
+    pA.setReadAheadDepth(0);
+    pA.fetchPage(50);
+    pA.fetchPage(7);
+
+    // out of order, with duplicates and pages that are already cached
+    int[] pageNums = new int[] {99, 7, 3, 50, 3, 64, 0, 12, 98, 7, 31};
+    Page[] pages = pA.fetchPages(pageNums).get();
+    assertEquals(pageNums.length, pages.length);
+    for (int i = 0; i < pageNums.length; i++) {
+      assertEquals(pageNums[i], pages[i].getPageNum());
+      assertEquals(pageNums[i] + 1000, pages[i].readInt(0));
+    }
+
+    assertEquals(0, pA.fetchPages(new int[0]).get().length);
+
+    boolean thrown = false;
+    try {
+      pA.fetchPages(new int[] {1, 2, 100, 3}).get();
+    } catch (ExecutionException e) {
+      thrown = e.getCause() instanceof PageException;
+    }
+    assertTrue(thrown);
+    pA.close();
+  }
 
+  @Test
+  public void TestPageAllocatorChecksums() throws IOException, FileNotFoundException {
+    File tempFile = tempFolder.newFile(fName);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, Page.pageSize,
+                                         PageStore.Type.MMAP, true);
+    assertTrue(pA.hasChecksums());
+    assertEquals(Page.pageSize - Page.CHECKSUM_SIZE, pA.getUsablePageSize());
+    for (int i = 0; i < 10; i++) {
+      assertEquals(i, pA.allocPage());
+      Page p = pA.fetchPage(i);
+      assertEquals(pA.getUsablePageSize(), p.getSize());
+      p.writeInt(p.getSize() - 4, i * 11);
+    }
+    boolean thrown = false;
+    try {
+      pA.fetchPage(0).writeInt(Page.pageSize - 4, 1);
+    } catch (PageException e) {
+      thrown = true;
+    }
+    assertTrue(thrown);
+    pA.close();
+
+    // a file that keeps checksums is marked as such, even with the default page size
+    pA = new PageAllocator(tempFile.getAbsolutePath(), false);
+    assertTrue(pA.hasChecksums());
+    for (int i = 0; i < 10; i++) {
+      assertEquals(i * 11, pA.fetchPage(i).readInt(pA.getUsablePageSize() - 4));
+    }
+    assertEquals(10, pA.getMetrics().getChecksumsVerified());
+    assertEquals(0, pA.getMetrics().getChecksumFailures());
+    pA.close();
+
+    // flip a byte of page 3, which lives in block 5 behind the master and header pages
+    FileChannel fc = new RandomAccessFile(tempFile, "rw").getChannel();
+    ByteBuffer bb = ByteBuffer.allocate(1);
+    fc.read(bb, 5L * Page.pageSize + 100);
+    bb.put(0, (byte) (bb.get(0) ^ 0x10));
+    bb.rewind();
+    fc.write(bb, 5L * Page.pageSize + 100);
+    fc.close();
+
+    pA = new PageAllocator(tempFile.getAbsolutePath(), false);
+    assertEquals(22, pA.fetchPage(2).readInt(pA.getUsablePageSize() - 4));
+    thrown = false;
+    try {
+      pA.fetchPage(3);
+    } catch (PageException e) {
+      thrown = true;
+    }
+    assertTrue(thrown);
+    assertEquals(1, pA.getMetrics().getChecksumFailures());
+    pA.close();
+
+    // wiping the file without checksums goes back to the legacy layout
+    pA = new PageAllocator(tempFile.getAbsolutePath(), true, Page.pageSize);
+    assertFalse(pA.hasChecksums());
+    assertEquals(Page.pageSize, pA.getUsablePageSize());
+    assertEquals(0, pA.getNumPages());
+    pA.close();
+  }
+
+  @Test
+  public void TestPageAllocatorChecksumsWithoutFlushes() throws IOException, FileNotFoundException {
+    PageStore.Type[] storeTypes = new PageStore.Type[] {PageStore.Type.MMAP, PageStore.Type.DIRECT};
+    for (PageStore.Type storeType : storeTypes) {
+      File tempFile = new File(tempFolder.getRoot(), storeType + ".temp");
+
+      // pages that are never forced still have their checksums brought up to date when they are
+      // evicted or the allocator is closed
+      BufferPool pool = new BufferPool(8, EvictionPolicy.Type.LRU, 1);
+      PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, null, pool, 0,
+                                           storeType, true);
+      pA.setReadAheadDepth(0);
+      for (int i = 0; i < 50; i++) {
+        assertEquals(i, pA.allocPage());
+        pA.fetchPage(i).writeInt(0, i);
+      }
+      for (int i = 0; i < 50; i += 2) {
+        pA.fetchPage(i).writeInt(4, -i);
+      }
+      pA.close();
+
+      pA = new PageAllocator(tempFile.getAbsolutePath(), false, 0, storeType);
+      assertTrue(pA.hasChecksums());
+      for (int i = 0; i < 50; i++) {
+        Page p = pA.fetchPage(i);
+        assertEquals(i, p.readInt(0));
+        assertEquals(i % 2 == 0 ? -i : 0, p.readInt(4));
+      }
+      assertEquals(0, pA.getMetrics().getChecksumFailures());
+      pA.close();
+    }
+  }
+
+  @Test
+  public void TestPageAllocatorChecksumsAfterUncleanExit() throws IOException, FileNotFoundException {
+    File tempFile = tempFolder.newFile(fName);
+    PageAllocator pA = new PageAllocator(tempFile.getAbsolutePath(), true, Page.pageSize,
+                                         PageStore.Type.MMAP, true);
+    assertEquals(PageStore.Type.DIRECT, pA.getStoreType());
+    for (int i = 0; i < 10; i++) {
+      assertEquals(i, pA.allocPage());
+      pA.fetchPage(i).writeInt(0, i);
+    }
+    pA.close();
+
+    // writes that are never forced, by an allocator that is never closed, must not leave a page
+    // on disk whose checksum does not match its bytes
+    PageAllocator crashed = new PageAllocator(tempFile.getAbsolutePath(), false);
+    assertEquals(PageStore.Type.DIRECT, crashed.getStoreType());
+    for (int i = 0; i < 10; i++) {
+      crashed.fetchPage(i).writeInt(4, -i);
+    }
+
+    pA = new PageAllocator(tempFile.getAbsolutePath(), false);
+    for (int i = 0; i < 10; i++) {
+      assertEquals(i, pA.fetchPage(i).readInt(0));
+    }
+    assertEquals(0, pA.getMetrics().getChecksumFailures());
+    pA.close();
+    crashed.close();
+  }
 }
@@ -552,4 +552,32 @@ public class QueryPlanTest {
 
     transaction.end();
   }
+
+  @Test
+  public void testParallelSequentialScan() throws DatabaseException, QueryPlanException {
+    Database.Transaction transaction = this.database.beginTransaction();
+    List<List<DataBox>> values = new ArrayList<List<DataBox>>();
+    for (int i = 0; i < 1000; i++) {
+      values.add(TestUtils.createRecordWithAllTypes().getValues());
+    }
+    transaction.addRecords(this.defaulTableName, values.iterator());
+
+    SequentialScanOperator scan = new SequentialScanOperator(transaction, this.defaulTableName);
+    SequentialScanOperator parallelScan = new SequentialScanOperator(transaction,
+        this.defaulTableName, true);
+    assertTrue(parallelScan.isParallel());
+    assertEquals(scan.getOutputSchema(), parallelScan.getOutputSchema());
+
+    Iterator<Record> expected = scan.execute();
+    Iterator<Record> actual = parallelScan.execute();
+    int count = 0;
+    while (expected.hasNext()) {
+      assertTrue(actual.hasNext());
+      assertEquals(expected.next(), actual.next());
+      count++;
+    }
+    assertFalse(actual.hasNext());
+    assertEquals(this.defaultNumRecords + 1000, count);
+    transaction.end();
+  }
 }
@@ -0,0 +1,76 @@
+package edu.berkeley.cs186.database.table;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.io.IOMetricsRegistry;
+
+/**
+ * Times loading the same records into a new Table one addRecord call at a time and with a single
+ * addRecords call. Prints the fastest of numRuns loads of each, per record, and the number of
+ * flushes each load made: a table's allocator forces its header pages whenever it allocates a
+ * page, whichever way the records come in.
+ *
+ * Usage: BulkInsertBenchmark [numRecords] [numRuns]
+ */
+public class BulkInsertBenchmark {
+  public static void main(String[] args) throws IOException, DatabaseException {
+    int numRecords = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+    int numRuns = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+    File dir = Files.createTempDirectory("insert").toFile();
+    List<List<DataBox>> values = new ArrayList<List<DataBox>>();
+    for (int i = 0; i < numRecords; i++) {
+      values.add(TestUtils.createRecordWithAllTypesWithValue(i).getValues());
+    }
+
+    long single = Long.MAX_VALUE;
+    long bulk = Long.MAX_VALUE;
+    long singleFlushes = 0;
+    long bulkFlushes = 0;
+    for (int run = 0; run < numRuns; run++) {
+      Table table = new Table(TestUtils.createSchemaWithAllTypes(), "single" + run, dir.getPath());
+      long flushes = IOMetricsRegistry.getTotals().getFlushes();
+      long start = System.nanoTime();
+      for (List<DataBox> record : values) {
+        table.addRecord(record);
+      }
+      single = Math.min(single, System.nanoTime() - start);
+      singleFlushes = IOMetricsRegistry.getTotals().getFlushes() - flushes;
+      BulkInsertBenchmark.check(table, numRecords);
+      table.close();
+
+      table = new Table(TestUtils.createSchemaWithAllTypes(), "bulk" + run, dir.getPath());
+      flushes = IOMetricsRegistry.getTotals().getFlushes();
+      start = System.nanoTime();
+      table.addRecords(values.iterator());
+      bulk = Math.min(bulk, System.nanoTime() - start);
+      bulkFlushes = IOMetricsRegistry.getTotals().getFlushes() - flushes;
+      BulkInsertBenchmark.check(table, numRecords);
+      table.close();
+    }
+
+    System.out.printf("addRecord  %7.1f ns/record  %6d flushes%n", (double) single / numRecords,
+                      singleFlushes);
+    System.out.printf("addRecords %7.1f ns/record  %6d flushes  (%.1fx)%n",
+                      (double) bulk / numRecords, bulkFlushes, (double) single / bulk);
+
+    for (File file : dir.listFiles()) {
+      file.delete();
+    }
+    dir.delete();
+  }
+
+  private static void check(Table table, int numRecords) {
+    if (table.getNumRecords() != numRecords) {
+      throw new IllegalStateException("loaded " + table.getNumRecords() + " of " + numRecords +
+                                      " records");
+    }
+  }
+}
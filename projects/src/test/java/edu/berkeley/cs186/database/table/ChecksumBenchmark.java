@@ -0,0 +1,96 @@
+package edu.berkeley.cs186.database.table;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.io.PageStore;
+
+/**
+ * Times loading and scanning a Table with and without page checksums. The table is closed, which
+ * computes the checksums, and reopened before it is scanned twice: the first scan reads and
+ * verifies every page, the second finds them all in the buffer pool. Prints the fastest of
+ * numRuns runs of each, per record, and the overhead of checksums over the same table without
+ * them.
+ *
+ * Usage: ChecksumBenchmark [numRecords] [numRuns]
+ */
+public class ChecksumBenchmark {
+  public static void main(String[] args) throws IOException, DatabaseException {
+    int numRecords = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+    int numRuns = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+    File dir = Files.createTempDirectory("checksum").toFile();
+    List<List<DataBox>> values = new ArrayList<List<DataBox>>();
+    for (int i = 0; i < numRecords; i++) {
+      values.add(TestUtils.createRecordWithAllTypesWithValue(i).getValues());
+    }
+
+    // the fastest of numRuns runs of each phase, without and with checksums
+    long[][] best = new long[2][3];
+    for (long[] nanos : best) {
+      Arrays.fill(nanos, Long.MAX_VALUE);
+    }
+    for (int run = 0; run < numRuns; run++) {
+      for (int i = 0; i < 2; i++) {
+        boolean checksums = i == 1;
+        String name = "table" + checksums + run;
+        long start = System.nanoTime();
+        Table table = new Table(TestUtils.createSchemaWithAllTypes(), name, dir.getPath(),
+                                Page.pageSize, PageStore.Type.DIRECT, checksums);
+        table.addRecords(values.iterator());
+        table.close();
+        long loadNanos = System.nanoTime() - start;
+
+        table = new Table(name, dir.getPath(), PageStore.Type.DIRECT);
+        long[] nanos = new long[] {loadNanos, ChecksumBenchmark.scan(table, numRecords),
+                                   ChecksumBenchmark.scan(table, numRecords)};
+        table.close();
+        for (int phase = 0; phase < 3; phase++) {
+          best[i][phase] = Math.min(best[i][phase], nanos[phase]);
+        }
+      }
+    }
+
+    String[] phases = {"load", "first scan", "second scan"};
+    for (int phase = 0; phase < 3; phase++) {
+      System.out.printf("%-11s  %7.1f ns/record without checksums  %7.1f with  overhead %+.1f%%%n",
+                        phases[phase], (double) best[0][phase] / numRecords,
+                        (double) best[1][phase] / numRecords,
+                        100.0 * best[1][phase] / best[0][phase] - 100);
+    }
+
+    for (File file : dir.listFiles()) {
+      file.delete();
+    }
+    dir.delete();
+  }
+
+  /**
+   * Iterate over every record of table.
+   *
+   * @return the time taken in nanoseconds
+   */
+  private static long scan(Table table, int numRecords) {
+    long start = System.nanoTime();
+    long count = 0;
+    Iterator<Record> records = table.iterator();
+    while (records.hasNext()) {
+      records.next();
+      count++;
+    }
+    long nanos = System.nanoTime() - start;
+    if (count != numRecords) {
+      throw new IllegalStateException("scanned " + count + " of " + numRecords + " records");
+    }
+    return nanos;
+  }
+}
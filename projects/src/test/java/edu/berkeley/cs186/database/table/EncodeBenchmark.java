@@ -0,0 +1,92 @@
+package edu.berkeley.cs186.database.table;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.databox.DataBox;
+
+/**
+ * Times encoding records into a buffer that is reused, as Table does for every insert, and with
+ * encode(Record), against the way Schema.encode used to work: a byte[] from getBytes for every
+ * field, each sized by a getSize that encoded strings to measure them. Prints the nanoseconds
+ * and the bytes allocated per record for each.
+ *
+ * Usage: EncodeBenchmark [numRecords] [numRounds]
+ */
+public class EncodeBenchmark {
+  private static final com.sun.management.ThreadMXBean THREADS =
+    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+  private static final String[] VARIANTS = {"into a buffer", "encode(Record)", "field bytes"};
+
+  // what was encoded, kept so that the encoding is not optimized away
+  private static volatile long sink;
+
+  public static void main(String[] args) {
+    int numRecords = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+    int numRounds = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+
+    Schema schema = TestUtils.createSchemaWithAllTypes();
+    List<Record> records = new ArrayList<Record>();
+    for (int i = 0; i < numRecords; i++) {
+      records.add(TestUtils.createRecordWithAllTypesWithValue(i));
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(schema.getEntrySize());
+
+    for (int pass = 0; pass < 2; pass++) {
+      // the first pass warms up the JIT; only the second is printed
+      boolean print = pass == 1;
+      for (int variant = 0; variant < VARIANTS.length; variant++) {
+        long bytes = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+        long start = System.nanoTime();
+        long sum = 0;
+        for (int round = 0; round < numRounds; round++) {
+          for (Record record : records) {
+            sum += EncodeBenchmark.run(schema, record, buffer, variant);
+          }
+        }
+        EncodeBenchmark.sink = sum;
+        long nanos = System.nanoTime() - start;
+        bytes = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) - bytes;
+
+        double numEncodes = (double) numRounds * numRecords;
+        if (print) {
+          System.out.printf("%-14s  %6.1f ns/record  %6.1f bytes/record%n", VARIANTS[variant],
+                            nanos / numEncodes, bytes / numEncodes);
+        }
+      }
+    }
+  }
+
+  /**
+   * Encode record once, the way variant says.
+   *
+   * @return the second byte of the encoded int field
+   */
+  private static int run(Schema schema, Record record, ByteBuffer buffer, int variant) {
+    switch (variant) {
+      case 0:
+        schema.encode(record, buffer, 0);
+        return buffer.get(2);
+      case 1:
+        return schema.encode(record)[2];
+      default: {
+        byte[] code = new byte[schema.getEntrySize()];
+        int byteIndex = 0;
+        for (DataBox box : record.getValues()) {
+          int boxSize = box.type() == DataBox.Types.STRING ?
+                        box.getString().getBytes(Charset.forName("UTF-8")).length : box.getSize();
+          byte[] boxBytes = box.getBytes();
+          for (int j = 0; j < boxSize; j++) {
+            code[byteIndex + j] = boxBytes[j];
+          }
+          byteIndex += boxSize;
+        }
+        return code[2];
+      }
+    }
+  }
+}
@@ -0,0 +1,96 @@
+package edu.berkeley.cs186.database.table;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.index.BPlusTree;
+
+/**
+ * Loads the same records into a Table and the same keys into a BPlusTree at each page size, then
+ * times a full table scan, random getRecord calls and random index lookups against the warm
+ * buffer pool. Prints the pages each file took along with the times, so that the cost per page
+ * and the effect of the B+ tree's fanout can be told apart. A BPlusTree insert rewrites the whole
+ * leaf, so the index gets fewer keys than the table gets records.
+ *
+ * Usage: PageSizeBenchmark [numRecords] [numKeys] [numLookups]
+ */
+public class PageSizeBenchmark {
+  private static final int[] PAGE_SIZES = {4096, 8192, 16384, 65536};
+
+  public static void main(String[] args) throws IOException, DatabaseException {
+    int numRecords = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+    int numKeys = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+    int numLookups = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+
+    File dir = Files.createTempDirectory("pagesize").toFile();
+    for (int pass = 0; pass < 2; pass++) {
+      // the first pass warms up the JIT; only the second is printed
+      for (int pageSize : PAGE_SIZES) {
+        String name = "table" + pageSize + "_" + pass;
+        Table table = new Table(TestUtils.createSchemaWithAllTypes(), name, dir.getPath(),
+                                pageSize);
+        List<List<DataBox>> values = new ArrayList<List<DataBox>>();
+        for (int i = 0; i < numRecords; i++) {
+          values.add(TestUtils.createRecordWithAllTypesWithValue(i).getValues());
+        }
+        List<RecordID> rids = table.addRecords(values.iterator());
+
+        BPlusTree tree = new BPlusTree(new IntDataBox(), "index" + pageSize + "_" + pass,
+                                       dir.getPath(), pageSize);
+        for (int i = 0; i < numKeys; i++) {
+          tree.insertKey(new IntDataBox(i), rids.get(i));
+        }
+
+        long start = System.nanoTime();
+        long count = 0;
+        Iterator<Record> records = table.iterator();
+        while (records.hasNext()) {
+          records.next();
+          count++;
+        }
+        long scanNanos = System.nanoTime() - start;
+        if (count != numRecords) {
+          throw new IllegalStateException("scanned " + count + " of " + numRecords + " records");
+        }
+
+        Random random = new Random(pageSize);
+        start = System.nanoTime();
+        for (int i = 0; i < numLookups; i++) {
+          table.getRecord(rids.get(random.nextInt(numRecords)));
+        }
+        long getNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < numLookups; i++) {
+          if (!tree.containsKey(new IntDataBox(random.nextInt(numKeys)))) {
+            throw new IllegalStateException("index lost a key");
+          }
+        }
+        long lookupNanos = System.nanoTime() - start;
+
+        if (pass == 1) {
+          System.out.printf("%5dKB  table %5d pages  scan %6.1f ns/record  getRecord %6.0f ns  " +
+                            "index %5d pages  lookup %6.0f ns%n", pageSize / 1024,
+                            rids.get(numRecords - 1).getPageNum(), (double) scanNanos / numRecords,
+                            (double) getNanos / numLookups, tree.getNumPages(),
+                            (double) lookupNanos / numLookups);
+        }
+        table.close();
+      }
+    }
+
+    for (File file : dir.listFiles()) {
+      file.delete();
+    }
+    dir.delete();
+  }
+}
@@ -0,0 +1,119 @@
+package edu.berkeley.cs186.database.table;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.databox.DataBox;
+
+/**
+ * Times scanning a Table sequentially with its iterator, with parallelStream on ForkJoinPools of
+ * 1 up to maxThreads threads, and with parallelIterator on the common pool. Prints the fastest of
+ * numRuns scans of each in records per second, and the speedup over the sequential scan. There
+ * is nothing to gain from the parallel scans on a machine with one processor.
+ *
+ * Usage: ParallelScanBenchmark [numRecords] [maxThreads] [numRuns]
+ */
+public class ParallelScanBenchmark {
+  public static void main(String[] args)
+      throws IOException, DatabaseException, InterruptedException, ExecutionException {
+    int numRecords = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+    int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+    int numRuns = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+    File dir = Files.createTempDirectory("parallel").toFile();
+    Table table = new Table(TestUtils.createSchemaWithAllTypes(), "parallel", dir.getPath());
+    List<List<DataBox>> values = new ArrayList<List<DataBox>>();
+    for (int i = 0; i < numRecords; i++) {
+      values.add(TestUtils.createRecordWithAllTypesWithValue(i).getValues());
+    }
+    table.addRecords(values.iterator());
+    System.out.printf("%d processors%n", Runtime.getRuntime().availableProcessors());
+
+    for (int pass = 0; pass < 2; pass++) {
+      // the first pass warms up the JIT; only the second is printed
+      long sequential = Long.MAX_VALUE;
+      for (int run = 0; run < numRuns; run++) {
+        long start = System.nanoTime();
+        ParallelScanBenchmark.check(table, ParallelScanBenchmark.count(table.iterator()));
+        sequential = Math.min(sequential, System.nanoTime() - start);
+      }
+      ParallelScanBenchmark.print(pass, "iterator", numRecords, sequential, sequential);
+
+      for (int numThreads = 1; numThreads <= maxThreads; numThreads *= 2) {
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
+        long parallel = Long.MAX_VALUE;
+        for (int run = 0; run < numRuns; run++) {
+          long start = System.nanoTime();
+          // a parallel stream run from inside a pool splits its work on that pool
+          ParallelScanBenchmark.check(table, pool.submit(new StreamCount(table)).get());
+          parallel = Math.min(parallel, System.nanoTime() - start);
+        }
+        pool.shutdown();
+        ParallelScanBenchmark.print(pass, "parallelStream, " + numThreads + " threads",
+                                    numRecords, parallel, sequential);
+      }
+
+      long prefetch = Long.MAX_VALUE;
+      for (int run = 0; run < numRuns; run++) {
+        long start = System.nanoTime();
+        ParallelScanBenchmark.check(table, ParallelScanBenchmark.count(table.parallelIterator()));
+        prefetch = Math.min(prefetch, System.nanoTime() - start);
+      }
+      ParallelScanBenchmark.print(pass, "parallelIterator, common pool of " +
+                                  ForkJoinPool.commonPool().getParallelism(), numRecords, prefetch,
+                                  sequential);
+    }
+
+    table.close();
+    for (File file : dir.listFiles()) {
+      file.delete();
+    }
+    dir.delete();
+  }
+
+  private static long count(Iterator<Record> records) {
+    long count = 0;
+    while (records.hasNext()) {
+      records.next();
+      count++;
+    }
+    return count;
+  }
+
+  private static void print(int pass, String scan, int numRecords, long nanos,
+                            long sequential) {
+    if (pass == 0) {
+      return;
+    }
+    System.out.printf("%-40s %10.0f records/s  (%.2fx)%n", scan, numRecords * 1e9 / nanos,
+                      (double) sequential / nanos);
+  }
+
+  private static void check(Table table, long count) {
+    if (count != table.getNumRecords()) {
+      throw new IllegalStateException("scanned " + count + " of " + table.getNumRecords() +
+                                      " records");
+    }
+  }
+
+  private static class StreamCount implements Callable<Long> {
+    private Table table;
+
+    public StreamCount(Table table) {
+      this.table = table;
+    }
+
+    public Long call() {
+      return this.table.parallelStream().count();
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package edu.berkeley.cs186.database.table;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.databox.DataBox;
+
+/**
+ * Times reopening Tables of growing size: from the stats file saved when the table was closed,
+ * from a checkpoint of the stats like the one a table that was not closed leaves, which makes
+ * the table count its records from its pages, and without a stats file, which makes the table
+ * rebuild its stats from every record the way opening a table always used to. Prints the fastest
+ * of numRuns opens of each.
+ *
+ * Usage: TableOpenBenchmark [maxRecords] [numRuns]
+ */
+public class TableOpenBenchmark {
+  public static void main(String[] args) throws IOException, DatabaseException {
+    int maxRecords = args.length > 0 ? Integer.parseInt(args[0]) : 400000;
+    int numRuns = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+    File dir = Files.createTempDirectory("open").toFile();
+    for (int numRecords = maxRecords / 64; numRecords <= maxRecords; numRecords *= 4) {
+      String name = "table" + numRecords;
+      Table table = new Table(TestUtils.createSchemaWithAllTypes(), name, dir.getPath());
+      List<List<DataBox>> values = new ArrayList<List<DataBox>>();
+      for (int i = 0; i < numRecords; i++) {
+        values.add(TestUtils.createRecordWithAllTypesWithValue(i).getValues());
+      }
+      List<RecordID> rids = table.addRecords(values.iterator());
+      table.close();
+
+      // changing the table checkpoints its stats, which closing it without saving them keeps
+      File stats = new File(dir, name + Table.STATS_FILENAME_EXTENSION);
+      File checkpoint = new File(dir, name + ".checkpoint");
+      table = new Table(name, dir.getPath());
+      table.deleteRecord(rids.get(0));
+      table.close(false);
+      Files.copy(stats.toPath(), checkpoint.toPath());
+      int numKept = numRecords - 1;
+      TableOpenBenchmark.open(name, dir, numKept);
+
+      File savedStats = new File(dir, name + ".saved");
+      long withStats = Long.MAX_VALUE;
+      long fromCheckpoint = Long.MAX_VALUE;
+      long withoutStats = Long.MAX_VALUE;
+      for (int run = 0; run < numRuns; run++) {
+        Files.copy(stats.toPath(), savedStats.toPath());
+        withStats = Math.min(withStats, TableOpenBenchmark.open(name, dir, numKept));
+
+        Files.copy(checkpoint.toPath(), stats.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        fromCheckpoint = Math.min(fromCheckpoint, TableOpenBenchmark.open(name, dir, numKept));
+
+        // a table closed cleanly saves its stats again, so they are removed before every open
+        Files.delete(stats.toPath());
+        withoutStats = Math.min(withoutStats, TableOpenBenchmark.open(name, dir, numKept));
+        Files.delete(stats.toPath());
+        Files.move(savedStats.toPath(), stats.toPath());
+      }
+
+      System.out.printf("%7d records  open with stats %8.2f ms  from a checkpoint %8.2f ms  " +
+                        "rebuilding them %8.2f ms%n", numKept, withStats / 1e6,
+                        fromCheckpoint / 1e6, withoutStats / 1e6);
+    }
+
+    for (File file : dir.listFiles()) {
+      file.delete();
+    }
+    dir.delete();
+  }
+
+  /**
+   * Open and close table name.
+   *
+   * @return the time taken to open it in nanoseconds
+   */
+  private static long open(String name, File dir, int numRecords) {
+    long start = System.nanoTime();
+    Table table = new Table(name, dir.getPath());
+    long nanos = System.nanoTime() - start;
+    if (table.getNumRecords() != numRecords) {
+      throw new IllegalStateException("opened " + table.getNumRecords() + " of " + numRecords +
+                                      " records");
+    }
+    table.close();
+    return nanos;
+  }
+}
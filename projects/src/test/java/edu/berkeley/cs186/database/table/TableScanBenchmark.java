@@ -0,0 +1,124 @@
+package edu.berkeley.cs186.database.table;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.databox.DataBox;
+
+/**
+ * Times scanning a Table with its iterator, which decodes a page of records at a time, against
+ * the way TableIterator used to scan: a getRecord call for every slot on every page, with empty
+ * slots skipped by catching the DatabaseException getRecord throws for them. The table is loaded
+ * with numRecords records and then all of them, every other one and every tenth one are kept in
+ * turn. Prints the fastest of numRuns scans of each, per record kept.
+ *
+ * Usage: TableScanBenchmark [numRecords] [numRuns]
+ */
+public class TableScanBenchmark {
+  private static final int[] KEEP_EVERY = {1, 2, 10};
+
+  // what the scans returned, kept so that they are not optimized away
+  private static volatile long sink;
+
+  public static void main(String[] args) throws IOException, DatabaseException {
+    int numRecords = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+    int numRuns = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+    File dir = Files.createTempDirectory("scan").toFile();
+    Table table = new Table(TestUtils.createSchemaWithAllTypes(), "scan", dir.getPath());
+    List<List<DataBox>> values = new ArrayList<List<DataBox>>();
+    for (int i = 0; i < numRecords; i++) {
+      values.add(TestUtils.createRecordWithAllTypesWithValue(i).getValues());
+    }
+    List<RecordID> rids = table.addRecords(values.iterator());
+    int numPages = rids.get(numRecords - 1).getPageNum();
+
+    int kept = 1;
+    for (int keepEvery : KEEP_EVERY) {
+      // each step deletes from what the one before kept, which is every kept-th record
+      for (int i = 0; i < numRecords; i += kept) {
+        if (i % keepEvery != 0) {
+          table.deleteRecord(rids.get(i));
+        }
+      }
+      kept = keepEvery;
+
+      long pages = Long.MAX_VALUE;
+      long slots = Long.MAX_VALUE;
+      for (int run = 0; run < numRuns; run++) {
+        long start = System.nanoTime();
+        TableScanBenchmark.check(table, TableScanBenchmark.scanPages(table));
+        pages = Math.min(pages, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        TableScanBenchmark.check(table, TableScanBenchmark.scanSlots(table, numPages));
+        slots = Math.min(slots, System.nanoTime() - start);
+      }
+
+      long numKept = table.getNumRecords();
+      System.out.printf("1 in %2d kept  iterator %7.1f  getRecord per slot %7.1f ns/record " +
+                        "(%.1fx)%n", keepEvery, (double) pages / numKept,
+                        (double) slots / numKept, (double) slots / pages);
+    }
+
+    table.close();
+    for (File file : dir.listFiles()) {
+      file.delete();
+    }
+    dir.delete();
+  }
+
+  /**
+   * Scan table with its iterator.
+   *
+   * @return the number of records scanned
+   */
+  private static long scanPages(Table table) {
+    long count = 0;
+    long sum = 0;
+    Iterator<Record> records = table.iterator();
+    while (records.hasNext()) {
+      sum += records.next().getValues().get(1).getInt();
+      count++;
+    }
+    TableScanBenchmark.sink = sum;
+    return count;
+  }
+
+  /**
+   * Scan table the old way, trying every slot of data pages 1 up to numPages.
+   *
+   * @return the number of records scanned
+   */
+  private static long scanSlots(Table table, int numPages) {
+    long count = 0;
+    long sum = 0;
+    int numEntriesPerPage = table.getNumEntriesPerPage();
+    for (int pageNum = 1; pageNum <= numPages; pageNum++) {
+      for (int entryNum = 0; entryNum < numEntriesPerPage; entryNum++) {
+        try {
+          Record record = table.getRecord(new RecordID(pageNum, entryNum));
+          sum += record.getValues().get(1).getInt();
+          count++;
+        } catch (DatabaseException e) {
+          // an empty slot
+        }
+      }
+    }
+    TableScanBenchmark.sink = sum;
+    return count;
+  }
+
+  private static void check(Table table, long count) {
+    if (count != table.getNumRecords()) {
+      throw new IllegalStateException("scanned " + count + " of " + table.getNumRecords() +
+                                      " records");
+    }
+  }
+}
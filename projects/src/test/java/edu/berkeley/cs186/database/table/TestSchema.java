@@ -2,12 +2,15 @@ package edu.berkeley.cs186.database.table;
 
 import edu.berkeley.cs186.database.TestUtils;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
 import edu.berkeley.cs186.database.databox.IntDataBox;
 import edu.berkeley.cs186.database.databox.StringDataBox;
 
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.Assert.*;
@@ -54,4 +57,125 @@ public class TestSchema {
     schema.verify(values);
   }
 
+  @Test
+  public void testDecodeLazily() {
+    Schema schema = TestUtils.createSchemaWithAllTypes();
+    Record input = TestUtils.createRecordWithAllTypes();
+    byte[] bytes = schema.encode(input);
+
+    Record output = schema.decode(bytes);
+    // the record has its own copy of the bytes
+    bytes[4] = 99;
+    assertEquals(input, output);
+    assertEquals(input.getValues().size(), output.getValues().size());
+
+    // changes to a decoded value stick, as they did when every value was decoded up front
+    output.getValues().get(1).setInt(7);
+    assertEquals(7, output.getValues().get(1).getInt());
+    output.getValues().set(2, new StringDataBox("zzzzz", 5));
+    assertEquals("zzzzz", output.getValues().get(2).getString());
+  }
+
+  @Test
+  public void testDecodedValuesResizable() {
+    Schema schema = TestUtils.createSchemaWithAllTypes();
+    Record input = TestUtils.createRecordWithAllTypes();
+    List<DataBox> values = input.getValues();
+
+    // values can be added and removed, as they could when a record held an ArrayList
+    Record output = schema.decode(schema.encode(input));
+    output.getValues().get(1).setInt(7);
+    output.getValues().add(new IntDataBox(9));
+    assertEquals(5, output.getValues().size());
+    assertEquals(7, output.getValues().get(1).getInt());
+    assertEquals(9, output.getValues().get(4).getInt());
+    assertEquals(values.get(3), output.getValues().remove(3));
+    assertEquals(values.get(2), output.getValues().get(2));
+    assertEquals(values.get(0), output.project(new int[] {0}).getValues().get(0));
+    assertEquals(9, output.project(new int[] {3}).getValues().get(0).getInt());
+
+    output.getValues().clear();
+    assertTrue(output.getValues().isEmpty());
+  }
+
+  @Test
+  public void testDecodeColumns() {
+    Schema schema = TestUtils.createSchemaWithAllTypes();
+    Record input = TestUtils.createRecordWithAllTypes();
+    byte[] bytes = schema.encode(input);
+    List<DataBox> values = input.getValues();
+
+    Record output = schema.decode(bytes, new int[] {3, 1});
+    assertEquals(2, output.getValues().size());
+    assertEquals(values.get(3), output.getValues().get(0));
+    assertEquals(values.get(1), output.getValues().get(1));
+
+    // every byte of a negative int or float comes back, sign bit and all
+    List<DataBox> negative = new ArrayList<DataBox>(values);
+    negative.set(1, new IntDataBox(-123456789));
+    negative.set(3, new FloatDataBox(-0.1f));
+    output = schema.decode(schema.encode(new Record(negative)), new int[] {1, 3});
+    assertEquals(-123456789, output.getValues().get(0).getInt());
+    assertEquals(-0.1f, output.getValues().get(1).getFloat(), 0.0f);
+
+    // projecting a decoded record keeps the values already decoded
+    Record decoded = schema.decode(bytes);
+    decoded.getValues().get(2).setString("qqqqq", 5);
+    Record projected = decoded.project(new int[] {2, 0});
+    assertEquals("qqqqq", projected.getValues().get(0).getString());
+    assertEquals(values.get(0), projected.getValues().get(1));
+    assertEquals(input.project(new int[] {0}), decoded.project(new int[] {0}));
+  }
+
+  @Test
+  public void testEncodeIntoBuffer() {
+    Schema schema = TestUtils.createSchemaWithAllTypes();
+    Record input = TestUtils.createRecordWithAllTypes();
+    byte[] expected = schema.encode(input);
+    assertEquals(schema.getEntrySize(), expected.length);
+
+    // encoding at an offset leaves the bytes around the record alone
+    byte[] buffer = new byte[expected.length + 7];
+    Arrays.fill(buffer, (byte) 0x5A);
+    schema.encode(input, ByteBuffer.wrap(buffer), 3);
+    assertArrayEquals(expected, Arrays.copyOfRange(buffer, 3, 3 + expected.length));
+    assertEquals(0x5A, buffer[2]);
+    assertEquals(0x5A, buffer[3 + expected.length]);
+    assertEquals(input, schema.decode(Arrays.copyOfRange(buffer, 3, 3 + expected.length)));
+
+    // a string that is not ASCII takes more bytes than characters
+    List<DataBox> values = new ArrayList<DataBox>(input.getValues());
+    values.set(2, new StringDataBox("\u00e9abc", 4));
+    Record accented = new Record(values);
+    byte[] accentedBytes = schema.encode(accented);
+    assertEquals(accented, schema.decode(accentedBytes));
+    schema.encode(accented, ByteBuffer.wrap(buffer), 3);
+    assertArrayEquals(accentedBytes, Arrays.copyOfRange(buffer, 3, 3 + expected.length));
+  }
+
+  @Test
+  public void testEncodeVariable() {
+    Schema schema = TestUtils.createSchemaWithAllTypes();
+    assertEquals(1 + 4 + 2 + 4, schema.getMinVariableSize());
+    assertEquals(schema.getEntrySize() + 2, schema.getMaxVariableSize());
+
+    Record input = TestUtils.createRecordWithAllTypes();
+    byte[] bytes = schema.encodeVariable(input);
+    assertEquals(schema.getMaxVariableSize(), bytes.length);
+    assertEquals(input, schema.decodeVariable(bytes));
+
+    // strings are stored without their padding
+    List<DataBox> values = new ArrayList<DataBox>(input.getValues());
+    values.set(2, new StringDataBox("ab", 5));
+    Record shortString = new Record(values);
+    bytes = schema.encodeVariable(shortString);
+    assertEquals(schema.getMinVariableSize() + 2, bytes.length);
+    assertEquals(shortString, schema.decodeVariable(bytes));
+
+    values.set(2, new StringDataBox("", 5));
+    Record emptyString = new Record(values);
+    bytes = schema.encodeVariable(emptyString);
+    assertEquals(schema.getMinVariableSize(), bytes.length);
+    assertEquals(emptyString, schema.decodeVariable(bytes));
+  }
 }
@@ -4,6 +4,9 @@ import edu.berkeley.cs186.database.DatabaseException;
 import edu.berkeley.cs186.database.TestUtils;
 import edu.berkeley.cs186.database.StudentTest;
 import edu.berkeley.cs186.database.databox.*;
+import edu.berkeley.cs186.database.io.BufferPool;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.io.PageStore;
 
 import org.junit.After;
 import org.junit.Before;
@@ -17,6 +20,11 @@ import org.junit.experimental.categories.Category;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+import java.io.File;
 import java.io.IOException;
 
 import static org.junit.Assert.*;
@@ -671,4 +679,474 @@ public class TestTable {
     }
     assertFalse(iRec.hasNext());
   }
+
+  @Test
+  public void testTableLargePages() throws DatabaseException {
+    String tempFolderPath = tempFolder.getRoot().getAbsolutePath();
+    Table bigTable = new Table(this.schema, "bigtable", tempFolderPath, 16 * 1024);
+    assertEquals(1152, bigTable.getNumEntriesPerPage());
+
+    Record input = TestUtils.createRecordWithAllTypes();
+    List<RecordID> rids = new ArrayList<RecordID>();
+    for (int i = 0; i < 2000; i++) {
+      rids.add(bigTable.addRecord(input.getValues()));
+    }
+    assertEquals(1151, rids.get(1151).getEntryNumber());
+    assertEquals(rids.get(0).getPageNum(), rids.get(1151).getPageNum());
+    assertEquals(0, rids.get(1152).getEntryNumber());
+    bigTable.close();
+
+    bigTable = new Table("bigtable", tempFolderPath);
+    assertEquals(1152, bigTable.getNumEntriesPerPage());
+    assertEquals(2000, bigTable.getNumRecords());
+    assertEquals(input, bigTable.getRecord(rids.get(1999)));
+    bigTable.close();
+  }
+
+  @Test
+  public void testTableChecksums() throws DatabaseException {
+    String tempFolderPath = tempFolder.getRoot().getAbsolutePath();
+    Table checkedTable = new Table(this.schema, "checkedtable", tempFolderPath, Page.pageSize,
+                                   PageStore.Type.MMAP, true);
+
+    Record input = TestUtils.createRecordWithAllTypes();
+    List<RecordID> rids = new ArrayList<RecordID>();
+    for (int i = 0; i < 1000; i++) {
+      rids.add(checkedTable.addRecord(input.getValues()));
+    }
+    checkedTable.close();
+
+    checkedTable = new Table("checkedtable", tempFolderPath);
+    assertEquals(1000, checkedTable.getNumRecords());
+    for (RecordID rid : rids) {
+      assertEquals(input, checkedTable.getRecord(rid));
+    }
+    checkedTable.close();
+  }
+
+  @Test
+  public void testTableCompressed() throws DatabaseException {
+    String tempFolderPath = tempFolder.getRoot().getAbsolutePath();
+    Table coldTable = new Table(this.schema, "coldtable", tempFolderPath, 16 * 1024,
+                                PageStore.Type.COMPRESSED);
+
+    Record input = TestUtils.createRecordWithAllTypes();
+    List<RecordID> rids = new ArrayList<RecordID>();
+    for (int i = 0; i < 3000; i++) {
+      rids.add(coldTable.addRecord(input.getValues()));
+    }
+    coldTable.close();
+
+    coldTable = new Table("coldtable", tempFolderPath);
+    assertEquals(3000, coldTable.getNumRecords());
+    for (int i = 0; i < 3000; i += 7) {
+      assertEquals(input, coldTable.getRecord(rids.get(i)));
+    }
+    coldTable.close();
+  }
+
+  @Test
+  public void testTableFreeSpaceMap() throws DatabaseException {
+    Record input = TestUtils.createRecordWithAllTypes();
+    int numEntriesPerPage = table.getNumEntriesPerPage();
+    for (int i = 0; i < 3 * numEntriesPerPage; i++) {
+      table.addRecord(input.getValues());
+    }
+    table.deleteRecord(new RecordID(3, 7));
+    table.deleteRecord(new RecordID(2, 5));
+    table.close();
+
+    String tempFolderPath = tempFolder.getRoot().getAbsolutePath();
+    File fsmFile = new File(tempFolderPath, TABLENAME + Table.FREE_SPACE_FILENAME_EXTENSION);
+    assertTrue(fsmFile.exists());
+
+    // the reopened table fills the holes lowest page first before it grows
+    this.table = new Table(TABLENAME, tempFolderPath);
+    assertEquals(new RecordID(2, 5), table.addRecord(input.getValues()));
+    assertEquals(new RecordID(3, 7), table.addRecord(input.getValues()));
+    assertEquals(new RecordID(4, 0), table.addRecord(input.getValues()));
+    table.deleteRecord(new RecordID(1, 3));
+    table.close();
+
+    // a table without a free space map gets one built when it is opened
+    assertTrue(fsmFile.delete());
+    this.table = new Table(TABLENAME, tempFolderPath);
+    assertEquals(3 * numEntriesPerPage, table.getNumRecords());
+    assertEquals(new RecordID(1, 3), table.addRecord(input.getValues()));
+    assertEquals(new RecordID(4, 1), table.addRecord(input.getValues()));
+  }
+
+  @Test
+  public void testTableFreeSpaceMapRebuiltWithStats() throws DatabaseException {
+    Record input = TestUtils.createRecordWithAllTypes();
+    int numEntriesPerPage = table.getNumEntriesPerPage();
+    for (int i = 0; i < 2 * numEntriesPerPage; i++) {
+      table.addRecord(input.getValues());
+    }
+    table.deleteRecord(new RecordID(1, 4));
+    table.close();
+
+    // a crash loses the map's record of the delete, and leaves the table without its stats file
+    String tempFolderPath = tempFolder.getRoot().getAbsolutePath();
+    File fsmFile = new File(tempFolderPath, TABLENAME + Table.FREE_SPACE_FILENAME_EXTENSION);
+    FreeSpaceMap freeSpace = new FreeSpaceMap(fsmFile.getAbsolutePath(), false);
+    freeSpace.setFreeSlots(1, 0);
+    freeSpace.close();
+    File statsFile = new File(tempFolderPath, TABLENAME + Table.STATS_FILENAME_EXTENSION);
+    assertTrue(statsFile.delete());
+
+    // the scan that rebuilds the stats rebuilds the map, so the hole is used again
+    this.table = new Table(TABLENAME, tempFolderPath);
+    assertEquals(2 * numEntriesPerPage - 1, table.getNumRecords());
+    assertEquals(new RecordID(1, 4), table.addRecord(input.getValues()));
+    assertEquals(new RecordID(3, 0), table.addRecord(input.getValues()));
+  }
+
+  @Test
+  public void testTableStatsSaved() throws DatabaseException {
+    Record input = TestUtils.createRecordWithAllTypes();
+    List<RecordID> rids = new ArrayList<RecordID>();
+    for (int i = 0; i < 1000; i++) {
+      rids.add(table.addRecord(input.getValues()));
+    }
+    table.deleteRecord(rids.get(10));
+    table.close();
+
+    String tempFolderPath = tempFolder.getRoot().getAbsolutePath();
+    File statsFile = new File(tempFolderPath, TABLENAME + Table.STATS_FILENAME_EXTENSION);
+    assertTrue(statsFile.exists());
+
+    // the reopened table reads its stats instead of its records
+    this.table = new Table(TABLENAME, tempFolderPath);
+    assertEquals(999, table.getNumRecords());
+    assertEquals(999, table.getStats().getNumRecords());
+    assertEquals(999, table.getStats().getHistogram(1).getEntriesInRange(0, 5));
+
+    // changing the table leaves a checkpoint of the stats until it is closed again
+    table.addRecord(input.getValues());
+    assertTrue(statsFile.exists());
+    table.close();
+    assertTrue(statsFile.exists());
+
+    // a table whose stats were lost rebuilds them from its pages
+    assertTrue(statsFile.delete());
+    this.table = new Table(TABLENAME, tempFolderPath);
+    assertEquals(1000, table.getNumRecords());
+    assertEquals(1000, table.getStats().getHistogram(2).getEntriesInRange("a", "b"));
+    int count = 0;
+    for (Record record : table) {
+      count++;
+    }
+    assertEquals(1000, count);
+  }
+
+  @Test
+  public void testTableStatsCheckpointed() throws DatabaseException {
+    Record input = TestUtils.createRecordWithAllTypes();
+    List<RecordID> rids = new ArrayList<RecordID>();
+    for (int i = 0; i < 1000; i++) {
+      rids.add(table.addRecord(input.getValues()));
+    }
+    table.close();
+
+    String tempFolderPath = tempFolder.getRoot().getAbsolutePath();
+    this.table = new Table(TABLENAME, tempFolderPath);
+    for (int i = 0; i < Table.STATS_SAVE_INTERVAL + 5; i++) {
+      table.addRecord(input.getValues());
+    }
+    table.deleteRecord(rids.get(10));
+    // as a crash would, closing without saving the stats leaves the last checkpoint
+    table.close(false);
+
+    // the table keeps the checkpointed stats, from before the last six changes, but counts its
+    // records and rebuilds its free space map from its pages
+    this.table = new Table(TABLENAME, tempFolderPath);
+    assertEquals(1000 + Table.STATS_SAVE_INTERVAL + 4, table.getNumRecords());
+    assertEquals(1000 + Table.STATS_SAVE_INTERVAL, table.getStats().getNumRecords());
+    assertEquals(rids.get(10), table.addRecord(input.getValues()));
+    int count = 0;
+    for (Record record : table) {
+      count++;
+    }
+    assertEquals(1000 + Table.STATS_SAVE_INTERVAL + 5, count);
+  }
+
+  @Test
+  public void testTableCloseWithoutStats() throws DatabaseException {
+    Record input = TestUtils.createRecordWithAllTypes();
+    for (int i = 0; i < 10; i++) {
+      table.addRecord(input.getValues());
+    }
+    table.close(false);
+
+    String tempFolderPath = tempFolder.getRoot().getAbsolutePath();
+    File statsFile = new File(tempFolderPath, TABLENAME + Table.STATS_FILENAME_EXTENSION);
+    assertFalse(statsFile.exists());
+
+    // the table is still whole, and its stats are rebuilt when it is opened
+    this.table = new Table(TABLENAME, tempFolderPath);
+    assertEquals(10, table.getNumRecords());
+    assertEquals(10, table.getStats().getNumRecords());
+  }
+
+  @Test
+  public void testTableAddRecords() throws DatabaseException {
+    Record input = TestUtils.createRecordWithAllTypes();
+    int numEntriesPerPage = table.getNumEntriesPerPage();
+    for (int i = 0; i < numEntriesPerPage + 10; i++) {
+      table.addRecord(input.getValues());
+    }
+    table.deleteRecord(new RecordID(1, 3));
+    table.deleteRecord(new RecordID(1, 4));
+    table.deleteRecord(new RecordID(2, 8));
+
+    List<List<DataBox>> values = new ArrayList<List<DataBox>>();
+    for (int i = 0; i < 2 * numEntriesPerPage; i++) {
+      List<DataBox> record = new ArrayList<DataBox>(input.getValues());
+      record.set(1, new IntDataBox(i));
+      values.add(record);
+    }
+    List<RecordID> rids = table.addRecords(values.iterator());
+
+    // the holes are filled first, then the rest of page 2, then new pages
+    assertEquals(2 * numEntriesPerPage, rids.size());
+    assertEquals(new RecordID(1, 3), rids.get(0));
+    assertEquals(new RecordID(1, 4), rids.get(1));
+    assertEquals(new RecordID(2, 8), rids.get(2));
+    assertEquals(new RecordID(2, 10), rids.get(3));
+    assertEquals(new RecordID(3, 0), rids.get(numEntriesPerPage - 7));
+    for (int i = 0; i < rids.size(); i++) {
+      assertEquals(i, table.getRecord(rids.get(i)).getValues().get(1).getInt());
+    }
+    assertEquals(3 * numEntriesPerPage + 7, table.getNumRecords());
+    assertEquals(new RecordID(4, 7), table.addRecord(input.getValues()));
+
+    // records before a bad one are added
+    List<List<DataBox>> bad = new ArrayList<List<DataBox>>();
+    bad.add(input.getValues());
+    bad.add(new ArrayList<DataBox>());
+    bad.add(input.getValues());
+    boolean thrown = false;
+    try {
+      table.addRecords(bad.iterator());
+    } catch (DatabaseException e) {
+      thrown = true;
+    }
+    assertTrue(thrown);
+    assertEquals(3 * numEntriesPerPage + 9, table.getNumRecords());
+    assertEquals(new RecordID(4, 9), table.addRecord(input.getValues()));
+  }
+
+  @Test
+  public void testTableIteratorPageAtATime() throws DatabaseException {
+    Record input = TestUtils.createRecordWithAllTypes();
+    int numEntriesPerPage = table.getNumEntriesPerPage();
+    for (int i = 0; i < 4 * numEntriesPerPage; i++) {
+      input.getValues().get(1).setInt(i);
+      table.addRecord(input.getValues());
+    }
+    // an empty page and a page with every other slot empty
+    for (int i = 0; i < numEntriesPerPage; i++) {
+      table.deleteRecord(new RecordID(2, i));
+      if (i % 2 == 0) {
+        table.deleteRecord(new RecordID(3, i));
+      }
+    }
+
+    int pinned = BufferPool.getDefault().getNumPinnedPages();
+    Iterator<Record> iRec = table.iterator();
+    List<Integer> values = new ArrayList<Integer>();
+    while (iRec.hasNext()) {
+      values.add(iRec.next().getValues().get(1).getInt());
+    }
+    assertEquals(pinned, BufferPool.getDefault().getNumPinnedPages());
+
+    assertEquals(table.getNumRecords(), values.size());
+    for (int i = 1; i < values.size(); i++) {
+      assertTrue(values.get(i - 1) < values.get(i));
+    }
+    assertEquals(2 * numEntriesPerPage + 1, (int) values.get(numEntriesPerPage));
+
+    boolean thrown = false;
+    try {
+      iRec.next();
+    } catch (NoSuchElementException e) {
+      thrown = true;
+    }
+    assertTrue(thrown);
+  }
+
+  @Test
+  public void testTableIteratorAbandoned() throws DatabaseException {
+    Record input = TestUtils.createRecordWithAllTypes();
+    int numEntriesPerPage = table.getNumEntriesPerPage();
+    for (int i = 0; i < 8 * numEntriesPerPage; i++) {
+      input.getValues().get(1).setInt(i);
+      table.addRecord(input.getValues());
+    }
+
+    // iterators dropped part way through a page, as a LIMIT or a failed operator would
+    int pinned = BufferPool.getDefault().getNumPinnedPages();
+    for (int i = 0; i < 8 * numEntriesPerPage; i += numEntriesPerPage / 2 + 1) {
+      Iterator<Record> iRec = table.iterator();
+      for (int j = 0; j <= i; j++) {
+        assertEquals(j, iRec.next().getValues().get(1).getInt());
+      }
+      assertEquals(pinned, BufferPool.getDefault().getNumPinnedPages());
+    }
+
+    int count = 0;
+    for (Record record : table) {
+      count++;
+    }
+    assertEquals(8 * numEntriesPerPage, count);
+    assertEquals(input, table.getRecord(new RecordID(8, numEntriesPerPage - 1)));
+  }
+
+  @Test
+  public void testTableParallelScan() throws DatabaseException {
+    Record input = TestUtils.createRecordWithAllTypes();
+    int numEntriesPerPage = table.getNumEntriesPerPage();
+    for (int i = 0; i < 10 * numEntriesPerPage; i++) {
+      input.getValues().get(1).setInt(i);
+      table.addRecord(input.getValues());
+    }
+    for (int i = 0; i < numEntriesPerPage; i += 3) {
+      table.deleteRecord(new RecordID(4, i));
+      table.deleteRecord(new RecordID(7, i / 3));
+    }
+
+    List<Record> expected = new ArrayList<Record>();
+    for (Record record : table) {
+      expected.add(record);
+    }
+
+    Spliterator<Record> spliterator = table.spliterator();
+    Spliterator<Record> prefix = spliterator.trySplit();
+    assertNotNull(prefix);
+    List<Record> split = StreamSupport.stream(prefix, false).collect(Collectors.toList());
+    split.addAll(StreamSupport.stream(spliterator, false).collect(Collectors.toList()));
+    assertEquals(expected, split);
+
+    assertEquals(expected, table.parallelStream().collect(Collectors.toList()));
+    assertEquals(expected.size(), table.parallelStream().count());
+
+    List<Record> parallel = new ArrayList<Record>();
+    Iterator<Record> iRec = table.parallelIterator();
+    while (iRec.hasNext()) {
+      parallel.add(iRec.next());
+    }
+    assertEquals(expected, parallel);
+  }
+
+  private static Schema createWideStringSchema() {
+    List<String> names = new ArrayList<String>();
+    List<DataBox> types = new ArrayList<DataBox>();
+    names.add("id");
+    types.add(new IntDataBox());
+    names.add("name");
+    types.add(new StringDataBox(255));
+    return new Schema(names, types);
+  }
+
+  private static List<DataBox> createWideStringValues(int id, String name) {
+    List<DataBox> values = new ArrayList<DataBox>();
+    values.add(new IntDataBox(id));
+    values.add(new StringDataBox(name, 255));
+    return values;
+  }
+
+  @Test
+  public void testTableSlotted() throws DatabaseException {
+    String tempFolderPath = tempFolder.getRoot().getAbsolutePath();
+    Schema wideSchema = createWideStringSchema();
+    Table slottedTable = new Table(wideSchema, "slottedtable", tempFolderPath, Page.pageSize,
+                                   PageStore.Type.MMAP, false, Table.RecordFormat.SLOTTED);
+    assertEquals(Table.RecordFormat.SLOTTED, slottedTable.getRecordFormat());
+
+    List<RecordID> rids = new ArrayList<RecordID>();
+    for (int i = 0; i < 1000; i++) {
+      rids.add(slottedTable.addRecord(createWideStringValues(i, "name" + i)));
+    }
+    // padded to 255 bytes, 15 records fit on a page; unpadded, over 200 do
+    assertTrue(rids.get(999).getPageNum() <= 5);
+    assertEquals(new Record(createWideStringValues(7, "name7")), slottedTable.getRecord(rids.get(7)));
+
+    slottedTable.deleteRecord(rids.get(10));
+    assertEquals(rids.get(10), slottedTable.addRecord(createWideStringValues(1000, "name1000")));
+    slottedTable.updateRecord(createWideStringValues(20, ""), rids.get(20));
+    slottedTable.updateRecord(createWideStringValues(30, "a much longer name than before"), rids.get(30));
+    slottedTable.close();
+
+    // the reopened table keeps its format, and rebuilds its stats from slotted pages
+    new File(tempFolderPath, "slottedtable" + Table.STATS_FILENAME_EXTENSION).delete();
+    slottedTable = new Table("slottedtable", tempFolderPath);
+    assertEquals(Table.RecordFormat.SLOTTED, slottedTable.getRecordFormat());
+    assertEquals(1000, slottedTable.getNumRecords());
+    assertEquals(new Record(createWideStringValues(20, "")), slottedTable.getRecord(rids.get(20)));
+    assertEquals(new Record(createWideStringValues(30, "a much longer name than before")),
+                 slottedTable.getRecord(rids.get(30)));
+    assertEquals(new Record(createWideStringValues(1000, "name1000")),
+                 slottedTable.getRecord(rids.get(10)));
+
+    int count = 0;
+    for (Record record : slottedTable) {
+      count++;
+    }
+    assertEquals(1000, count);
+    assertEquals(1000, slottedTable.parallelStream().count());
+
+    boolean thrown = false;
+    try {
+      slottedTable.getRecord(new RecordID(1, slottedTable.getNumEntriesPerPage() - 1));
+    } catch (DatabaseException e) {
+      thrown = true;
+    }
+    assertTrue(thrown);
+    slottedTable.close();
+  }
+
+  @Test
+  public void testTableSlottedCompaction() throws DatabaseException {
+    String tempFolderPath = tempFolder.getRoot().getAbsolutePath();
+    Table slottedTable = new Table(createWideStringSchema(), "compacttable", tempFolderPath,
+                                   Page.pageSize, PageStore.Type.MMAP, false,
+                                   Table.RecordFormat.SLOTTED);
+
+    // fill the first page with records of 40 byte names
+    String name = "0123456789012345678901234567890123456789";
+    List<RecordID> rids = new ArrayList<RecordID>();
+    RecordID rid = slottedTable.addRecord(createWideStringValues(0, name));
+    while (rid.getPageNum() == 1) {
+      rids.add(rid);
+      rid = slottedTable.addRecord(createWideStringValues(rids.size(), name));
+    }
+
+    // every other record leaves a 50 byte hole, too small for a record with an 80 byte name
+    for (int i = 0; i < rids.size(); i += 2) {
+      slottedTable.deleteRecord(rids.get(i));
+    }
+    String longName = name + name;
+    for (int i = 0; i < rids.size() / 4; i++) {
+      assertEquals(1, slottedTable.addRecord(createWideStringValues(i, longName)).getPageNum());
+    }
+    for (int i = 1; i < rids.size(); i += 2) {
+      assertEquals(new Record(createWideStringValues(i, name)), slottedTable.getRecord(rids.get(i)));
+    }
+
+    // growing a record past its page's free space fails and leaves it as it was
+    slottedTable.updateRecord(createWideStringValues(1, longName), rids.get(1));
+    String longestName = new String(new char[255]).replace('\0', 'x');
+    boolean thrown = false;
+    try {
+      for (int i = 3; i < rids.size(); i += 2) {
+        slottedTable.updateRecord(createWideStringValues(i, longestName), rids.get(i));
+      }
+    } catch (DatabaseException e) {
+      thrown = true;
+    }
+    assertTrue(thrown);
+    assertEquals(new Record(createWideStringValues(1, longName)), slottedTable.getRecord(rids.get(1)));
+    slottedTable.close();
+  }
 }
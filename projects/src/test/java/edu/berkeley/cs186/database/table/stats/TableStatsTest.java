@@ -8,6 +8,12 @@ import edu.berkeley.cs186.database.StudentTest;
 import edu.berkeley.cs186.database.table.Schema;
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
 public class TableStatsTest {
 
   @Test
@@ -37,4 +43,31 @@ public class TableStatsTest {
     assertTrue(histFour instanceof FloatHistogram);
     assertEquals(100, histFour.getEntriesInRange(0f, 5f));
   }
+
+  @Test
+  public void testTableStatsWriteRead() throws IOException {
+    Schema schema = TestUtils.createSchemaWithAllTypes();
+    TableStats stats = new TableStats(schema);
+    for (int i = 0; i < 100; i++) {
+      stats.addRecord(TestUtils.createRecordWithAllTypes());
+    }
+    // widen the int histogram past its first range
+    stats.getHistogram(1).addValue(1000);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    stats.write(new DataOutputStream(bytes));
+    TableStats read = new TableStats(schema);
+    read.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+    assertEquals(100, read.getNumRecords());
+    assertEquals(100, read.getHistogram(0).getEntriesInRange(true, null));
+    for (int i = 0; i < 10; i++) {
+      Bucket expected = (Bucket) stats.getHistogram(1).getAllBuckets().get(i);
+      Bucket actual = (Bucket) read.getHistogram(1).getAllBuckets().get(i);
+      assertEquals(expected, actual);
+      assertEquals(expected.getCount(), actual.getCount());
+    }
+    assertEquals(100, read.getHistogram(2).getEntriesInRange("a", "b"));
+    assertEquals(100, read.getHistogram(3).getEntriesInRange(0f, 5f));
+  }
 }